@@ -0,0 +1,167 @@
+package Controller;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import io.javalin.http.Context;
+
+/**
+ * Reads request bodies and writes response bodies in the encoding a client asks for, using the same Jackson models.
+ *
+ * JSON is the default. Clients may instead send Smile ("application/x-jackson-smile") or CBOR ("application/cbor") with
+ * the matching Content-Type, and ask for either with the Accept header. Accept is matched by media type and q-value;
+ * anything unsupported (including wildcards) falls back to JSON rather than failing the request.
+ */
+public final class BodyCodec {
+    public static final String JSON = "application/json";
+    public static final String SMILE = "application/x-jackson-smile";
+    public static final String CBOR = "application/cbor";
+
+    // mappers are thread-safe once configured, so one of each is shared by every request
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    private static final ObjectMapper SMILE_MAPPER = new SmileMapper();
+    private static final ObjectMapper CBOR_MAPPER = new CBORMapper();
+
+    private BodyCodec() {
+    }
+
+    /**
+     * Converts the request body into a model object, decoding it according to its Content-Type (JSON if absent)
+     * @param ctx - the request
+     * @param type - class of the model object
+     * @return the decoded object
+     * @throws IOException if the body isn't a valid encoding of the model
+     */
+    public static <T> T readBody(Context ctx, Class<T> type) throws IOException {
+        String mediaType = requestMediaType(ctx);
+        if (mediaType.equals(JSON)) {
+            return JSON_MAPPER.readValue(ctx.body(), type);
+        }
+        return mapperFor(mediaType).readValue(ctx.bodyAsBytes(), type);
+    }
+
+    /**
+     * Writes a model object as the response body in the encoding negotiated from the Accept header
+     * @param ctx - the request and its response
+     * @param value - the object to write
+     * @throws JsonProcessingException if the object couldn't be encoded
+     */
+    public static void respond(Context ctx, Object value) throws JsonProcessingException {
+        String mediaType = responseMediaType(ctx);
+        if (mediaType.equals(JSON)) {
+            // JSON keeps going through Javalin's mapper, so its output is exactly what it always was
+            ctx.json(value);
+            return;
+        }
+        ctx.contentType(mediaType);
+        ctx.result(mapperFor(mediaType).writeValueAsBytes(value));
+    }
+
+    /**
+     * @param ctx - the request
+     * @return the supported media type the client prefers for the response, JSON if it doesn't prefer a binary one
+     */
+    public static String responseMediaType(Context ctx) {
+        return negotiate(ctx.header("Accept"));
+    }
+
+    /**
+     * @param ctx - the request
+     * @return the supported media type of the request body, JSON if it has none or an unsupported one
+     */
+    public static String requestMediaType(Context ctx) {
+        String contentType = ctx.header("Content-Type");
+        if (contentType == null) {
+            return JSON;
+        }
+        String mediaType = baseType(contentType);
+        return (mediaType.equals(SMILE) || mediaType.equals(CBOR)) ? mediaType : JSON;
+    }
+
+    /**
+     * @param mediaType - JSON, SMILE, or CBOR
+     * @return the shared mapper of that encoding
+     */
+    public static ObjectMapper mapperFor(String mediaType) {
+        switch (mediaType) {
+            case SMILE: return SMILE_MAPPER;
+            case CBOR: return CBOR_MAPPER;
+            default: return JSON_MAPPER;
+        }
+    }
+
+    /**
+     * Finds the posted_by field of a binary request body by walking its top-level tokens, without binding a model
+     * @param mediaType - SMILE or CBOR
+     * @param body - the raw request body
+     * @return the posted_by value, or -1 if the body has none (or isn't valid)
+     */
+    public static int scanPostedBy(String mediaType, byte[] body) {
+        try (JsonParser parser = mapperFor(mediaType).getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return -1;
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                token = parser.nextToken();
+                if (field.equals("posted_by") && token == JsonToken.VALUE_NUMBER_INT) {
+                    return parser.getIntValue();
+                }
+                parser.skipChildren();
+            }
+            return -1;
+        }
+        catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // picks the supported type with the highest q-value, the earliest one on ties
+    static String negotiate(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+        String best = JSON;
+        double bestQuality = 0;
+        for (String range : accept.split(",")) {
+            String mediaType = baseType(range);
+            if (!mediaType.equals(JSON) && !mediaType.equals(SMILE) && !mediaType.equals(CBOR)) {
+                continue;
+            }
+            double quality = quality(range);
+            if (quality > bestQuality) {
+                best = mediaType;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    private static String baseType(String mediaRange) {
+        int parameters = mediaRange.indexOf(';');
+        String type = (parameters < 0) ? mediaRange : mediaRange.substring(0, parameters);
+        return type.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static double quality(String mediaRange) {
+        for (String parameter : mediaRange.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(trimmed.substring(2));
+                }
+                catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -1,12 +1,49 @@
 package Controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.javalin.Javalin;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
 
+import DAO.MessageRepository;
+import DAO.Repositories;
 import Model.*;
 import Service.*;
+import Util.AccessLog;
+import Util.AppConfig;
+import Util.ConnectionUtil;
+import Util.DeadlineExceededException;
+import Util.PreconditionFailedException;
+import Util.ReplicatedDatabase;
+import Util.RequestContext;
+import Util.ServiceUnavailableException;
+import Util.TooManyRequestsException;
 
 /**
  * You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -14,13 +51,76 @@ import Service.*;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    // response header carrying the latest message change version, used by clients for incremental sync
+    private static final String CHANGE_VERSION_HEADER = "X-Change-Version";
+    // request header identifying a client across connections, used for read-your-writes with read replicas
+    private static final String CLIENT_ID_HEADER = "X-Client-Id";
+    // request header overriding a route's deadline budget, in milliseconds
+    private static final String DEADLINE_HEADER = "X-Request-Timeout-Millis";
+    // expected version of a message (in If-Match) that no message can have, used when If-Match can't be parsed
+    private static final int UNMATCHABLE_VERSION = -1;
+    // most message ids a single multi-get (GET /messages?ids= or POST /messages/lookup) may ask for
+    private static final int MAX_MULTI_GET_IDS = AppConfig.getInt("socialmedia.multiget.maxIds", 500);
+    // timeline bounds: authors per request, and messages per timeline (the default when no limit is given)
+    private static final int MAX_TIMELINE_AUTHORS = AppConfig.getInt("socialmedia.timeline.maxAuthors", 200);
+    private static final int MAX_TIMELINE_LIMIT = AppConfig.getInt("socialmedia.timeline.maxLimit", 200);
+    private static final int DEFAULT_TIMELINE_LIMIT = 20;
+    private static final int DEFAULT_TRENDING_LIMIT = 10;
+    // request attributes for the access log: when the request arrived, its route, and the account it acted as or on
+    private static final String START_ATTRIBUTE = "accessLogStartNanos";
+    private static final String ROUTE_ATTRIBUTE = "accessLogRoute";
+    private static final String ACCOUNT_ATTRIBUTE = "accessLogAccountId";
+    private static final int DEFAULT_THREAD_DUMP_DEPTH = 32;
+    private static final int MAX_THREAD_DUMP_DEPTH = 1024;
+    private static final int DEFAULT_JOURNAL_PAGE = 1000;
+    private static final int MAX_JOURNAL_PAGE = 10_000;
+
     private AccountService accService;
     private MessageService msgService;
+    private FollowService followService;
+    private ReplicatedDatabase replication;
+    private QueuedThreadPool threadPool;
+    // null when socialmedia.accesslog.enabled isn't true (and always for the warm-up's scratch copy)
+    private AccessLog accessLog;
+    // set once startup preparation (pool, caches, warm-up) is done
+    private volatile boolean ready = false;
+    private final Map<String, Long> startupPhases = Collections.synchronizedMap(new LinkedHashMap<>());
+    // true for the scratch copy the warm-up drives, which has no rate limits and no startup preparation of its own
+    private final boolean scratch;
+    // null when the storage engine isn't a single H2 database
+    private SnapshotService snapshotService;
+    // null for the scratch copy, which has no rate limits
+    private WriteRateLimitHandler writeRateLimiter;
+    private DiagnosticsService diagnosticsService = new DiagnosticsService();
 
-    // no args constructor to initialize service dependencies
+    // no args constructor to initialize service dependencies using the configured storage engine
     public SocialMediaController() {
-        this.accService = new AccountService();
-        this.msgService = new MessageService();
+        this(Repositories.fromConfig());
+    }
+
+    // constructor to initialize service dependencies on top of a specific storage engine
+    public SocialMediaController(Repositories repositories) {
+        this(repositories, new MessageService(repositories.messages()));
+    }
+
+    // constructor to serve a specific message service (e.g. one without an event journal) on top of a storage engine
+    public SocialMediaController(Repositories repositories, MessageService msgService) {
+        this(repositories, msgService, false);
+    }
+
+    // constructor for the warm-up's scratch copy (scratch = true), which leaves out rate limits, the access log, and
+    // startup preparation
+    SocialMediaController(Repositories repositories, MessageService msgService, boolean scratch) {
+        this.scratch = scratch;
+        this.accService = new AccountService(repositories.accounts());
+        this.msgService = msgService;
+        // new messages are pushed into their author's followers' home timelines
+        this.followService = new FollowService(repositories.follows(), this.msgService);
+        this.msgService.setInsertListener(this.followService::fanOut);
+        this.replication = repositories.replication();
+        if (repositories.database() != null) {
+            this.snapshotService = new SnapshotService(repositories.database(), this.msgService);
+        }
     }
 
     /**
@@ -29,33 +129,317 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        // request threads are sized from the database pool, and requests beyond them wait in a bounded queue
+        this.threadPool = createThreadPool(ConnectionUtil.getPoolSize());
+        this.accessLog = this.scratch ? null : openAccessLog();
+        Javalin app = Javalin.create(config -> config.jetty.server(() -> {
+            Server server = new Server(this.threadPool);
+            // Jetty calls it once the response is complete, and it only hands the entry to the log's writer thread
+            if (this.accessLog != null) {
+                server.setRequestLog(this::logAccess);
+            }
+            return server;
+        }));
+
+        // tells the DAOs which client each request comes from, so reads can follow that client's own writes
+        app.before(ctx -> {
+            String clientId = ctx.header(CLIENT_ID_HEADER);
+            RequestContext.open((clientId == null || clientId.isBlank()) ? ctx.ip() : clientId);
+        });
+        app.after(ctx -> RequestContext.close());
 
-        app.post("/register", this::registrationHandler);                                       // user story 1
-        app.post("/login", this::loginHandler);                                                 // user story 2
-        app.post("/messages", this::createMessageHandler);                                      // user story 3
-        app.get("/messages", this::retrieveAllMessagesHandler);                                 // user story 4
-        app.get("/messages/{message_id}", this::retrieveMessageByIdHandler);                    // user story 5
-        app.delete("/messages/{message_id}", this::deleteMessageByIdHandler);                   // user story 6
-        app.patch("/messages/{message_id}", this::updateMessageByIdHandler);                    // user story 7
-        app.get("/accounts/{account_id}/messages", this::retrieveAllMessagesByUserHandler);     // user story 8
+        // the access log is written by Jetty, which knows neither routes nor path parameters, so they are noted here
+        if (this.accessLog != null) {
+            app.before(ctx -> ctx.attribute(START_ATTRIBUTE, System.nanoTime()));
+            app.after(this::recordRoute);
+        }
+
+        // rate limits the write endpoints before their bodies are parsed or the database is touched
+        if (!this.scratch) {
+            this.writeRateLimiter = new WriteRateLimitHandler();
+            app.before("/messages", this.writeRateLimiter);
+            app.before("/messages/{message_id}", this.writeRateLimiter);
+        }
+        app.exception(TooManyRequestsException.class, (e, ctx) -> {
+            ctx.header("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            ctx.status(429);
+        });
+        app.exception(ServiceUnavailableException.class, (e, ctx) -> ctx.status(503));
+        app.exception(DeadlineExceededException.class, (e, ctx) -> ctx.status(504));
+        app.exception(PreconditionFailedException.class, (e, ctx) -> {
+            ctx.header("ETag", etagOf(e.getCurrentVersion()));
+            ctx.status(412);
+        });
+
+        // deadline budgets: single-row routes should answer quickly, scans get more room, and streams (import, export)
+        // run as long as their client keeps up, so they have none
+        long pointBudget = AppConfig.getLong("socialmedia.deadline.pointMillis", 2_000);
+        long scanBudget = AppConfig.getLong("socialmedia.deadline.scanMillis", 5_000);
+
+        app.post("/register", withDeadline(pointBudget, this::registrationHandler));                                   // user story 1
+        app.post("/login", withDeadline(pointBudget, this::loginHandler));                                             // user story 2
+        app.post("/messages", withDeadline(pointBudget, this::createMessageHandler));                                  // user story 3
+        app.get("/messages", withDeadline(scanBudget, this::retrieveAllMessagesHandler));                              // user story 4
+        app.post("/messages/import", this::importMessagesHandler);
+        app.post("/messages/lookup", withDeadline(scanBudget, this::lookupMessagesHandler));
+        app.get("/messages/export", this::exportMessagesHandler);                                                      // must be registered before /messages/{message_id}
+        app.get("/messages/changes", withDeadline(pointBudget, this::retrieveMessageChangesHandler));                  // must be registered before /messages/{message_id}
+        app.get("/messages/stats", withDeadline(scanBudget, this::retrieveMessageStatsHandler));                       // must be registered before /messages/{message_id}
+        app.get("/messages/trending", withDeadline(pointBudget, this::retrieveTrendingMessagesHandler));               // must be registered before /messages/{message_id}
+        app.get("/messages/{message_id}", withDeadline(pointBudget, this::retrieveMessageByIdHandler));                // user story 5
+        app.delete("/messages/{message_id}", withDeadline(pointBudget, this::deleteMessageByIdHandler));               // user story 6
+        app.patch("/messages/{message_id}", withDeadline(pointBudget, this::updateMessageByIdHandler));                // user story 7
+        app.get("/accounts/{account_id}/messages", withDeadline(scanBudget, this::retrieveAllMessagesByUserHandler));  // user story 8
+        app.get("/accounts/{account_id}/messages/export", this::exportMessagesByUserHandler);
+        app.get("/accounts/{account_id}/stats", withDeadline(pointBudget, this::retrieveMessageStatsByUserHandler));
+        app.post("/accounts/{account_id}/follow", withDeadline(pointBudget, this::followHandler));
+        app.delete("/accounts/{account_id}/follow", withDeadline(pointBudget, this::unfollowHandler));
+        app.get("/accounts/{account_id}/home", withDeadline(scanBudget, this::retrieveHomeTimelineHandler));
+        app.get("/timeline", withDeadline(scanBudget, this::retrieveTimelineHandler));
+        app.get("/metrics", this::metricsHandler);
+        app.get("/ready", this::readinessHandler);
+
+        // administrative endpoints change or expose the whole dataset, so they are opt-in
+        if (AppConfig.getBoolean("socialmedia.admin.enabled", false)) {
+            app.post("/admin/snapshot/export", this::exportSnapshotHandler);
+            app.post("/admin/snapshot/import", this::importSnapshotHandler);
+            app.get("/admin/journal", this::retrieveJournalHandler);
+            app.post("/admin/jfr/start", this::startRecordingHandler);
+            app.get("/admin/jfr", this::retrieveRecordingHandler);
+            app.post("/admin/jfr/stop", this::stopRecordingHandler);
+            app.get("/admin/threads", this::threadDumpHandler);
+        }
+
+        // queued access log lines are written out when the server stops
+        if (this.accessLog != null) {
+            AccessLog startedLog = this.accessLog;
+            app.events(event -> event.serverStopped(startedLog::close));
+        }
+
+        // the pool, caches, and (optionally) the JIT are prepared once the server is up; /ready reports when that is done
+        if (!this.scratch) {
+            app.events(event -> event.serverStarted(() -> {
+                Thread preparation = new Thread(this::prepareForTraffic, "startup-preparation");
+                preparation.setDaemon(true);
+                preparation.start();
+            }));
+        }
 
         return app;
     }
 
+    /**
+     * Records how long a startup phase took, reporting it from GET /ready
+     * @param phase - name of the phase
+     * @param millis - its duration
+     * @apiNote Nothing is logged here, since every test that starts the API goes through these phases; Main logs its own,
+     * and the background phases are logged together when the warm-up is enabled.
+     */
+    public void recordStartupPhase(String phase, long millis) {
+        this.startupPhases.put(phase, millis);
+    }
+
+    /**
+     * @return true once the pool, the caches, and the optional warm-up are ready
+     */
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    // opens every free pooled connection, primes the hot message cache and runs the warm-up if enabled, then flips readiness
+    private void prepareForTraffic() {
+        long start = System.nanoTime();
+        // the in-memory engine never touches the main database, so there is no pool to fill
+        if (!AppConfig.getString("socialmedia.storage", "h2").equalsIgnoreCase("memory")) {
+            List<Connection> connections = new ArrayList<>();
+            // only the connections free right now, so filling the pool never waits behind (or sheds) an early request
+            long free = ConnectionUtil.getPoolSize() - ConnectionUtil.getConnectionGate().getMetrics().get("in_use");
+            try {
+                for (int i = 0; i < free; i++) {
+                    connections.add(ConnectionUtil.getDataSource().getConnection());
+                }
+            }
+            catch (SQLException | RuntimeException e) {
+                System.out.println("couldn't fill the connection pool: " + e.getMessage());
+            }
+            finally {
+                // closing hands every connection back to the pool, where it stays open for the first requests
+                for (Connection connection : connections) {
+                    try {
+                        connection.close();
+                    }
+                    catch (SQLException e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+            }
+            recordStartupPhase("pool", elapsedMillis(start));
+        }
+
+        // priming and warm-up both trade a slower start for faster first requests, so they're opted into together
+        if (AppConfig.getBoolean("socialmedia.warmup.enabled", false)) {
+            start = System.nanoTime();
+            int primed = this.msgService.primeHotMessages(AppConfig.getLong("socialmedia.warmup.primeWindowSeconds", 86_400),
+                    AppConfig.getInt("socialmedia.warmup.primeLimit", 10_000));
+            recordStartupPhase("caches (" + primed + " messages)", elapsedMillis(start));
+
+            start = System.nanoTime();
+            try {
+                Map<String, Long> warmup = WarmupRunner.fromConfig().run();
+                System.out.println("warm-up " + warmup);
+            }
+            catch (Exception e) {
+                // warm-up only speeds up the first requests, so serving cold beats not serving at all
+                System.out.println("warm-up failed: " + e);
+            }
+            recordStartupPhase("warmup", elapsedMillis(start));
+            synchronized (this.startupPhases) {
+                System.out.println("startup phases " + this.startupPhases);
+            }
+        }
+
+        this.ready = true;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    // a message version as a strong ETag
+    private static String etagOf(int version) {
+        return "\"" + version + "\"";
+    }
+
+    // the version a conditional write expects from its If-Match header: any version without one (or with "*"), and a
+    // version no message has when the header isn't a single strong ETag of ours, so the write fails with 412
+    private static int expectedVersion(Context ctx) {
+        String ifMatch = ctx.header("If-Match");
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return MessageRepository.ANY_VERSION;
+        }
+        String etag = ifMatch.trim();
+        if (etag.length() < 3 || etag.charAt(0) != '"' || etag.charAt(etag.length() - 1) != '"') {
+            return UNMATCHABLE_VERSION;
+        }
+        try {
+            int version = Integer.parseInt(etag.substring(1, etag.length() - 1));
+            return (version > 0) ? version : UNMATCHABLE_VERSION;
+        }
+        catch (NumberFormatException e) {
+            return UNMATCHABLE_VERSION;
+        }
+    }
+
+    private static AccessLog openAccessLog() {
+        try {
+            return AccessLog.fromConfig();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("couldn't open the access log", e);
+        }
+    }
+
+    // notes the account a request acted as or on, for its access log line
+    private static void recordAccount(Context ctx, int account_id) {
+        ctx.attribute(ACCOUNT_ATTRIBUTE, account_id);
+    }
+
+    // notes the matched route (e.g. /messages/{message_id}, which keeps the log's routes few) and, unless a handler
+    // already did, the account_id path parameter
+    private void recordRoute(Context ctx) {
+        String route = ctx.endpointHandlerPath();
+        // without a matching route there is no path pattern, only a description
+        if (route != null && route.startsWith("/")) {
+            ctx.attribute(ROUTE_ATTRIBUTE, route);
+        }
+        String pathAccount = ctx.pathParamMap().get("account_id");
+        if (pathAccount != null && ctx.attribute(ACCOUNT_ATTRIBUTE) == null) {
+            try {
+                recordAccount(ctx, Integer.parseInt(pathAccount));
+            }
+            catch (NumberFormatException e) {
+                // not an account, so nothing to note
+            }
+        }
+    }
+
+    // queues one access log line for a completed response; runs on the request thread, so it only gathers the fields
+    private void logAccess(Request request, Response response) {
+        Object route = request.getAttribute(ROUTE_ATTRIBUTE);
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        Object account_id = request.getAttribute(ACCOUNT_ATTRIBUTE);
+
+        // requests Jetty answered without Javalin (e.g. a malformed request) only have Jetty's millisecond timestamp
+        long latencyMicros = (start instanceof Long)
+                ? TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - (Long) start)
+                : TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis() - request.getTimeStamp());
+
+        this.accessLog.log(request.getMethod(),
+                (route instanceof String) ? (String) route : request.getRequestURI(),
+                response.getStatus(),
+                latencyMicros,
+                response.getHttpChannel().getBytesWritten(),
+                (account_id instanceof Integer) ? (Integer) account_id : -1);
+    }
+
+    /**
+     * Wraps a handler so its request runs under a deadline, which every database statement it makes is bounded by.
+     * Clients may ask for a different budget with the X-Request-Timeout-Millis header, up to socialmedia.deadline.maxMillis.
+     * @param budgetMillis - the route's default budget, counted from when the request arrived (0 for none)
+     * @param handler - the route's handler
+     * @return a handler that responds with status code 400 if the header isn't a positive number, 504 (gateway timeout)
+     * if the budget runs out, and otherwise whatever the wrapped handler does
+     */
+    private Handler withDeadline(long budgetMillis, Handler handler) {
+        long maxBudgetMillis = AppConfig.getLong("socialmedia.deadline.maxMillis", 30_000);
+        return ctx -> {
+            long budget = budgetMillis;
+            String requested = ctx.header(DEADLINE_HEADER);
+            if (requested != null) {
+                try {
+                    budget = Long.parseLong(requested.trim());
+                }
+                catch (NumberFormatException e) {
+                    ctx.status(400);
+                    return;
+                }
+                if (budget <= 0) {
+                    ctx.status(400);
+                    return;
+                }
+                budget = Math.min(budget, maxBudgetMillis);
+            }
+            RequestContext.setDeadline(budget);
+            handler.handle(ctx);
+        };
+    }
+
+    /**
+     * Creates the Jetty thread pool, by default twice as many threads as database connections (half of the requests
+     * in flight can be served from caches without one) plus headroom for Jetty's own acceptor and selector threads.
+     * @param dbPoolSize - number of connections of the main database pool
+     * @return a thread pool whose queue of waiting requests is bounded, so overload is rejected instead of piling up
+     */
+    private static QueuedThreadPool createThreadPool(int dbPoolSize) {
+        int maxThreads = AppConfig.getInt("socialmedia.http.maxThreads", dbPoolSize * 2 + 16);
+        int minThreads = Math.min(maxThreads, AppConfig.getInt("socialmedia.http.minThreads", 8));
+        int queueCapacity = AppConfig.getInt("socialmedia.http.queueCapacity", maxThreads * 4);
+        QueuedThreadPool pool = new QueuedThreadPool(maxThreads, minThreads, 60_000, new BlockingArrayQueue<>(queueCapacity));
+        pool.setName("JettyServerThreadPool");
+        return pool;
+    }
+
     /**
      * Handler to register a new user account.
      * 
-     * ObjectMapper is used to convert the JSON from the request body into an Account object
+     * BodyCodec is used to convert the request body (JSON unless its Content-Type says Smile or CBOR) into an Account object
      * @param ctx - automatically provided by Javalin in order to handle HTTP requests and create HTTP responses
-     * @throws JsonProcessingException thrown if there is an issue converting JSON into an Account object
+     * @throws IOException thrown if there is an issue converting the request body into an Account object
      * @apiNote When successfully registered within the database, returns a JSON representation of the newly inserted Account with status code 200
      */
-    private void registrationHandler(Context ctx) throws JsonProcessingException {
-        // iniializes object mapper to convert the request's body JSON into an Account object
-        ObjectMapper om = new ObjectMapper();
-        String accountJSON = ctx.body();
-        Account newUser = om.readValue(accountJSON, Account.class);
+    private void registrationHandler(Context ctx) throws IOException {
+        // converts the request body (JSON, Smile, or CBOR) into an Account object
+        Account newUser = BodyCodec.readBody(ctx, Account.class);
 
         // utilizes account service to register a new user account
         newUser = accService.registerUserAccount(newUser);
@@ -67,10 +451,11 @@ public class SocialMediaController {
         }
         // else the registration was successful
         else {
+            recordAccount(ctx, newUser.getAccount_id());
             // sets the status code to 200, indicating success
             ctx.status(200);
             // returns the newly registered account information as a JSON
-            ctx.json(newUser);
+            BodyCodec.respond(ctx, newUser);
         }
     }
 
@@ -79,15 +464,13 @@ public class SocialMediaController {
      * In the future, this action may generate a Session token to allow the user to securely use the site
      * 
      * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
-     * @throws JsonProcessingException thrown if there is an issue converting JSON into an Account object
+     * @throws IOException thrown if there is an issue converting the request body into an Account object
      * @apiNote Upon successful login, returns a JSON containing the user Account's full details (account_id, username, password).
      * @apiNote If the login credentials were incorrect or didn't match an existing user, returns status code 401 (unauthorized).
      */
-    private void loginHandler(Context ctx) throws JsonProcessingException {
-        // iniializes object mapper to convert the request's body JSON into an Account object
-        ObjectMapper om = new ObjectMapper();
-        String accountJSON = ctx.body();
-        Account verifiedUser = om.readValue(accountJSON, Account.class);
+    private void loginHandler(Context ctx) throws IOException {
+        // converts the request body (JSON, Smile, or CBOR) into an Account object
+        Account verifiedUser = BodyCodec.readBody(ctx, Account.class);
 
         // utilizes account service to attempt logging in
         verifiedUser = accService.loginUserAccount(verifiedUser);
@@ -99,9 +482,10 @@ public class SocialMediaController {
         }
         // else login was successful and verifiedUser contains all of the Account's fields (account_id, username, password)
         else {
+            recordAccount(ctx, verifiedUser.getAccount_id());
             // provides a successful status code and returns the full Account's credentials as a JSON within the response body
             ctx.status(200);
-            ctx.json(verifiedUser);
+            BodyCodec.respond(ctx, verifiedUser);
         }
     }
 
@@ -109,15 +493,14 @@ public class SocialMediaController {
      * Handler to attempt creating a new message.
      * 
      * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
-     * @throws JsonProcessingException thrown if there is an issue converting JSON into an Account object
+     * @throws IOException thrown if there is an issue converting the request body into a Message object
      * @apiNote Upon successful message creation, returns a JSON containing all the Message's information (message_id, posted_by, message_text, time_posted_epoch)
      * @apiNote If a new message's requirements weren't met or there was an issue creating it, returns status code 400 (client error).
      */
-    private void createMessageHandler(Context ctx) throws JsonProcessingException {
-        // iniializes object mapper to convert the request's body JSON into a Message object
-        ObjectMapper om = new ObjectMapper();
-        String messageJSON = ctx.body();
-        Message newMessage = om.readValue(messageJSON, Message.class);
+    private void createMessageHandler(Context ctx) throws IOException {
+        // converts the request body (JSON, Smile, or CBOR) into a Message object
+        Message newMessage = BodyCodec.readBody(ctx, Message.class);
+        recordAccount(ctx, newMessage.getPosted_by());
 
         // utilizes message service to create a new message
         newMessage = msgService.createNewMessage(newMessage);
@@ -131,37 +514,291 @@ public class SocialMediaController {
         else {
             // returns a successful status code and the full Message's information as a JSON within the response body
             ctx.status(200);
-            ctx.json(newMessage);
+            BodyCodec.respond(ctx, newMessage);
         }
     }
 
+    /**
+     * Handler to bulk import messages from a newline-delimited JSON body (one message object per line).
+     * 
+     * The body is read incrementally and the response is streamed back as NDJSON while the import runs: an error object
+     * for each rejected line, a progress object after each committed batch, and a final summary flagged with done. A
+     * client that stops reading the response (or stops sending) holds the import back instead of growing any buffer.
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws IOException thrown if the request couldn't be read or the response couldn't be written
+     * @apiNote Always returns status code 200, since the outcome of each line is only known once the response has started
+     * @apiNote Each valid message takes a token from its author's write rate limit, and is rejected (as an error line)
+     * once the author has none left
+     */
+    private void importMessagesHandler(Context ctx) throws IOException {
+        ctx.status(200);
+        ctx.contentType("application/x-ndjson");
+
+        // writes straight to the servlet stream so every flush reaches the client while the import is still running
+        ObjectMapper om = new ObjectMapper().disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator events = om.getFactory().createGenerator(ctx.res().getOutputStream());
+        // one object per line: the newline is written after each object instead of Jackson's default separator
+        events.setRootValueSeparator(null);
+        IntPredicate admitAuthor = (this.writeRateLimiter == null) ? posted_by -> true : this.writeRateLimiter::tryAcquireForAccount;
+        this.msgService.importMessages(new InputStreamReader(ctx.req().getInputStream(), StandardCharsets.UTF_8), admitAuthor, event -> {
+            try {
+                om.writeValue(events, event);
+                events.writeRaw('\n');
+                // errors are sent along with the next progress event rather than flushed one by one
+                if (event.getError() == null) {
+                    events.flush();
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        events.close();
+    }
+
     /**
      * Handler to retrieve all messages contained within the Message table.
      * 
      * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
      * @apiNote Always returns a JSON representation of a list containing all messages, even if it's empty
+     * @apiNote With an ids query parameter (comma-separated message ids, e.g. ?ids=1,2,3), returns only those messages
+     * instead, as lookupMessagesHandler does
+     */
+    private void retrieveAllMessagesHandler(Context ctx) throws JsonProcessingException {
+        String ids = ctx.queryParam("ids");
+        if (ids != null) {
+            respondWithMessages(ctx, parseIds(ids));
+            return;
+        }
+
+        // the change version is read before the messages so that no change made during the query can be missed
+        ctx.header(CHANGE_VERSION_HEADER, String.valueOf(this.msgService.getLatestChangeVersion()));
+        ctx.status(200);
+        BodyCodec.respond(ctx, this.msgService.getAllMessages());
+    }
+
+    /**
+     * Handler to retrieve many messages by id in one call, for id lists too long for a query string.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote The request body is a list of message ids, e.g. [3, 1, 2] (JSON, Smile, or CBOR)
+     * @apiNote Returns a list with one entry per requested id, in the requested order, with status code 200: the message
+     * if it exists, otherwise null
+     * @apiNote If the body isn't a list of ids, or asks for more than socialmedia.multiget.maxIds ids, returns status
+     * code 400 (client error)
+     */
+    private void lookupMessagesHandler(Context ctx) throws JsonProcessingException {
+        List<Integer> message_ids;
+        try {
+            message_ids = new ArrayList<>();
+            for (int message_id : BodyCodec.readBody(ctx, int[].class)) {
+                message_ids.add(message_id);
+            }
+        }
+        catch (IOException e) {
+            message_ids = null;
+        }
+        respondWithMessages(ctx, message_ids);
+    }
+
+    /**
+     * Handler to retrieve the newest messages of several authors merged into one timeline.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote The authors query parameter lists account ids separated by commas (e.g. ?authors=1,2,3), and the optional
+     * limit query parameter caps the number of messages (20 by default)
+     * @apiNote Returns a list of at most limit messages by those authors, newest time_posted_epoch first, with status code 200
+     * @apiNote If authors is missing, isn't a list of numbers, or names more than socialmedia.timeline.maxAuthors
+     * accounts, or limit isn't a number between 1 and socialmedia.timeline.maxLimit, returns status code 400 (client error)
      */
-    private void retrieveAllMessagesHandler(Context ctx) {
+    private void retrieveTimelineHandler(Context ctx) throws JsonProcessingException {
+        String authorsParam = ctx.queryParam("authors");
+        List<Integer> authors = (authorsParam == null) ? null : parseIds(authorsParam);
+        int limit;
+        try {
+            String limitParam = ctx.queryParam("limit");
+            limit = (limitParam == null) ? DEFAULT_TIMELINE_LIMIT : Integer.parseInt(limitParam);
+        }
+        catch (NumberFormatException e) {
+            limit = 0;
+        }
+
+        if (authors == null || authors.size() > MAX_TIMELINE_AUTHORS || limit < 1 || limit > MAX_TIMELINE_LIMIT) {
+            ctx.status(400);
+            return;
+        }
         ctx.status(200);
-        ctx.json(this.msgService.getAllMessages());
+        BodyCodec.respond(ctx, this.msgService.getTimeline(authors, limit));
+    }
+
+    /**
+     * Handler to make an account follow another one, whose messages then show up on its home timeline.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws IOException thrown if there is an issue converting the request body into an object
+     * @apiNote The account_id path parameter is the account to follow, and the request body names the follower (follower_id)
+     * @apiNote Returns a JSON representation of the Follow with status code 200, also when it already existed
+     * @apiNote If either account doesn't exist or an account tries to follow itself, returns status code 400 (client error)
+     */
+    private void followHandler(Context ctx) throws IOException {
+        // converts the request body (JSON, Smile, or CBOR) into a Follow object, then takes the followee from the path
+        Follow follow = BodyCodec.readBody(ctx, Follow.class);
+        recordAccount(ctx, follow.getFollower_id());
+        int followee_id = Integer.parseInt(ctx.pathParam("account_id"));
+        Follow followed = this.followService.follow(follow.getFollower_id(), followee_id);
+
+        if (followed == null) {
+            ctx.status(400);
+        }
+        else {
+            ctx.status(200);
+            BodyCodec.respond(ctx, followed);
+        }
+    }
+
+    /**
+     * Handler to make an account stop following another one.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws IOException thrown if there is an issue converting the request body into an object
+     * @apiNote The account_id path parameter is the account to stop following, and the request body names the follower (follower_id)
+     * @apiNote Returns a JSON representation of the removed Follow with status code 200, or an empty body with status
+     * code 200 if there was no such follow (like deleting a message that doesn't exist)
+     */
+    private void unfollowHandler(Context ctx) throws IOException {
+        Follow follow = BodyCodec.readBody(ctx, Follow.class);
+        recordAccount(ctx, follow.getFollower_id());
+        int followee_id = Integer.parseInt(ctx.pathParam("account_id"));
+        Follow unfollowed = this.followService.unfollow(follow.getFollower_id(), followee_id);
+
+        ctx.status(200);
+        if (unfollowed != null) {
+            BodyCodec.respond(ctx, unfollowed);
+        }
+    }
+
+    /**
+     * Handler to retrieve an account's home timeline: the newest messages of the accounts it follows.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote The optional limit query parameter caps the number of messages (20 by default)
+     * @apiNote Returns a list of at most limit messages, newest time_posted_epoch first, with status code 200 (an empty
+     * list if the account follows no one)
+     * @apiNote If limit isn't a number between 1 and socialmedia.home.capacity, returns status code 400 (client error)
+     */
+    private void retrieveHomeTimelineHandler(Context ctx) throws JsonProcessingException {
+        int follower_id = Integer.parseInt(ctx.pathParam("account_id"));
+        int limit;
+        try {
+            String limitParam = ctx.queryParam("limit");
+            limit = (limitParam == null) ? DEFAULT_TIMELINE_LIMIT : Integer.parseInt(limitParam);
+        }
+        catch (NumberFormatException e) {
+            limit = 0;
+        }
+
+        if (limit < 1 || limit > this.followService.getCapacity()) {
+            ctx.status(400);
+            return;
+        }
+        ctx.status(200);
+        BodyCodec.respond(ctx, this.followService.getHomeTimeline(follower_id, limit));
+    }
+
+    // answers a multi-get: 400 for a missing or oversized id list, otherwise the messages in the requested order
+    private void respondWithMessages(Context ctx, List<Integer> message_ids) throws JsonProcessingException {
+        if (message_ids == null || message_ids.size() > MAX_MULTI_GET_IDS) {
+            ctx.status(400);
+            return;
+        }
+        ctx.status(200);
+        BodyCodec.respond(ctx, this.msgService.getMessagesByIds(message_ids));
+    }
+
+    // ids from a comma-separated list, e.g. "1,2,3" (an empty list for a blank one), or null if any isn't a number
+    private static List<Integer> parseIds(String ids) {
+        List<Integer> parsed = new ArrayList<>();
+        if (ids.isBlank()) {
+            return parsed;
+        }
+        try {
+            for (String id : ids.split(",")) {
+                parsed.add(Integer.parseInt(id.trim()));
+            }
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+        return parsed;
+    }
+
+    /**
+     * Handler to retrieve every message change (inserts, updates, and deletions as tombstones) since a change version.
+     * Clients get a starting version from the X-Change-Version header of GET /messages.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote Returns a JSON change set with status code 200 on success
+     * @apiNote If the since query parameter is missing or not a number, returns status code 400 (client error)
+     * @apiNote If the version is too old to be served (or unknown to this server), returns status code 410 (gone) along with
+     * a change set flagged with resync, and the client must refetch all messages
+     */
+    private void retrieveMessageChangesHandler(Context ctx) throws JsonProcessingException {
+        long since;
+        try {
+            since = Long.parseLong(ctx.queryParam("since"));
+        }
+        catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+
+        MessageChangeSet changes = this.msgService.getChangesSince(since);
+        ctx.header(CHANGE_VERSION_HEADER, String.valueOf(changes.getVersion()));
+        ctx.status(changes.isResync() ? 410 : 200);
+        BodyCodec.respond(ctx, changes);
     }
 
     /**
      * Handler to retrieve a specific message given its message_id
      * 
      * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
-     * @apiNote Returns a JSON representation of the message if found, otherwise the response body is empty
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote Returns a JSON representation of the message if found, with its version as the ETag header, otherwise the response body is empty
      */
-    private void retrieveMessageByIdHandler(Context ctx) {
+    private void retrieveMessageByIdHandler(Context ctx) throws JsonProcessingException {
         ctx.status(200);
 
-        // converts the message_id path parameter into an integer, then searches for it using msgService's method
+        // converts the message_id path parameter into an integer
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
-        Message retrievedMessage = this.msgService.getMessageById(message_id);
+
+        // hot messages are written straight from their off-heap JSON bytes, skipping object creation and Jackson
+        // (the version is read first, so it can only ever be older than the JSON, never newer)
+        if (BodyCodec.responseMediaType(ctx).equals(BodyCodec.JSON)) {
+            int cachedVersion = this.msgService.getCachedMessageVersion(message_id);
+            byte[] cachedJson = (cachedVersion > 0) ? this.msgService.getCachedMessageJson(message_id) : null;
+            if (cachedJson != null) {
+                this.msgService.recordView(message_id);
+                ctx.header("ETag", etagOf(cachedVersion));
+                ctx.contentType("application/json");
+                ctx.result(cachedJson);
+                return;
+            }
+        }
+
+        // otherwise searches for it using msgService's method (which caches it for the next request)
+        VersionedMessage retrievedMessage = this.msgService.getVersionedMessageById(message_id);
 
         // returns the retrieved message in response body as a JSON if it was found
         if (retrievedMessage != null) {
-            ctx.json(retrievedMessage);
+            // only views of existing messages count towards trending
+            this.msgService.recordView(message_id);
+            ctx.header("ETag", etagOf(retrievedMessage.getVersion()));
+            BodyCodec.respond(ctx, retrievedMessage.getMessage());
         }
     }
 
@@ -169,17 +806,19 @@ public class SocialMediaController {
      * Handler to delete a specific message given its message_id
      * 
      * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
      * @apiNote Returns a JSON representation of the deleted message within the response body on successful deletion from database
+     * @apiNote With an If-Match header, only deletes the message if it is still at that version (ETag), otherwise returns status code 412
      */
-    private void deleteMessageByIdHandler(Context ctx) {
+    private void deleteMessageByIdHandler(Context ctx) throws JsonProcessingException {
         ctx.status(200);
         // converts the message_id path parameter into an integer, then attempts deleting it using msgService's method
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
-        Message deletedMessage = this.msgService.deleteMessageById(message_id);
+        Message deletedMessage = this.msgService.deleteMessageById(message_id, expectedVersion(ctx));
 
         // returns the deleted message within response body as a JSON on successful deletion
         if (deletedMessage != null) {
-            ctx.json(deletedMessage);
+            BodyCodec.respond(ctx, deletedMessage);
         }
 
     }
@@ -188,23 +827,24 @@ public class SocialMediaController {
      * Handler to update a specific message's message_text field given its message_id and updated text
      * 
      * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
-     * @throws JsonProcessingException thrown if there is an issue converting request body JSON into an object
+     * @throws IOException thrown if there is an issue converting the request body into an object
      * @apiNote Returns a JSON representation of the updated Message in response body on successful update within database
-     * @apiNote If the update failed for any reason, returns status code 400 (client error)
+     * @apiNote With an If-Match header, only updates the message if it is still at that version (ETag), otherwise returns status code 412
+     * @apiNote If the update failed for any other reason, returns status code 400 (client error)
      */
-    private void updateMessageByIdHandler(Context ctx) throws JsonProcessingException {
-        // converts the request body into a Message object using object mapper, then extracts only the updated text
-        ObjectMapper om = new ObjectMapper();
-        String updatedText = om.readValue(ctx.body(), Message.class).getMessage_text();
+    private void updateMessageByIdHandler(Context ctx) throws IOException {
+        // converts the request body into a Message object (JSON, Smile, or CBOR), then extracts only the updated text
+        String updatedText = BodyCodec.readBody(ctx, Message.class).getMessage_text();
 
         // converts the message_id path parameter into an integer, then attempts updating it
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
-        Message updatedMessage = this.msgService.updateMessageById(message_id, updatedText);
+        VersionedMessage updatedMessage = this.msgService.updateMessageById(message_id, updatedText, expectedVersion(ctx));
 
-        // returns the updatedMessage if the update was successful
+        // returns the updatedMessage, with its new version as the ETag, if the update was successful
         if (updatedMessage != null) {
             ctx.status(200);
-            ctx.json(updatedMessage);
+            ctx.header("ETag", etagOf(updatedMessage.getVersion()));
+            BodyCodec.respond(ctx, updatedMessage.getMessage());
         }
         else {
             ctx.status(400);
@@ -215,11 +855,419 @@ public class SocialMediaController {
      * Handler to retrieve all messages by a specific user contained within the Message table.
      * 
      * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
      * @apiNote Always returns a JSON representation of a list containing all messages by a specific user identified by their account_id, even if it's empty
      */
-    private void retrieveAllMessagesByUserHandler(Context ctx) {
+    private void retrieveAllMessagesByUserHandler(Context ctx) throws JsonProcessingException {
         int account_id = Integer.parseInt(ctx.pathParam("account_id"));
         ctx.status(200);
-        ctx.json(this.msgService.getAllMessagesByUser(account_id));
+        BodyCodec.respond(ctx, this.msgService.getAllMessagesByUser(account_id));
+    }
+
+    /**
+     * Handler to export every message as newline-delimited JSON, streamed while it is read from storage.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws IOException thrown if the response couldn't be written or storage failed part way (the response is cut off)
+     * @apiNote Returns one JSON message per line in message_id order with status code 200, gzip-compressed if the
+     * client accepts it; if the Accept header asks for Smile or CBOR, the messages are encoded values one after another
+     * @apiNote The optional from and to query parameters limit the export to time_posted_epoch in [from, to); if either
+     * isn't a number, returns status code 400 (client error)
+     * @apiNote If too many exports are already running, returns status code 503 (service unavailable)
+     */
+    private void exportMessagesHandler(Context ctx) throws IOException {
+        streamMessages(ctx, null);
+    }
+
+    /**
+     * Handler to export every message by a specific user as newline-delimited JSON, streamed while it is read from storage.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws IOException thrown if the response couldn't be written or storage failed part way (the response is cut off)
+     * @apiNote Same responses as GET /messages/export, limited to messages posted by the account_id
+     */
+    private void exportMessagesByUserHandler(Context ctx) throws IOException {
+        streamMessages(ctx, Integer.parseInt(ctx.pathParam("account_id")));
+    }
+
+    // streams the matching messages (NDJSON, or back-to-back Smile/CBOR values) straight to the servlet stream, one buffer at a time
+    private void streamMessages(Context ctx, Integer account_id) throws IOException {
+        Long fromEpoch;
+        Long toEpoch;
+        try {
+            fromEpoch = (ctx.queryParam("from") == null) ? null : Long.valueOf(ctx.queryParam("from"));
+            toEpoch = (ctx.queryParam("to") == null) ? null : Long.valueOf(ctx.queryParam("to"));
+        }
+        catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+
+        String mediaType = BodyCodec.responseMediaType(ctx);
+        boolean json = mediaType.equals(BodyCodec.JSON);
+        ctx.status(200);
+        ctx.contentType(json ? "application/x-ndjson" : mediaType);
+        OutputStream out = ctx.res().getOutputStream();
+        String acceptEncoding = ctx.header("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ctx.header("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(out, 1 << 16);
+        }
+
+        ObjectMapper om = BodyCodec.mapperFor(mediaType).copy().disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator lines = om.getFactory().createGenerator(out);
+        if (json) {
+            // one object per line: the newline is written after each object instead of Jackson's default separator
+            lines.setRootValueSeparator(null);
+        }
+        // binary values are self-delimiting, so they simply follow one another
+        long exported = this.msgService.exportMessages(account_id, fromEpoch, toEpoch, msg -> {
+            try {
+                om.writeValue(lines, msg);
+                if (json) {
+                    lines.writeRaw('\n');
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (exported < 0) {
+            // the status line is already sent, so failing here aborts the response and the client sees it cut off
+            throw new IOException("message export failed part way");
+        }
+        lines.close();
+    }
+
+    /**
+     * Handler to retrieve message statistics (count, first and last post time) over every message.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote Always returns a JSON representation of the statistics with status code 200
+     */
+    private void retrieveMessageStatsHandler(Context ctx) throws JsonProcessingException {
+        ctx.status(200);
+        BodyCodec.respond(ctx, this.msgService.getMessageStats());
+    }
+
+    /**
+     * Handler to retrieve the messages viewed most (through GET /messages/{message_id}) within the trending window.
+     *
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote The optional limit query parameter caps the number of messages (10 by default)
+     * @apiNote Returns a list of {message, views} with status code 200, most viewed first, from a top that is rebuilt at
+     * most once per socialmedia.trending.refreshMillis
+     * @apiNote If limit isn't a number between 1 and socialmedia.trending.topSize, returns status code 400 (client error)
+     */
+    private void retrieveTrendingMessagesHandler(Context ctx) throws JsonProcessingException {
+        int limit;
+        try {
+            String limitParam = ctx.queryParam("limit");
+            limit = (limitParam == null) ? DEFAULT_TRENDING_LIMIT : Integer.parseInt(limitParam);
+        }
+        catch (NumberFormatException e) {
+            limit = 0;
+        }
+
+        if (limit < 1 || limit > this.msgService.getTrendingTopSize()) {
+            ctx.status(400);
+            return;
+        }
+        ctx.status(200);
+        BodyCodec.respond(ctx, this.msgService.getTrendingMessages(limit));
+    }
+
+    /**
+     * Handler to retrieve message statistics (count, first and last post time) of a specific user.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote Always returns a JSON representation of the statistics with status code 200, with a count of 0 if the user has no messages
+     */
+    private void retrieveMessageStatsByUserHandler(Context ctx) throws JsonProcessingException {
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        ctx.status(200);
+        BodyCodec.respond(ctx, this.msgService.getMessageStatsByUser(account_id));
+    }
+
+    /**
+     * Handler to retrieve operational metrics of this node.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote Always returns a JSON object of metric groups with status code 200
+     */
+    private void metricsHandler(Context ctx) throws JsonProcessingException {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("read_coalescing", this.msgService.getReadCoalescingMetrics());
+        metrics.put("offheap_messages", this.msgService.getHotMessageMetrics());
+        metrics.put("home_timelines", this.followService.getMetrics());
+        metrics.put("trending", this.msgService.getTrendingMetrics());
+        if (this.accessLog != null) {
+            metrics.put("access_log", this.accessLog.getMetrics());
+        }
+        if (this.replication != null) {
+            metrics.put("replication", this.replication.getLagMetrics());
+        }
+        metrics.put("http_threads", getThreadPoolMetrics());
+        metrics.put("db_connections", ConnectionUtil.getConnectionGate().getMetrics());
+        Map<String, Long> journalMetrics = this.msgService.getJournalMetrics();
+        if (journalMetrics != null) {
+            metrics.put("journal", journalMetrics);
+        }
+
+        ctx.status(200);
+        BodyCodec.respond(ctx, metrics);
+    }
+
+    // thread and queue occupancy of the Jetty pool serving requests
+    private Map<String, Long> getThreadPoolMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("max", (long) this.threadPool.getMaxThreads());
+        metrics.put("busy", (long) this.threadPool.getBusyThreads());
+        metrics.put("idle", (long) this.threadPool.getIdleThreads());
+        metrics.put("queued", (long) this.threadPool.getQueueSize());
+        return metrics;
+    }
+
+    /**
+     * Handler to export the account and message tables to a binary snapshot in the snapshot directory.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws SQLException thrown if the tables couldn't be read
+     * @throws IOException thrown if the snapshot couldn't be written
+     * @apiNote Returns a JSON object of exported row counts, file size, and elapsed time with status code 200
+     * @apiNote If the name query parameter isn't a valid file name, returns status code 400 (client error)
+     * @apiNote If the storage engine isn't a single H2 database, returns status code 501 (not implemented)
+     */
+    private void exportSnapshotHandler(Context ctx) throws IOException, SQLException {
+        if (this.snapshotService == null) {
+            ctx.status(501);
+            return;
+        }
+
+        Map<String, Long> exported = this.snapshotService.exportSnapshot(ctx.queryParam("name"));
+        if (exported == null) {
+            ctx.status(400);
+            return;
+        }
+        ctx.status(200);
+        BodyCodec.respond(ctx, exported);
+    }
+
+    /**
+     * Handler to replace the account and message tables with a binary snapshot from the snapshot directory.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @throws SQLException thrown if the rows couldn't be written
+     * @apiNote Returns a JSON object of imported row counts, file size, and elapsed time with status code 200
+     * @apiNote If the name query parameter isn't a valid file name, returns status code 400 (client error)
+     * @apiNote If there is no snapshot with that name, returns status code 404 (not found)
+     * @apiNote If the file is corrupt or not a snapshot, returns status code 422 and the tables are left untouched
+     * @apiNote If the rows couldn't be written, the import is rolled back and the tables are left untouched
+     * @apiNote If the storage engine isn't a single H2 database, returns status code 501 (not implemented)
+     */
+    private void importSnapshotHandler(Context ctx) throws JsonProcessingException, SQLException {
+        if (this.snapshotService == null) {
+            ctx.status(501);
+            return;
+        }
+
+        Map<String, Long> imported;
+        try {
+            imported = this.snapshotService.importSnapshot(ctx.queryParam("name"));
+        }
+        catch (NoSuchFileException e) {
+            ctx.status(404);
+            return;
+        }
+        catch (IOException e) {
+            ctx.status(422);
+            ctx.result(e.getMessage());
+            return;
+        }
+
+        if (imported == null) {
+            ctx.status(400);
+            return;
+        }
+        // the import replaced the follow graph too, so home timelines are rebuilt
+        this.followService.invalidateAll();
+        ctx.status(200);
+        BodyCodec.respond(ctx, imported);
+    }
+
+    /**
+     * Handler to start a Java Flight Recorder recording on this node, which stops by itself after its duration.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws IOException thrown if the recording couldn't be set up on disk
+     * @apiNote The profile query parameter picks JFR's "default" (low overhead, the default) or "profile" configuration,
+     * and durationSeconds how long to record (60 by default, at most socialmedia.jfr.maxDurationSeconds)
+     * @apiNote Returns a JSON description of the recording (id, profile, state, duration, start time) with status code 200
+     * @apiNote If the profile or duration is invalid, returns status code 400 (client error)
+     * @apiNote If a recording is already running, returns status code 409 (conflict)
+     */
+    private void startRecordingHandler(Context ctx) throws IOException {
+        String profileParam = ctx.queryParam("profile");
+        String profile = (profileParam == null) ? DiagnosticsService.PROFILE_DEFAULT : profileParam;
+        long durationSeconds;
+        try {
+            String durationParam = ctx.queryParam("durationSeconds");
+            durationSeconds = (durationParam == null) ? 60 : Long.parseLong(durationParam);
+        }
+        catch (NumberFormatException e) {
+            durationSeconds = 0;
+        }
+
+        Map<String, Object> started;
+        try {
+            started = this.diagnosticsService.startRecording(profile, durationSeconds);
+        }
+        catch (IllegalStateException e) {
+            ctx.status(409);
+            return;
+        }
+        if (started == null) {
+            ctx.status(400);
+            return;
+        }
+        ctx.status(200);
+        BodyCodec.respond(ctx, started);
+    }
+
+    /**
+     * Handler to describe the current Java Flight Recorder recording.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote Returns a JSON description of the recording with status code 200, or status code 404 if there is none
+     */
+    private void retrieveRecordingHandler(Context ctx) throws JsonProcessingException {
+        Map<String, Object> recording = this.diagnosticsService.getRecording();
+        if (recording == null) {
+            ctx.status(404);
+            return;
+        }
+        ctx.status(200);
+        BodyCodec.respond(ctx, recording);
+    }
+
+    /**
+     * Handler to stop the current Java Flight Recorder recording and download it.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws IOException thrown if the recording couldn't be written out
+     * @apiNote Streams the .jfr file (open it with JDK Mission Control or the jfr tool) with status code 200; the copy
+     * on this node is deleted once it has been sent
+     * @apiNote If there is no recording, returns status code 404 (not found)
+     */
+    private void stopRecordingHandler(Context ctx) throws IOException {
+        InputStream recording = this.diagnosticsService.stopRecording();
+        if (recording == null) {
+            ctx.status(404);
+            return;
+        }
+        ctx.status(200);
+        ctx.contentType("application/octet-stream");
+        ctx.header("Content-Disposition", "attachment; filename=\"recording.jfr\"");
+        // Javalin closes the stream once it is sent, which deletes the file
+        ctx.result(recording);
+    }
+
+    /**
+     * Handler to dump every thread of this node, with the locks they wait for and who owns them.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote The optional depth query parameter caps the stack frames per thread (32 by default)
+     * @apiNote Returns a JSON object with status code 200: the threads (state, stack, lock waited for and its owner,
+     * monitors and synchronizers held), deadlocked thread ids, and the locks most threads are blocked on
+     * @apiNote If depth isn't a number between 1 and 1024, returns status code 400 (client error)
+     */
+    private void threadDumpHandler(Context ctx) throws JsonProcessingException {
+        int depth;
+        try {
+            String depthParam = ctx.queryParam("depth");
+            depth = (depthParam == null) ? DEFAULT_THREAD_DUMP_DEPTH : Integer.parseInt(depthParam);
+        }
+        catch (NumberFormatException e) {
+            depth = 0;
+        }
+        if (depth < 1 || depth > MAX_THREAD_DUMP_DEPTH) {
+            ctx.status(400);
+            return;
+        }
+        ctx.status(200);
+        BodyCodec.respond(ctx, this.diagnosticsService.dumpThreads(depth));
+    }
+
+    /**
+     * Handler to replay message events from the event journal, starting at a given offset.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote Returns a JSON object of up to limit events (default 1000, at most 10000) and the next_offset to continue from with status code 200
+     * @apiNote If from or limit isn't a number, or from isn't the offset of an event, returns status code 400 (client error)
+     * @apiNote If the event journal is disabled, returns status code 501 (not implemented)
+     */
+    private void retrieveJournalHandler(Context ctx) throws JsonProcessingException {
+        long fromOffset;
+        int limit;
+        try {
+            String from = ctx.queryParam("from");
+            String limitParam = ctx.queryParam("limit");
+            fromOffset = (from == null) ? 0 : Long.parseLong(from);
+            limit = (limitParam == null) ? DEFAULT_JOURNAL_PAGE : Integer.parseInt(limitParam);
+        }
+        catch (NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        if (limit < 1 || limit > MAX_JOURNAL_PAGE) {
+            ctx.status(400);
+            return;
+        }
+
+        List<JournalEvent> events = new ArrayList<>();
+        long nextOffset;
+        try {
+            nextOffset = this.msgService.replayJournal(fromOffset, limit, events::add);
+        }
+        catch (IllegalArgumentException e) {
+            ctx.status(400);
+            return;
+        }
+        if (nextOffset < 0) {
+            ctx.status(501);
+            return;
+        }
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("events", events);
+        page.put("next_offset", nextOffset);
+        ctx.status(200);
+        BodyCodec.respond(ctx, page);
+    }
+
+    /**
+     * Handler to report whether this node is ready for traffic, for load balancers and deploy scripts.
+     * 
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws JsonProcessingException thrown if the response couldn't be encoded
+     * @apiNote Returns a JSON object with the ready flag and the duration of each startup phase so far, with status
+     * code 200 once the pool, caches, and optional warm-up are ready, otherwise 503 (service unavailable)
+     */
+    private void readinessHandler(Context ctx) throws JsonProcessingException {
+        Map<String, Object> readiness = new LinkedHashMap<>();
+        readiness.put("ready", this.ready);
+        synchronized (this.startupPhases) {
+            readiness.put("phases", new LinkedHashMap<>(this.startupPhases));
+        }
+        ctx.status(this.ready ? 200 : 503);
+        BodyCodec.respond(ctx, readiness);
     }
-}
\ No newline at end of file
+}
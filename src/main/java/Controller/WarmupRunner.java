@@ -0,0 +1,216 @@
+package Controller;
+
+import java.io.FileReader;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.RunScript;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.Javalin;
+
+import DAO.Repositories;
+import Model.Account;
+import Model.Follow;
+import Model.Message;
+import Service.MessageService;
+import Util.AppConfig;
+import Util.ConnectionUtil;
+
+/**
+ * Exercises every public route of a scratch copy of the API over loopback HTTP, so the Jetty, Jackson, and JDBC code
+ * paths are JIT-compiled before real traffic arrives. Compiled code belongs to the shared classes, so the real
+ * controller benefits even though it never sees these requests.
+ *
+ * The scratch copy has its own in-memory H2 database, no event journal, and no rate limits. Batches of rounds (one
+ * round per thread, each walking every route) run until compilation settles: once the JIT's total compilation time
+ * grows by no more than the settle threshold over several consecutive batches, or the time limit is reached.
+ */
+public class WarmupRunner {
+    private static final int SETTLED_BATCHES = 3;
+    private static final int SEED_MESSAGES_PER_ACCOUNT = 50;
+
+    private final int threads;
+    private final int minBatches;
+    private final long settleMillis;
+    private final long maxMillis;
+
+    private final ObjectMapper om = new ObjectMapper();
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * @param threads - concurrent clients driving the scratch API
+     * @param minBatches - batches always run, even if compilation looks settled sooner
+     * @param settleMillis - compilation time per batch at or below which a batch counts as settled
+     * @param maxMillis - time after which warm-up stops whether or not compilation settled
+     */
+    public WarmupRunner(int threads, int minBatches, long settleMillis, long maxMillis) {
+        this.threads = Math.max(1, threads);
+        this.minBatches = minBatches;
+        this.settleMillis = settleMillis;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @return a runner configured with the "socialmedia.warmup.*" settings
+     */
+    public static WarmupRunner fromConfig() {
+        return new WarmupRunner(AppConfig.getInt("socialmedia.warmup.threads", 4),
+                AppConfig.getInt("socialmedia.warmup.minBatches", 20),
+                AppConfig.getLong("socialmedia.warmup.settleMillis", 20),
+                AppConfig.getLong("socialmedia.warmup.maxMillis", 60_000));
+    }
+
+    /**
+     * Runs the warm-up to completion, then tears the scratch copy down
+     * @return batches run, requests sent, elapsed time, and JIT compilation time spent during warm-up
+     * @throws Exception if the scratch database or server couldn't be set up
+     */
+    public Map<String, Long> run() throws Exception {
+        long start = System.nanoTime();
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean jitTimed = jit != null && jit.isCompilationTimeMonitoringSupported();
+        long compileStart = jitTimed ? jit.getTotalCompilationTime() : 0;
+
+        JdbcConnectionPool scratchPool = ConnectionUtil.createPool("jdbc:h2:mem:warmup" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        Javalin scratchApp = null;
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        int batches = 0;
+        try {
+            try (Connection connection = scratchPool.getConnection()) {
+                RunScript.execute(connection, new FileReader("src/main/resources/SocialMedia.sql"));
+            }
+            Repositories repositories = Repositories.h2(scratchPool);
+            SocialMediaController scratch = new SocialMediaController(repositories, new MessageService(repositories.messages(), null), true);
+            scratchApp = scratch.startAPI();
+            scratchApp.start("127.0.0.1", 0);
+            String base = "http://127.0.0.1:" + scratchApp.port();
+            HttpClient client = HttpClient.newHttpClient();
+
+            int[] accounts = seed(client, base);
+
+            int settled = 0;
+            long lastCompile = jitTimed ? jit.getTotalCompilationTime() : 0;
+            while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(maxMillis)) {
+                List<Future<?>> rounds = new ArrayList<>();
+                String authors = Arrays.stream(accounts).mapToObj(String::valueOf).collect(Collectors.joining(","));
+                for (int i = 0; i < threads; i++) {
+                    int account_id = accounts[i];
+                    // each client follows the next one (itself when there is only one, which the follow route rejects)
+                    int followee_id = accounts[(i + 1) % threads];
+                    rounds.add(clients.submit(() -> {
+                        round(client, base, account_id, followee_id, authors);
+                        return null;
+                    }));
+                }
+                for (Future<?> round : rounds) {
+                    round.get();
+                }
+                batches++;
+
+                if (jitTimed) {
+                    long compile = jit.getTotalCompilationTime();
+                    settled = (compile - lastCompile <= settleMillis) ? settled + 1 : 0;
+                    lastCompile = compile;
+                }
+                // without compilation timing, the minimum number of batches is all that can be relied on
+                if (batches >= minBatches && (!jitTimed || settled >= SETTLED_BATCHES)) {
+                    break;
+                }
+            }
+        }
+        finally {
+            clients.shutdownNow();
+            if (scratchApp != null) {
+                scratchApp.stop();
+            }
+            try (Connection connection = scratchPool.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("SHUTDOWN");
+            }
+            scratchPool.dispose();
+        }
+
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("batches", (long) batches);
+        stats.put("requests", requests.sum());
+        stats.put("millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        stats.put("compile_millis", jitTimed ? jit.getTotalCompilationTime() - compileStart : -1);
+        return stats;
+    }
+
+    // registers one account per client thread and bulk imports a small history for each, returning their ids
+    private int[] seed(HttpClient client, String base) throws Exception {
+        int[] accounts = new int[threads];
+        StringBuilder history = new StringBuilder();
+        for (int i = 0; i < threads; i++) {
+            Account account = new Account("warmup" + i, "warmup-password");
+            HttpResponse<String> registered = send(client, HttpRequest.newBuilder(URI.create(base + "/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString(om.writeValueAsString(account))));
+            accounts[i] = om.readValue(registered.body(), Account.class).getAccount_id();
+            for (int j = 0; j < SEED_MESSAGES_PER_ACCOUNT; j++) {
+                history.append(om.writeValueAsString(new Message(accounts[i], "warm-up history " + j, 1669947792L + j))).append('\n');
+            }
+        }
+        send(client, HttpRequest.newBuilder(URI.create(base + "/messages/import"))
+                .POST(HttpRequest.BodyPublishers.ofString(history.toString())));
+        return accounts;
+    }
+
+    // walks every public route once: following, creating, reading, updating, and finally deleting one message and
+    // unfollowing again
+    private void round(HttpClient client, String base, int account_id, int followee_id, String authors) throws Exception {
+        String follow = base + "/accounts/" + followee_id + "/follow";
+        String follower = om.writeValueAsString(new Follow(account_id, followee_id));
+        send(client, HttpRequest.newBuilder(URI.create(follow)).POST(HttpRequest.BodyPublishers.ofString(follower)));
+
+        HttpResponse<String> created = send(client, HttpRequest.newBuilder(URI.create(base + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(om.writeValueAsString(new Message(account_id, "warming up", 1669950000L)))));
+        int message_id = om.readValue(created.body(), Message.class).getMessage_id();
+        String message = base + "/messages/" + message_id;
+
+        send(client, HttpRequest.newBuilder(URI.create(message)).GET());
+        send(client, HttpRequest.newBuilder(URI.create(message)).header("Accept", BodyCodec.SMILE).GET());
+        send(client, HttpRequest.newBuilder(URI.create(base + "/messages?ids=" + message_id + ",1," + message_id)).GET());
+        send(client, HttpRequest.newBuilder(URI.create(base + "/messages/lookup"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" + message_id + ", 1]")));
+        send(client, HttpRequest.newBuilder(URI.create(base + "/messages/trending")).GET());
+        send(client, HttpRequest.newBuilder(URI.create(base + "/timeline?authors=" + authors)).GET());
+        send(client, HttpRequest.newBuilder(URI.create(base + "/accounts/" + account_id + "/home")).GET());
+        send(client, HttpRequest.newBuilder(URI.create(message))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"warmed up\"}")));
+        send(client, HttpRequest.newBuilder(URI.create(base + "/login"))
+                .POST(HttpRequest.BodyPublishers.ofString(om.writeValueAsString(new Account("warmup0", "warmup-password")))));
+        send(client, HttpRequest.newBuilder(URI.create(base + "/messages")).GET());
+        send(client, HttpRequest.newBuilder(URI.create(base + "/messages/changes?since=0")).GET());
+        send(client, HttpRequest.newBuilder(URI.create(base + "/messages/stats")).GET());
+        send(client, HttpRequest.newBuilder(URI.create(base + "/accounts/" + account_id + "/messages")).GET());
+        send(client, HttpRequest.newBuilder(URI.create(base + "/accounts/" + account_id + "/stats")).GET());
+        send(client, HttpRequest.newBuilder(URI.create(base + "/accounts/" + account_id + "/messages/export")).GET());
+        send(client, HttpRequest.newBuilder(URI.create(base + "/metrics")).GET());
+        send(client, HttpRequest.newBuilder(URI.create(message)).DELETE());
+        send(client, HttpRequest.newBuilder(URI.create(follow)).method("DELETE", HttpRequest.BodyPublishers.ofString(follower)));
+    }
+
+    private HttpResponse<String> send(HttpClient client, HttpRequest.Builder request) throws Exception {
+        requests.increment();
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,130 @@
+package Controller;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+
+import Util.AppConfig;
+import Util.RateLimiter;
+import Util.TooManyRequestsException;
+
+/**
+ * Before-handler that rate limits the message write endpoints (POST /messages and PATCH /messages/{message_id}).
+ *
+ * Requests are limited per client IP and, when the request body names one, per posted_by account. The account id is
+ * found with a plain scan of the raw body instead of JSON parsing, so a rejected request never costs a Jackson parse or
+ * a database round trip. PATCH bodies don't carry an account, so those are only limited per IP. Bulk imports
+ * (POST /messages/import) are streamed rather than buffered, so the request itself is only limited per IP here, and
+ * each imported message is charged to its account as the import reads it (see tryAcquireForAccount). POST
+ * /messages/lookup is a read that only takes a POST body for long id lists, so it isn't limited at all.
+ */
+public class WriteRateLimitHandler implements Handler {
+    private static final String POSTED_BY_FIELD = "\"posted_by\"";
+    private static final String BULK_IMPORT_PATH = "/messages/import";
+    private static final String LOOKUP_PATH = "/messages/lookup";
+
+    private final boolean enabled;
+    private final RateLimiter accountLimiter;
+    private final RateLimiter ipLimiter;
+
+    // reads the limits from configuration, falling back to defaults that comfortably fit a single interactive client
+    public WriteRateLimitHandler() {
+        long idleTimeoutMillis = AppConfig.getLong("socialmedia.ratelimit.idleTimeoutMillis", 60_000);
+        this.enabled = AppConfig.getBoolean("socialmedia.ratelimit.enabled", true);
+        this.accountLimiter = new RateLimiter(
+                AppConfig.getDouble("socialmedia.ratelimit.account.perSecond", 20),
+                AppConfig.getInt("socialmedia.ratelimit.account.burst", 40),
+                idleTimeoutMillis);
+        this.ipLimiter = new RateLimiter(
+                AppConfig.getDouble("socialmedia.ratelimit.ip.perSecond", 50),
+                AppConfig.getInt("socialmedia.ratelimit.ip.burst", 100),
+                idleTimeoutMillis);
+    }
+
+    /**
+     * @param ctx - automatically provided by Javalin to handle HTTP requests and create HTTP responses
+     * @throws TooManyRequestsException if either the client IP or the posting account is out of tokens
+     */
+    @Override
+    public void handle(Context ctx) {
+        HandlerType method = ctx.method();
+        if (!enabled || (method != HandlerType.POST && method != HandlerType.PATCH) || ctx.path().equals(LOOKUP_PATH)) {
+            return;
+        }
+
+        checkLimit(ipLimiter, ipKey(ctx.ip()));
+
+        if (method == HandlerType.POST && !ctx.path().equals(BULK_IMPORT_PATH)) {
+            // binary bodies (Smile, CBOR) don't spell out field names as text, so their top-level tokens are walked instead
+            String mediaType = BodyCodec.requestMediaType(ctx);
+            int posted_by = mediaType.equals(BodyCodec.JSON) ? scanPostedBy(ctx.body()) : BodyCodec.scanPostedBy(mediaType, ctx.bodyAsBytes());
+            if (posted_by >= 0) {
+                checkLimit(accountLimiter, posted_by);
+            }
+        }
+    }
+
+    /**
+     * Takes a token from an account's bucket for one message of a bulk import, the same bucket POST /messages uses
+     * @param account_id - the account posting the message
+     * @return true if the message may be written, false if the account is out of tokens
+     */
+    public boolean tryAcquireForAccount(int account_id) {
+        return !enabled || accountLimiter.tryAcquire(account_id) == 0;
+    }
+
+    private void checkLimit(RateLimiter limiter, long key) {
+        long waitNanos = limiter.tryAcquire(key);
+        if (waitNanos > 0) {
+            // rounds up so clients never retry before a token is actually available
+            throw new TooManyRequestsException((waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Packs an IP address into a long. IPv4 addresses map one-to-one, IPv6 addresses are folded into 64 bits
+     * (a collision only means two clients share a bucket). Bit 62 keeps packed IPv4 keys apart from folded IPv6 keys.
+     */
+    static long ipKey(String ip) {
+        try {
+            byte[] address = InetAddress.getByName(ip).getAddress();
+            long key = 0;
+            for (int i = 0; i < address.length; i++) {
+                key ^= (address[i] & 0xFFL) << (8 * (i % 8));
+            }
+            return address.length == 4 ? key | (1L << 62) : key & ~(1L << 62);
+        }
+        catch (UnknownHostException e) {
+            return ip.hashCode();
+        }
+    }
+
+    /**
+     * Finds the numeric value of the top-level "posted_by" field without building a JSON tree
+     * @return the posted_by value, or -1 if it isn't present as a plain non-negative integer
+     */
+    static int scanPostedBy(String body) {
+        int field = body.indexOf(POSTED_BY_FIELD);
+        if (field < 0) {
+            return -1;
+        }
+
+        int i = field + POSTED_BY_FIELD.length();
+        while (i < body.length() && (Character.isWhitespace(body.charAt(i)) || body.charAt(i) == ':')) {
+            i++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        while (i < body.length() && Character.isDigit(body.charAt(i)) && digits < 10) {
+            value = value * 10 + (body.charAt(i) - '0');
+            digits++;
+            i++;
+        }
+        return (digits == 0 || value > Integer.MAX_VALUE) ? -1 : (int) value;
+    }
+}
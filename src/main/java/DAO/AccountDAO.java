@@ -2,42 +2,110 @@ package DAO;
 
 import java.sql.*;
 
+import javax.sql.DataSource;
+
 import Model.Account;
 import Util.ConnectionUtil;
+import Util.ReplicatedDatabase;
+import Util.RequestContext;
+
+public class AccountDAO implements AccountRepository {
+    // SQLState of an insert violating the unique constraint on username
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    // writes (and reads that must be fresh) use dataSource, replica-eligible reads use readSource
+    private final DataSource dataSource;
+    private final DataSource readSource;
+    // replication stream successful writes are published to, or null when there are no replicas
+    private final ReplicatedDatabase replication;
+
+    // no args constructor to use the main database
+    public AccountDAO() {
+        this(ConnectionUtil.getDataSource());
+    }
+
+    // constructor to use any database holding the account table
+    public AccountDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.readSource = dataSource;
+        this.replication = null;
+    }
+
+    // constructor to write to a primary database and read from its replicas
+    public AccountDAO(ReplicatedDatabase replication) {
+        this.dataSource = replication.writeSource();
+        this.readSource = replication.readSource();
+        this.replication = replication;
+    }
 
-public class AccountDAO {
     /**
-     * Inserts a new user account in the Account table
+     * Inserts a new user account in the Account table. The unique constraint on username is what rejects a taken
+     * username, so there is no separate lookup first and two concurrent registrations can't both succeed.
      * @param acc - the Account object to be inserted (without an account_id)
      * @return the newly inserted Account along with its account_id on successful insertion, or null on failure
+     * (including when the username is already in use)
+     * @apiNote with replicas, the insert is published before it commits: a message of the new account can only commit
+     * (and be published) once the account row is visible, so replicas always receive the account first
      */
+    @Override
     public Account insertUser(Account acc) {
-        // attempts to establish a connection with the database
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
             // only need to define two parameters since account_id is automatically generated by the database
             String insert = "INSERT INTO account (username, password) VALUES (?, ?)";
 
-            // setting up a prepared statement with parameters from the account to be inserted
-            // the second parameter MUST be included to make automatically generated keys retrievable later
-            PreparedStatement ps = connection.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS);
-            ps.setString(1, acc.getUsername());
-            ps.setString(2, acc.getPassword());
+            // committed explicitly, so the insert can be published while the new row is still invisible to others
+            connection.setAutoCommit(false);
+            Integer publishedAccountID = null;
+            try {
+                // setting up a prepared statement with parameters from the account to be inserted
+                // the second parameter MUST be included to make automatically generated keys retrievable later
+                PreparedStatement ps = connection.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS);
+                RequestContext.applyDeadline(ps);
+                ps.setString(1, acc.getUsername());
+                ps.setString(2, acc.getPassword());
+
+                // executing the insert statement
+                ps.executeUpdate();
+
+                // extracting the account_id generated on successful insert
+                ResultSet accountIDResultSet = ps.getGeneratedKeys();
+                if (!accountIDResultSet.next()) {
+                    connection.rollback();
+                    return null;
+                }
+                int generatedAccountID = accountIDResultSet.getInt("account_id");
 
-            // executing the insert statement
-            ps.executeUpdate();
+                // replicas receive the generated id explicitly so they never generate their own
+                if (this.replication != null) {
+                    this.replication.publish("INSERT INTO account (account_id, username, password) VALUES (?, ?, ?)",
+                            generatedAccountID, acc.getUsername(), acc.getPassword());
+                    publishedAccountID = generatedAccountID;
+                }
+                connection.commit();
 
-            // extracting the account_id generated on successful insert
-            ResultSet accountIDResultSet = ps.getGeneratedKeys();
-            if (accountIDResultSet.next()) {
-                // returns a fully populated Account object 
-                int generatedAccountID = accountIDResultSet.getInt("account_id");
+                // returns a fully populated Account object
                 return new Account(generatedAccountID, acc.getUsername(), acc.getPassword());
             }
+            catch(SQLException e) {
+                connection.rollback();
+                // the replicas already received the insert, so they are told to undo it
+                if (publishedAccountID != null) {
+                    this.replication.publish("DELETE FROM account WHERE account_id = ?", publishedAccountID);
+                }
+                throw e;
+            }
+            finally {
+                // hands the connection back to the pool in its default mode
+                connection.setAutoCommit(true);
+            }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            // a taken username is an expected outcome rather than an error worth logging
+            if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                System.out.println(e.getMessage());
+            }
         }
 
         return null;
@@ -48,16 +116,16 @@ public class AccountDAO {
      * @param acc - Account object containing login credentials (username and password) to be searched for
      * @return A fully populated Account object (has its account_id) if matching credentials were found. otherwise returns null
      */
+    @Override
     public Account getUserByLogin(Account acc) {
-        // attempts to establish a connection with the database
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
             // searches the Account table for an entry matching the provided login credentials (username and password)
             String query = "SELECT * FROM account WHERE username = ? AND password = ?";
 
             // setting up a prepared statement and its parameters
             PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
             ps.setString(1, acc.getUsername());
             ps.setString(2, acc.getPassword());
 
@@ -70,6 +138,7 @@ public class AccountDAO {
             }
         }
         catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
             System.out.println(e.getMessage());
         }
 
@@ -81,19 +150,19 @@ public class AccountDAO {
      * @param username - the username to be checked
      * @return true if a matching username was found, false if it wasn't
      */
+    @Override
     public boolean isExistingUsername(String username) {
         // defaults usernameExists to false before executing the query
         boolean usernameExists = false;
 
-        // attempts to establish a connection with the database
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.readSource.getConnection()) {
             // searches the database for a matching username. (this will only ever return 0 or 1 rows since the 'username' col is unique)
             String query = "SELECT * FROM account WHERE username = ?";
 
             // setting up a prepared statement along with its parameter
             PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
             ps.setString(1, username);
 
             // if a result set was generated, a matching username was found. in that case, set usernameExists to true
@@ -103,6 +172,7 @@ public class AccountDAO {
             }
         }
         catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
             System.out.println(e.getMessage());
         }
 
@@ -0,0 +1,28 @@
+package DAO;
+
+import Model.Account;
+
+/**
+ * Storage operations on accounts needed by the account service.
+ * AccountDAO implements them over JDBC (H2), InMemoryAccountDAO over in-process data structures.
+ */
+public interface AccountRepository {
+    /**
+     * @param acc - the Account object to be inserted (without an account_id)
+     * @return the newly inserted Account along with its account_id on successful insertion, or null on failure
+     * @apiNote must return null when the username is already in use, atomically with the insert
+     */
+    Account insertUser(Account acc);
+
+    /**
+     * @param acc - Account object containing login credentials (username and password) to be searched for
+     * @return A fully populated Account object (has its account_id) if matching credentials were found. otherwise returns null
+     */
+    Account getUserByLogin(Account acc);
+
+    /**
+     * @param username - the username to be checked
+     * @return true if a matching username was found, false if it wasn't
+     */
+    boolean isExistingUsername(String username);
+}
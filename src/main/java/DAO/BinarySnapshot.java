@@ -0,0 +1,541 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.sql.DataSource;
+
+import Util.ConnectionUtil;
+
+/**
+ * A compact, versioned binary snapshot of the account and message tables, used to rebuild a node without replaying SQL.
+ *
+ * Layout (big-endian):
+ *   file header:  int magic, int version, long created epoch millis
+ *   block:        int table tag, int row count, int payload bytes, int CRC32 of the payload, then the payload
+ *   end block:    tag 0 with a payload of long account count, long message count
+ *
+ * A payload stores up to BLOCK_ROWS rows column by column: fixed-width columns are packed arrays, and string columns
+ * are an int array of UTF-8 byte lengths followed by the concatenated bytes. Blocks are written through a FileChannel
+ * and read back through MappedByteBuffers, one block at a time, so neither direction materializes the whole dataset.
+ * Message blocks carry each message's row version since format version 2; version 1 files are still imported, with
+ * every message at version 1.
+ *
+ * Import first verifies every block checksum and the end block's row counts. It then loads the rows into staging tables
+ * that have no secondary indexes or foreign keys, committing block by block, because H2 maintaining every index row by
+ * row (and holding one transaction open over millions of rows) dominated the load. The indexes and constraints are
+ * built once the rows are in, and the identity columns restarted after the highest imported id. Only then are the
+ * staging tables swapped in for the live ones, with the database in exclusive mode so other connections pause instead
+ * of seeing the tables missing. Readers keep seeing the old rows until the swap, and a failure before it only drops the
+ * staging tables. The swap is DDL, which H2 doesn't run in a transaction: its single DROP of the live tables either
+ * happens for all of them or not at all, but a failure of the renames right after it would leave the imported rows
+ * only in the staging tables (snapshot_account and snapshot_message).
+ */
+public class BinarySnapshot {
+    private static final int MAGIC = 0x534D4253;
+    private static final int VERSION = 2;
+    // oldest format version that can still be imported
+    private static final int MIN_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 16;
+    private static final int BLOCK_HEADER_BYTES = 16;
+    private static final int BLOCK_ROWS = 65_536;
+
+    private static final int END_TAG = 0;
+    private static final int ACCOUNT_TAG = 1;
+    private static final int MESSAGE_TAG = 2;
+
+    // SQLState of a message whose posted_by has no matching account (foreign key violation)
+    private static final String FOREIGN_KEY_VIOLATION = "23506";
+
+    // same columns as the account and message tables of Schema.sql, but only a primary key until the load is done
+    private static final String STAGING_ACCOUNT = "snapshot_account";
+    private static final String STAGING_MESSAGE = "snapshot_message";
+    private static final String CREATE_STAGING_ACCOUNT = "CREATE TABLE " + STAGING_ACCOUNT + " ("
+            + "account_id INT PRIMARY KEY AUTO_INCREMENT, username VARCHAR(255), password VARCHAR(255))";
+    private static final String CREATE_STAGING_MESSAGE = "CREATE TABLE " + STAGING_MESSAGE + " ("
+            + "message_id INT PRIMARY KEY AUTO_INCREMENT, posted_by INT, message_text VARCHAR(255), "
+            + "time_posted_epoch BIGINT, version INT NOT NULL DEFAULT 1)";
+
+    /**
+     * Writes both tables to a snapshot file. The file is written next to the target and then atomically moved over it,
+     * so a crash mid-export never leaves a torn snapshot behind.
+     * @param dataSource - database holding the account and message tables
+     * @param path - the snapshot file to write
+     * @return the exported row counts, file size, and elapsed time
+     * @throws IOException if the file couldn't be written
+     * @throws SQLException if the tables couldn't be read
+     */
+    public static Map<String, Long> exportTo(DataSource dataSource, Path path) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Path absolute = path.toAbsolutePath();
+        if (absolute.getParent() != null) {
+            Files.createDirectories(absolute.getParent());
+        }
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+
+        long accountCount;
+        long messageCount;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             Connection connection = dataSource.getConnection()) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+            writeFully(channel, header);
+
+            // both tables are read in one transaction so they come from the same point in time
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try {
+                BlockWriter writer = new BlockWriter(channel);
+                accountCount = exportAccounts(connection, writer);
+                messageCount = exportMessages(connection, writer);
+                connection.commit();
+            }
+            finally {
+                connection.setAutoCommit(autoCommit);
+            }
+
+            ByteBuffer end = ByteBuffer.allocate(16);
+            end.putLong(accountCount).putLong(messageCount).flip();
+            writeBlock(channel, END_TAG, 0, end);
+            channel.force(true);
+        }
+
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return result(accountCount, messageCount, Files.size(absolute), start);
+    }
+
+    /**
+     * Replaces every row of both tables with the contents of a snapshot file (follows are cleared, as they aren't in it)
+     * @param dataSource - database holding the account and message tables
+     * @param path - the snapshot file to read
+     * @return the imported row counts, file size, and elapsed time
+     * @throws IOException if the file couldn't be read, isn't a snapshot, or fails its checksums (nothing is changed)
+     * @throws SQLException if the rows couldn't be written, e.g. a message of an account that isn't in the snapshot
+     * (nothing is changed, unless the final swap of the tables itself failed)
+     * @apiNote imports run one at a time, since they share the staging tables
+     */
+    public static synchronized Map<String, Long> importFrom(DataSource dataSource, Path path) throws IOException, SQLException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // a first pass over the mapped file rejects corrupt or truncated snapshots before any row is touched
+            long[] counts = verify(channel, path);
+            int formatVersion = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_BYTES).getInt(Integer.BYTES);
+
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                boolean autoCommit = connection.getAutoCommit();
+                try {
+                    // left over by an import that died part way
+                    dropStagingTables(statement);
+                    statement.execute(CREATE_STAGING_ACCOUNT);
+                    statement.execute(CREATE_STAGING_MESSAGE);
+
+                    connection.setAutoCommit(false);
+                    int[] maxIds = loadBlocks(connection, channel, formatVersion);
+                    connection.setAutoCommit(true);
+
+                    indexStagingTables(statement, maxIds[0], maxIds[1]);
+                }
+                catch (Exception e) {
+                    // the live tables are untouched, so only the staged rows are thrown away
+                    connection.setAutoCommit(true);
+                    dropStagingTables(statement);
+                    throw e;
+                }
+                finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+                swapInStagingTables(statement);
+            }
+            return result(counts[0], counts[1], channel.size(), start);
+        }
+    }
+
+    private static long exportAccounts(Connection connection, BlockWriter writer) throws SQLException, IOException {
+        int[] ids = new int[BLOCK_ROWS];
+        byte[][] usernames = new byte[BLOCK_ROWS][];
+        byte[][] passwords = new byte[BLOCK_ROWS][];
+        long total = 0;
+        int rows = 0;
+
+        try (Statement statement = connection.createStatement()) {
+            statement.setFetchSize(BLOCK_ROWS);
+            ResultSet rs = statement.executeQuery("SELECT account_id, username, password FROM account ORDER BY account_id");
+            while (rs.next()) {
+                ids[rows] = rs.getInt("account_id");
+                usernames[rows] = utf8(rs.getString("username"));
+                passwords[rows] = utf8(rs.getString("password"));
+                if (++rows == BLOCK_ROWS) {
+                    writer.writeAccounts(rows, ids, usernames, passwords);
+                    total += rows;
+                    rows = 0;
+                }
+            }
+        }
+        if (rows > 0) {
+            writer.writeAccounts(rows, ids, usernames, passwords);
+            total += rows;
+        }
+        return total;
+    }
+
+    private static long exportMessages(Connection connection, BlockWriter writer) throws SQLException, IOException {
+        int[] ids = new int[BLOCK_ROWS];
+        int[] postedBy = new int[BLOCK_ROWS];
+        long[] timePosted = new long[BLOCK_ROWS];
+        int[] versions = new int[BLOCK_ROWS];
+        byte[][] texts = new byte[BLOCK_ROWS][];
+        long total = 0;
+        int rows = 0;
+
+        try (Statement statement = connection.createStatement()) {
+            statement.setFetchSize(BLOCK_ROWS);
+            ResultSet rs = statement.executeQuery("SELECT message_id, posted_by, message_text, time_posted_epoch, version FROM message ORDER BY message_id");
+            while (rs.next()) {
+                ids[rows] = rs.getInt("message_id");
+                postedBy[rows] = rs.getInt("posted_by");
+                texts[rows] = utf8(rs.getString("message_text"));
+                timePosted[rows] = rs.getLong("time_posted_epoch");
+                versions[rows] = rs.getInt("version");
+                if (++rows == BLOCK_ROWS) {
+                    writer.writeMessages(rows, ids, postedBy, timePosted, versions, texts);
+                    total += rows;
+                    rows = 0;
+                }
+            }
+        }
+        if (rows > 0) {
+            writer.writeMessages(rows, ids, postedBy, timePosted, versions, texts);
+            total += rows;
+        }
+        return total;
+    }
+
+    // checks the file header, every block checksum, and the end block's counts; returns {accounts, messages}
+    private static long[] verify(FileChannel channel, Path path) throws IOException {
+        if (channel.size() < FILE_HEADER_BYTES) {
+            throw new IOException("not a supported snapshot: " + path);
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_BYTES);
+        int magic = header.getInt();
+        int formatVersion = header.getInt();
+        if (magic != MAGIC || formatVersion < MIN_VERSION || formatVersion > VERSION) {
+            throw new IOException("not a supported snapshot: " + path);
+        }
+
+        long[] counted = new long[3];
+        long position = FILE_HEADER_BYTES;
+        while (true) {
+            Block block = readBlock(channel, position, path);
+            CRC32 crc = new CRC32();
+            crc.update(block.payload.duplicate());
+            if ((int) crc.getValue() != block.crc) {
+                throw new IOException("checksum mismatch in block at byte " + position + " of " + path);
+            }
+
+            if (block.tag == END_TAG) {
+                long accounts = block.payload.getLong(0);
+                long messages = block.payload.getLong(8);
+                if (accounts != counted[ACCOUNT_TAG] || messages != counted[MESSAGE_TAG]) {
+                    throw new IOException("row counts don't match the end block of " + path);
+                }
+                return new long[] { accounts, messages };
+            }
+            if (block.tag != ACCOUNT_TAG && block.tag != MESSAGE_TAG) {
+                throw new IOException("unknown block type " + block.tag + " in " + path);
+            }
+            counted[block.tag] += block.rows;
+            position = block.next;
+        }
+    }
+
+    // inserts every block into the staging tables, committing after each one so no transaction grows with the
+    // snapshot. the foreign key isn't there yet, so every message's author is checked against the imported accounts
+    // here instead. returns {highest account id, highest message id}
+    private static int[] loadBlocks(Connection connection, FileChannel channel, int formatVersion) throws IOException, SQLException {
+        int maxAccountId = 0;
+        int maxMessageId = 0;
+        BitSet accountIds = new BitSet();
+        BitSet authorIds = new BitSet();
+        try (PreparedStatement insertAccount = connection.prepareStatement("INSERT INTO " + STAGING_ACCOUNT + " (account_id, username, password) VALUES (?, ?, ?)");
+             PreparedStatement insertMessage = connection.prepareStatement("INSERT INTO " + STAGING_MESSAGE + " (message_id, posted_by, message_text, time_posted_epoch, version) VALUES (?, ?, ?, ?, ?)")) {
+            long position = FILE_HEADER_BYTES;
+            while (true) {
+                Block block = readBlock(channel, position, null);
+                if (block.tag == END_TAG) {
+                    break;
+                }
+
+                ByteBuffer payload = block.payload;
+                int rows = block.rows;
+                if (block.tag == ACCOUNT_TAG) {
+                    int[] ids = readInts(payload, rows);
+                    String[] usernames = readStrings(payload, rows);
+                    String[] passwords = readStrings(payload, rows);
+                    for (int i = 0; i < rows; i++) {
+                        insertAccount.setInt(1, ids[i]);
+                        insertAccount.setString(2, usernames[i]);
+                        insertAccount.setString(3, passwords[i]);
+                        insertAccount.addBatch();
+                        maxAccountId = Math.max(maxAccountId, ids[i]);
+                        if (ids[i] >= 0) {
+                            accountIds.set(ids[i]);
+                        }
+                    }
+                    insertAccount.executeBatch();
+                }
+                else {
+                    int[] ids = readInts(payload, rows);
+                    int[] postedBy = readInts(payload, rows);
+                    long[] timePosted = readLongs(payload, rows);
+                    // version 1 snapshots predate message versions
+                    int[] versions = (formatVersion >= 2) ? readInts(payload, rows) : null;
+                    String[] texts = readStrings(payload, rows);
+                    for (int i = 0; i < rows; i++) {
+                        if (postedBy[i] < 0) {
+                            throw orphanMessage(ids[i], postedBy[i]);
+                        }
+                        insertMessage.setInt(1, ids[i]);
+                        insertMessage.setInt(2, postedBy[i]);
+                        insertMessage.setString(3, texts[i]);
+                        insertMessage.setLong(4, timePosted[i]);
+                        insertMessage.setInt(5, (versions == null) ? 1 : versions[i]);
+                        insertMessage.addBatch();
+                        maxMessageId = Math.max(maxMessageId, ids[i]);
+                        authorIds.set(postedBy[i]);
+                    }
+                    insertMessage.executeBatch();
+                }
+                connection.commit();
+                position = block.next;
+            }
+        }
+
+        authorIds.andNot(accountIds);
+        if (!authorIds.isEmpty()) {
+            throw orphanMessage(-1, authorIds.nextSetBit(0));
+        }
+        return new int[] { maxAccountId, maxMessageId };
+    }
+
+    private static void dropStagingTables(Statement statement) throws SQLException {
+        statement.execute("DROP TABLE IF EXISTS " + STAGING_MESSAGE + ", " + STAGING_ACCOUNT);
+    }
+
+    private static SQLException orphanMessage(int message_id, int posted_by) {
+        String message = (message_id < 0) ? "a message" : "message " + message_id;
+        return new SQLException(message + " is posted by account " + posted_by + ", which isn't in the snapshot", FOREIGN_KEY_VIOLATION);
+    }
+
+    // builds the indexes and constraints of Schema.sql on the loaded staging tables, each in one pass over the rows,
+    // and moves both identity columns past the imported ids (explicit ids don't advance them)
+    private static void indexStagingTables(Statement statement, int maxAccountId, int maxMessageId) throws SQLException {
+        statement.execute("ALTER TABLE " + STAGING_ACCOUNT + " ADD UNIQUE (username)");
+        statement.execute("CREATE INDEX " + STAGING_MESSAGE + "_author_time ON " + STAGING_MESSAGE + " (posted_by, time_posted_epoch DESC, message_id DESC)");
+        statement.execute("CREATE INDEX " + STAGING_MESSAGE + "_time ON " + STAGING_MESSAGE + " (time_posted_epoch DESC, message_id DESC)");
+        // every author was checked while loading
+        statement.execute("ALTER TABLE " + STAGING_MESSAGE + " ADD FOREIGN KEY (posted_by) REFERENCES " + STAGING_ACCOUNT + " (account_id) NOCHECK");
+        statement.execute("ALTER TABLE " + STAGING_ACCOUNT + " ALTER COLUMN account_id RESTART WITH " + (maxAccountId + 1));
+        statement.execute("ALTER TABLE " + STAGING_MESSAGE + " ALTER COLUMN message_id RESTART WITH " + (maxMessageId + 1));
+    }
+
+    // replaces the live tables with the staging ones. follows aren't part of a snapshot, and would otherwise point at
+    // accounts that were replaced, so the follow table is dropped along with them and recreated empty from Schema.sql
+    private static void swapInStagingTables(Statement statement) throws SQLException, IOException {
+        // other connections pause at their next statement until exclusive mode ends, rather than find no tables
+        statement.execute("SET EXCLUSIVE 1");
+        try {
+            // one statement, so it fails as a whole (e.g. a lock timeout) without dropping any of the three
+            try {
+                statement.execute("DROP TABLE follow, message, account");
+            }
+            catch (SQLException e) {
+                dropStagingTables(statement);
+                throw e;
+            }
+            // from here on the staging tables hold the only copy of the data, so a failure leaves them in place
+            statement.execute("ALTER TABLE " + STAGING_ACCOUNT + " RENAME TO account");
+            statement.execute("ALTER TABLE " + STAGING_MESSAGE + " RENAME TO message");
+            statement.execute("ALTER INDEX " + STAGING_MESSAGE + "_author_time RENAME TO message_author_time");
+            statement.execute("ALTER INDEX " + STAGING_MESSAGE + "_time RENAME TO message_time");
+            ConnectionUtil.createMissingSchema(statement.getConnection());
+        }
+        finally {
+            statement.execute("SET EXCLUSIVE 0");
+        }
+    }
+
+    // maps the block header at a position, then its payload
+    private static Block readBlock(FileChannel channel, long position, Path path) throws IOException {
+        if (position + BLOCK_HEADER_BYTES > channel.size()) {
+            throw new IOException("snapshot is truncated" + (path == null ? "" : ": " + path));
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, position, BLOCK_HEADER_BYTES);
+        Block block = new Block();
+        block.tag = header.getInt();
+        block.rows = header.getInt();
+        int payloadBytes = header.getInt();
+        block.crc = header.getInt();
+
+        long payloadStart = position + BLOCK_HEADER_BYTES;
+        if (payloadBytes < 0 || payloadStart + payloadBytes > channel.size()) {
+            throw new IOException("snapshot is truncated" + (path == null ? "" : ": " + path));
+        }
+        block.payload = channel.map(FileChannel.MapMode.READ_ONLY, payloadStart, payloadBytes).order(ByteOrder.BIG_ENDIAN);
+        block.next = payloadStart + payloadBytes;
+        return block;
+    }
+
+    private static void writeBlock(FileChannel channel, int tag, int rows, ByteBuffer payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+        header.putInt(tag).putInt(rows).putInt(payload.remaining()).putInt((int) crc.getValue()).flip();
+        writeFully(channel, header);
+        writeFully(channel, payload);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer payload, int rows) {
+        int[] values = new int[rows];
+        payload.asIntBuffer().get(values);
+        payload.position(payload.position() + rows * Integer.BYTES);
+        return values;
+    }
+
+    private static long[] readLongs(ByteBuffer payload, int rows) {
+        long[] values = new long[rows];
+        payload.asLongBuffer().get(values);
+        payload.position(payload.position() + rows * Long.BYTES);
+        return values;
+    }
+
+    private static String[] readStrings(ByteBuffer payload, int rows) {
+        int[] lengths = readInts(payload, rows);
+        String[] values = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            if (lengths[i] < 0) {
+                continue;
+            }
+            byte[] bytes = new byte[lengths[i]];
+            payload.get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    // SQL NULLs are stored with a length of -1
+    private static byte[] utf8(String value) {
+        return (value == null) ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Long> result(long accounts, long messages, long bytes, long startNanos) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("accounts", accounts);
+        result.put("messages", messages);
+        result.put("bytes", bytes);
+        result.put("millis", (System.nanoTime() - startNanos) / 1_000_000);
+        return result;
+    }
+
+    /**
+     * One block mapped from a snapshot file
+     */
+    private static class Block {
+        int tag;
+        int rows;
+        int crc;
+        ByteBuffer payload;
+        long next;
+    }
+
+    /**
+     * Encodes column arrays into block payloads, reusing one direct buffer that grows to the largest block
+     */
+    private static class BlockWriter {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+        BlockWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeAccounts(int rows, int[] ids, byte[][] usernames, byte[][] passwords) throws IOException {
+            ByteBuffer payload = reset(rows * Integer.BYTES + stringBytes(usernames, rows) + stringBytes(passwords, rows));
+            payload.asIntBuffer().put(ids, 0, rows);
+            payload.position(rows * Integer.BYTES);
+            putStrings(payload, usernames, rows);
+            putStrings(payload, passwords, rows);
+            payload.flip();
+            writeBlock(channel, ACCOUNT_TAG, rows, payload);
+        }
+
+        void writeMessages(int rows, int[] ids, int[] postedBy, long[] timePosted, int[] versions, byte[][] texts) throws IOException {
+            ByteBuffer payload = reset(rows * (3 * Integer.BYTES + Long.BYTES) + stringBytes(texts, rows));
+            payload.asIntBuffer().put(ids, 0, rows);
+            payload.position(rows * Integer.BYTES);
+            payload.asIntBuffer().put(postedBy, 0, rows);
+            payload.position(2 * rows * Integer.BYTES);
+            payload.asLongBuffer().put(timePosted, 0, rows);
+            payload.position(2 * rows * Integer.BYTES + rows * Long.BYTES);
+            payload.asIntBuffer().put(versions, 0, rows);
+            payload.position(3 * rows * Integer.BYTES + rows * Long.BYTES);
+            putStrings(payload, texts, rows);
+            payload.flip();
+            writeBlock(channel, MESSAGE_TAG, rows, payload);
+        }
+
+        private ByteBuffer reset(int size) {
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() << 1));
+            }
+            buffer.clear();
+            buffer.limit(size);
+            return buffer;
+        }
+
+        private static int stringBytes(byte[][] values, int rows) {
+            int total = rows * Integer.BYTES;
+            for (int i = 0; i < rows; i++) {
+                if (values[i] != null) {
+                    total += values[i].length;
+                }
+            }
+            return total;
+        }
+
+        private static void putStrings(ByteBuffer payload, byte[][] values, int rows) {
+            for (int i = 0; i < rows; i++) {
+                payload.putInt(values[i] == null ? -1 : values[i].length);
+            }
+            for (int i = 0; i < rows; i++) {
+                if (values[i] != null) {
+                    payload.put(values[i]);
+                }
+            }
+        }
+    }
+}
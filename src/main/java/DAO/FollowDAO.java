@@ -0,0 +1,170 @@
+package DAO;
+
+import java.sql.*;
+import java.util.Arrays;
+
+import javax.sql.DataSource;
+
+import Util.ConnectionUtil;
+import Util.RequestContext;
+
+/**
+ * The follow table lives in the main database next to the account table it references. Its reads always go to that
+ * database (never to a replica), because the home timeline fan-out reads followers outside of any request, where
+ * there is no client whose writes a replica could be made to wait for.
+ */
+public class FollowDAO implements FollowRepository {
+    // SQLState of a follow whose follower or followee has no matching account (foreign key violation)
+    private static final String FOREIGN_KEY_VIOLATION = "23506";
+
+    private final DataSource dataSource;
+
+    // no args constructor to use the main database
+    public FollowDAO() {
+        this(ConnectionUtil.getDataSource());
+    }
+
+    // constructor to use any database holding the follow and account tables
+    public FollowDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Adds a follow in one statement. MERGE makes following twice a no-op, and the foreign keys reject unknown
+     * accounts, so there is no lookup first.
+     * @param follower_id - ID of the account that follows
+     * @param followee_id - ID of the account being followed
+     * @return true if the follower now follows the followee (including when it already did), false on failure
+     * (including when either account doesn't exist)
+     */
+    @Override
+    public boolean follow(int follower_id, int followee_id) {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
+            String merge = "MERGE INTO follow (follower_id, followee_id) KEY (follower_id, followee_id) VALUES (?, ?)";
+
+            // setting up a prepared statement with both account ids
+            PreparedStatement ps = connection.prepareStatement(merge);
+            RequestContext.applyDeadline(ps);
+            ps.setInt(1, follower_id);
+            ps.setInt(2, followee_id);
+
+            ps.executeUpdate();
+            return true;
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            // an unknown account is an expected outcome rather than an error worth logging
+            if (!FOREIGN_KEY_VIOLATION.equals(e.getSQLState())) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes a follow from the Follow table
+     * @param follower_id - ID of the account that follows
+     * @param followee_id - ID of the account being followed
+     * @return true if a follow was removed, false if there was none (or on failure)
+     */
+    @Override
+    public boolean unfollow(int follower_id, int followee_id) {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
+            String delete = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?";
+
+            // setting up a prepared statement with both account ids
+            PreparedStatement ps = connection.prepareStatement(delete);
+            RequestContext.applyDeadline(ps);
+            ps.setInt(1, follower_id);
+            ps.setInt(2, followee_id);
+
+            // the primary key means at most one row is deleted
+            return ps.executeUpdate() > 0;
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            System.out.println(e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * Retrieves the followers of an account, read off the (followee_id, follower_id) index
+     * @param followee_id - ID of the account whose followers will be retrieved
+     * @return IDs of every account following it, in ascending order (empty if none)
+     */
+    @Override
+    public int[] getFollowers(int followee_id) {
+        return queryIds("SELECT follower_id FROM follow WHERE followee_id = ? ORDER BY follower_id", followee_id);
+    }
+
+    /**
+     * Retrieves the accounts an account follows, read off the primary key
+     * @param follower_id - ID of the account whose followees will be retrieved
+     * @return IDs of every account it follows, in ascending order (empty if none)
+     */
+    @Override
+    public int[] getFollowees(int follower_id) {
+        return queryIds("SELECT followee_id FROM follow WHERE follower_id = ? ORDER BY followee_id", follower_id);
+    }
+
+    /**
+     * Counts the followers of an account without reading them
+     * @param followee_id - ID of the account whose followers will be counted
+     * @return the number of accounts following it (0 on failure)
+     */
+    @Override
+    public int countFollowers(int followee_id) {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
+            String query = "SELECT COUNT(*) FROM follow WHERE followee_id = ?";
+
+            // setting up a prepared statement
+            PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
+            ps.setInt(1, followee_id);
+
+            // an aggregate without GROUP BY always returns exactly one row
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            System.out.println(e.getMessage());
+        }
+
+        return 0;
+    }
+
+    // runs a query with one int parameter and collects its single int column into a primitive array
+    private int[] queryIds(String query, int param) {
+        int[] ids = new int[16];
+        int count = 0;
+
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
+            PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
+            ps.setInt(1, param);
+
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count << 1);
+                }
+                ids[count++] = rs.getInt(1);
+            }
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            System.out.println(e.getMessage());
+        }
+
+        return Arrays.copyOf(ids, count);
+    }
+}
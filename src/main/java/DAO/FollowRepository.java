@@ -0,0 +1,40 @@
+package DAO;
+
+/**
+ * Storage operations on the follow graph needed by the follow service.
+ * FollowDAO implements them over JDBC (H2), InMemoryFollowDAO over in-process data structures.
+ */
+public interface FollowRepository {
+    /**
+     * @param follower_id - ID of the account that follows
+     * @param followee_id - ID of the account being followed
+     * @return true if the follower now follows the followee (including when it already did), false on failure
+     * @apiNote must return false when either account doesn't exist
+     */
+    boolean follow(int follower_id, int followee_id);
+
+    /**
+     * @param follower_id - ID of the account that follows
+     * @param followee_id - ID of the account being followed
+     * @return true if a follow was removed, false if there was none (or on failure)
+     */
+    boolean unfollow(int follower_id, int followee_id);
+
+    /**
+     * @param followee_id - ID of the account whose followers will be retrieved
+     * @return IDs of every account following it, in ascending order (empty if none)
+     */
+    int[] getFollowers(int followee_id);
+
+    /**
+     * @param follower_id - ID of the account whose followees will be retrieved
+     * @return IDs of every account it follows, in ascending order (empty if none)
+     */
+    int[] getFollowees(int follower_id);
+
+    /**
+     * @param followee_id - ID of the account whose followers will be counted
+     * @return the number of accounts following it
+     */
+    int countFollowers(int followee_id);
+}
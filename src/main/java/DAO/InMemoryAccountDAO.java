@@ -0,0 +1,67 @@
+package DAO;
+
+import Model.Account;
+
+/**
+ * Account storage backed by an InMemoryDatabase instead of JDBC.
+ * Usernames are looked up through a hash index, so registration and login checks are O(1).
+ */
+public class InMemoryAccountDAO implements AccountRepository {
+    private final InMemoryDatabase db;
+
+    /**
+     * @param db - the in-memory data shared with InMemoryMessageDAO
+     */
+    public InMemoryAccountDAO(InMemoryDatabase db) {
+        this.db = db;
+    }
+
+    @Override
+    public Account insertUser(Account acc) {
+        db.lock.writeLock().lock();
+        try {
+            // mirrors the unique constraint on username
+            if (db.accountsByUsername.containsKey(acc.getUsername())) {
+                return null;
+            }
+
+            Account inserted = new Account(++db.lastAccountId, acc.getUsername(), acc.getPassword());
+            db.accounts.put(inserted.getAccount_id(), inserted);
+            db.accountsByUsername.put(inserted.getUsername(), inserted);
+            return copyOf(inserted);
+        }
+        finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Account getUserByLogin(Account acc) {
+        db.lock.readLock().lock();
+        try {
+            Account match = db.accountsByUsername.get(acc.getUsername());
+            if (match != null && match.getPassword().equals(acc.getPassword())) {
+                return copyOf(match);
+            }
+            return null;
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isExistingUsername(String username) {
+        db.lock.readLock().lock();
+        try {
+            return db.accountsByUsername.containsKey(username);
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    private static Account copyOf(Account acc) {
+        return new Account(acc.getAccount_id(), acc.getUsername(), acc.getPassword());
+    }
+}
@@ -0,0 +1,336 @@
+package DAO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Account;
+import Model.Message;
+import Util.IntIntHashMap;
+import Util.IntObjectHashMap;
+
+/**
+ * The data held by the in-memory storage engine, shared by InMemoryAccountDAO, InMemoryMessageDAO, and InMemoryFollowDAO.
+ *
+ * Messages and accounts live in primitive-keyed hash maps (int id -> object), each author's message ids are kept in a
+ * sorted int array, and usernames are indexed in a hash map. Follows are kept twice, as sorted int arrays of followees
+ * per follower and of followers per followee. Everything is guarded by one read/write lock, so reads run
+ * in parallel and never touch a database. Durability comes from snapshots: the whole dataset is written to a temporary
+ * file and atomically moved over the previous snapshot, either on demand or periodically.
+ */
+public class InMemoryDatabase {
+    // identifies snapshot files and their layout version
+    private static final int SNAPSHOT_MAGIC = 0x534D4442;
+    private static final int SNAPSHOT_VERSION = 3;
+    // snapshots written before messages had versions, loaded with every message at version 1
+    private static final int UNVERSIONED_SNAPSHOT_VERSION = 1;
+    // snapshots written before follows existed, loaded with no follows
+    private static final int FOLLOWLESS_SNAPSHOT_VERSION = 2;
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    final IntObjectHashMap<Message> messages = new IntObjectHashMap<>(1024);
+    // row version of every stored message, mirroring the version column of the message table
+    final IntIntHashMap messageVersions = new IntIntHashMap(1024);
+    final IntObjectHashMap<Account> accounts = new IntObjectHashMap<>(256);
+    final IntObjectHashMap<IdList> messageIdsByAuthor = new IntObjectHashMap<>(256);
+    final Map<String, Account> accountsByUsername = new HashMap<>();
+    final IntObjectHashMap<IdList> followeesByFollower = new IntObjectHashMap<>(256);
+    final IntObjectHashMap<IdList> followersByFollowee = new IntObjectHashMap<>(256);
+
+    // ids are handed out like auto_increment columns: never reused, even after deletion
+    int lastMessageId = 0;
+    int lastAccountId = 0;
+
+    private Path snapshotPath;
+    private ScheduledExecutorService snapshotScheduler;
+
+    /**
+     * Creates an empty database that is not persisted
+     */
+    public InMemoryDatabase() {
+    }
+
+    /**
+     * Opens a database persisted to a snapshot file, loading the file if it already exists
+     * @param snapshotPath - where snapshots are read from and written to
+     * @return the loaded (or empty) database
+     * @throws IOException if an existing snapshot couldn't be read
+     */
+    public static InMemoryDatabase open(Path snapshotPath) throws IOException {
+        InMemoryDatabase database = new InMemoryDatabase();
+        database.snapshotPath = snapshotPath;
+        if (Files.exists(snapshotPath)) {
+            database.loadSnapshot(snapshotPath);
+        }
+        return database;
+    }
+
+    /**
+     * Writes a snapshot every interval on a background thread, and once more when the JVM shuts down
+     * @param intervalMillis - time between snapshots
+     */
+    public synchronized void startPeriodicSnapshots(long intervalMillis) {
+        if (snapshotPath == null || snapshotScheduler != null) {
+            return;
+        }
+
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "in-memory-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::snapshotQuietly, "in-memory-snapshot-on-exit"));
+    }
+
+    /**
+     * Writes the whole dataset to the snapshot file this database was opened with
+     * @throws IOException if the snapshot couldn't be written
+     */
+    public void snapshot() throws IOException {
+        if (snapshotPath != null) {
+            saveSnapshot(snapshotPath);
+        }
+    }
+
+    /**
+     * Writes the whole dataset to a file. The file is written next to the target and then atomically moved over it, so
+     * a crash mid-write never leaves a torn snapshot behind.
+     * @param path - the snapshot file to write
+     * @throws IOException if the snapshot couldn't be written
+     */
+    public void saveSnapshot(Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        if (absolute.getParent() != null) {
+            Files.createDirectories(absolute.getParent());
+        }
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+
+        // the read lock gives a consistent view while still letting other reads proceed
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(lastAccountId);
+            out.writeInt(lastMessageId);
+
+            out.writeInt(accounts.size());
+            IOException[] failure = new IOException[1];
+            accounts.forEachValue(acc -> {
+                try {
+                    out.writeInt(acc.getAccount_id());
+                    out.writeUTF(acc.getUsername());
+                    out.writeUTF(acc.getPassword());
+                }
+                catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+
+            out.writeInt(messages.size());
+            messages.forEachValue(msg -> {
+                try {
+                    out.writeInt(msg.getMessage_id());
+                    out.writeInt(msg.getPosted_by());
+                    out.writeUTF(msg.getMessage_text());
+                    out.writeLong(msg.getTime_posted_epoch());
+                    out.writeInt(messageVersions.get(msg.getMessage_id()));
+                }
+                catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+
+            // each follow is written once, from the follower's side
+            int[] followerIds = new int[followeesByFollower.size()];
+            int[] next = new int[1];
+            followeesByFollower.forEachKey(follower_id -> followerIds[next[0]++] = follower_id);
+            int followCount = 0;
+            for (int follower_id : followerIds) {
+                followCount += followeesByFollower.get(follower_id).size();
+            }
+            out.writeInt(followCount);
+            for (int follower_id : followerIds) {
+                IdList followees = followeesByFollower.get(follower_id);
+                for (int i = 0; i < followees.size(); i++) {
+                    out.writeInt(follower_id);
+                    out.writeInt(followees.get(i));
+                }
+            }
+
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the whole dataset with the contents of a snapshot file
+     * @param path - the snapshot file to read
+     * @throws IOException if the file couldn't be read or isn't a snapshot
+     */
+    public void loadSnapshot(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            int snapshotVersion = (in.readInt() == SNAPSHOT_MAGIC) ? in.readInt() : -1;
+            if (snapshotVersion != SNAPSHOT_VERSION && snapshotVersion != FOLLOWLESS_SNAPSHOT_VERSION
+                    && snapshotVersion != UNVERSIONED_SNAPSHOT_VERSION) {
+                throw new IOException("not a supported snapshot: " + path);
+            }
+
+            lock.writeLock().lock();
+            try {
+                messages.clear();
+                messageVersions.clear();
+                accounts.clear();
+                messageIdsByAuthor.clear();
+                accountsByUsername.clear();
+                followeesByFollower.clear();
+                followersByFollowee.clear();
+
+                lastAccountId = in.readInt();
+                lastMessageId = in.readInt();
+
+                int accountCount = in.readInt();
+                for (int i = 0; i < accountCount; i++) {
+                    Account acc = new Account(in.readInt(), in.readUTF(), in.readUTF());
+                    accounts.put(acc.getAccount_id(), acc);
+                    accountsByUsername.put(acc.getUsername(), acc);
+                }
+
+                int messageCount = in.readInt();
+                for (int i = 0; i < messageCount; i++) {
+                    Message msg = new Message(in.readInt(), in.readInt(), in.readUTF(), in.readLong());
+                    messages.put(msg.getMessage_id(), msg);
+                    messageVersions.put(msg.getMessage_id(), (snapshotVersion == UNVERSIONED_SNAPSHOT_VERSION) ? 1 : in.readInt());
+                    idsOf(msg.getPosted_by()).add(msg.getMessage_id());
+                }
+
+                int followCount = (snapshotVersion == SNAPSHOT_VERSION) ? in.readInt() : 0;
+                for (int i = 0; i < followCount; i++) {
+                    addFollow(in.readInt(), in.readInt());
+                }
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // must be called while holding the write lock
+    IdList idsOf(int account_id) {
+        IdList ids = messageIdsByAuthor.get(account_id);
+        if (ids == null) {
+            ids = new IdList();
+            messageIdsByAuthor.put(account_id, ids);
+        }
+        return ids;
+    }
+
+    // must be called while holding the write lock. returns false if the follow already existed
+    boolean addFollow(int follower_id, int followee_id) {
+        IdList followees = listOf(followeesByFollower, follower_id);
+        if (followees.contains(followee_id)) {
+            return false;
+        }
+        followees.add(followee_id);
+        listOf(followersByFollowee, followee_id).add(follower_id);
+        return true;
+    }
+
+    // must be called while holding the write lock. returns false if there was no such follow
+    boolean removeFollow(int follower_id, int followee_id) {
+        IdList followees = followeesByFollower.get(follower_id);
+        if (followees == null || !followees.remove(followee_id)) {
+            return false;
+        }
+        followersByFollowee.get(followee_id).remove(follower_id);
+        return true;
+    }
+
+    private static IdList listOf(IntObjectHashMap<IdList> lists, int key) {
+        IdList ids = lists.get(key);
+        if (ids == null) {
+            ids = new IdList();
+            lists.put(key, ids);
+        }
+        return ids;
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        }
+        catch (IOException e) {
+            System.out.println("in-memory snapshot failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A growable, sorted array of ids (message ids of an author, or account ids of a follow list). New message ids are
+     * always larger than existing ones, so adding them is an append; anything else falls back to a sorted insert.
+     */
+    static class IdList {
+        private int[] ids = new int[8];
+        private int size = 0;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+            }
+            int position = (size == 0 || ids[size - 1] < id) ? size : -(Arrays.binarySearch(ids, 0, size, id) + 1);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        int size() {
+            return size;
+        }
+
+        // position of the first id >= the given one (size if there is none)
+        int indexOfFirstAtLeast(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            return (position >= 0) ? position : -(position + 1);
+        }
+
+        int get(int index) {
+            return ids[index];
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package DAO;
+
+import Util.IntObjectHashMap;
+
+/**
+ * Follow storage backed by an InMemoryDatabase instead of JDBC.
+ */
+public class InMemoryFollowDAO implements FollowRepository {
+    private static final int[] NONE = new int[0];
+
+    private final InMemoryDatabase db;
+
+    /**
+     * @param db - the in-memory data shared with InMemoryAccountDAO and InMemoryMessageDAO
+     */
+    public InMemoryFollowDAO(InMemoryDatabase db) {
+        this.db = db;
+    }
+
+    @Override
+    public boolean follow(int follower_id, int followee_id) {
+        db.lock.writeLock().lock();
+        try {
+            // mirrors the foreign keys of the follow table
+            if (db.accounts.get(follower_id) == null || db.accounts.get(followee_id) == null) {
+                return false;
+            }
+            db.addFollow(follower_id, followee_id);
+            return true;
+        }
+        finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean unfollow(int follower_id, int followee_id) {
+        db.lock.writeLock().lock();
+        try {
+            return db.removeFollow(follower_id, followee_id);
+        }
+        finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getFollowers(int followee_id) {
+        return copyOf(db.followersByFollowee, followee_id);
+    }
+
+    @Override
+    public int[] getFollowees(int follower_id) {
+        return copyOf(db.followeesByFollower, follower_id);
+    }
+
+    @Override
+    public int countFollowers(int followee_id) {
+        db.lock.readLock().lock();
+        try {
+            InMemoryDatabase.IdList followers = db.followersByFollowee.get(followee_id);
+            return (followers == null) ? 0 : followers.size();
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    private int[] copyOf(IntObjectHashMap<InMemoryDatabase.IdList> lists, int key) {
+        db.lock.readLock().lock();
+        try {
+            InMemoryDatabase.IdList ids = lists.get(key);
+            return (ids == null) ? NONE : ids.toArray();
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+    }
+}
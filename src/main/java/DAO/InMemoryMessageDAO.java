@@ -0,0 +1,377 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import Model.Message;
+import Model.MessageStats;
+import Model.VersionedMessage;
+
+/**
+ * Message storage backed by an InMemoryDatabase instead of JDBC.
+ * Returned messages are copies, so callers can't change stored state without going through this class.
+ */
+public class InMemoryMessageDAO implements MessageRepository {
+    // number of messages copied per read lock acquisition while streaming
+    private static final int STREAM_CHUNK_SIZE = 1_024;
+    // same order as MessageDAO.getLatestMessagesByUser: newest post time first, ties broken by the higher message_id
+    private static final Comparator<Message> NEWEST_FIRST = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id).reversed();
+
+    private final InMemoryDatabase db;
+
+    /**
+     * @param db - the in-memory data shared with InMemoryAccountDAO
+     */
+    public InMemoryMessageDAO(InMemoryDatabase db) {
+        this.db = db;
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        List<Message> messages = new ArrayList<>();
+
+        db.lock.readLock().lock();
+        try {
+            db.messages.forEachValue(msg -> messages.add(copyOf(msg)));
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+
+        // hash order is arbitrary, so results are sorted to match the JDBC implementation
+        messages.sort(Comparator.comparingInt(Message::getMessage_id));
+        return messages;
+    }
+
+    @Override
+    public List<Message> getAllMessagesByUser(int account_id) {
+        db.lock.readLock().lock();
+        try {
+            // the author's id list is already sorted, so no sort is needed
+            InMemoryDatabase.IdList ids = db.messageIdsByAuthor.get(account_id);
+            if (ids == null) {
+                return new ArrayList<>();
+            }
+
+            List<Message> messages = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                messages.add(copyOf(db.messages.get(ids.get(i))));
+            }
+            return messages;
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Author id lists are ordered by message_id rather than by post time, so the newest messages are picked with a heap
+     * bounded by the limit (O(n log limit) for n messages by the author), not by sorting them all.
+     */
+    @Override
+    public List<Message> getLatestMessagesByUser(int account_id, int limit) {
+        // the oldest of the newest messages found so far sits on top, ready to be replaced
+        PriorityQueue<Message> newest = new PriorityQueue<>(Math.max(1, Math.min(limit, 1_024)), NEWEST_FIRST.reversed());
+        db.lock.readLock().lock();
+        try {
+            InMemoryDatabase.IdList ids = db.messageIdsByAuthor.get(account_id);
+            for (int i = 0; ids != null && limit > 0 && i < ids.size(); i++) {
+                Message msg = db.messages.get(ids.get(i));
+                if (newest.size() < limit) {
+                    newest.add(msg);
+                }
+                else if (NEWEST_FIRST.compare(msg, newest.peek()) < 0) {
+                    newest.poll();
+                    newest.add(msg);
+                }
+            }
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+
+        List<Message> messages = new ArrayList<>(newest.size());
+        for (Message msg : newest) {
+            messages.add(copyOf(msg));
+        }
+        messages.sort(NEWEST_FIRST);
+        return messages;
+    }
+
+    /**
+     * Streams messages in chunks: each chunk is copied under the read lock and passed to the sink after it is released,
+     * so a slow consumer never holds writers back.
+     */
+    @Override
+    public long forEachVersionedMessage(Integer account_id, Long fromEpoch, Long toEpoch, Consumer<VersionedMessage> sink) {
+        List<VersionedMessage> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+        long count = 0;
+        // the smallest message_id not yet examined (ids only grow, so a chunk boundary is stable across writes)
+        int nextId = 1;
+
+        while (true) {
+            chunk.clear();
+            db.lock.readLock().lock();
+            try {
+                if (account_id != null) {
+                    // the author's ids are sorted, so the chunk continues right after the last id examined
+                    InMemoryDatabase.IdList ids = db.messageIdsByAuthor.get(account_id);
+                    int i = (ids == null) ? 0 : ids.indexOfFirstAtLeast(nextId);
+                    for (; ids != null && i < ids.size() && chunk.size() < STREAM_CHUNK_SIZE; i++) {
+                        addIfInWindow(chunk, db.messages.get(ids.get(i)), fromEpoch, toEpoch);
+                        nextId = ids.get(i) + 1;
+                    }
+                    if (ids == null || i == ids.size()) {
+                        nextId = Integer.MAX_VALUE;
+                    }
+                }
+                else {
+                    // every id up to lastMessageId is probed, skipping deleted ones
+                    int end = (int) Math.min((long) nextId + STREAM_CHUNK_SIZE, (long) db.lastMessageId + 1);
+                    for (int id = nextId; id < end; id++) {
+                        addIfInWindow(chunk, db.messages.get(id), fromEpoch, toEpoch);
+                    }
+                    nextId = (end > db.lastMessageId) ? Integer.MAX_VALUE : end;
+                }
+            }
+            finally {
+                db.lock.readLock().unlock();
+            }
+
+            for (VersionedMessage found : chunk) {
+                sink.accept(found);
+            }
+            count += chunk.size();
+            if (nextId == Integer.MAX_VALUE) {
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Messages aren't indexed by post time, so every message is examined once, keeping the newest in a heap bounded by
+     * the limit like getLatestMessagesByUser does.
+     */
+    @Override
+    public List<VersionedMessage> getLatestVersionedMessages(long fromEpoch, int limit) {
+        PriorityQueue<Message> newest = new PriorityQueue<>(Math.max(1, Math.min(limit, 1_024)), NEWEST_FIRST.reversed());
+        List<VersionedMessage> messages = new ArrayList<>();
+        db.lock.readLock().lock();
+        try {
+            db.messages.forEachValue(msg -> {
+                if (limit <= 0 || msg.getTime_posted_epoch() < fromEpoch) {
+                    return;
+                }
+                if (newest.size() < limit) {
+                    newest.add(msg);
+                }
+                else if (NEWEST_FIRST.compare(msg, newest.peek()) < 0) {
+                    newest.poll();
+                    newest.add(msg);
+                }
+            });
+            // versions are read under the same lock, so each matches its message
+            for (Message msg : newest) {
+                messages.add(new VersionedMessage(copyOf(msg), db.messageVersions.get(msg.getMessage_id())));
+            }
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+
+        messages.sort(Comparator.comparing(VersionedMessage::getMessage, NEWEST_FIRST));
+        return messages;
+    }
+
+    @Override
+    public VersionedMessage getVersionedMessageById(int message_id) {
+        db.lock.readLock().lock();
+        try {
+            Message msg = db.messages.get(message_id);
+            return (msg == null) ? null : new VersionedMessage(copyOf(msg), db.messageVersions.get(message_id));
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<Integer, VersionedMessage> getVersionedMessagesByIds(Collection<Integer> message_ids) {
+        Map<Integer, VersionedMessage> found = new HashMap<>();
+        // one read lock for the whole batch, so the messages are consistent with each other
+        db.lock.readLock().lock();
+        try {
+            for (int message_id : message_ids) {
+                Message msg = db.messages.get(message_id);
+                if (msg != null) {
+                    found.put(message_id, new VersionedMessage(copyOf(msg), db.messageVersions.get(message_id)));
+                }
+            }
+            return found;
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message insertMessage(Message msg) {
+        db.lock.writeLock().lock();
+        try {
+            // mirrors the foreign key on posted_by
+            if (db.accounts.get(msg.getPosted_by()) == null) {
+                return null;
+            }
+
+            Message inserted = new Message(++db.lastMessageId, msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch());
+            db.messages.put(inserted.getMessage_id(), inserted);
+            db.messageVersions.put(inserted.getMessage_id(), 1);
+            db.idsOf(inserted.getPosted_by()).add(inserted.getMessage_id());
+            return copyOf(inserted);
+        }
+        finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> insertMessages(List<Message> msgs) {
+        db.lock.writeLock().lock();
+        try {
+            // checks every author first so a failing batch leaves nothing behind
+            for (Message msg : msgs) {
+                if (db.accounts.get(msg.getPosted_by()) == null) {
+                    return null;
+                }
+            }
+
+            List<Message> inserted = new ArrayList<>(msgs.size());
+            for (Message msg : msgs) {
+                Message stored = new Message(++db.lastMessageId, msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch());
+                db.messages.put(stored.getMessage_id(), stored);
+                db.messageVersions.put(stored.getMessage_id(), 1);
+                db.idsOf(stored.getPosted_by()).add(stored.getMessage_id());
+                inserted.add(copyOf(stored));
+            }
+            return inserted;
+        }
+        finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public VersionedMessage deleteMessage(int message_id, int expectedVersion) {
+        db.lock.writeLock().lock();
+        try {
+            // the version is checked under the same write lock as the delete, like the conditional DELETE of MessageDAO
+            int version = db.messageVersions.get(message_id);
+            if (db.messages.get(message_id) == null || (expectedVersion != ANY_VERSION && expectedVersion != version)) {
+                return null;
+            }
+            Message removed = db.messages.remove(message_id);
+            db.messageVersions.remove(message_id);
+            db.idsOf(removed.getPosted_by()).remove(message_id);
+            return new VersionedMessage(removed, version);
+        }
+        finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public VersionedMessage updateMessage(int message_id, String updatedText, int expectedVersion) {
+        db.lock.writeLock().lock();
+        try {
+            Message msg = db.messages.get(message_id);
+            int version = db.messageVersions.get(message_id);
+            if (msg == null || (expectedVersion != ANY_VERSION && expectedVersion != version)) {
+                return null;
+            }
+            // stored messages are never handed out, so replacing the field in place is safe
+            msg.setMessage_text(updatedText);
+            db.messageVersions.put(message_id, version + 1);
+            return new VersionedMessage(copyOf(msg), version + 1);
+        }
+        finally {
+            db.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isValidUser(int account_id) {
+        db.lock.readLock().lock();
+        try {
+            return db.accounts.get(account_id) != null;
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MessageStats> getMessageStatsPerUser() {
+        List<MessageStats> statsPerUser = new ArrayList<>();
+
+        db.lock.readLock().lock();
+        try {
+            db.accounts.forEachValue(acc -> {
+                MessageStats stats = statsOf(acc.getAccount_id());
+                if (stats.getMessage_count() > 0) {
+                    statsPerUser.add(stats);
+                }
+            });
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+
+        return statsPerUser;
+    }
+
+    @Override
+    public MessageStats getMessageStatsByUser(int account_id) {
+        db.lock.readLock().lock();
+        try {
+            return statsOf(account_id);
+        }
+        finally {
+            db.lock.readLock().unlock();
+        }
+    }
+
+    // must be called while holding the lock
+    private MessageStats statsOf(int account_id) {
+        InMemoryDatabase.IdList ids = db.messageIdsByAuthor.get(account_id);
+        if (ids == null || ids.size() == 0) {
+            return new MessageStats(account_id, 0, null, null);
+        }
+
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < ids.size(); i++) {
+            long time = db.messages.get(ids.get(i)).getTime_posted_epoch();
+            first = Math.min(first, time);
+            last = Math.max(last, time);
+        }
+        return new MessageStats(account_id, ids.size(), first, last);
+    }
+
+    private static Message copyOf(Message msg) {
+        return new Message(msg.getMessage_id(), msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch());
+    }
+
+    // must hold the read lock
+    private void addIfInWindow(List<VersionedMessage> chunk, Message msg, Long fromEpoch, Long toEpoch) {
+        if (msg != null && (fromEpoch == null || msg.getTime_posted_epoch() >= fromEpoch) && (toEpoch == null || msg.getTime_posted_epoch() < toEpoch)) {
+            chunk.add(new VersionedMessage(copyOf(msg), db.messageVersions.get(msg.getMessage_id())));
+        }
+    }
+}
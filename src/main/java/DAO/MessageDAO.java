@@ -2,29 +2,78 @@ package DAO;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
 
 import Model.Message;
+import Model.MessageStats;
+import Model.VersionedMessage;
+import Util.AppConfig;
 import Util.ConnectionUtil;
+import Util.ReplicatedDatabase;
+import Util.RequestContext;
+
+public class MessageDAO implements MessageRepository {
+    // rows fetched per cursor round trip when streaming, trading a little memory for fewer round trips
+    private static final int EXPORT_FETCH_SIZE = AppConfig.getInt("socialmedia.export.fetchSize", 1_000);
+    // SQLState of an insert whose posted_by has no matching account (foreign key violation)
+    private static final String FOREIGN_KEY_VIOLATION = "23506";
+    // most ids looked up by one IN query, a power of two (see getVersionedMessagesByIds); longer lists are split
+    private static final int MAX_IN_LIST = 512;
+
+    // writes (and reads that must be fresh) use dataSource, replica-eligible reads use readSource. lookups by id and the
+    // newest messages read replicas too: the rows they return carry their version, and the service only caches a row
+    // that is no older than the writes it has recorded for that message (a replica lagging further behind than the
+    // change log retains could still hand it an old row of a message no longer in the cache)
+    private final DataSource dataSource;
+    private final DataSource readSource;
+    // replication stream successful writes are published to, or null when there are no replicas
+    private final ReplicatedDatabase replication;
+
+    // no args constructor to use the main database
+    public MessageDAO() {
+        this(ConnectionUtil.getDataSource());
+    }
+
+    // constructor to use any database holding the message table (e.g. a single shard)
+    public MessageDAO(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.readSource = dataSource;
+        this.replication = null;
+    }
+
+    // constructor to write to a primary database and read from its replicas
+    public MessageDAO(ReplicatedDatabase replication) {
+        this.dataSource = replication.writeSource();
+        this.readSource = replication.readSource();
+        this.replication = replication;
+    }
 
-public class MessageDAO {
     /**
      * Retrieves all messages from the Message table
      * @return A list containing all messages from the Message table as fully populated Message objects
      */
+    @Override
     public List<Message> getAllMessages() {
         // creates an empty list to store all messages from the Message table
         List<Message> messages = new ArrayList<>();
 
-        // attempts to establish a connection with the database
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
-            // no parameters needed to retrieve all messages
-            String query = "SELECT * FROM message";
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.readSource.getConnection()) {
+            // no parameters needed to retrieve all messages. ordering by the primary key is free and keeps results stable
+            String query = "SELECT * FROM message ORDER BY message_id";
 
             // setting up a prepared statement. this could also be a regular statement since there aren't any parameters
             PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
 
             // executing the query and processing the results
             ResultSet rs = ps.executeQuery();
@@ -35,6 +84,7 @@ public class MessageDAO {
             }
         }
         catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
             System.out.println(e.getMessage());
         }
 
@@ -46,19 +96,19 @@ public class MessageDAO {
      * @param account_id - ID of user account whose messages will be retrieved 
      * @return A list containing all messages from a specific user within the Message table as fully populated Message objects, or an empty list if none existed
      */
+    @Override
     public List<Message> getAllMessagesByUser(int account_id) {
         // creates an empty list to store all messages
         List<Message> messages = new ArrayList<>();
 
-        // attempts to establish a connection with the database
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.readSource.getConnection()) {
             // the posted_by column refers to a user's account_id
-            String query = "SELECT * FROM message WHERE posted_by = ?";
+            String query = "SELECT * FROM message WHERE posted_by = ? ORDER BY message_id";
 
             // setting up a prepared statement
             PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
             ps.setInt(1, account_id);
 
             // executing the query and processing the results
@@ -70,6 +120,151 @@ public class MessageDAO {
             }
         }
         catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            System.out.println(e.getMessage());
+        }
+
+        return messages;
+    }
+
+    /**
+     * Retrieves the newest messages of a specific user within the Message table
+     * @param account_id - ID of user account whose messages will be retrieved
+     * @param limit - maximum number of messages
+     * @return The user's newest messages, newest first (by time_posted_epoch, then by message_id), or an empty list if none existed
+     */
+    @Override
+    public List<Message> getLatestMessagesByUser(int account_id, int limit) {
+        // creates an empty list to store the messages
+        List<Message> messages = new ArrayList<>();
+
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.readSource.getConnection()) {
+            // the message_author_time index holds each author's messages in exactly this order, so H2 reads the first
+            // rows off the index and stops at the limit instead of sorting the author's whole history. posted_by is
+            // constant here, but must be named for H2 to see that the ORDER BY matches the index
+            String query = "SELECT * FROM message WHERE posted_by = ? "
+                    + "ORDER BY posted_by, time_posted_epoch DESC, message_id DESC LIMIT ?";
+
+            // setting up a prepared statement
+            PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
+            ps.setInt(1, account_id);
+            ps.setInt(2, limit);
+
+            // executing the query and processing the results
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                // creates a fully populated Message using column indices and adds it to the list
+                messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+            }
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            System.out.println(e.getMessage());
+        }
+
+        return messages;
+    }
+
+    /**
+     * Streams messages from the Message table through a forward-only, read-only cursor instead of building a list
+     * @param account_id - only messages posted by this account, or null for every account
+     * @param fromEpoch - only messages posted at or after this time, or null
+     * @param toEpoch - only messages posted before this time, or null
+     * @param sink - receives each message along with its version
+     * @return the number of messages passed to the sink, or -1 if reading failed part way (some may have been passed)
+     */
+    @Override
+    public long forEachVersionedMessage(Integer account_id, Long fromEpoch, Long toEpoch, Consumer<VersionedMessage> sink) {
+        // builds the WHERE clause from whichever filters were given
+        StringBuilder query = new StringBuilder("SELECT * FROM message WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+        if (account_id != null) {
+            query.append(" AND posted_by = ?");
+            params.add(account_id);
+        }
+        if (fromEpoch != null) {
+            query.append(" AND time_posted_epoch >= ?");
+            params.add(fromEpoch);
+        }
+        if (toEpoch != null) {
+            query.append(" AND time_posted_epoch < ?");
+            params.add(toEpoch);
+        }
+        query.append(" ORDER BY message_id");
+
+        long count = 0;
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.readSource.getConnection()) {
+            // lazy execution makes H2 produce rows as the cursor advances instead of materializing the whole result
+            try (Statement session = connection.createStatement()) {
+                session.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            try {
+                PreparedStatement ps = connection.prepareStatement(query.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                RequestContext.applyDeadline(ps);
+                ps.setFetchSize(EXPORT_FETCH_SIZE);
+                for (int i = 0; i < params.size(); i++) {
+                    ps.setObject(i + 1, params.get(i));
+                }
+
+                // hands each row to the sink as soon as it is read
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    sink.accept(versionedMessageOf(rs));
+                    count++;
+                }
+                rs.close();
+            }
+            finally {
+                // hands the connection back to the pool with the default session settings
+                try (Statement session = connection.createStatement()) {
+                    session.execute("SET LAZY_QUERY_EXECUTION FALSE");
+                }
+            }
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            System.out.println(e.getMessage());
+            return -1;
+        }
+
+        return count;
+    }
+
+    /**
+     * Retrieves the newest messages from the Message table, across every author
+     * @param fromEpoch - only messages posted at or after this time
+     * @param limit - maximum number of messages
+     * @return the newest messages posted since fromEpoch along with their versions, newest first (by time_posted_epoch, then by message_id)
+     */
+    @Override
+    public List<VersionedMessage> getLatestVersionedMessages(long fromEpoch, int limit) {
+        // creates an empty list to store the messages
+        List<VersionedMessage> messages = new ArrayList<>();
+
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.readSource.getConnection()) {
+            // the message_time index holds messages in exactly this order, so H2 reads the first rows off the index and
+            // stops at the limit instead of reading and sorting the whole window
+            String query = "SELECT * FROM message WHERE time_posted_epoch >= ? "
+                    + "ORDER BY time_posted_epoch DESC, message_id DESC LIMIT ?";
+
+            // setting up a prepared statement
+            PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
+            ps.setLong(1, fromEpoch);
+            ps.setInt(2, limit);
+
+            // executing the query and processing the results
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                messages.add(versionedMessageOf(rs));
+            }
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
             System.out.println(e.getMessage());
         }
 
@@ -79,28 +274,29 @@ public class MessageDAO {
     /**
      * Retrieves a message from the Message table by its ID
      * @param message_id - ID of the message to be searched for
-     * @return A fully populated Message object if found, otherwise null
+     * @return A fully populated Message object along with its version if found, otherwise null
      */
-    public Message getMessageById(int message_id) {
-        // attempts to establish a connection with the database
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
+    @Override
+    public VersionedMessage getVersionedMessageById(int message_id) {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.readSource.getConnection()) {
             // will either return 0 or 1 row since message_id is a primary key
             String query = "SELECT * FROM message WHERE message_id = ?";
 
             // setting up a prepared statement and its parameter
             PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
             ps.setInt(1, message_id);
 
             // executing the query and processing the results
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
-                // returns a fully populated Message using column indices
-                return new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4));
+                // returns a fully populated Message and its version using column indices
+                return versionedMessageOf(rs);
             }
         }
         catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
             System.out.println(e.getMessage());
         }
 
@@ -108,105 +304,289 @@ public class MessageDAO {
     }
 
     /**
-     * Inserts a new message into the Message table
+     * Retrieves several messages from the Message table with one IN query per chunk of MAX_IN_LIST ids.
+     * The placeholder count is rounded up to a power of two (the padding repeats the last id), so lists of any length
+     * share a handful of statement shapes and H2 can reuse their cached plans.
+     * @param message_ids - IDs of the messages to be searched for (duplicates are allowed)
+     * @return each message found along with its version, keyed by its ID; on failure, what was read before it
+     */
+    @Override
+    public Map<Integer, VersionedMessage> getVersionedMessagesByIds(Collection<Integer> message_ids) {
+        Map<Integer, VersionedMessage> found = new HashMap<>();
+        // duplicates would only waste placeholders
+        List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(message_ids));
+        if (distinct.isEmpty()) {
+            return found;
+        }
+
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.readSource.getConnection()) {
+            for (int start = 0; start < distinct.size(); start += MAX_IN_LIST) {
+                List<Integer> chunk = distinct.subList(start, Math.min(start + MAX_IN_LIST, distinct.size()));
+                int placeholders = Math.min(MAX_IN_LIST, Integer.highestOneBit(chunk.size() * 2 - 1));
+
+                StringBuilder query = new StringBuilder("SELECT * FROM message WHERE message_id IN (?");
+                for (int i = 1; i < placeholders; i++) {
+                    query.append(", ?");
+                }
+                query.append(')');
+
+                // setting up a prepared statement with the chunk's ids, padded with its last one
+                PreparedStatement ps = connection.prepareStatement(query.toString());
+                RequestContext.applyDeadline(ps);
+                for (int i = 0; i < placeholders; i++) {
+                    ps.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+
+                // executing the query and processing the results
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    VersionedMessage msg = versionedMessageOf(rs);
+                    found.put(msg.getMessage().getMessage_id(), msg);
+                }
+            }
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            System.out.println(e.getMessage());
+        }
+
+        return found;
+    }
+
+    /**
+     * Inserts a new message into the Message table. The foreign key on posted_by is what rejects an unknown author, so
+     * there is no separate lookup first.
      * @param msg - the Message object to be inserted (without a message_id)
      * @return the newly inserted Message along with its message_id on successful insertion, or null on failure
+     * (including when posted_by doesn't refer to an existing account)
      */
+    @Override
     public Message insertMessage(Message msg) {
-        // attempts to establish a connection with the database
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
             // message_id is automatically generated by the database, so only the remaining parameters are specified
             String insert = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
 
-            // setting up a prepared statement with parameters from the account to be inserted
-            // the second parameter in prepareStatement method MUST be included to make automatically generated keys retrievable later
-            PreparedStatement ps = connection.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS);
-            ps.setInt(1, msg.getPosted_by());
-            ps.setString(2, msg.getMessage_text());
-            ps.setLong(3, msg.getTime_posted_epoch());
+            // committed explicitly, so the row lock can be taken once the id is known but before anyone else can see it
+            connection.setAutoCommit(false);
+            ReentrantLock rowLock = null;
+            try {
+                // setting up a prepared statement with parameters from the account to be inserted
+                // the second parameter in prepareStatement method MUST be included to make automatically generated keys retrievable later
+                PreparedStatement ps = connection.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS);
+                RequestContext.applyDeadline(ps);
+                ps.setInt(1, msg.getPosted_by());
+                ps.setString(2, msg.getMessage_text());
+                ps.setLong(3, msg.getTime_posted_epoch());
+
+                // executing the insert statement
+                ps.executeUpdate();
+
+                // extracting the message_id generated on successful insert
+                ResultSet messageIDResultSet = ps.getGeneratedKeys();
+                if (!messageIDResultSet.next()) {
+                    connection.rollback();
+                    return null;
+                }
+                int generatedMessageID = messageIDResultSet.getInt("message_id");
 
-            // executing the insert statement
-            ps.executeUpdate();
+                // an update or delete of the new id (which waits for this lock) then reaches the replicas after the insert
+                rowLock = lockRow(generatedMessageID);
+                connection.commit();
 
-            // extracting the message_id generated on successful insert
-            ResultSet messageIDResultSet = ps.getGeneratedKeys();
-            if (messageIDResultSet.next()) {
-                // returns a fully populated Message object 
-                int generatedMessageID = messageIDResultSet.getInt("message_id");
+                // replicas receive the generated id explicitly so they never generate their own
+                replicate("INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)",
+                        generatedMessageID, msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch());
+
+                // returns a fully populated Message object
                 return new Message(generatedMessageID, msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch());
             }
+            catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            finally {
+                unlockRow(rowLock);
+                // hands the connection back to the pool in its default mode
+                connection.setAutoCommit(true);
+            }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            // an unknown author is an expected outcome rather than an error worth logging
+            if (!FOREIGN_KEY_VIOLATION.equals(e.getSQLState())) {
+                System.out.println(e.getMessage());
+            }
         }
 
         return null;
     }
 
     /**
-     * Deletes a message from the Message table
-     * @param message_id - ID of message to be deleted
-     * @return true on successful deletion, otherwise false
+     * Inserts several messages into the Message table as one JDBC batch in one transaction
+     * @param msgs - the Message objects to be inserted (without message_ids)
+     * @return the newly inserted Messages along with their message_ids in the same order, or null if the batch failed (nothing is inserted)
      */
-    public boolean deleteMessage(int message_id) {
-        // attempts to establish a connection with the database
-        Connection connection = ConnectionUtil.getConnection();
+    @Override
+    public List<Message> insertMessages(List<Message> msgs) {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
+            String insert = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
 
-        try {
-            // query to delete a particular message from the table
-            String delete = "DELETE FROM message WHERE message_id = ?";
+            // the whole batch commits at once, or not at all
+            connection.setAutoCommit(false);
+            List<ReentrantLock> rowLocks = new ArrayList<>();
+            try {
+                // queues every insert on one prepared statement so the batch is sent in a single round trip
+                PreparedStatement ps = connection.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS);
+                RequestContext.applyDeadline(ps);
+                for (Message msg : msgs) {
+                    ps.setInt(1, msg.getPosted_by());
+                    ps.setString(2, msg.getMessage_text());
+                    ps.setLong(3, msg.getTime_posted_epoch());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+
+                // generated message_ids come back in the order the inserts were queued
+                List<Message> inserted = new ArrayList<>(msgs.size());
+                ResultSet messageIDResultSet = ps.getGeneratedKeys();
+                for (Message msg : msgs) {
+                    if (!messageIDResultSet.next()) {
+                        connection.rollback();
+                        return null;
+                    }
+                    inserted.add(new Message(messageIDResultSet.getInt("message_id"), msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch()));
+                }
+
+                // like insertMessage: the new rows are locked before they become visible, and published before unlocking
+                List<Integer> insertedIds = new ArrayList<>(inserted.size());
+                for (Message msg : inserted) {
+                    insertedIds.add(msg.getMessage_id());
+                }
+                rowLocks = lockRows(insertedIds);
+                connection.commit();
+
+                // replicas receive the generated ids explicitly so they never generate their own
+                for (Message msg : inserted) {
+                    replicate("INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)",
+                            msg.getMessage_id(), msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch());
+                }
+                return inserted;
+            }
+            catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            finally {
+                for (ReentrantLock rowLock : rowLocks) {
+                    unlockRow(rowLock);
+                }
+                // hands the connection back to the pool in its default mode
+                connection.setAutoCommit(true);
+            }
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            System.out.println(e.getMessage());
+        }
 
-            // setting up a prepared statement
-            PreparedStatement ps = connection.prepareStatement(delete);
+        return null;
+    }
+
+    /**
+     * Deletes a message from the Message table, returning the deleted row from the same statement instead of reading
+     * it first
+     * @param message_id - ID of message to be deleted
+     * @param expectedVersion - version the message must be at, or ANY_VERSION
+     * @return the deleted message along with the version it had, or null if no message matched (missing, or at another version)
+     */
+    @Override
+    public VersionedMessage deleteMessage(int message_id, int expectedVersion) {
+        // keeps writes to this row in commit order on the replication stream
+        ReentrantLock rowLock = lockRow(message_id);
+
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
+            // the version check is part of the delete itself, so there is no window for another writer to slip in
+            String delete = "DELETE FROM message WHERE message_id = ?" + ((expectedVersion == ANY_VERSION) ? "" : " AND version = ?");
+
+            // OLD TABLE hands back the rows as they were just before the delete
+            PreparedStatement ps = connection.prepareStatement("SELECT * FROM OLD TABLE (" + delete + ")");
+            RequestContext.applyDeadline(ps);
             ps.setInt(1, message_id);
+            if (expectedVersion != ANY_VERSION) {
+                ps.setInt(2, expectedVersion);
+            }
 
-            // executes the delete statement and returns true on successful deletion
-            int rowsDeleted = ps.executeUpdate();
-            if (rowsDeleted > 0) {
-                return true;
+            // executes the delete and returns the deleted message if one matched
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                replicate("DELETE FROM message WHERE message_id = ?", message_id);
+                return versionedMessageOf(rs);
             }
         }
         catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
             System.out.println(e.getMessage());
         }
+        finally {
+            unlockRow(rowLock);
+        }
 
-        // else the deletion failed, so return false
-        return false;
+        // else nothing matched or the deletion failed, so return null
+        return null;
     }
 
     /**
-     * Updates a message's text (identified by its message ID)
+     * Updates a message's text (identified by its message ID) and bumps its version, returning the updated row from
+     * the same statement instead of reading it first
      * @param message_id - ID of message to be updated
      * @param updatedText - Updated text to replace message_text with
-     * @return True on successful update, otherwise false
+     * @param expectedVersion - version the message must be at, or ANY_VERSION
+     * @return the updated message along with its new version, or null if no message matched (missing, or at another version)
      */
-    public boolean updateMessage(int message_id, String updatedText) {
-        // attempts to establish a connection with the database
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
-            // query to update a particular message's message_text field
-            String update = "UPDATE message SET message_text = ? WHERE message_id = ?";
-
-            // setting up a prepared statement
-            PreparedStatement ps = connection.prepareStatement(update);
+    @Override
+    public VersionedMessage updateMessage(int message_id, String updatedText, int expectedVersion) {
+        // keeps writes to this row in commit order on the replication stream
+        ReentrantLock rowLock = lockRow(message_id);
+
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
+            // the version check is part of the update itself, so two editors can't both win from the same version
+            String update = "UPDATE message SET message_text = ?, version = version + 1 WHERE message_id = ?"
+                    + ((expectedVersion == ANY_VERSION) ? "" : " AND version = ?");
+
+            // FINAL TABLE hands back the rows as they are right after the update
+            PreparedStatement ps = connection.prepareStatement("SELECT * FROM FINAL TABLE (" + update + ")");
+            RequestContext.applyDeadline(ps);
             ps.setString(1, updatedText);
             ps.setInt(2, message_id);
+            if (expectedVersion != ANY_VERSION) {
+                ps.setInt(3, expectedVersion);
+            }
 
-            // executes the update statement and returns true on a successful update
-            int rowsUpdated = ps.executeUpdate();
-            if (rowsUpdated > 0) {
-                return true;
+            // executes the update and returns the updated message if one matched
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                VersionedMessage updated = versionedMessageOf(rs);
+                // replicas receive the new version explicitly so they never drift from the primary
+                replicate("UPDATE message SET message_text = ?, version = ? WHERE message_id = ?",
+                        updatedText, updated.getVersion(), message_id);
+                return updated;
             }
         }
         catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
             System.out.println(e.getMessage());
         }
+        finally {
+            unlockRow(rowLock);
+        }
 
-        // otherwise the update failed, so return false
-        return false;
+        // otherwise nothing matched or the update failed, so return null
+        return null;
     }
 
     /**
@@ -216,19 +596,19 @@ public class MessageDAO {
      * @param account_id - account ID to be searched for
      * @return true if a matching account_id was found within the database. otherwise false
      */
+    @Override
     public boolean isValidUser(int account_id) {
         boolean validUser = false;
 
-        // attempts to establish a connection with the database
-        Connection connection = ConnectionUtil.getConnection();
-
-        try {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
             // searches the Account table for an entry matching the provided account ID
             // only returns the account_id column to protect the user's username and password
             String query = "SELECT account_id FROM account WHERE account_id = ?";
 
             // setting up a prepared statement and its parameter
             PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
             ps.setInt(1, account_id);
 
             // executes the prepared query and stores the results (if any) in matchingUser
@@ -240,10 +620,106 @@ public class MessageDAO {
             }
         }
         catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
             System.out.println(e.getMessage());
         }
 
         // else the provided account_id didn't exist within the Account table, so return false;
         return validUser;
     }
+
+    /**
+     * Aggregates message statistics for every user that has posted at least one message
+     * @return A list containing the message count and first/last post time of each posting user
+     */
+    @Override
+    public List<MessageStats> getMessageStatsPerUser() {
+        // creates an empty list to store the statistics of each user
+        List<MessageStats> statsPerUser = new ArrayList<>();
+
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
+            // a single grouped scan computes the statistics of every user at once
+            String query = "SELECT posted_by, COUNT(*), MIN(time_posted_epoch), MAX(time_posted_epoch) FROM message GROUP BY posted_by";
+
+            // setting up a prepared statement
+            PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
+
+            // executing the query and processing the results
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                statsPerUser.add(new MessageStats(rs.getInt(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)));
+            }
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            System.out.println(e.getMessage());
+        }
+
+        return statsPerUser;
+    }
+
+    /**
+     * Aggregates message statistics for a specific user
+     * @param account_id - ID of user account whose statistics will be computed
+     * @return The message count and first/last post time of the user (null post times if they have no messages), or null on failure
+     */
+    @Override
+    public MessageStats getMessageStatsByUser(int account_id) {
+        // attempts to establish a connection with the database (closing it hands it back to the pool)
+        try (Connection connection = this.dataSource.getConnection()) {
+            // aggregates always return exactly one row, even if the user has no messages
+            String query = "SELECT COUNT(*), MIN(time_posted_epoch), MAX(time_posted_epoch) FROM message WHERE posted_by = ?";
+
+            // setting up a prepared statement and its parameter
+            PreparedStatement ps = connection.prepareStatement(query);
+            RequestContext.applyDeadline(ps);
+            ps.setInt(1, account_id);
+
+            // executing the query and processing the results
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                long messageCount = rs.getLong(1);
+                if (messageCount == 0) {
+                    return new MessageStats(account_id, 0, null, null);
+                }
+                return new MessageStats(account_id, messageCount, rs.getLong(2), rs.getLong(3));
+            }
+        }
+        catch(SQLException e) {
+            RequestContext.rethrowIfDeadlineExceeded(e);
+            System.out.println(e.getMessage());
+        }
+
+        return null;
+    }
+
+    // publishes a successful write to the replicas, if there are any
+    private void replicate(String sql, Object... params) {
+        if (this.replication != null) {
+            this.replication.publish(sql, params);
+        }
+    }
+
+    // reads a message and its version from a full row of the message table, using column indices
+    private static VersionedMessage versionedMessageOf(ResultSet rs) throws SQLException {
+        return new VersionedMessage(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)), rs.getInt(5));
+    }
+
+    // returns null (nothing to lock) when there are no replicas
+    private ReentrantLock lockRow(int message_id) {
+        return (this.replication == null) ? null : this.replication.lockRow("message", message_id);
+    }
+
+    // returns no locks when there are no replicas
+    private List<ReentrantLock> lockRows(List<Integer> message_ids) {
+        return (this.replication == null) ? new ArrayList<>() : this.replication.lockRows("message", message_ids);
+    }
+
+    private void unlockRow(ReentrantLock rowLock) {
+        if (rowLock != null) {
+            rowLock.unlock();
+        }
+    }
 }
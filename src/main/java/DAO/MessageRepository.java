@@ -0,0 +1,143 @@
+package DAO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import Model.Message;
+import Model.MessageStats;
+import Model.VersionedMessage;
+
+/**
+ * Storage operations on messages needed by the message service.
+ * MessageDAO implements them over JDBC (H2), InMemoryMessageDAO over in-process data structures.
+ */
+public interface MessageRepository {
+    /**
+     * Expected version that matches any version, making an update or delete unconditional
+     */
+    int ANY_VERSION = 0;
+
+    /**
+     * @return A list containing all messages as fully populated Message objects, ordered by message_id
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * @param account_id - ID of user account whose messages will be retrieved
+     * @return A list containing all messages from a specific user ordered by message_id, or an empty list if none existed
+     */
+    List<Message> getAllMessagesByUser(int account_id);
+
+    /**
+     * @param account_id - ID of user account whose messages will be retrieved
+     * @param limit - maximum number of messages
+     * @return The user's newest messages, newest first (by time_posted_epoch, then by message_id), or an empty list if none existed
+     */
+    List<Message> getLatestMessagesByUser(int account_id, int limit);
+
+    /**
+     * @param message_id - ID of the message to be searched for
+     * @return A fully populated Message object if found, otherwise null
+     */
+    default Message getMessageById(int message_id) {
+        VersionedMessage found = getVersionedMessageById(message_id);
+        return (found == null) ? null : found.getMessage();
+    }
+
+    /**
+     * @param message_id - ID of the message to be searched for
+     * @return A fully populated Message object along with its version if found, otherwise null
+     * @apiNote may read a lagging replica: the message service only caches a returned row if no newer write of it is known
+     */
+    VersionedMessage getVersionedMessageById(int message_id);
+
+    /**
+     * Retrieves several messages in one lookup instead of one per message
+     * @param message_ids - IDs of the messages to be searched for (duplicates are allowed)
+     * @return each message found along with its version, keyed by its ID; IDs that don't exist are absent
+     * @apiNote must not return null: on failure the map is empty (or holds what was read before the failure)
+     * @apiNote may read a lagging replica, like getVersionedMessageById
+     */
+    Map<Integer, VersionedMessage> getVersionedMessagesByIds(Collection<Integer> message_ids);
+
+    /**
+     * Passes messages to a consumer one at a time, in message_id order, without collecting them first
+     * @param account_id - only messages posted by this account, or null for every account
+     * @param fromEpoch - only messages posted at or after this time, or null
+     * @param toEpoch - only messages posted before this time, or null
+     * @param sink - receives each message
+     * @return the number of messages passed to the sink, or -1 if reading failed part way (some may have been passed)
+     */
+    default long forEachMessage(Integer account_id, Long fromEpoch, Long toEpoch, Consumer<Message> sink) {
+        return forEachVersionedMessage(account_id, fromEpoch, toEpoch, found -> sink.accept(found.getMessage()));
+    }
+
+    /**
+     * Same as forEachMessage, passing each message along with its version
+     * @param account_id - only messages posted by this account, or null for every account
+     * @param fromEpoch - only messages posted at or after this time, or null
+     * @param toEpoch - only messages posted before this time, or null
+     * @param sink - receives each message and its version
+     * @return the number of messages passed to the sink, or -1 if reading failed part way (some may have been passed)
+     */
+    long forEachVersionedMessage(Integer account_id, Long fromEpoch, Long toEpoch, Consumer<VersionedMessage> sink);
+
+    /**
+     * @param fromEpoch - only messages posted at or after this time
+     * @param limit - maximum number of messages
+     * @return the newest messages posted since fromEpoch along with their versions, newest first (by time_posted_epoch,
+     * then by message_id), or an empty list if none existed
+     * @apiNote may read a lagging replica, like getVersionedMessageById
+     */
+    List<VersionedMessage> getLatestVersionedMessages(long fromEpoch, int limit);
+
+    /**
+     * @param msg - the Message object to be inserted (without a message_id)
+     * @return the newly inserted Message along with its message_id on successful insertion, or null on failure
+     * @apiNote must return null when posted_by doesn't refer to an existing account
+     */
+    Message insertMessage(Message msg);
+
+    /**
+     * Inserts several messages at once, all or nothing
+     * @param msgs - the Message objects to be inserted (without message_ids)
+     * @return the newly inserted Messages along with their message_ids in the same order, or null if the batch failed (nothing is inserted)
+     */
+    List<Message> insertMessages(List<Message> msgs);
+
+    /**
+     * Deletes a message in one conditional write, if it is still at the expected version
+     * @param message_id - ID of message to be deleted
+     * @param expectedVersion - version the message must be at, or ANY_VERSION
+     * @return the deleted message along with the version it had, or null if no message matched (missing, or at another version)
+     */
+    VersionedMessage deleteMessage(int message_id, int expectedVersion);
+
+    /**
+     * Updates a message's text in one conditional write, if it is still at the expected version, and bumps its version
+     * @param message_id - ID of message to be updated
+     * @param updatedText - Updated text to replace message_text with
+     * @param expectedVersion - version the message must be at, or ANY_VERSION
+     * @return the updated message along with its new version, or null if no message matched (missing, or at another version)
+     */
+    VersionedMessage updateMessage(int message_id, String updatedText, int expectedVersion);
+
+    /**
+     * @param account_id - account ID to be searched for
+     * @return true if a matching account_id exists, otherwise false
+     */
+    boolean isValidUser(int account_id);
+
+    /**
+     * @return the message count and first/last post time of each user that has posted at least one message
+     */
+    List<MessageStats> getMessageStatsPerUser();
+
+    /**
+     * @param account_id - ID of user account whose statistics will be computed
+     * @return The message count and first/last post time of the user (null post times if they have no messages), or null on failure
+     */
+    MessageStats getMessageStatsByUser(int account_id);
+}
@@ -0,0 +1,125 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.sql.DataSource;
+
+import Util.AppConfig;
+import Util.ConnectionUtil;
+import Util.ReplicatedDatabase;
+
+/**
+ * Groups the account, message, and follow repositories of one storage engine, chosen with the "socialmedia.storage" setting:
+ * "h2" (default) uses the JDBC DAOs, "memory" uses the in-memory engine persisted through periodic snapshots.
+ * With H2, setting "socialmedia.shards" above 1 partitions messages by author across that many databases, and setting
+ * "socialmedia.replicas" above 0 (without shards) serves reads from that many replicas of the main database.
+ * Follows are kept next to the accounts they reference, so with shards or replicas they stay in the main database.
+ */
+public class Repositories {
+    private final AccountRepository accounts;
+    private final MessageRepository messages;
+    private final FollowRepository follows;
+    private final ReplicatedDatabase replication;
+    private final DataSource database;
+
+    // follows are kept in the main database
+    public Repositories(AccountRepository accounts, MessageRepository messages) {
+        this(accounts, messages, new FollowDAO(), null, null);
+    }
+
+    public Repositories(AccountRepository accounts, MessageRepository messages, FollowRepository follows,
+            ReplicatedDatabase replication, DataSource database) {
+        this.accounts = accounts;
+        this.messages = messages;
+        this.follows = follows;
+        this.replication = replication;
+        this.database = database;
+    }
+
+    /**
+     * @return the repositories of the configured storage engine
+     */
+    public static Repositories fromConfig() {
+        String engine = AppConfig.getString("socialmedia.storage", "h2");
+
+        if (engine.equalsIgnoreCase("memory")) {
+            Path snapshotPath = Paths.get(AppConfig.getString("socialmedia.memory.snapshotPath", "./h2/memory.snapshot"));
+            try {
+                InMemoryDatabase db = InMemoryDatabase.open(snapshotPath);
+                db.startPeriodicSnapshots(AppConfig.getLong("socialmedia.memory.snapshotIntervalMillis", 30_000));
+                return inMemory(db);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("couldn't load in-memory snapshot " + snapshotPath, e);
+            }
+        }
+
+        int shardCount = AppConfig.getInt("socialmedia.shards", 1);
+        if (shardCount > 1) {
+            String urlPattern = AppConfig.getString("socialmedia.shards.urlPattern", "jdbc:h2:./h2/shard%d;");
+            return new Repositories(new AccountDAO(), ShardedMessageDAO.open(shardCount, urlPattern));
+        }
+
+        int replicaCount = AppConfig.getInt("socialmedia.replicas", 0);
+        if (replicaCount > 0) {
+            String urlPattern = AppConfig.getString("socialmedia.replicas.urlPattern", "jdbc:h2:mem:replica%d;DB_CLOSE_DELAY=-1");
+            return replicated(ReplicatedDatabase.open(replicaCount, urlPattern));
+        }
+
+        return h2(ConnectionUtil.getDataSource());
+    }
+
+    /**
+     * @param dataSource - a database holding both the account and message tables
+     * @return repositories backed by that single database
+     */
+    public static Repositories h2(DataSource dataSource) {
+        return new Repositories(new AccountDAO(dataSource), new MessageDAO(dataSource), new FollowDAO(dataSource), null, dataSource);
+    }
+
+    /**
+     * @param replication - a primary database and its read replicas
+     * @return repositories writing to the primary and reading from the replicas
+     */
+    public static Repositories replicated(ReplicatedDatabase replication) {
+        return new Repositories(new AccountDAO(replication), new MessageDAO(replication), new FollowDAO(replication.writeSource()),
+                replication, null);
+    }
+
+    /**
+     * @param db - the in-memory data to expose
+     * @return repositories backed by the given in-memory database
+     */
+    public static Repositories inMemory(InMemoryDatabase db) {
+        return new Repositories(new InMemoryAccountDAO(db), new InMemoryMessageDAO(db), new InMemoryFollowDAO(db), null, null);
+    }
+
+    public AccountRepository accounts() {
+        return accounts;
+    }
+
+    public MessageRepository messages() {
+        return messages;
+    }
+
+    public FollowRepository follows() {
+        return follows;
+    }
+
+    /**
+     * @return the replicated database behind these repositories, or null when reads aren't replicated
+     */
+    public ReplicatedDatabase replication() {
+        return replication;
+    }
+
+    /**
+     * @return the single database holding every table, or null when data is spread out (shards, replicas) or not in H2
+     */
+    public DataSource database() {
+        return database;
+    }
+}
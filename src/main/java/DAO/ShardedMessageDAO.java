@@ -0,0 +1,301 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import Model.Message;
+import Model.MessageStats;
+import Model.VersionedMessage;
+import Util.ConnectionUtil;
+import Util.KWayMerge;
+import Util.RequestContext;
+
+/**
+ * Message storage partitioned by author across several H2 databases, each with its own connection pool.
+ *
+ * A message lives on shard floorMod(posted_by, N), so every per-author read goes to exactly one shard. Each shard's
+ * message_id identity column starts at its shard index + 1 and increments by N, which keeps ids globally unique and
+ * lets the shard of any message be recovered from its id alone: (message_id - 1) mod N. getAllMessages fans out to
+ * every shard in parallel and k-way merges the results by message_id.
+ *
+ * The account table stays in the main database, so shards carry no foreign key; isValidUser is checked against the
+ * main database instead, and insertMessage checks it before inserting. The shard count must not change once a dataset has been written.
+ */
+public class ShardedMessageDAO implements MessageRepository {
+    // same order as MessageDAO.getLatestVersionedMessages: newest post time first, ties broken by the higher message_id
+    private static final Comparator<Message> NEWEST_FIRST = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id).reversed();
+
+    private final MessageDAO[] shards;
+    private final MessageDAO accountLookup;
+    private final ExecutorService fanOut;
+
+    /**
+     * @param shardSources - one DataSource per shard, in shard order
+     * @param mainSource - the main database holding the account table
+     */
+    public ShardedMessageDAO(List<DataSource> shardSources, DataSource mainSource) {
+        int shardCount = shardSources.size();
+        this.shards = new MessageDAO[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            createShardSchema(shardSources.get(i), i, shardCount);
+            this.shards[i] = new MessageDAO(shardSources.get(i));
+        }
+        this.accountLookup = new MessageDAO(mainSource);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.fanOut = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "shard-fan-out-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens (and creates if needed) N file databases named by a url pattern, e.g. "jdbc:h2:./h2/shard%d;"
+     * @param shardCount - number of shards
+     * @param urlPattern - JDBC url with a %d placeholder for the shard index
+     * @return a sharded DAO over those databases
+     */
+    public static ShardedMessageDAO open(int shardCount, String urlPattern) {
+        List<DataSource> shardSources = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            shardSources.add(ConnectionUtil.createPool(String.format(urlPattern, i)));
+        }
+        return new ShardedMessageDAO(shardSources, ConnectionUtil.getDataSource());
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        // every shard returns its messages ordered by message_id, so a k-way merge restores the global order
+        List<List<Message>> perShard = fanOut(MessageDAO::getAllMessages);
+        return KWayMerge.merge(perShard, Comparator.comparingInt(Message::getMessage_id), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Message> getAllMessagesByUser(int account_id) {
+        return shardForAuthor(account_id).getAllMessagesByUser(account_id);
+    }
+
+    @Override
+    public List<Message> getLatestMessagesByUser(int account_id, int limit) {
+        return shardForAuthor(account_id).getLatestMessagesByUser(account_id, limit);
+    }
+
+    @Override
+    public VersionedMessage getVersionedMessageById(int message_id) {
+        return shardForMessage(message_id).getVersionedMessageById(message_id);
+    }
+
+    /**
+     * The ids are grouped by the shard they live on, and each shard holding any of them gets one lookup, in parallel.
+     */
+    @Override
+    public Map<Integer, VersionedMessage> getVersionedMessagesByIds(Collection<Integer> message_ids) {
+        Map<MessageDAO, List<Integer>> idsPerShard = new HashMap<>();
+        for (int message_id : message_ids) {
+            idsPerShard.computeIfAbsent(shardForMessage(message_id), shard -> new ArrayList<>()).add(message_id);
+        }
+
+        Map<Integer, VersionedMessage> found = new HashMap<>();
+        // shards without any of the ids answer with an empty map straight away
+        for (Map<Integer, VersionedMessage> shardFound : fanOut(shard -> {
+            List<Integer> ids = idsPerShard.get(shard);
+            return (ids == null) ? Collections.<Integer, VersionedMessage>emptyMap() : shard.getVersionedMessagesByIds(ids);
+        })) {
+            found.putAll(shardFound);
+        }
+        return found;
+    }
+
+    /**
+     * Per-author streams read one shard. Streams over every author read the shards one after another, so the output is
+     * ordered by message_id within each shard rather than globally (a global merge would hold a cursor open per shard).
+     */
+    @Override
+    public long forEachVersionedMessage(Integer account_id, Long fromEpoch, Long toEpoch, Consumer<VersionedMessage> sink) {
+        if (account_id != null) {
+            return shardForAuthor(account_id).forEachVersionedMessage(account_id, fromEpoch, toEpoch, sink);
+        }
+
+        long count = 0;
+        for (MessageDAO shard : shards) {
+            long shardCount = shard.forEachVersionedMessage(null, fromEpoch, toEpoch, sink);
+            if (shardCount < 0) {
+                return -1;
+            }
+            count += shardCount;
+        }
+        return count;
+    }
+
+    /**
+     * Every shard returns its own newest messages in parallel, and a k-way merge keeps the newest limit of them.
+     */
+    @Override
+    public List<VersionedMessage> getLatestVersionedMessages(long fromEpoch, int limit) {
+        List<List<VersionedMessage>> perShard = fanOut(shard -> shard.getLatestVersionedMessages(fromEpoch, limit));
+        return KWayMerge.merge(perShard, Comparator.comparing(VersionedMessage::getMessage, NEWEST_FIRST), limit);
+    }
+
+    @Override
+    public Message insertMessage(Message msg) {
+        // shards have no foreign key to rely on, so the author is checked against the main database first
+        if (!accountLookup.isValidUser(msg.getPosted_by())) {
+            return null;
+        }
+        return shardForAuthor(msg.getPosted_by()).insertMessage(msg);
+    }
+
+    /**
+     * Splits the batch by shard and inserts each part as one batch on its shard. Each part is all or nothing, but the
+     * parts aren't one distributed transaction: if a later shard fails, the parts already inserted on other shards stay.
+     */
+    @Override
+    public List<Message> insertMessages(List<Message> msgs) {
+        List<List<Integer>> positionsPerShard = new ArrayList<>(shards.length);
+        List<List<Message>> msgsPerShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            positionsPerShard.add(new ArrayList<>());
+            msgsPerShard.add(new ArrayList<>());
+        }
+        for (int i = 0; i < msgs.size(); i++) {
+            int shard = Math.floorMod(msgs.get(i).getPosted_by(), shards.length);
+            positionsPerShard.get(shard).add(i);
+            msgsPerShard.get(shard).add(msgs.get(i));
+        }
+
+        // puts every inserted message back at its position in the original batch
+        Message[] inserted = new Message[msgs.size()];
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (msgsPerShard.get(shard).isEmpty()) {
+                continue;
+            }
+            List<Message> shardInserted = shards[shard].insertMessages(msgsPerShard.get(shard));
+            if (shardInserted == null) {
+                return null;
+            }
+            for (int i = 0; i < shardInserted.size(); i++) {
+                inserted[positionsPerShard.get(shard).get(i)] = shardInserted.get(i);
+            }
+        }
+        return Arrays.asList(inserted);
+    }
+
+    @Override
+    public VersionedMessage deleteMessage(int message_id, int expectedVersion) {
+        return shardForMessage(message_id).deleteMessage(message_id, expectedVersion);
+    }
+
+    @Override
+    public VersionedMessage updateMessage(int message_id, String updatedText, int expectedVersion) {
+        return shardForMessage(message_id).updateMessage(message_id, updatedText, expectedVersion);
+    }
+
+    @Override
+    public boolean isValidUser(int account_id) {
+        return accountLookup.isValidUser(account_id);
+    }
+
+    @Override
+    public List<MessageStats> getMessageStatsPerUser() {
+        // authors never span shards, so the per-shard results can simply be concatenated
+        List<MessageStats> statsPerUser = new ArrayList<>();
+        fanOut(MessageDAO::getMessageStatsPerUser).forEach(statsPerUser::addAll);
+        return statsPerUser;
+    }
+
+    @Override
+    public MessageStats getMessageStatsByUser(int account_id) {
+        return shardForAuthor(account_id).getMessageStatsByUser(account_id);
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    private MessageDAO shardForAuthor(int account_id) {
+        return shards[Math.floorMod(account_id, shards.length)];
+    }
+
+    private MessageDAO shardForMessage(int message_id) {
+        return shards[Math.floorMod(message_id - 1, shards.length)];
+    }
+
+    // runs the same query on every shard in parallel, under the calling request's deadline, and collects the results
+    // in shard order
+    private <T> List<T> fanOut(Function<MessageDAO, T> query) {
+        List<Future<T>> pending = new ArrayList<>(shards.length);
+        for (MessageDAO shard : shards) {
+            pending.add(fanOut.submit(RequestContext.bind(() -> query.apply(shard))));
+        }
+
+        List<T> results = new ArrayList<>(shards.length);
+        try {
+            for (Future<T> result : pending) {
+                results.add(result.get());
+            }
+        }
+        catch (ExecutionException e) {
+            // unchecked failures (a spent deadline, an exhausted connection gate) keep their own type, so they are
+            // answered with the same status code as on a single database
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("shard query failed", e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for shards", e);
+        }
+        return results;
+    }
+
+    // creates the shard's message table, with an identity sequence that only yields ids belonging to this shard
+    private static void createShardSchema(DataSource shardSource, int shardIndex, int shardCount) {
+        String createTable = "CREATE TABLE IF NOT EXISTS message ("
+                + "message_id INT GENERATED BY DEFAULT AS IDENTITY (START WITH " + (shardIndex + 1) + " INCREMENT BY " + shardCount + ") PRIMARY KEY, "
+                + "posted_by INT, "
+                + "message_text VARCHAR(255), "
+                + "time_posted_epoch BIGINT)";
+        // added separately so shards created before messages had versions pick the column up too
+        String addVersion = "ALTER TABLE message ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 1";
+        String createIndex = "CREATE INDEX IF NOT EXISTS message_posted_by ON message (posted_by)";
+        // serves each author's newest messages in order (see MessageDAO.getLatestMessagesByUser)
+        String createTimelineIndex = "CREATE INDEX IF NOT EXISTS message_author_time ON message (posted_by, time_posted_epoch DESC, message_id DESC)";
+        // serves the newest messages across authors in order (see MessageDAO.getLatestVersionedMessages)
+        String createTimeIndex = "CREATE INDEX IF NOT EXISTS message_time ON message (time_posted_epoch DESC, message_id DESC)";
+
+        try (Connection connection = shardSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(createTable);
+            statement.execute(addVersion);
+            statement.execute(createIndex);
+            statement.execute(createTimelineIndex);
+            statement.execute(createTimeIndex);
+        }
+        catch (SQLException e) {
+            throw new IllegalStateException("couldn't create schema of shard " + shardIndex, e);
+        }
+    }
+}
@@ -1,14 +1,52 @@
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 import Controller.SocialMediaController;
+import DAO.BinarySnapshot;
+import Util.ConnectionUtil;
 import io.javalin.Javalin;
 
 /**
  * This class is provided with a main method to allow you to manually run and test your application. This class will not
  * affect your program in any way and you may write whatever code you like here.
+ *
+ * With no arguments the API is started. "export <file>" and "import <file>" write or load a binary snapshot of the
+ * main database instead, e.g. to seed a fresh node before starting it. Setting socialmedia.warmup.enabled runs a JIT
+ * warm-up against a scratch dataset before GET /ready reports the node ready. Where the main database lives and how
+ * durable its commits are is chosen with socialmedia.db.preset ("durable", "fast-ingest", or "ephemeral") and the
+ * other socialmedia.db.* settings.
  */
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("export")) {
+            System.out.println(BinarySnapshot.exportTo(ConnectionUtil.getDataSource(), Paths.get(args[1])));
+            return;
+        }
+        if (args.length == 2 && args[0].equals("import")) {
+            System.out.println(BinarySnapshot.importFrom(ConnectionUtil.getDataSource(), Paths.get(args[1])));
+            return;
+        }
+
+        // each startup phase is timed; the pool, cache, and warm-up phases follow in the background once the server is up,
+        // and GET /ready turns 200 when they are done
+        System.out.println("main database " + ConnectionUtil.getStorageSettings());
+        long start = System.nanoTime();
         SocialMediaController controller = new SocialMediaController();
+        recordStartupPhase(controller, "storage and services", start);
+
+        start = System.nanoTime();
         Javalin app = controller.startAPI();
+        recordStartupPhase(controller, "routes", start);
+
+        start = System.nanoTime();
         app.start(8080);
+        recordStartupPhase(controller, "server", start);
+    }
+
+    // records a phase for GET /ready and logs it, once per process
+    private static void recordStartupPhase(SocialMediaController controller, String phase, long startNanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        controller.recordStartupPhase(phase, millis);
+        System.out.println("startup phase " + phase + " took " + millis + " ms");
     }
 }
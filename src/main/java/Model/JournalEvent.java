@@ -0,0 +1,87 @@
+package Model;
+
+/**
+ * This is a class that models one record of the message event journal.
+ *
+ * Unlike a MessageChange, a journal event is durable and keeps the full message for every type, including the state
+ * of a message right before it was deleted.
+ */
+public class JournalEvent {
+    /**
+     * Position of this event in the journal; replaying from it returns this event first
+     */
+    public long offset;
+    /**
+     * One of "insert", "update", or "delete" (see MessageChange)
+     */
+    public String type;
+    /**
+     * When the event was journaled, in epoch milliseconds
+     */
+    public long event_time;
+    /**
+     * The message after an insert or update, or before a delete
+     */
+    public Message message;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public JournalEvent() {
+    }
+
+    /**
+     * @param offset
+     * @param type
+     * @param event_time
+     * @param message
+     */
+    public JournalEvent(long offset, String type, long event_time, Message message) {
+        this.offset = offset;
+        this.type = type;
+        this.event_time = event_time;
+        this.message = message;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public long getEvent_time() {
+        return event_time;
+    }
+
+    public void setEvent_time(long event_time) {
+        this.event_time = event_time;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalEvent{" +
+                "offset=" + offset +
+                ", type='" + type + '\'' +
+                ", event_time=" + event_time +
+                ", message=" + message +
+                '}';
+    }
+}
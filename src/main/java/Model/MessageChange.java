@@ -0,0 +1,94 @@
+package Model;
+
+/**
+ * This is a class that models a single entry of the message change log.
+ *
+ * Each insert, update, or delete of a message is recorded with a monotonically increasing version. Deletions are
+ * recorded as tombstones, meaning the message field is left null and only the message_id is kept.
+ */
+public class MessageChange {
+    /**
+     * Change types recorded by the message write paths
+     */
+    public static final String INSERT = "insert";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+
+    /**
+     * The change version assigned to this entry. Versions only ever increase.
+     */
+    public long version;
+    /**
+     * One of "insert", "update", or "delete"
+     */
+    public String type;
+    /**
+     * The id of the message that was changed
+     */
+    public int message_id;
+    /**
+     * The state of the message after the change, or null when the message was deleted
+     */
+    public Message message;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public MessageChange() {
+    }
+
+    /**
+     * @param version
+     * @param type
+     * @param message_id
+     * @param message
+     */
+    public MessageChange(long version, String type, int message_id, Message message) {
+        this.version = version;
+        this.type = type;
+        this.message_id = message_id;
+        this.message = message;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public int getMessage_id() {
+        return message_id;
+    }
+
+    public void setMessage_id(int message_id) {
+        this.message_id = message_id;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageChange{" +
+                "version=" + version +
+                ", type='" + type + '\'' +
+                ", message_id=" + message_id +
+                ", message=" + message +
+                '}';
+    }
+}
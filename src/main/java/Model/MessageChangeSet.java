@@ -0,0 +1,67 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a class that models the response of a change-since request.
+ *
+ * When resync is true the requested version is no longer retained (or was never issued by this server), so the
+ * changes list is empty and the client must refetch every message, then continue syncing from version.
+ */
+public class MessageChangeSet {
+    /**
+     * The latest change version known to the server at the time of the request
+     */
+    public long version;
+    /**
+     * True if the client must discard its local state and refetch all messages
+     */
+    public boolean resync;
+    /**
+     * Changes since the requested version, ordered by version (at most one entry per message_id)
+     */
+    public List<MessageChange> changes;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public MessageChangeSet() {
+        this.changes = new ArrayList<>();
+    }
+
+    /**
+     * @param version
+     * @param resync
+     * @param changes
+     */
+    public MessageChangeSet(long version, boolean resync, List<MessageChange> changes) {
+        this.version = version;
+        this.resync = resync;
+        this.changes = changes;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public boolean isResync() {
+        return resync;
+    }
+
+    public void setResync(boolean resync) {
+        this.resync = resync;
+    }
+
+    public List<MessageChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<MessageChange> changes) {
+        this.changes = changes;
+    }
+}
@@ -0,0 +1,108 @@
+package Model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * This is a class that models one line of the progress stream of a bulk message import.
+ *
+ * An error event names the input line that was rejected and why. A progress event is sent after every committed
+ * batch with the last input line covered and the running totals. The final event has done set, with the totals.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageImportEvent {
+    /**
+     * The (1-based) input line this event refers to
+     */
+    public Long line;
+    /**
+     * Number of messages imported so far
+     */
+    public Long imported;
+    /**
+     * Number of lines rejected so far
+     */
+    public Long failed;
+    /**
+     * Why the line was rejected, only set on error events
+     */
+    public String error;
+    /**
+     * True on the final event of the import
+     */
+    public Boolean done;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public MessageImportEvent() {
+    }
+
+    /**
+     * @param line
+     * @param error
+     * @return an event rejecting one input line
+     */
+    public static MessageImportEvent error(long line, String error) {
+        MessageImportEvent event = new MessageImportEvent();
+        event.line = line;
+        event.error = error;
+        return event;
+    }
+
+    /**
+     * @param line
+     * @param imported
+     * @param failed
+     * @return an event reporting the totals up to an input line
+     */
+    public static MessageImportEvent progress(long line, long imported, long failed) {
+        MessageImportEvent event = new MessageImportEvent();
+        event.line = line;
+        event.imported = imported;
+        event.failed = failed;
+        return event;
+    }
+
+    /**
+     * @param lines
+     * @param imported
+     * @param failed
+     * @return the final event of an import
+     */
+    public static MessageImportEvent done(long lines, long imported, long failed) {
+        MessageImportEvent event = progress(lines, imported, failed);
+        event.done = true;
+        return event;
+    }
+
+    public Long getLine() {
+        return line;
+    }
+
+    public Long getImported() {
+        return imported;
+    }
+
+    public Long getFailed() {
+        return failed;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Boolean getDone() {
+        return done;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageImportEvent{" +
+                "line=" + line +
+                ", imported=" + imported +
+                ", failed=" + failed +
+                ", error='" + error + '\'' +
+                ", done=" + done +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+package Model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * This is a class that models aggregate statistics about messages, either for a single account or for every message.
+ *
+ * first_posted_epoch and last_posted_epoch are null when there are no messages to aggregate.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MessageStats {
+    /**
+     * The account these statistics describe, or null for statistics over every message
+     */
+    public Integer account_id;
+    /**
+     * Number of messages
+     */
+    public long message_count;
+    /**
+     * The earliest time_posted_epoch among the messages
+     */
+    public Long first_posted_epoch;
+    /**
+     * The latest time_posted_epoch among the messages
+     */
+    public Long last_posted_epoch;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public MessageStats() {
+    }
+
+    /**
+     * @param account_id
+     * @param message_count
+     * @param first_posted_epoch
+     * @param last_posted_epoch
+     */
+    public MessageStats(Integer account_id, long message_count, Long first_posted_epoch, Long last_posted_epoch) {
+        this.account_id = account_id;
+        this.message_count = message_count;
+        this.first_posted_epoch = first_posted_epoch;
+        this.last_posted_epoch = last_posted_epoch;
+    }
+
+    public Integer getAccount_id() {
+        return account_id;
+    }
+
+    public void setAccount_id(Integer account_id) {
+        this.account_id = account_id;
+    }
+
+    public long getMessage_count() {
+        return message_count;
+    }
+
+    public void setMessage_count(long message_count) {
+        this.message_count = message_count;
+    }
+
+    public Long getFirst_posted_epoch() {
+        return first_posted_epoch;
+    }
+
+    public void setFirst_posted_epoch(Long first_posted_epoch) {
+        this.first_posted_epoch = first_posted_epoch;
+    }
+
+    public Long getLast_posted_epoch() {
+        return last_posted_epoch;
+    }
+
+    public void setLast_posted_epoch(Long last_posted_epoch) {
+        this.last_posted_epoch = last_posted_epoch;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageStats{" +
+                "account_id=" + account_id +
+                ", message_count=" + message_count +
+                ", first_posted_epoch=" + first_posted_epoch +
+                ", last_posted_epoch=" + last_posted_epoch +
+                '}';
+    }
+}
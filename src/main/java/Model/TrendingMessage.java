@@ -0,0 +1,57 @@
+package Model;
+
+/**
+ * This is a class that pairs a Message with how many times it was viewed recently.
+ *
+ * views is an estimate over the trending window: it is never below the real number of views in that window, and is
+ * kept apart from Message so message bodies stay unchanged.
+ */
+public class TrendingMessage {
+    /**
+     * The viewed message
+     */
+    public Message message;
+    /**
+     * Estimated number of views (GET /messages/{message_id}) within the trending window
+     */
+    public long views;
+
+    /**
+     * A default, no-args constructor is needed for Jackson ObjectMapper to work.
+     */
+    public TrendingMessage() {
+    }
+
+    /**
+     * @param message
+     * @param views
+     */
+    public TrendingMessage(Message message, long views) {
+        this.message = message;
+        this.views = views;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    public long getViews() {
+        return views;
+    }
+
+    public void setViews(long views) {
+        this.views = views;
+    }
+
+    @Override
+    public String toString() {
+        return "TrendingMessage{" +
+                "message=" + message +
+                ", views=" + views +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package Model;
+
+/**
+ * This is a class that pairs a Message with its row version.
+ *
+ * The version starts at 1 when a message is created and goes up by one on every update. It is what clients send back
+ * in If-Match (it is served as the message's ETag), and it is kept apart from Message so message bodies stay unchanged.
+ */
+public class VersionedMessage {
+    /**
+     * The message as stored
+     */
+    private final Message message;
+    /**
+     * Version of the stored row, at least 1
+     */
+    private final int version;
+
+    /**
+     * @param message
+     * @param version
+     */
+    public VersionedMessage(Message message, int version) {
+        this.message = message;
+        this.version = version;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "VersionedMessage{" +
+                "message=" + message +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -1,14 +1,20 @@
 package Service;
 
 import DAO.AccountDAO;
+import DAO.AccountRepository;
 import Model.Account;
 
 public class AccountService {
-    private AccountDAO accountDAO;
+    private AccountRepository accountDAO;
 
-    // constructor to initialize accountDAO dependency
+    // no args constructor to use the default JDBC (H2) storage
     public AccountService() {
-        this.accountDAO = new AccountDAO();
+        this(new AccountDAO());
+    }
+
+    // constructor to initialize accountDAO dependency with any storage engine
+    public AccountService(AccountRepository accountDAO) {
+        this.accountDAO = accountDAO;
     }
     
     /**
@@ -21,8 +27,9 @@ public class AccountService {
      * @apiNote password must be at least 4 characters long
      */
     public Account registerUserAccount(Account userAcc) {
-        // the username must not be blank, password must be at least 4 characters long, and an Account with a matching username must not already exist
-        boolean newUserRequirements = !(userAcc.getUsername().isBlank()) && (userAcc.getPassword().length() >= 4) && !(this.accountDAO.isExistingUsername(userAcc.getUsername()));
+        // the username must not be blank and password must be at least 4 characters long
+        // a taken username is left to the storage's unique constraint, so registering is a single insert with no race
+        boolean newUserRequirements = !(userAcc.getUsername().isBlank()) && (userAcc.getPassword().length() >= 4);
 
         // if all the new user account requirements were met, then attempt to register them
         if (newUserRequirements) {
@@ -0,0 +1,235 @@
+package Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import Util.AppConfig;
+
+/**
+ * In-process diagnostics for a live node: Java Flight Recorder recordings and thread dumps with lock owners.
+ *
+ * At most one recording runs at a time, its duration and size are capped, and it is written to the diagnostics
+ * directory rather than kept in memory. A thread dump is one snapshot of every thread taken by the JVM at a safepoint,
+ * so it costs a pause comparable to a young collection and no locks of the application.
+ */
+public class DiagnosticsService {
+    // JFR's built-in configurations: "default" is meant to run in production (about 1% overhead), "profile" samples more
+    public static final String PROFILE_DEFAULT = "default";
+    public static final String PROFILE_PROFILE = "profile";
+
+    private Path directory;
+    private long maxDurationSeconds;
+    private long maxRecordingBytes;
+
+    // the current (or last stopped, not yet collected) recording, guarded by this
+    private Recording recording;
+    private String recordingProfile;
+
+    // no args constructor to use the configured diagnostics directory and recording limits
+    public DiagnosticsService() {
+        this(Paths.get(AppConfig.getString("socialmedia.diagnostics.dir", "./h2/diagnostics")),
+                AppConfig.getLong("socialmedia.jfr.maxDurationSeconds", 300),
+                AppConfig.getLong("socialmedia.jfr.maxBytes", 256L * 1024 * 1024));
+    }
+
+    // constructor to write recordings into any directory, with any limits
+    public DiagnosticsService(Path directory, long maxDurationSeconds, long maxRecordingBytes) {
+        this.directory = directory;
+        this.maxDurationSeconds = maxDurationSeconds;
+        this.maxRecordingBytes = maxRecordingBytes;
+    }
+
+    /**
+     * Starts a flight recording that stops by itself after a duration
+     * @param profile - "default" or "profile"
+     * @param durationSeconds - how long to record, at most socialmedia.jfr.maxDurationSeconds
+     * @return the recording's id, profile, duration, and start time, or null if the profile or duration is invalid
+     * @throws IllegalStateException if a recording is already running
+     * @throws IOException if the recording couldn't be set up on disk
+     */
+    public synchronized Map<String, Object> startRecording(String profile, long durationSeconds) throws IOException {
+        if (!PROFILE_DEFAULT.equals(profile) && !PROFILE_PROFILE.equals(profile)) {
+            return null;
+        }
+        if (durationSeconds <= 0 || durationSeconds > this.maxDurationSeconds) {
+            return null;
+        }
+        if (this.recording != null && this.recording.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("a recording is already running");
+        }
+        discardRecording();
+
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(profile);
+        }
+        catch (ParseException e) {
+            throw new IOException("couldn't read the " + profile + " JFR configuration", e);
+        }
+
+        Files.createDirectories(this.directory);
+        Recording started = new Recording(configuration);
+        started.setName("socialmedia-" + profile);
+        started.setToDisk(true);
+        started.setDuration(Duration.ofSeconds(durationSeconds));
+        // JFR keeps at most this much of the recording on disk, dropping its oldest chunks beyond it
+        started.setMaxSize(this.maxRecordingBytes);
+        started.start();
+
+        this.recording = started;
+        this.recordingProfile = profile;
+        return describe(started);
+    }
+
+    /**
+     * Describes the current recording
+     * @return its id, profile, state, duration, and start time, or null if there is none
+     */
+    public synchronized Map<String, Object> getRecording() {
+        return (this.recording == null) ? null : describe(this.recording);
+    }
+
+    /**
+     * Stops the current recording (if its duration hasn't already stopped it) and hands its data over. The recording
+     * is written to a file in the diagnostics directory, which is deleted when the returned stream is closed
+     * @return a stream of the .jfr file, or null if there is no recording
+     * @throws IOException if the recording couldn't be written out
+     */
+    public synchronized InputStream stopRecording() throws IOException {
+        if (this.recording == null) {
+            return null;
+        }
+        Recording stopped = this.recording;
+        if (stopped.getState() == RecordingState.RUNNING || stopped.getState() == RecordingState.DELAYED) {
+            stopped.stop();
+        }
+
+        Path file = this.directory.resolve("recording-" + stopped.getId() + ".jfr");
+        try {
+            stopped.dump(file);
+        }
+        finally {
+            discardRecording();
+        }
+        return Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Takes a dump of every thread, with the monitor or lock each one waits for and the thread owning it
+     * @param maxDepth - most stack frames reported per thread
+     * @return the threads, ids of deadlocked threads, and the most contended monitors (those with the most threads
+     * blocked on them, with their owners)
+     */
+    public Map<String, Object> dumpThreads(int maxDepth) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        ThreadInfo[] infos = threads.dumpAllThreads(threads.isObjectMonitorUsageSupported(), threads.isSynchronizerUsageSupported());
+
+        List<Map<String, Object>> dumped = new ArrayList<>(infos.length);
+        // monitors and locks with threads waiting to enter or acquire them, keyed by their identity string
+        Map<String, Map<String, Object>> contended = new HashMap<>();
+        for (ThreadInfo info : infos) {
+            dumped.add(describe(info, maxDepth));
+
+            LockInfo lock = info.getLockInfo();
+            if (lock != null && (info.getThreadState() == Thread.State.BLOCKED || info.getLockOwnerId() >= 0)) {
+                Map<String, Object> waited = contended.computeIfAbsent(lock.toString(), name -> {
+                    Map<String, Object> monitor = new LinkedHashMap<>();
+                    monitor.put("lock", name);
+                    monitor.put("owner_id", info.getLockOwnerId());
+                    monitor.put("owner_name", info.getLockOwnerName());
+                    monitor.put("waiting", 0);
+                    monitor.put("waiting_threads", new ArrayList<String>());
+                    return monitor;
+                });
+                waited.put("waiting", (Integer) waited.get("waiting") + 1);
+                @SuppressWarnings("unchecked")
+                List<String> waiting = (List<String>) waited.get("waiting_threads");
+                waiting.add(info.getThreadName());
+            }
+        }
+
+        List<Map<String, Object>> topContended = new ArrayList<>(contended.values());
+        topContended.sort((a, b) -> Integer.compare((Integer) b.get("waiting"), (Integer) a.get("waiting")));
+
+        long[] deadlocked = threads.findDeadlockedThreads();
+
+        Map<String, Object> dump = new LinkedHashMap<>();
+        dump.put("thread_count", infos.length);
+        dump.put("deadlocked_thread_ids", (deadlocked == null) ? new long[0] : deadlocked);
+        dump.put("top_contended_locks", topContended.subList(0, Math.min(10, topContended.size())));
+        dump.put("threads", dumped);
+        return dump;
+    }
+
+    private static Map<String, Object> describe(ThreadInfo info, int maxDepth) {
+        Map<String, Object> thread = new LinkedHashMap<>();
+        thread.put("id", info.getThreadId());
+        thread.put("name", info.getThreadName());
+        thread.put("state", info.getThreadState().name());
+        thread.put("blocked_count", info.getBlockedCount());
+        thread.put("waited_count", info.getWaitedCount());
+        if (info.getLockInfo() != null) {
+            thread.put("waiting_on", info.getLockInfo().toString());
+        }
+        if (info.getLockOwnerId() >= 0) {
+            thread.put("lock_owner_id", info.getLockOwnerId());
+            thread.put("lock_owner_name", info.getLockOwnerName());
+        }
+
+        StackTraceElement[] stack = info.getStackTrace();
+        List<String> frames = new ArrayList<>(Math.min(maxDepth, stack.length));
+        for (int i = 0; i < stack.length && i < maxDepth; i++) {
+            frames.add(stack[i].toString());
+        }
+        thread.put("stack", frames);
+
+        // monitors held, with the stack depth at which each was entered
+        List<String> monitors = new ArrayList<>();
+        for (MonitorInfo monitor : info.getLockedMonitors()) {
+            monitors.add(monitor + " at depth " + monitor.getLockedStackDepth());
+        }
+        thread.put("locked_monitors", monitors);
+        thread.put("locked_synchronizers", Arrays.stream(info.getLockedSynchronizers()).map(LockInfo::toString).toArray());
+        return thread;
+    }
+
+    private Map<String, Object> describe(Recording described) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("id", described.getId());
+        description.put("profile", this.recordingProfile);
+        description.put("state", described.getState().name());
+        description.put("duration_seconds", (described.getDuration() == null) ? null : described.getDuration().getSeconds());
+        description.put("started_at", (described.getStartTime() == null) ? null : described.getStartTime().toString());
+        return description;
+    }
+
+    // closes the recording, which deletes JFR's own chunk files of it
+    private void discardRecording() {
+        if (this.recording != null) {
+            this.recording.close();
+            this.recording = null;
+            this.recordingProfile = null;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import DAO.FollowDAO;
+import DAO.FollowRepository;
+import Model.Follow;
+import Model.Message;
+import Util.AppConfig;
+import Util.HomeTimelineStore;
+
+/**
+ * Maintains the follow graph and each follower's home timeline (the newest messages of the accounts it follows).
+ *
+ * Home timelines are precomputed: a new message is pushed into the timelines of its author's followers on a
+ * background pool (fan-out-on-write), so reading a home timeline copies a page of entries and resolves it in one
+ * multi-get. Accounts with many followers (celebrities) aren't pushed, since one message would touch every follower's
+ * timeline; their newest messages are fetched and merged in when a follower reads (fan-out-on-read) instead.
+ *
+ * Timelines live in memory only. One is built from the database the first time it is read (and again after it was
+ * evicted or invalidated), and only timelines that are kept receive pushes.
+ */
+public class FollowService {
+    private FollowRepository followDAO;
+    private MessageService msgService;
+    private HomeTimelineStore timelines;
+
+    // accounts with at least this many followers are read on demand instead of pushed
+    private int celebrityFollowers;
+    // celebrities stay celebrities (until invalidateAll), so a follower count hovering at the threshold can't flip
+    // an account between both paths; the version lets timelines tell when their cached celebrity followees are stale
+    private Set<Integer> celebrities = ConcurrentHashMap.newKeySet();
+    private AtomicLong celebrityVersion = new AtomicLong();
+
+    // pushes new messages into timelines, off the thread that created them
+    private ExecutorService fanOuts;
+
+    private AtomicLong pushes = new AtomicLong();
+    private AtomicLong rejectedFanOuts = new AtomicLong();
+    private AtomicLong builds = new AtomicLong();
+
+    // no args constructor to use the default JDBC (H2) storage
+    public FollowService() {
+        this(new FollowDAO(), new MessageService());
+    }
+
+    // constructor to initialize followDAO dependency with any storage engine, reading messages through msgService
+    public FollowService(FollowRepository followDAO, MessageService msgService) {
+        this.followDAO = followDAO;
+        this.msgService = msgService;
+        this.timelines = new HomeTimelineStore(
+                Math.max(1, AppConfig.getInt("socialmedia.home.capacity", 800)),
+                Math.max(1, AppConfig.getInt("socialmedia.home.maxTimelines", 100_000)));
+        this.celebrityFollowers = Math.max(1, AppConfig.getInt("socialmedia.home.celebrityFollowers", 10_000));
+
+        // a full queue means timelines fell behind; the push is dropped and handled in fanOut
+        int threads = Math.max(1, AppConfig.getInt("socialmedia.home.fanOutThreads", 2));
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.fanOuts = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, AppConfig.getInt("socialmedia.home.fanOutQueue", 10_000))),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "home-fan-out-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Makes one account follow another
+     * @param follower_id - ID of the account that follows
+     * @param followee_id - ID of the account to follow
+     * @return the follow on success (including when it already existed), or null on requirements failure / insertion failure
+     * @apiNote an account can't follow itself
+     * @apiNote both accounts must exist
+     */
+    public Follow follow(int follower_id, int followee_id) {
+        if (follower_id == followee_id || !this.followDAO.follow(follower_id, followee_id)) {
+            return null;
+        }
+        // the follower's timeline is missing the followee's messages, so it is rebuilt on its next read
+        this.timelines.invalidate(follower_id);
+        return new Follow(follower_id, followee_id);
+    }
+
+    /**
+     * Makes one account stop following another
+     * @param follower_id - ID of the account that follows
+     * @param followee_id - ID of the account to stop following
+     * @return the removed follow, or null if there was none
+     */
+    public Follow unfollow(int follower_id, int followee_id) {
+        if (!this.followDAO.unfollow(follower_id, followee_id)) {
+            return null;
+        }
+        // the follower's timeline still holds the followee's messages, so it is rebuilt on its next read
+        this.timelines.invalidate(follower_id);
+        return new Follow(follower_id, followee_id);
+    }
+
+    /**
+     * Pushes a new message into the kept home timelines of its author's followers, in the background. Meant to be
+     * registered as the message service's insert listener
+     * @param msg - a message that was just inserted
+     */
+    public void fanOut(Message msg) {
+        try {
+            this.fanOuts.execute(() -> push(msg));
+        }
+        catch (RejectedExecutionException e) {
+            // the author's followers' timelines may now miss this message. the queue is too far behind to run the
+            // followers query, so the timelines are found by the followees they were built from and rebuilt on their
+            // next read, while every other timeline is kept
+            this.rejectedFanOuts.incrementAndGet();
+            this.timelines.invalidateBuiltFrom(msg.getPosted_by());
+        }
+    }
+
+    // runs on the fan-out pool
+    private void push(Message msg) {
+        int author = msg.getPosted_by();
+        if (this.celebrities.contains(author)) {
+            return;
+        }
+        // the count reads the followee index without fetching every follower of an account that turns out to be a celebrity
+        if (this.followDAO.countFollowers(author) >= this.celebrityFollowers) {
+            if (this.celebrities.add(author)) {
+                this.celebrityVersion.incrementAndGet();
+            }
+            return;
+        }
+
+        long entry = HomeTimelineStore.entryOf(msg);
+        for (int follower_id : this.followDAO.getFollowers(author)) {
+            // followers whose timelines aren't kept pick the message up when theirs is built
+            HomeTimelineStore.Timeline timeline = this.timelines.get(follower_id);
+            if (timeline != null && timeline.push(author, entry)) {
+                this.pushes.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the newest messages of the accounts a user follows. The precomputed timeline supplies a page in
+     * O(limit); only celebrity followees are read from the database
+     * @param follower_id - ID of the user account whose home timeline will be retrieved
+     * @param limit - maximum number of messages (at most getCapacity())
+     * @return up to limit messages ordered by time_posted_epoch, newest first (ties broken by the higher message_id)
+     * @throws Util.DeadlineExceededException if the request's deadline passed while the timeline was being read
+     */
+    public List<Message> getHomeTimeline(int follower_id, int limit) {
+        HomeTimelineStore.Timeline timeline = this.timelines.getOrCreate(follower_id);
+        // the timeline is kept before it is loaded, so messages posted during the load are pushed once it is done
+        synchronized (timeline) {
+            if (!timeline.isLoaded()) {
+                int[] followees = this.followDAO.getFollowees(follower_id);
+                for (Message msg : this.msgService.getTimeline(idList(followees), this.timelines.getCapacity())) {
+                    timeline.add(HomeTimelineStore.entryOf(msg));
+                }
+                timeline.markLoaded(followees);
+                this.builds.incrementAndGet();
+            }
+        }
+
+        for (int pass = 0; ; pass++) {
+            long[] page = withCelebrityMessages(timeline, timeline.newest(limit), limit);
+            List<Integer> message_ids = new ArrayList<>(page.length);
+            for (long entry : page) {
+                message_ids.add(HomeTimelineStore.messageIdOf(entry));
+            }
+
+            List<Message> found = this.msgService.getMessagesByIds(message_ids);
+            List<Message> messages = new ArrayList<>(found.size());
+            for (Message msg : found) {
+                if (msg != null) {
+                    messages.add(msg);
+                }
+            }
+            if (messages.size() == page.length) {
+                return messages;
+            }
+            if (messages.isEmpty()) {
+                // nothing resolved, which may be a failed lookup rather than deletions, so the timeline is rebuilt
+                // on its next read instead of being emptied
+                this.timelines.invalidate(follower_id);
+                return messages;
+            }
+
+            // deleted messages' entries go, and the page is read once more so it stays full
+            for (int i = 0; i < page.length; i++) {
+                if (found.get(i) == null) {
+                    timeline.remove(page[i]);
+                }
+            }
+            if (pass == 1) {
+                return messages;
+            }
+        }
+    }
+    // merges the newest messages of the timeline's celebrity followees (which aren't pushed) into a page of entries
+    private long[] withCelebrityMessages(HomeTimelineStore.Timeline timeline, long[] page, int limit) {
+        long version = this.celebrityVersion.get();
+        int[] celebrityFollowees = timeline.getCelebrityFollowees(version);
+        if (celebrityFollowees == null) {
+            celebrityFollowees = Arrays.stream(timeline.getFollowees()).filter(this.celebrities::contains).toArray();
+            timeline.setCelebrityFollowees(celebrityFollowees, version);
+        }
+        if (celebrityFollowees.length == 0) {
+            return page;
+        }
+
+        // entries sort like messages do on a timeline, so merging is sorting the union and keeping the newest
+        long[] merged = Arrays.copyOf(page, page.length + limit);
+        int size = page.length;
+        for (Message msg : this.msgService.getTimeline(idList(celebrityFollowees), limit)) {
+            merged[size++] = HomeTimelineStore.entryOf(msg);
+        }
+        merged = Arrays.stream(merged, 0, size).distinct().sorted().toArray();
+
+        long[] newest = new long[Math.min(limit, merged.length)];
+        for (int i = 0; i < newest.length; i++) {
+            newest[i] = merged[merged.length - 1 - i];
+        }
+        return newest;
+    }
+
+    /**
+     * Drops every home timeline and forgets which accounts are celebrities, e.g. after the data was replaced by a
+     * snapshot import
+     */
+    public void invalidateAll() {
+        this.celebrities.clear();
+        this.celebrityVersion.incrementAndGet();
+        this.timelines.clear();
+    }
+
+    /**
+     * @return the maximum number of messages a home timeline holds
+     */
+    public int getCapacity() {
+        return this.timelines.getCapacity();
+    }
+
+    /**
+     * Retrieves counters describing the home timelines
+     * @return pushes, rejected fan-outs, timeline builds, and how many timelines and celebrities are kept
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("pushes", this.pushes.get());
+        metrics.put("rejected_fan_outs", this.rejectedFanOuts.get());
+        metrics.put("builds", this.builds.get());
+        metrics.put("timelines", (long) this.timelines.size());
+        metrics.put("celebrities", (long) this.celebrities.size());
+        return metrics;
+    }
+
+    private static List<Integer> idList(int[] ids) {
+        List<Integer> list = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+}
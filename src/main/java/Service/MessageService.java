@@ -1,16 +1,144 @@
 package Service;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
 import DAO.MessageDAO;
+import DAO.MessageRepository;
+import Model.JournalEvent;
 import Model.Message;
+import Model.MessageChange;
+import Model.MessageChangeSet;
+import Model.MessageImportEvent;
+import Model.MessageStats;
+import Model.TrendingMessage;
+import Model.VersionedMessage;
+import Util.AppConfig;
+import Util.EventJournal;
+import Util.KWayMerge;
+import Util.MessageChangeLog;
+import Util.MessageCounters;
+import Util.OffHeapMessageStore;
+import Util.PreconditionFailedException;
+import Util.RequestContext;
+import Util.ServiceUnavailableException;
+import Util.SingleFlight;
+import Util.TrendingTracker;
 
 public class MessageService {
-    private MessageDAO messageDAO;
+    // number of recent changes kept for incremental sync before clients are asked to resync
+    private static final int CHANGE_LOG_CAPACITY = 10_000;
+
+    // bulk import limits: one line is never buffered beyond this, and the known-author cache is cleared past that size
+    private static final int MAX_IMPORT_LINE_CHARS = 16_384;
+    private static final int MAX_CACHED_IMPORT_AUTHORS = 10_000;
+    private static final int LINE_READ = 0;
+    private static final int LINE_TOO_LONG = 1;
+    private static final int END_OF_INPUT = -1;
+    private static final JsonFactory IMPORT_JSON = new JsonFactory();
+    // timeline order: newest post time first, ties broken by the higher message_id
+    private static final Comparator<Message> NEWEST_FIRST = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id).reversed();
+
+    private MessageRepository messageDAO;
+    private MessageChangeLog changeLog;
+    private MessageCounters counters;
+
+    // coalesce identical concurrent reads so a popular message or author costs one query at a time
+    private SingleFlight<Integer, VersionedMessage> messageByIdFlights;
+    private SingleFlight<Integer, List<Message>> messagesByUserFlights;
+
+    // durable history of every message mutation (null when disabled)
+    private EventJournal journal;
+
+    // bounds how many exports stream at once
+    private Semaphore exportPermits;
+
+    // fetches the authors of a timeline in parallel, shared by all requests so they can't take more connections than this
+    private ExecutorService timelineFetches;
+
+    // hot messages kept off-heap so single-message reads skip the database (null when disabled)
+    private OffHeapMessageStore hotMessages;
+    // orders cache fills against writes, so a read that raced with a write can't cache the stale row
+    private final Object hotMessagesLock = new Object();
 
-    // constructor to initialize messageDAO dependency
+    // recent views of single messages, counted in fixed memory to rank trending messages
+    private TrendingTracker trending;
+
+    // told about every inserted message once it is recorded, e.g. to push it into home timelines (null when unset)
+    private volatile Consumer<Message> insertListener;
+
+    // no args constructor to use the default JDBC (H2) storage
     public MessageService() {
-        this.messageDAO = new MessageDAO();
+        this(new MessageDAO());
+    }
+
+    // constructor to initialize messageDAO dependency with any storage engine, journaling as configured
+    public MessageService(MessageRepository messageDAO) {
+        this(messageDAO, openConfiguredJournal());
+    }
+
+    // constructor to initialize messageDAO dependency with any storage engine and an optional event journal
+    public MessageService(MessageRepository messageDAO, EventJournal journal) {
+        this.messageDAO = messageDAO;
+        this.journal = journal;
+        this.changeLog = new MessageChangeLog(CHANGE_LOG_CAPACITY);
+
+        // message counters are rebuilt from the database once, then maintained by the write paths
+        this.counters = new MessageCounters(this.messageDAO::getMessageStatsByUser);
+        this.counters.rebuild(this.messageDAO.getMessageStatsPerUser());
+
+        long coalescingTimeoutMillis = AppConfig.getLong("socialmedia.singleflight.timeoutMillis", 5_000);
+        this.messageByIdFlights = new SingleFlight<>(coalescingTimeoutMillis);
+        this.messagesByUserFlights = new SingleFlight<>(coalescingTimeoutMillis);
+
+        this.exportPermits = new Semaphore(Math.max(1, AppConfig.getInt("socialmedia.export.maxConcurrent", 2)));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.timelineFetches = Executors.newFixedThreadPool(Math.max(1, AppConfig.getInt("socialmedia.timeline.parallelism", 4)), runnable -> {
+            Thread thread = new Thread(runnable, "timeline-fetch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.trending = new TrendingTracker(
+                AppConfig.getLong("socialmedia.trending.windowMillis", 300_000),
+                AppConfig.getInt("socialmedia.trending.buckets", 10),
+                AppConfig.getInt("socialmedia.trending.sketchWidth", 2048),
+                AppConfig.getInt("socialmedia.trending.sketchDepth", 4),
+                AppConfig.getInt("socialmedia.trending.candidates", 256),
+                AppConfig.getInt("socialmedia.trending.topSize", 100),
+                AppConfig.getLong("socialmedia.trending.refreshMillis", 1_000));
+
+        if (AppConfig.getBoolean("socialmedia.offheap.enabled", true)) {
+            this.hotMessages = new OffHeapMessageStore(
+                    AppConfig.getInt("socialmedia.offheap.capacity", 65_536),
+                    AppConfig.getInt("socialmedia.offheap.arenaBytes", 8 * 1024 * 1024));
+        }
     }
 
     /**
@@ -23,16 +151,154 @@ public class MessageService {
      * @apiNote posted_by must refer to real, existing user
      */
     public Message createNewMessage(Message msg) {
-        boolean newMessageRequirements = !(msg.getMessage_text().isBlank()) && (msg.getMessage_text().length() <= 255) && this.messageDAO.isValidUser(msg.getPosted_by());
+        // posted_by is left to the storage's foreign key, so creating is a single insert that fails for an unknown author
+        boolean newMessageRequirements = !(msg.getMessage_text().isBlank()) && (msg.getMessage_text().length() <= 255);
 
         // if all requirements for a new message were met, then attempt to create it
         if (newMessageRequirements) {
-            return this.messageDAO.insertMessage(msg);
+            Message insertedMessage = this.messageDAO.insertMessage(msg);
+
+            // records the insert so syncing clients can pick it up
+            if (insertedMessage != null) {
+                long journalOffset = -1;
+                synchronized (hotMessagesLock) {
+                    // a write to the new message that got here first makes this insert stale for the log and the cache
+                    if (this.changeLog.recordInsert(insertedMessage)) {
+                        journalOffset = journal(MessageChange.INSERT, insertedMessage);
+                        // every message starts out at version 1
+                        cacheMessage(insertedMessage, 1);
+                    }
+                }
+                this.counters.onInsert(insertedMessage.getPosted_by(), insertedMessage.getTime_posted_epoch());
+                syncJournal(journalOffset);
+                notifyInsert(insertedMessage);
+            }
+            return insertedMessage;
         }
 
         return null;
     }
     
+    /**
+     * Imports newline-delimited JSON messages (one message object per line) read incrementally from a request body.
+     * Every line goes through the same requirements as createNewMessage; valid messages are inserted in fixed-size
+     * batches, each committed on its own, so memory stays bounded by one batch and one line regardless of input size.
+     * 
+     * @param body - the NDJSON input, read line by line
+     * @param events - receives an error event per rejected line, a progress event per committed batch, and a final event
+     * @return the final event, with the number of lines read, messages imported, and lines rejected
+     * @throws IOException if the input couldn't be read
+     * @apiNote message_id in the input is ignored, every imported message gets a newly generated one
+     * @apiNote blank lines are skipped
+     */
+    public MessageImportEvent importMessages(Reader body, Consumer<MessageImportEvent> events) throws IOException {
+        return importMessages(body, posted_by -> true, events);
+    }
+
+    /**
+     * Same as importMessages, letting each valid message through only if its author is admitted (e.g. has a token left
+     * in its write rate limit)
+     * 
+     * @param body - the NDJSON input, read line by line
+     * @param admitAuthor - called with the posted_by of every valid message; a false result rejects just that line
+     * @param events - receives an error event per rejected line, a progress event per committed batch, and a final event
+     * @return the final event, with the number of lines read, messages imported, and lines rejected
+     * @throws IOException if the input couldn't be read
+     */
+    public MessageImportEvent importMessages(Reader body, IntPredicate admitAuthor, Consumer<MessageImportEvent> events) throws IOException {
+        int batchSize = Math.max(1, AppConfig.getInt("socialmedia.import.batchSize", 500));
+        List<Message> batch = new ArrayList<>(batchSize);
+        long[] batchLines = new long[batchSize];
+
+        // authors already found to exist, so a long import doesn't look each one up per line (cleared when large)
+        Set<Integer> validAuthors = new HashSet<>();
+        long lineNumber = 0;
+        long imported = 0;
+        long failed = 0;
+
+        BufferedReader reader = new BufferedReader(body, 1 << 16);
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int lineState = readLine(reader, line);
+            if (lineState == END_OF_INPUT) {
+                break;
+            }
+            lineNumber++;
+
+            // parses the line and checks the same requirements as createNewMessage, rejecting just this line on failure
+            String error;
+            Message msg = null;
+            if (lineState == LINE_TOO_LONG) {
+                error = "line exceeds " + MAX_IMPORT_LINE_CHARS + " characters";
+            }
+            else if (line.toString().isBlank()) {
+                continue;
+            }
+            else {
+                try {
+                    msg = parseImportLine(line);
+                    error = checkImportedMessage(msg, validAuthors);
+                    // only messages that would be written are charged to their author
+                    if (error == null && !admitAuthor.test(msg.getPosted_by())) {
+                        error = "account " + msg.getPosted_by() + " is over its write rate limit";
+                    }
+                }
+                catch (IOException e) {
+                    error = "malformed JSON: " + e.getMessage().split("\n")[0];
+                }
+            }
+            if (error != null) {
+                failed++;
+                events.accept(MessageImportEvent.error(lineNumber, error));
+                continue;
+            }
+
+            batchLines[batch.size()] = lineNumber;
+            batch.add(msg);
+            if (batch.size() == batchSize) {
+                long batchImported = insertImportBatch(batch, batchLines, events);
+                imported += batchImported;
+                failed += batch.size() - batchImported;
+                batch.clear();
+                events.accept(MessageImportEvent.progress(lineNumber, imported, failed));
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            long batchImported = insertImportBatch(batch, batchLines, events);
+            imported += batchImported;
+            failed += batch.size() - batchImported;
+        }
+
+        MessageImportEvent summary = MessageImportEvent.done(lineNumber, imported, failed);
+        events.accept(summary);
+        return summary;
+    }
+
+    /**
+     * Streams messages to a consumer one at a time, straight from the storage cursor, so an export of any size runs in
+     * constant memory. At most socialmedia.export.maxConcurrent exports run at once, each holding one connection, so
+     * exports can't starve regular requests of database connections.
+     * 
+     * @param account_id - only messages posted by this account, or null for every account
+     * @param fromEpoch - only messages posted at or after this time, or null
+     * @param toEpoch - only messages posted before this time, or null
+     * @param sink - receives each message, in message_id order
+     * @return the number of messages exported, or -1 if reading failed part way
+     * @throws Util.ServiceUnavailableException if too many exports are already running
+     */
+    public long exportMessages(Integer account_id, Long fromEpoch, Long toEpoch, Consumer<Message> sink) {
+        if (!this.exportPermits.tryAcquire()) {
+            throw new ServiceUnavailableException("too many exports are running");
+        }
+        try {
+            return this.messageDAO.forEachMessage(account_id, fromEpoch, toEpoch, sink);
+        }
+        finally {
+            this.exportPermits.release();
+        }
+    }
+
     /**
      * Retrieves all messages that exist within the Message table
      * @return A list containing every message as its object equivalent
@@ -45,66 +311,590 @@ public class MessageService {
      * Retrieves all messages from a specific user that exist within the Message table
      * @param account_id - ID of user account whose messages will be retrieved
      * @return A list containing every message as its object equivalent
+     * @throws Util.ServiceUnavailableException if an identical in-flight query didn't finish in time
      */
     public List<Message> getAllMessagesByUser(int account_id) {
-        return this.messageDAO.getAllMessagesByUser(account_id);
+        // concurrent requests for the same user share one query
+        return this.messagesByUserFlights.execute(account_id, () -> this.messageDAO.getAllMessagesByUser(account_id));
+    }
+
+    /**
+     * Retrieves the newest messages across several authors, newest first, as one merged timeline. Each author's newest
+     * messages (at most limit of them) are fetched in parallel, then merged with a heap that stops after limit results
+     * @param authors - IDs of the user accounts whose messages make up the timeline (duplicates are ignored)
+     * @param limit - maximum number of messages
+     * @return up to limit messages ordered by time_posted_epoch, newest first (ties broken by the higher message_id)
+     * @throws Util.DeadlineExceededException if the request's deadline passed while the authors were being fetched
+     */
+    public List<Message> getTimeline(List<Integer> authors, int limit) {
+        List<Integer> distinctAuthors = new ArrayList<>(new LinkedHashSet<>(authors));
+        if (distinctAuthors.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        // a single author's newest messages are already the timeline
+        if (distinctAuthors.size() == 1) {
+            return this.messageDAO.getLatestMessagesByUser(distinctAuthors.get(0), limit);
+        }
+
+        // each fetch runs on a worker, under the deadline of the request it serves
+        List<Future<List<Message>>> pending = new ArrayList<>(distinctAuthors.size());
+        for (int account_id : distinctAuthors) {
+            pending.add(this.timelineFetches.submit(RequestContext.bind(() -> this.messageDAO.getLatestMessagesByUser(account_id, limit))));
+        }
+
+        List<List<Message>> perAuthor = new ArrayList<>(pending.size());
+        try {
+            for (Future<List<Message>> fetched : pending) {
+                perAuthor.add(fetched.get());
+            }
+        }
+        catch (ExecutionException e) {
+            // a deadline that ran out on a worker is reported like one that ran out on the request thread
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("timeline fetch failed", e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for timeline fetches", e);
+        }
+        finally {
+            // fetches still queued are of no use once one has failed
+            for (Future<List<Message>> fetched : pending) {
+                fetched.cancel(false);
+            }
+        }
+
+        return KWayMerge.merge(perAuthor, NEWEST_FIRST, limit);
     }
 
     /**
      * Retrieves a single message from the Message table
      * @param message_id - ID of the message to be retrieved
      * @return Fully populated Message object if found, otherwise null
+     * @throws Util.ServiceUnavailableException if an identical in-flight query didn't finish in time
      */
     public Message getMessageById(int message_id) {
-        return this.messageDAO.getMessageById(message_id);
+        VersionedMessage found = getVersionedMessageById(message_id);
+        return (found == null) ? null : found.getMessage();
+    }
+
+    /**
+     * Retrieves a single message from the Message table along with its version (served as its ETag)
+     * @param message_id - ID of the message to be retrieved
+     * @return Fully populated Message object and its version if found, otherwise null
+     * @throws Util.ServiceUnavailableException if an identical in-flight query didn't finish in time
+     */
+    public VersionedMessage getVersionedMessageById(int message_id) {
+        if (this.hotMessages != null) {
+            VersionedMessage cached = this.hotMessages.getVersioned(message_id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // concurrent requests for the same message share one query
+        return this.messageByIdFlights.execute(message_id, () -> loadAndCacheMessage(message_id));
+    }
+
+    /**
+     * Counts a view of a message towards trending, in memory only (no database write)
+     * @param message_id - ID of the message that was retrieved
+     */
+    public void recordView(int message_id) {
+        this.trending.recordView(message_id);
+    }
+
+    /**
+     * Retrieves the messages viewed most within the trending window, from the precomputed top (rebuilt at most once per
+     * socialmedia.trending.refreshMillis), resolved in one multi-get
+     * @param limit - maximum number of messages (at most getTrendingTopSize())
+     * @return up to limit messages with their estimated views, most viewed first (deleted messages are left out)
+     */
+    public List<TrendingMessage> getTrendingMessages(int limit) {
+        long[][] top = this.trending.top(limit);
+        List<Integer> message_ids = new ArrayList<>(top.length);
+        for (long[] ranked : top) {
+            message_ids.add((int) ranked[0]);
+        }
+
+        List<Message> found = getMessagesByIds(message_ids);
+        List<TrendingMessage> trendingMessages = new ArrayList<>(top.length);
+        for (int i = 0; i < top.length; i++) {
+            if (found.get(i) != null) {
+                trendingMessages.add(new TrendingMessage(found.get(i), top[i][1]));
+            }
+        }
+        return trendingMessages;
+    }
+
+    /**
+     * @return the maximum number of messages getTrendingMessages returns
+     */
+    public int getTrendingTopSize() {
+        return this.trending.getTopSize();
+    }
+
+    /**
+     * Retrieves counters of the trending tracker
+     * @return views recorded, and the size and age of the precomputed top
+     */
+    public Map<String, Long> getTrendingMetrics() {
+        return this.trending.getMetrics();
+    }
+
+    /**
+     * Retrieves several messages at once: cached ones come from the off-heap store, and all the others are read from
+     * storage in one lookup (then cached, under the same rule as single-message reads)
+     * @param message_ids - IDs of the messages to be retrieved, in the order the results should come back (duplicates are allowed)
+     * @return one entry per requested ID in the same order: the message if found, otherwise null
+     */
+    public List<Message> getMessagesByIds(List<Integer> message_ids) {
+        Map<Integer, Message> found = new HashMap<>();
+        Set<Integer> misses = new LinkedHashSet<>();
+        for (int message_id : message_ids) {
+            VersionedMessage cached = (this.hotMessages == null) ? null : this.hotMessages.getVersioned(message_id);
+            if (cached != null) {
+                found.put(message_id, cached.getMessage());
+            }
+            else {
+                misses.add(message_id);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            long versionBeforeLoad = this.changeLog.getLatestVersion();
+            Map<Integer, VersionedMessage> loaded = this.messageDAO.getVersionedMessagesByIds(misses);
+            synchronized (hotMessagesLock) {
+                boolean cacheable = this.changeLog.getLatestVersion() == versionBeforeLoad;
+                for (VersionedMessage msg : loaded.values()) {
+                    found.put(msg.getMessage().getMessage_id(), msg.getMessage());
+                    if (cacheable) {
+                        fillCache(msg);
+                    }
+                }
+            }
+        }
+
+        List<Message> messages = new ArrayList<>(message_ids.size());
+        for (int message_id : message_ids) {
+            messages.add(found.get(message_id));
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieves the JSON of a single message straight from the off-heap store, without building a Message object
+     * @param message_id - ID of the message to be retrieved
+     * @return UTF-8 JSON of the message if it is cached, otherwise null (callers then fall back to getMessageById, which caches it)
+     */
+    public byte[] getCachedMessageJson(int message_id) {
+        return (this.hotMessages == null) ? null : this.hotMessages.getJson(message_id);
+    }
+
+    /**
+     * Retrieves the version of a cached message. Read it before getCachedMessageJson: if the message is updated in
+     * between, the version is then older than the JSON, so a write conditioned on it fails instead of overwriting an
+     * update the client never saw
+     * @param message_id - ID of the message
+     * @return its version if it is cached, otherwise 0
+     */
+    public int getCachedMessageVersion(int message_id) {
+        return (this.hotMessages == null) ? 0 : this.hotMessages.getVersion(message_id);
     }
 
     /**
-     * Deletes a single message from the Message table if it exists
+     * Deletes a single message from the Message table if it exists, in one conditional write
      * @param message_id - ID of message to be deleted
+     * @param expectedVersion - version the message must be at (its ETag from If-Match), or MessageRepository.ANY_VERSION
      * @return Fully populated Message object containing the deleted message on success, otherwise returns null
+     * @throws PreconditionFailedException if the message exists but is at another version
      */
-    public Message deleteMessageById(int message_id) {
-        // attempts to retrieve the message to be deleted before deleting it
-        Message deletedMessage = this.messageDAO.getMessageById(message_id);
+    public Message deleteMessageById(int message_id, int expectedVersion) {
+        // deletes and returns the message in one statement, instead of retrieving it first
+        VersionedMessage deleted = this.messageDAO.deleteMessage(message_id, expectedVersion);
 
-        // if a message was successfully retrieved, then attempt to delete it
-        if (deletedMessage != null && this.messageDAO.deleteMessage(message_id)) {
-            // if a message was both retrieved AND deleted successfully, return the deleted message
+        // if a message was deleted, record a tombstone, uncount it, and return the deleted message
+        if (deleted != null) {
+            Message deletedMessage = deleted.getMessage();
+            long journalOffset = -1;
+            synchronized (hotMessagesLock) {
+                if (this.changeLog.recordDelete(message_id, deleted.getVersion())) {
+                    journalOffset = journal(MessageChange.DELETE, deletedMessage);
+                }
+                // the cache keeps the deleted version, so a fill still carrying the message can't bring it back
+                uncacheMessage(message_id, deleted.getVersion());
+            }
+            this.counters.onDelete(deletedMessage.getPosted_by(), deletedMessage.getTime_posted_epoch());
+            syncJournal(journalOffset);
             return deletedMessage;
         }
 
-        // otherwise the message wasn't found or failed to be deleted
+        // otherwise the message wasn't found, was at another version, or failed to be deleted
+        failIfVersionConflict(message_id, expectedVersion);
         return null;
     }
 
     /**
-     * Updates a single message with new message_text in the Message table if the all requirements are met
+     * Updates a single message with new message_text in the Message table if the all requirements are met, in one
+     * conditional write that also bumps its version
      * 
      * @param message_id - ID of message to be updated
      * @param updatedText - updated text that message_text will be replaced with
-     * @return Fully populated Message object containing the updated message on success, otherwise returns null
+     * @param expectedVersion - version the message must be at (its ETag from If-Match), or MessageRepository.ANY_VERSION
+     * @return Fully populated Message object containing the updated message along with its new version on success, otherwise returns null
+     * @throws PreconditionFailedException if the message exists but is at another version
      * @apiNote updatedText must not be blank
      * @apiNote updatedText must not exceed 255 characters
      * @apiNote message_id must refer to an existing message within the database
      */
-    public Message updateMessageById(int message_id, String updatedText) {
+    public VersionedMessage updateMessageById(int message_id, String updatedText, int expectedVersion) {
         // checks that updatedText meets requirements before accessing the database
         boolean messageTextRequirements = !updatedText.isBlank() && (updatedText.length() <= 255);
 
         if (messageTextRequirements) {
-            // retrieves the message to be updated if it exists
-            Message updatedMessage = this.messageDAO.getMessageById(message_id);
+            // updates and returns the message in one statement, instead of retrieving it first
+            VersionedMessage updated = this.messageDAO.updateMessage(message_id, updatedText, expectedVersion);
 
-            // if a message was successfully retrieved, then attempt updating it
-            if (updatedMessage != null && this.messageDAO.updateMessage(message_id, updatedText)) {
-                // updates the Message object's message_text field to match the database on successful update, then returns it
-                updatedMessage.setMessage_text(updatedText);
-                return updatedMessage;
+            if (updated != null) {
+                long journalOffset = -1;
+                synchronized (hotMessagesLock) {
+                    // concurrent updates can get here out of commit order; only the newest version is recorded
+                    if (this.changeLog.recordUpdate(updated.getMessage(), updated.getVersion())) {
+                        journalOffset = journal(MessageChange.UPDATE, updated.getMessage());
+                        cacheMessage(updated.getMessage(), updated.getVersion());
+                    }
+                }
+                syncJournal(journalOffset);
+                return updated;
             }
+            failIfVersionConflict(message_id, expectedVersion);
         }
 
         // otherwise update requirements weren't met or the update failed
         return null;
     }
+
+    /**
+     * Drops everything derived from the message table after it was replaced in bulk (e.g. by a snapshot import):
+     * cached messages are evicted, counters are rebuilt from the database, and sync clients are told to resync
+     */
+    public void reloadAfterBulkLoad() {
+        synchronized (hotMessagesLock) {
+            // invalidating first makes any cache fill that raced with the bulk load discard its row
+            this.changeLog.invalidate();
+            if (this.hotMessages != null) {
+                this.hotMessages.clear();
+            }
+        }
+        // message ids may now name other messages
+        this.trending.clear();
+        this.counters.rebuild(this.messageDAO.getMessageStatsPerUser());
+    }
+
+    /**
+     * Fills the off-heap store with the most recently posted messages, so the first reads after startup don't all miss
+     * @param windowSeconds - how far back from the latest post time messages are considered recent
+     * @param limit - maximum number of messages to cache, the newest ones within the window
+     * @return the number of messages cached (0 if the store is disabled, empty, or a write raced with the fill)
+     */
+    public int primeHotMessages(long windowSeconds, int limit) {
+        Long lastPosted = this.counters.globalStats().getLast_posted_epoch();
+        if (this.hotMessages == null || lastPosted == null || limit <= 0) {
+            return 0;
+        }
+
+        // the newest first, so a limit smaller than the window keeps the messages most likely to be read next
+        long versionBeforeLoad = this.changeLog.getLatestVersion();
+        List<VersionedMessage> recent = this.messageDAO.getLatestVersionedMessages(lastPosted - windowSeconds, limit);
+
+        // same rule as single-message fills: rows read while a write happened may be stale, so they aren't cached
+        synchronized (hotMessagesLock) {
+            if (this.changeLog.getLatestVersion() != versionBeforeLoad) {
+                return 0;
+            }
+            for (VersionedMessage found : recent) {
+                fillCache(found);
+            }
+        }
+        return recent.size();
+    }
+
+    /**
+     * Retrieves the version of the most recent message change.
+     * Clients should read this before fetching all messages, then sync from it using getChangesSince
+     * @return the latest change version
+     */
+    public long getLatestChangeVersion() {
+        return this.changeLog.getLatestVersion();
+    }
+
+    /**
+     * Retrieves all inserts, updates, and deletions (as tombstones) made after a given change version
+     * @param since - the last change version the client has applied
+     * @return the changes since that version, flagged with resync if the version is too old or unknown to this server
+     */
+    public MessageChangeSet getChangesSince(long since) {
+        return this.changeLog.changesSince(since);
+    }
+
+    /**
+     * Retrieves message statistics of a specific user from the in-memory counters (no database access in steady state)
+     * @param account_id - ID of user account whose statistics will be retrieved
+     * @return The user's message count and first/last post time
+     */
+    public MessageStats getMessageStatsByUser(int account_id) {
+        return this.counters.statsFor(account_id);
+    }
+
+    /**
+     * Retrieves message statistics over every message from the in-memory counters
+     * @return The total message count and first/last post time
+     */
+    public MessageStats getMessageStats() {
+        return this.counters.globalStats();
+    }
+
+    /**
+     * Retrieves counters describing how many reads were coalesced onto identical in-flight queries
+     * @return metrics of each coalesced read path
+     */
+    public Map<String, Object> getReadCoalescingMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("message_by_id", this.messageByIdFlights.getMetrics());
+        metrics.put("messages_by_user", this.messagesByUserFlights.getMetrics());
+        return metrics;
+    }
+
+    /**
+     * Replays journaled message events (every create, update, and delete, in the order they happened)
+     * @param fromOffset - offset of the first event to return (0 for the start of the journal)
+     * @param limit - maximum number of events to return
+     * @param consumer - receives each event
+     * @return the offset to continue from, or -1 if the journal is disabled
+     * @throws IllegalArgumentException if fromOffset isn't the offset of an event
+     */
+    public long replayJournal(long fromOffset, int limit, Consumer<JournalEvent> consumer) {
+        return (this.journal == null) ? -1 : this.journal.replay(fromOffset, limit, consumer);
+    }
+
+    /**
+     * Retrieves append and flush counters of the event journal
+     * @return the journal's metrics, or null if it is disabled
+     */
+    public Map<String, Long> getJournalMetrics() {
+        return (this.journal == null) ? null : this.journal.getMetrics();
+    }
+
+    /**
+     * Retrieves hit, miss, and occupancy counters of the off-heap message store
+     * @return the store's metrics, or null if it is disabled
+     */
+    public Map<String, Long> getHotMessageMetrics() {
+        return (this.hotMessages == null) ? null : this.hotMessages.getMetrics();
+    }
+
+    /**
+     * Registers a listener told about every message inserted from now on (by createNewMessage or an import), after
+     * the insert has been recorded. It runs on the inserting thread, so it should hand slow work off.
+     * @param insertListener - the listener, or null to remove it
+     */
+    public void setInsertListener(Consumer<Message> insertListener) {
+        this.insertListener = insertListener;
+    }
+
+    // a listener failing must not fail the write that already succeeded
+    private void notifyInsert(Message msg) {
+        Consumer<Message> listener = this.insertListener;
+        if (listener != null) {
+            try {
+                listener.accept(msg);
+            }
+            catch(RuntimeException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    // inserts one import batch and records it like createNewMessage does; returns how many messages were imported
+    private long insertImportBatch(List<Message> batch, long[] batchLines, Consumer<MessageImportEvent> events) {
+        List<Message> inserted = this.messageDAO.insertMessages(batch);
+        if (inserted == null) {
+            for (int i = 0; i < batch.size(); i++) {
+                events.accept(MessageImportEvent.error(batchLines[i], "batch insert failed"));
+            }
+            return 0;
+        }
+
+        // imported history isn't hot, so it is recorded for syncing clients, the journal, and counters but not cached
+        long journalOffset = -1;
+        synchronized (hotMessagesLock) {
+            for (Message msg : inserted) {
+                if (this.changeLog.recordInsert(msg)) {
+                    journalOffset = journal(MessageChange.INSERT, msg);
+                }
+            }
+        }
+        for (Message msg : inserted) {
+            this.counters.onInsert(msg.getPosted_by(), msg.getTime_posted_epoch());
+        }
+        // one sync covers the whole batch
+        syncJournal(journalOffset);
+        for (Message msg : inserted) {
+            notifyInsert(msg);
+        }
+        return inserted.size();
+    }
+
+    // returns why an imported message doesn't meet the requirements of createNewMessage, or null if it does
+    private String checkImportedMessage(Message msg, Set<Integer> validAuthors) {
+        if (msg.getMessage_text() == null || msg.getMessage_text().isBlank()) {
+            return "message_text must not be blank";
+        }
+        if (msg.getMessage_text().length() > 255) {
+            return "message_text must not exceed 255 characters";
+        }
+        if (!validAuthors.contains(msg.getPosted_by())) {
+            if (!this.messageDAO.isValidUser(msg.getPosted_by())) {
+                return "posted_by must refer to an existing account";
+            }
+            if (validAuthors.size() >= MAX_CACHED_IMPORT_AUTHORS) {
+                validAuthors.clear();
+            }
+            validAuthors.add(msg.getPosted_by());
+        }
+        return null;
+    }
+
+    // reads one message object with the streaming parser, without binding through a tree or reflection
+    private static Message parseImportLine(CharSequence line) throws IOException {
+        try (JsonParser parser = IMPORT_JSON.createParser(line.toString())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "expected a JSON object");
+            }
+
+            Message msg = new Message();
+            boolean hasPostedBy = false;
+            boolean hasTime = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "posted_by":
+                        msg.setPosted_by(parser.getIntValue());
+                        hasPostedBy = true;
+                        break;
+                    case "message_text":
+                        msg.setMessage_text(value == JsonToken.VALUE_NULL ? null : parser.getValueAsString());
+                        break;
+                    case "time_posted_epoch":
+                        msg.setTime_posted_epoch(parser.getLongValue());
+                        hasTime = true;
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                throw new JsonParseException(parser, "expected exactly one JSON object per line");
+            }
+            if (!hasPostedBy || !hasTime) {
+                throw new JsonParseException(parser, "posted_by and time_posted_epoch are required");
+            }
+            return msg;
+        }
+    }
+
+    // reads the next line into the buffer (without its terminator), keeping at most MAX_IMPORT_LINE_CHARS characters
+    private static int readLine(BufferedReader reader, StringBuilder line) throws IOException {
+        line.setLength(0);
+        boolean tooLong = false;
+        int c = reader.read();
+        if (c < 0) {
+            return END_OF_INPUT;
+        }
+        while (c >= 0 && c != '\n') {
+            if (c != '\r') {
+                if (line.length() < MAX_IMPORT_LINE_CHARS) {
+                    line.append((char) c);
+                }
+                else {
+                    // the rest of an overlong line is skipped rather than buffered
+                    tooLong = true;
+                }
+            }
+            c = reader.read();
+        }
+        return tooLong ? LINE_TOO_LONG : LINE_READ;
+    }
+
+    // loads a message from the database and caches it, unless a write to any message happened during the load
+    private VersionedMessage loadAndCacheMessage(int message_id) {
+        long versionBeforeLoad = this.changeLog.getLatestVersion();
+        VersionedMessage found = this.messageDAO.getVersionedMessageById(message_id);
+
+        if (found != null) {
+            synchronized (hotMessagesLock) {
+                if (this.changeLog.getLatestVersion() == versionBeforeLoad) {
+                    fillCache(found);
+                }
+            }
+        }
+        return found;
+    }
+
+    // after a conditional write matched nothing: if the message still exists, its version must have moved on
+    private void failIfVersionConflict(int message_id, int expectedVersion) {
+        if (expectedVersion == MessageRepository.ANY_VERSION) {
+            return;
+        }
+        // only reached when the write failed, so the common path stays a single statement
+        VersionedMessage current = this.messageDAO.getVersionedMessageById(message_id);
+        if (current != null && current.getVersion() != expectedVersion) {
+            throw new PreconditionFailedException(message_id, current.getVersion());
+        }
+    }
+
+    // must hold hotMessagesLock, so journal order matches change log order. returns the event's offset, or -1
+    private long journal(String type, Message msg) {
+        return (this.journal == null) ? -1 : this.journal.append(type, msg);
+    }
+
+    // waits (in group sync mode) for a journaled event to reach the disk; called after releasing hotMessagesLock
+    private void syncJournal(long journalOffset) {
+        if (this.journal != null && journalOffset >= 0) {
+            this.journal.sync(journalOffset);
+        }
+    }
+
+    private static EventJournal openConfiguredJournal() {
+        try {
+            return EventJournal.fromConfig();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("couldn't open the event journal", e);
+        }
+    }
+
+    // caches a row read from storage. reads by id may come from a replica that hasn't applied the latest writes yet, so
+    // a row older than a change the log retains for it is dropped, and the store itself rejects anything at or below
+    // the version it holds or the version of a removal. must hold hotMessagesLock
+    private void fillCache(VersionedMessage found) {
+        if (!this.changeLog.isSuperseded(found.getMessage().getMessage_id(), found.getVersion())) {
+            cacheMessage(found.getMessage(), found.getVersion());
+        }
+    }
+
+    private void cacheMessage(Message msg, int version) {
+        if (this.hotMessages != null) {
+            this.hotMessages.put(msg, version);
+        }
+    }
+
+    private void uncacheMessage(int message_id, int version) {
+        if (this.hotMessages != null) {
+            this.hotMessages.remove(message_id, version);
+        }
+    }
 }
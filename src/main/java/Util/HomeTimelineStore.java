@@ -0,0 +1,265 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import Model.Message;
+
+/**
+ * Precomputed home timelines: for each follower, the newest message ids of the accounts it follows.
+ *
+ * A timeline is a bounded, sorted long[] of entries, each packing a message's time_posted_epoch and message_id into one
+ * primitive (see entryOf), so timelines hold no Message objects and sort by post time without looking messages up. The
+ * newest entries sit at the end of the array, so a page is copied off the end in O(page size). Once a timeline is
+ * full, a newer entry pushes the oldest one out and an older entry is dropped.
+ *
+ * Only a bounded number of timelines are kept; the least recently used one is evicted to make room, and is rebuilt
+ * the next time it is read. A timeline's array starts at INITIAL_ENTRIES and doubles as it fills, so memory follows the
+ * entries actually held: at most capacity * maxTimelines * 8 bytes (about 640 MB with the defaults of 800 and 100,000),
+ * reached only when every kept timeline is full.
+ */
+public class HomeTimelineStore {
+    // bits of an entry below the post time: message ids are non-negative ints, so they fit in 31
+    private static final int TIME_SHIFT = 31;
+    // post times are clamped to 32 bits (up to the year 2106), which keeps every entry a non-negative long
+    private static final long MAX_PACKED_TIME = 0xFFFF_FFFFL;
+    // array length of a new timeline, which grows by doubling up to the capacity
+    private static final int INITIAL_ENTRIES = 16;
+
+    private final int capacity;
+    private final int maxTimelines;
+    // access-ordered, so the eldest entry is the least recently used timeline
+    private final LinkedHashMap<Integer, Timeline> timelines;
+
+    /**
+     * @param capacity - maximum number of entries per timeline
+     * @param maxTimelines - maximum number of timelines kept at once
+     */
+    public HomeTimelineStore(int capacity, int maxTimelines) {
+        if (capacity <= 0 || maxTimelines <= 0) {
+            throw new IllegalArgumentException("capacity and maxTimelines must be positive");
+        }
+        this.capacity = capacity;
+        this.maxTimelines = maxTimelines;
+        this.timelines = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Timeline> eldest) {
+                return size() > HomeTimelineStore.this.maxTimelines;
+            }
+        };
+    }
+
+    /**
+     * Packs a message's post time and id into one timeline entry. Entries order like messages do on a timeline:
+     * by time_posted_epoch, then by message_id
+     * @param msg - the message
+     * @return its entry
+     */
+    public static long entryOf(Message msg) {
+        long time = Math.max(0, Math.min(MAX_PACKED_TIME, msg.getTime_posted_epoch()));
+        return (time << TIME_SHIFT) | msg.getMessage_id();
+    }
+
+    /**
+     * @param entry - a timeline entry
+     * @return the message_id packed into it
+     */
+    public static int messageIdOf(long entry) {
+        return (int) (entry & Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param follower_id - ID of the follower
+     * @return the follower's timeline, or null if it isn't kept (never built, evicted, or invalidated)
+     */
+    public synchronized Timeline get(int follower_id) {
+        return timelines.get(follower_id);
+    }
+
+    /**
+     * @param follower_id - ID of the follower
+     * @return the follower's timeline, created empty and unloaded if it isn't kept
+     */
+    public synchronized Timeline getOrCreate(int follower_id) {
+        return timelines.computeIfAbsent(follower_id, id -> new Timeline(capacity));
+    }
+
+    /**
+     * Drops a follower's timeline, so it is rebuilt the next time it is read
+     * @param follower_id - ID of the follower
+     */
+    public synchronized void invalidate(int follower_id) {
+        timelines.remove(follower_id);
+    }
+
+    /**
+     * Drops every timeline that may have been built from an author, i.e. the author's followers' timelines as of
+     * their build, plus any that are still loading. Only reads what each timeline already holds, so it neither queries
+     * the database nor waits for a load in progress
+     * @param author_id - ID of the author
+     * @return the number of timelines dropped
+     */
+    public synchronized int invalidateBuiltFrom(int author_id) {
+        int before = timelines.size();
+        timelines.values().removeIf(timeline -> timeline.mayBeBuiltFrom(author_id));
+        return before - timelines.size();
+    }
+
+    /**
+     * Drops every timeline
+     */
+    public synchronized void clear() {
+        timelines.clear();
+    }
+
+    /**
+     * @return the maximum number of entries per timeline
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of timelines kept
+     */
+    public synchronized int size() {
+        return timelines.size();
+    }
+
+    /**
+     * One follower's timeline. Every method is synchronized on the timeline, so entries pushed while it is being
+     * loaded wait for the load to finish.
+     */
+    public static class Timeline {
+        private final int capacity;
+        private long[] entries;
+        private int size = 0;
+        // volatile so mayBeBuiltFrom can read them without waiting for a load that holds the timeline's lock
+        private volatile boolean loaded = false;
+        // the accounts this timeline was built from, and which of them were celebrities as of celebrityVersion
+        private volatile int[] followees = new int[0];
+        private int[] celebrityFollowees = new int[0];
+        private long celebrityVersion = -1;
+
+        Timeline(int capacity) {
+            this.capacity = capacity;
+            this.entries = new long[Math.min(capacity, INITIAL_ENTRIES)];
+        }
+
+        /**
+         * Adds an entry in order, unless it is already present or the timeline is full of newer entries
+         * @param entry - a message's entry (see entryOf)
+         * @return true if the entry was added
+         */
+        public synchronized boolean add(long entry) {
+            if (size == capacity && entry <= entries[0]) {
+                return false;
+            }
+            // new messages are usually the newest, which makes this an append
+            int position = size;
+            if (size > 0 && entries[size - 1] >= entry) {
+                int found = Arrays.binarySearch(entries, 0, size, entry);
+                if (found >= 0) {
+                    return false;
+                }
+                position = -(found + 1);
+            }
+
+            if (size == capacity) {
+                // the oldest entry makes room
+                System.arraycopy(entries, 1, entries, 0, position - 1);
+                position--;
+            }
+            else {
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, Math.min(capacity, entries.length * 2));
+                }
+                System.arraycopy(entries, position, entries, position + 1, size - position);
+                size++;
+            }
+            entries[position] = entry;
+            return true;
+        }
+
+        /**
+         * Adds a newly posted message's entry, if this timeline is loaded and was built from its author. A push that
+         * arrives while the timeline is loading waits for the load, so it is neither lost nor applied to a timeline
+         * that could be missing the author.
+         * @param author_id - ID of the message's author
+         * @param entry - the message's entry (see entryOf)
+         * @return true if the entry was added
+         */
+        public synchronized boolean push(int author_id, long entry) {
+            // followees are kept in ascending order
+            if (!loaded || Arrays.binarySearch(followees, author_id) < 0) {
+                return false;
+            }
+            return add(entry);
+        }
+
+        /**
+         * @param entry - an entry to remove, e.g. of a message that no longer exists
+         */
+        public synchronized void remove(long entry) {
+            int position = Arrays.binarySearch(entries, 0, size, entry);
+            if (position >= 0) {
+                System.arraycopy(entries, position + 1, entries, position, size - position - 1);
+                size--;
+            }
+        }
+
+        /**
+         * @param limit - maximum number of entries
+         * @return the newest entries, newest first
+         */
+        public synchronized long[] newest(int limit) {
+            int count = Math.min(limit, size);
+            long[] page = new long[count];
+            for (int i = 0; i < count; i++) {
+                page[i] = entries[size - 1 - i];
+            }
+            return page;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        public synchronized boolean isLoaded() {
+            return loaded;
+        }
+
+        /**
+         * Marks the timeline as built from a set of followees
+         * @param followees - IDs of the accounts it was built from, in ascending order
+         */
+        public synchronized void markLoaded(int[] followees) {
+            this.followees = followees;
+            this.loaded = true;
+        }
+
+        public synchronized int[] getFollowees() {
+            return followees;
+        }
+
+        // true if the timeline is still loading (and could be loading the author's messages) or was built from the author
+        boolean mayBeBuiltFrom(int author_id) {
+            // markLoaded sets followees before loaded, so a loaded timeline's followees are already the ones it was built from
+            return !loaded || Arrays.binarySearch(followees, author_id) >= 0;
+        }
+
+        /**
+         * @param version - version of the celebrity set the caller is looking at
+         * @return the celebrity followees cached for that version, or null if they were computed for another one
+         */
+        public synchronized int[] getCelebrityFollowees(long version) {
+            return (version == celebrityVersion) ? celebrityFollowees : null;
+        }
+
+        public synchronized void setCelebrityFollowees(int[] celebrityFollowees, long version) {
+            this.celebrityFollowees = celebrityFollowees;
+            this.celebrityVersion = version;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges several individually sorted lists into one sorted list using a heap of list cursors.
+ *
+ * Each step pops the smallest head in O(log k) for k lists, and merging stops as soon as the limit is reached, so the
+ * cost depends on the number of results produced rather than on the total size of the inputs.
+ */
+public class KWayMerge {
+
+    private KWayMerge() {
+    }
+
+    /**
+     * @param sortedLists - lists each already sorted by the comparator
+     * @param order - the order shared by every list
+     * @param limit - maximum number of results (use Integer.MAX_VALUE for all)
+     * @return the first {@code limit} elements of the merged order
+     */
+    public static <T> List<T> merge(List<List<T>> sortedLists, Comparator<? super T> order, int limit) {
+        PriorityQueue<Cursor<T>> heads = new PriorityQueue<>(Math.max(1, sortedLists.size()),
+                (a, b) -> order.compare(a.head(), b.head()));
+        int total = 0;
+        for (List<T> list : sortedLists) {
+            if (!list.isEmpty()) {
+                heads.add(new Cursor<>(list));
+                total += list.size();
+            }
+        }
+
+        List<T> merged = new ArrayList<>(Math.min(total, limit));
+        while (!heads.isEmpty() && merged.size() < limit) {
+            Cursor<T> smallest = heads.poll();
+            merged.add(smallest.head());
+            if (smallest.advance()) {
+                heads.add(smallest);
+            }
+        }
+        return merged;
+    }
+
+    private static class Cursor<T> {
+        private final List<T> list;
+        private int position = 0;
+
+        Cursor(List<T> list) {
+            this.list = list;
+        }
+
+        T head() {
+            return list.get(position);
+        }
+
+        boolean advance() {
+            return ++position < list.size();
+        }
+    }
+}
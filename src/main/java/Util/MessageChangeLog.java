@@ -0,0 +1,235 @@
+package Util;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Message;
+import Model.MessageChange;
+import Model.MessageChangeSet;
+
+/**
+ * A bounded, in-memory log of message changes (inserts, updates, and deletions) used for incremental client sync.
+ *
+ * Every recorded change receives the next version number. Only the most recent {@code capacity} changes are kept in a
+ * ring buffer, so memory stays constant no matter how many writes happen. Clients asking for changes older than the
+ * retained window are told to resync instead.
+ *
+ * Writers record a change after their write committed, so two writes of the same message can arrive here in the
+ * opposite order of their commits. Each change therefore carries the row version it produced, and a change that is
+ * no newer than the last one retained for its message (or that follows its deletion) is dropped instead of recorded.
+ *
+ * The log lives in memory and starts over whenever the process does, so the versions handed to clients (cursors) carry
+ * the log's epoch in their high bits: a cursor issued by an earlier process, or by another log, is told to resync
+ * instead of being answered with deltas counted from a different start. Version 0 stays valid as "from the start".
+ */
+public class MessageChangeLog {
+    // a cursor is the epoch shifted past EPOCH_SHIFT bits of version, which keeps it a positive long
+    private static final int EPOCH_SHIFT = 40;
+    private static final int EPOCH_MASK = (1 << 22) - 1;
+    // starts at a random epoch so a restarted process picks another one, and counts up so logs in one process differ
+    private static final AtomicInteger NEXT_EPOCH = new AtomicInteger(new SecureRandom().nextInt());
+
+    private final MessageChange[] ring;
+    // row version each retained change produced, at the same index as the change
+    private final int[] rowVersions;
+    // ring index of the latest retained change of each message
+    private final IntIntHashMap latestIndexById;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // the version of the most recently recorded change (0 means nothing has been recorded yet), without the epoch
+    private long latestVersion = 0;
+    // the first version recorded since the log was created or last invalidated; older ring slots hold nothing
+    private long retainedFrom = 1;
+    // added to every version handed out, see EPOCH_SHIFT
+    private final long epochBase;
+
+    /**
+     * @param capacity - maximum number of changes retained before the oldest ones are overwritten
+     */
+    public MessageChangeLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.ring = new MessageChange[capacity];
+        this.rowVersions = new int[capacity];
+        this.latestIndexById = new IntIntHashMap(capacity);
+
+        int epoch = 0;
+        while (epoch == 0) {
+            epoch = NEXT_EPOCH.getAndIncrement() & EPOCH_MASK;
+        }
+        this.epochBase = (long) epoch << EPOCH_SHIFT;
+    }
+
+    /**
+     * Records an inserted message (at row version 1)
+     * @param msg - the fully populated message that was inserted
+     * @return false if a later change of the message was already recorded, so this one was dropped
+     */
+    public boolean recordInsert(Message msg) {
+        return record(MessageChange.INSERT, msg.getMessage_id(), msg, 1);
+    }
+
+    /**
+     * Records an updated message
+     * @param msg - the fully populated message after its update
+     * @param rowVersion - the row version the update produced
+     * @return false if this or a later version of the message (or its deletion) was already recorded, so this one was dropped
+     */
+    public boolean recordUpdate(Message msg, int rowVersion) {
+        return record(MessageChange.UPDATE, msg.getMessage_id(), msg, rowVersion);
+    }
+
+    /**
+     * Records a deleted message as a tombstone (only its message_id is kept)
+     * @param message_id - ID of the deleted message
+     * @param rowVersion - the row version the message had when it was deleted
+     * @return false if the deletion was already recorded, so this one was dropped
+     */
+    public boolean recordDelete(int message_id, int rowVersion) {
+        return record(MessageChange.DELETE, message_id, null, rowVersion);
+    }
+
+    /**
+     * Tells whether a copy of a message read from storage is older than a change retained for it, e.g. a row read from
+     * a replica that hasn't applied the latest update or the deletion yet
+     * @param message_id - ID of the message that was read
+     * @param rowVersion - version of the row that was read
+     * @return true if a newer version of the message, or its deletion, is retained
+     */
+    public boolean isSuperseded(int message_id, int rowVersion) {
+        lock.readLock().lock();
+        try {
+            int latestIndex = latestIndexById.get(message_id);
+            if (latestIndex == IntIntHashMap.ABSENT) {
+                return false;
+            }
+            // a deletion removes the version that was last written, so that version is gone too
+            return MessageChange.DELETE.equals(ring[latestIndex].getType()) || rowVersion < rowVersions[latestIndex];
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets every retained change and skips past the retained window, so every client is told to resync.
+     * Used when messages change without going through the write paths (e.g. a bulk import)
+     */
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(ring, null);
+            latestIndexById.clear();
+            // every version issued so far now falls before the retained window
+            latestVersion++;
+            retainedFrom = latestVersion + 1;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the version of the most recently recorded change (a cursor, including the log's epoch)
+     */
+    public long getLatestVersion() {
+        lock.readLock().lock();
+        try {
+            return epochBase + latestVersion;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Collects every change recorded after the given version.
+     * Several changes to the same message are collapsed into its latest one, so the cost is proportional to the number
+     * of messages that changed rather than to the size of the message table.
+     *
+     * @param since - the last version the client has already applied, or 0 for every change since the log started
+     * @return the changes since that version, or a change set flagged with resync if the version is no longer retained
+     * or was issued under another epoch
+     */
+    public MessageChangeSet changesSince(long since) {
+        lock.readLock().lock();
+        try {
+            long latest = epochBase + latestVersion;
+            // a cursor of another epoch counts from another start, so none of its deltas would be right
+            if (since != 0 && (since >>> EPOCH_SHIFT) != (epochBase >>> EPOCH_SHIFT)) {
+                return new MessageChangeSet(latest, true, new ArrayList<>());
+            }
+            long sinceVersion = (since == 0) ? 0 : since - epochBase;
+
+            // the oldest version still held in the ring buffer (invalidate empties every slot before retainedFrom)
+            long oldestRetained = Math.max(retainedFrom, latestVersion - ring.length + 1);
+
+            // versions from the future or older than the retained window can't be served
+            if (sinceVersion < oldestRetained - 1 || sinceVersion > latestVersion) {
+                return new MessageChangeSet(latest, true, new ArrayList<>());
+            }
+
+            // keeps only the newest change per message while preserving version order
+            Map<Integer, MessageChange> latestPerMessage = new LinkedHashMap<>();
+            for (long v = sinceVersion + 1; v <= latestVersion; v++) {
+                MessageChange change = ring[(int) (v % ring.length)];
+                if (change == null) {
+                    // only possible if the window check above is wrong; a resync is always a safe answer
+                    return new MessageChangeSet(latest, true, new ArrayList<>());
+                }
+                latestPerMessage.remove(change.getMessage_id());
+                latestPerMessage.put(change.getMessage_id(), change);
+            }
+
+            return new MessageChangeSet(latest, false, new ArrayList<>(latestPerMessage.values()));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // assigns the next version and stores the change, overwriting the oldest entry once the ring buffer is full.
+    // returns false (recording nothing) if the change is older than what is already retained for its message
+    private boolean record(String type, int message_id, Message msg, int rowVersion) {
+        // copies the message so later changes to the caller's object can't alter the logged state
+        Message snapshot = (msg == null) ? null
+                : new Message(msg.getMessage_id(), msg.getPosted_by(), msg.getMessage_text(), msg.getTime_posted_epoch());
+
+        lock.writeLock().lock();
+        try {
+            int latestIndex = latestIndexById.get(message_id);
+            if (latestIndex != IntIntHashMap.ABSENT) {
+                // nothing follows a deletion, and a deletion removes the version that was last written
+                boolean deleted = MessageChange.DELETE.equals(ring[latestIndex].getType());
+                boolean stale = type.equals(MessageChange.DELETE)
+                        ? rowVersion < rowVersions[latestIndex]
+                        : rowVersion <= rowVersions[latestIndex];
+                if (deleted || stale) {
+                    return false;
+                }
+            }
+
+            latestVersion++;
+            int index = (int) (latestVersion % ring.length);
+            // the change being overwritten may have been the latest one of its message
+            MessageChange overwritten = ring[index];
+            if (overwritten != null && latestIndexById.get(overwritten.getMessage_id()) == index) {
+                latestIndexById.remove(overwritten.getMessage_id());
+            }
+            ring[index] = new MessageChange(epochBase + latestVersion, type, message_id, snapshot);
+            rowVersions[index] = rowVersion;
+            latestIndexById.put(message_id, index);
+            return true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
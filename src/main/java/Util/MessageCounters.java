@@ -0,0 +1,189 @@
+package Util;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+import Model.MessageStats;
+
+/**
+ * In-memory message counters kept up to date by the message write paths, so statistics can be served in O(1)
+ * without counting rows or serializing messages.
+ *
+ * Counts use striped LongAdders so concurrent writers don't contend on a single value. First and last post times are
+ * tracked with CAS min/max updates. Deleting a message can't un-merge a min/max, so when a deleted message sits on a
+ * boundary that boundary is marked stale and recomputed (from the database, through the refresher) on the next read.
+ */
+public class MessageCounters {
+    private final ConcurrentHashMap<Integer, Counter> perAccount = new ConcurrentHashMap<>();
+    private final Counter global = new Counter();
+
+    // recomputes the exact statistics of a single account, used only when one of its boundaries went stale
+    private final IntFunction<MessageStats> refresher;
+
+    /**
+     * @param refresher - looks up the exact statistics of a single account (normally an aggregate query)
+     */
+    public MessageCounters(IntFunction<MessageStats> refresher) {
+        this.refresher = refresher;
+    }
+
+    /**
+     * Replaces every counter with the given per-account statistics (normally loaded from the database at startup)
+     * @param statsPerAccount - statistics for each account that has at least one message
+     */
+    public void rebuild(List<MessageStats> statsPerAccount) {
+        perAccount.clear();
+        global.reset();
+
+        for (MessageStats stats : statsPerAccount) {
+            Counter counter = counterFor(stats.getAccount_id());
+            counter.count.add(stats.getMessage_count());
+            global.count.add(stats.getMessage_count());
+            if (stats.getMessage_count() > 0) {
+                counter.mergeBounds(stats.getFirst_posted_epoch(), stats.getLast_posted_epoch());
+                global.mergeBounds(stats.getFirst_posted_epoch(), stats.getLast_posted_epoch());
+            }
+        }
+    }
+
+    /**
+     * Counts a newly inserted message
+     * @param posted_by - account that posted the message
+     * @param time_posted_epoch - post time of the message
+     */
+    public void onInsert(int posted_by, long time_posted_epoch) {
+        Counter counter = counterFor(posted_by);
+        counter.count.increment();
+        counter.mergeBounds(time_posted_epoch, time_posted_epoch);
+
+        global.count.increment();
+        global.mergeBounds(time_posted_epoch, time_posted_epoch);
+    }
+
+    /**
+     * Uncounts a deleted message
+     * @param posted_by - account that posted the message
+     * @param time_posted_epoch - post time of the message
+     */
+    public void onDelete(int posted_by, long time_posted_epoch) {
+        Counter counter = counterFor(posted_by);
+        counter.count.decrement();
+        counter.invalidateBoundary(time_posted_epoch);
+
+        global.count.decrement();
+        global.invalidateBoundary(time_posted_epoch);
+    }
+
+    /**
+     * @param account_id - account whose statistics are requested
+     * @return message count and first/last post time of the account (count 0 if it never posted)
+     */
+    public MessageStats statsFor(int account_id) {
+        Counter counter = perAccount.get(account_id);
+        if (counter == null) {
+            return new MessageStats(account_id, 0, null, null);
+        }
+
+        if (counter.stale) {
+            refreshAccount(account_id, counter);
+        }
+        return counter.toStats(account_id);
+    }
+
+    /**
+     * @return message count and first/last post time over every message
+     */
+    public MessageStats globalStats() {
+        if (global.stale) {
+            refreshGlobal();
+        }
+        return global.toStats(null);
+    }
+
+    private Counter counterFor(int account_id) {
+        return perAccount.computeIfAbsent(account_id, id -> new Counter());
+    }
+
+    // reloads an account's boundaries from the refresher. inserts racing with the refresh still merge into the bounds
+    private void refreshAccount(int account_id, Counter counter) {
+        synchronized (counter) {
+            if (!counter.stale) {
+                return;
+            }
+            counter.resetBounds();
+            counter.stale = false;
+
+            MessageStats exact = refresher.apply(account_id);
+            if (exact != null && exact.getMessage_count() > 0) {
+                counter.mergeBounds(exact.getFirst_posted_epoch(), exact.getLast_posted_epoch());
+            }
+        }
+    }
+
+    // the global boundaries are the min/max over every account's boundaries, so no database access is needed
+    private void refreshGlobal() {
+        synchronized (global) {
+            if (!global.stale) {
+                return;
+            }
+            global.resetBounds();
+            global.stale = false;
+
+            perAccount.forEach((account_id, counter) -> {
+                if (counter.stale) {
+                    refreshAccount(account_id, counter);
+                }
+                if (counter.count.sum() > 0) {
+                    global.mergeBounds(counter.first.get(), counter.last.get());
+                }
+            });
+        }
+    }
+
+    /**
+     * Count and boundaries of a set of messages
+     */
+    private static class Counter {
+        final LongAdder count = new LongAdder();
+        final AtomicLong first = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong last = new AtomicLong(Long.MIN_VALUE);
+        volatile boolean stale = false;
+
+        void mergeBounds(long firstCandidate, long lastCandidate) {
+            first.accumulateAndGet(firstCandidate, Math::min);
+            last.accumulateAndGet(lastCandidate, Math::max);
+        }
+
+        void invalidateBoundary(long time_posted_epoch) {
+            if (time_posted_epoch <= first.get() || time_posted_epoch >= last.get()) {
+                stale = true;
+            }
+        }
+
+        void resetBounds() {
+            first.set(Long.MAX_VALUE);
+            last.set(Long.MIN_VALUE);
+        }
+
+        void reset() {
+            count.reset();
+            resetBounds();
+            stale = false;
+        }
+
+        MessageStats toStats(Integer account_id) {
+            long messageCount = Math.max(0, count.sum());
+            long firstPosted = first.get();
+            long lastPosted = last.get();
+
+            // bounds that were never merged (or no messages left) are reported as null
+            if (messageCount == 0 || firstPosted == Long.MAX_VALUE || lastPosted == Long.MIN_VALUE) {
+                return new MessageStats(account_id, messageCount, null, null);
+            }
+            return new MessageStats(account_id, messageCount, firstPosted, lastPosted);
+        }
+    }
+}
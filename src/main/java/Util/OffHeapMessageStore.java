@@ -0,0 +1,456 @@
+package Util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Model.Message;
+import Model.VersionedMessage;
+
+/**
+ * A fixed-size, off-heap store of messages used to serve hot messages without keeping Message objects (and their
+ * Strings) on the heap.
+ *
+ * Each message occupies one slot of fixed-width columns in direct ByteBuffers: message_id, posted_by,
+ * time_posted_epoch, its row version, plus the offset and length of its UTF-8 text in a separate append-only text arena. Message ids
+ * are mapped to slots by a primitive IntIntHashMap, so the only heap objects are a handful of primitive arrays that the
+ * garbage collector never has to trace into. JSON is encoded straight from the stored bytes.
+ *
+ * When every slot is taken, or the live texts would no longer fit in the arena, the store evicts with the clock
+ * (second-chance) algorithm: a hand sweeps the slots in order, and a message read since the hand last passed it has its
+ * reference bit cleared and is skipped once, so recently read messages outlive ones that were only stored. When the
+ * arena runs out of room at its end, its live texts are compacted in place towards its start, so the store never holds
+ * more than the one arena of direct memory.
+ *
+ * Writers and cache fills can reach the store out of commit order, so a message is only ever replaced by a newer
+ * version of it. Removed messages leave a tombstone holding their last version (the most recent {@code capacity}
+ * tombstones are kept), which keeps a late put of a deleted message from bringing it back.
+ */
+public class OffHeapMessageStore {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ID_FIELD = "{\"message_id\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] POSTED_BY_FIELD = ",\"posted_by\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TEXT_FIELD = ",\"message_text\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIME_FIELD = "\",\"time_posted_epoch\":".getBytes(StandardCharsets.US_ASCII);
+    // texts are moved through a heap chunk this large during compaction
+    private static final int COMPACTION_CHUNK_BYTES = 8192;
+
+    private final int capacity;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // fixed-width columns, indexed by slot
+    private final ByteBuffer messageIds;
+    private final ByteBuffer postedBy;
+    private final ByteBuffer timePosted;
+    private final ByteBuffer versions;
+    private final ByteBuffer textOffsets;
+    private final ByteBuffer textLengths;
+
+    // UTF-8 text of every stored message, appended at arenaEnd
+    private final ByteBuffer arena;
+    private int arenaEnd = 0;
+    private long liveTextBytes = 0;
+
+    private final IntIntHashMap slotsById;
+    private final boolean[] occupied;
+    // set when a stored message is read, cleared when the clock hand passes over it. readers set it under the read lock,
+    // which is safe since they only ever write true, and the write lock orders it before the hand reads it
+    private final boolean[] referenced;
+    private final int[] freeSlots;
+    private int freeCount;
+    private int clockHand = 0;
+
+    // last version of each recently removed message, in a FIFO ring of their ids
+    private final IntIntHashMap tombstoneVersions;
+    private final int[] tombstoneIds;
+    private int tombstoneCount = 0;
+    private int tombstoneNext = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity - maximum number of messages held at once
+     * @param arenaBytes - size of the text arena in bytes
+     */
+    public OffHeapMessageStore(int capacity, int arenaBytes) {
+        this.capacity = capacity;
+        this.messageIds = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+        this.postedBy = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+        this.timePosted = ByteBuffer.allocateDirect(capacity * Long.BYTES);
+        this.versions = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+        this.textOffsets = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+        this.textLengths = ByteBuffer.allocateDirect(capacity * Integer.BYTES);
+        this.arena = ByteBuffer.allocateDirect(arenaBytes);
+
+        this.slotsById = new IntIntHashMap(capacity);
+        this.occupied = new boolean[capacity];
+        this.referenced = new boolean[capacity];
+        this.freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        this.freeCount = capacity;
+        this.tombstoneVersions = new IntIntHashMap(capacity);
+        this.tombstoneIds = new int[capacity];
+    }
+
+    /**
+     * Stores a message, replacing any stored message with the same id at an older version
+     * @param msg - fully populated message
+     * @param version - the message's row version
+     * @return false if the message isn't stored: the same or a newer version of it is already stored or was removed,
+     * or its text is larger than the whole arena
+     */
+    public boolean put(Message msg, int version) {
+        byte[] text = msg.getMessage_text().getBytes(StandardCharsets.UTF_8);
+
+        lock.writeLock().lock();
+        try {
+            int slot = slotsById.get(msg.getMessage_id());
+            int removedVersion = tombstoneVersions.get(msg.getMessage_id());
+            if (slot != IntIntHashMap.ABSENT && version <= versions.getInt(slot * Integer.BYTES)) {
+                return false;
+            }
+            if (removedVersion != IntIntHashMap.ABSENT && version <= removedVersion) {
+                return false;
+            }
+            if (slot != IntIntHashMap.ABSENT) {
+                release(slot);
+                freeSlots[freeCount++] = slot;
+            }
+
+            if (text.length > arena.capacity()) {
+                return false;
+            }
+            // evicts until both a slot and enough live arena space are available
+            while (freeCount == 0 || liveTextBytes + text.length > arena.capacity()) {
+                freeSlots[freeCount++] = evictNext();
+            }
+            reserveArena(text.length);
+            slot = freeSlots[--freeCount];
+
+            messageIds.putInt(slot * Integer.BYTES, msg.getMessage_id());
+            postedBy.putInt(slot * Integer.BYTES, msg.getPosted_by());
+            timePosted.putLong(slot * Long.BYTES, msg.getTime_posted_epoch());
+            versions.putInt(slot * Integer.BYTES, version);
+            textOffsets.putInt(slot * Integer.BYTES, arenaEnd);
+            textLengths.putInt(slot * Integer.BYTES, text.length);
+            arena.duplicate().position(arenaEnd).put(text);
+
+            arenaEnd += text.length;
+            liveTextBytes += text.length;
+            occupied[slot] = true;
+            referenced[slot] = false;
+            slotsById.put(msg.getMessage_id(), slot);
+            return true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a message if it is stored, and leaves a tombstone so that puts at or below the given version are rejected
+     * @param message_id - ID of the message to remove
+     * @param version - the last version the message had
+     */
+    public void remove(int message_id, int version) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotsById.get(message_id);
+            if (slot != IntIntHashMap.ABSENT) {
+                release(slot);
+                freeSlots[freeCount++] = slot;
+            }
+
+            // a message already tombstoned only has its version raised; otherwise the oldest tombstone makes room
+            int removedVersion = tombstoneVersions.get(message_id);
+            if (removedVersion == IntIntHashMap.ABSENT) {
+                if (tombstoneCount == tombstoneIds.length) {
+                    tombstoneVersions.remove(tombstoneIds[tombstoneNext]);
+                }
+                else {
+                    tombstoneCount++;
+                }
+                tombstoneIds[tombstoneNext] = message_id;
+                tombstoneNext = (tombstoneNext + 1) % tombstoneIds.length;
+            }
+            tombstoneVersions.put(message_id, Math.max(version, removedVersion));
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every stored message and tombstone
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slotsById.clear();
+            tombstoneVersions.clear();
+            tombstoneCount = 0;
+            tombstoneNext = 0;
+            for (int i = 0; i < capacity; i++) {
+                occupied[i] = false;
+                referenced[i] = false;
+                freeSlots[i] = capacity - 1 - i;
+            }
+            freeCount = capacity;
+            clockHand = 0;
+            arenaEnd = 0;
+            liveTextBytes = 0;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Encodes a stored message as JSON directly from its off-heap bytes, without materializing a Message or a String
+     * @param message_id - ID of the message to encode
+     * @return the UTF-8 JSON of the message, or null if it isn't stored
+     */
+    public byte[] getJson(int message_id) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream(128);
+        if (!writeJson(message_id, json)) {
+            return null;
+        }
+        return json.toByteArray();
+    }
+
+    /**
+     * Appends the JSON of a stored message to a buffer
+     * @param message_id - ID of the message to encode
+     * @param out - buffer receiving the UTF-8 JSON
+     * @return false if the message isn't stored (nothing is written)
+     */
+    public boolean writeJson(int message_id, ByteArrayOutputStream out) {
+        lock.readLock().lock();
+        try {
+            int slot = slotsById.get(message_id);
+            if (slot == IntIntHashMap.ABSENT) {
+                misses.increment();
+                return false;
+            }
+            hits.increment();
+            referenced[slot] = true;
+
+            out.write(ID_FIELD, 0, ID_FIELD.length);
+            writeNumber(out, messageIds.getInt(slot * Integer.BYTES));
+            out.write(POSTED_BY_FIELD, 0, POSTED_BY_FIELD.length);
+            writeNumber(out, postedBy.getInt(slot * Integer.BYTES));
+            out.write(TEXT_FIELD, 0, TEXT_FIELD.length);
+            writeEscapedText(out, textOffsets.getInt(slot * Integer.BYTES), textLengths.getInt(slot * Integer.BYTES));
+            out.write(TIME_FIELD, 0, TIME_FIELD.length);
+            writeNumber(out, timePosted.getLong(slot * Long.BYTES));
+            out.write('}');
+            return true;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Materializes a stored message, for callers that need an object rather than JSON
+     * @param message_id - ID of the message
+     * @return the message, or null if it isn't stored
+     */
+    public Message get(int message_id) {
+        VersionedMessage found = getVersioned(message_id);
+        return (found == null) ? null : found.getMessage();
+    }
+
+    /**
+     * Materializes a stored message along with its version
+     * @param message_id - ID of the message
+     * @return the message and its version, or null if it isn't stored
+     */
+    public VersionedMessage getVersioned(int message_id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotsById.get(message_id);
+            if (slot == IntIntHashMap.ABSENT) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            referenced[slot] = true;
+
+            byte[] text = new byte[textLengths.getInt(slot * Integer.BYTES)];
+            arena.duplicate().position(textOffsets.getInt(slot * Integer.BYTES)).get(text);
+            Message msg = new Message(messageIds.getInt(slot * Integer.BYTES), postedBy.getInt(slot * Integer.BYTES),
+                    new String(text, StandardCharsets.UTF_8), timePosted.getLong(slot * Long.BYTES));
+            return new VersionedMessage(msg, versions.getInt(slot * Integer.BYTES));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Looks up the version of a stored message without counting a hit or a miss
+     * @param message_id - ID of the message
+     * @return its version, or 0 if it isn't stored
+     */
+    public int getVersion(int message_id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotsById.get(message_id);
+            return (slot == IntIntHashMap.ABSENT) ? 0 : versions.getInt(slot * Integer.BYTES);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of messages stored
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotsById.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return hit, miss, and eviction counters plus current occupancy
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("hits", hits.sum());
+        metrics.put("misses", misses.sum());
+        metrics.put("evictions", evictions.sum());
+        metrics.put("messages", (long) size());
+        metrics.put("capacity", (long) capacity);
+        metrics.put("arena_bytes_used", (long) arenaEnd);
+        metrics.put("arena_bytes", (long) arena.capacity());
+        return metrics;
+    }
+
+    // must hold the write lock. frees a slot's text and id mapping (the slot itself is handed back by the caller)
+    private void release(int slot) {
+        slotsById.remove(messageIds.getInt(slot * Integer.BYTES));
+        liveTextBytes -= textLengths.getInt(slot * Integer.BYTES);
+        occupied[slot] = false;
+    }
+
+    // must hold the write lock. frees the next occupied, unreferenced slot in clock order and returns it, clearing the
+    // reference bits it passes over (so at most one full sweep is needed)
+    private int evictNext() {
+        while (!occupied[clockHand] || referenced[clockHand]) {
+            referenced[clockHand] = false;
+            clockHand = (clockHand + 1) % capacity;
+        }
+        int slot = clockHand;
+        clockHand = (clockHand + 1) % capacity;
+        release(slot);
+        evictions.increment();
+        return slot;
+    }
+
+    // must hold the write lock. makes room for the given number of text bytes by compacting the arena if needed.
+    // the caller guarantees the live texts plus the new one fit in the arena
+    private void reserveArena(int length) {
+        if (arenaEnd + length <= arena.capacity()) {
+            return;
+        }
+
+        // live slots ordered by text offset, each packed as offset << 32 | slot so a primitive sort orders them
+        long[] byOffset = new long[capacity - freeCount];
+        int live = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (occupied[slot]) {
+                byOffset[live++] = ((long) textOffsets.getInt(slot * Integer.BYTES) << 32) | slot;
+            }
+        }
+        Arrays.sort(byOffset, 0, live);
+
+        // slides each live text down to the end of the ones before it, dropping the space of removed and replaced texts.
+        // in ascending offset order a text only ever moves towards the start, and each chunk is read before any of its
+        // bytes are overwritten, so the arena is compacted in place
+        byte[] chunk = new byte[Math.min(COMPACTION_CHUNK_BYTES, arena.capacity())];
+        ByteBuffer reader = arena.duplicate();
+        ByteBuffer writer = arena.duplicate();
+        int end = 0;
+        for (int i = 0; i < live; i++) {
+            int offset = (int) (byOffset[i] >>> 32);
+            int slot = (int) byOffset[i];
+            int textLength = textLengths.getInt(slot * Integer.BYTES);
+            if (offset != end) {
+                for (int copied = 0; copied < textLength; copied += chunk.length) {
+                    int n = Math.min(chunk.length, textLength - copied);
+                    reader.position(offset + copied);
+                    reader.get(chunk, 0, n);
+                    writer.position(end + copied);
+                    writer.put(chunk, 0, n);
+                }
+                textOffsets.putInt(slot * Integer.BYTES, end);
+            }
+            end += textLength;
+        }
+        arenaEnd = end;
+    }
+
+    // copies UTF-8 text bytes, escaping only what JSON requires (multi-byte sequences pass through untouched)
+    private void writeEscapedText(ByteArrayOutputStream out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            int b = arena.get(i) & 0xFF;
+            if (b == '"' || b == '\\') {
+                out.write('\\');
+                out.write(b);
+            }
+            else if (b < 0x20) {
+                switch (b) {
+                    case '\n': out.write('\\'); out.write('n'); break;
+                    case '\r': out.write('\\'); out.write('r'); break;
+                    case '\t': out.write('\\'); out.write('t'); break;
+                    default:
+                        out.write('\\');
+                        out.write('u');
+                        out.write('0');
+                        out.write('0');
+                        out.write(HEX[b >> 4]);
+                        out.write(HEX[b & 0xF]);
+                }
+            }
+            else {
+                out.write(b);
+            }
+        }
+    }
+
+    // writes a decimal number without going through a String
+    private static void writeNumber(ByteArrayOutputStream out, long value) {
+        if (value == Long.MIN_VALUE) {
+            byte[] digits = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+            out.write(digits, 0, digits.length);
+            return;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+
+        byte[] digits = new byte[19];
+        int start = digits.length;
+        do {
+            digits[--start] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        out.write(digits, start, digits.length - start);
+    }
+}
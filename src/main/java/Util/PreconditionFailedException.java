@@ -0,0 +1,23 @@
+package Util;
+
+/**
+ * Thrown when a conditional write's expected version (If-Match) no longer matches the stored row. Mapped to status
+ * code 412 with the current version as the ETag.
+ */
+public class PreconditionFailedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final int currentVersion;
+
+    /**
+     * @param message_id - ID of the message that was to be written
+     * @param currentVersion - version the message has now
+     */
+    public PreconditionFailedException(int message_id, int currentVersion) {
+        super("message " + message_id + " is at version " + currentVersion);
+        this.currentVersion = currentVersion;
+    }
+
+    public int getCurrentVersion() {
+        return currentVersion;
+    }
+}
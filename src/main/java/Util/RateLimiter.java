@@ -0,0 +1,86 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket rate limiter keyed by a long (an account id, a packed IP address, ...).
+ *
+ * Each bucket is a single long using the GCRA (virtual scheduling) form of a token bucket: the value is the
+ * "theoretical arrival time" at which the bucket would be completely full again. Taking a token is one CAS that pushes
+ * that time forward by the refill interval, so no per-bucket lock or separate token/timestamp pair is needed. The
+ * buckets live in a ConcurrentLongLongHashMap, so a bucket costs two primitive slots rather than a boxed key and an
+ * AtomicLong. Buckets that have been full for longer than the idle timeout are removed by an opportunistic sweep, which
+ * checks each bucket again under its stripe's write lock: a bucket another thread is taking a token from is never removed.
+ */
+public class RateLimiter {
+    // keys seen within one idle timeout that the map holds before it first resizes
+    private static final int EXPECTED_KEYS = 4_096;
+
+    private final ConcurrentLongLongHashMap buckets = new ConcurrentLongLongHashMap(EXPECTED_KEYS);
+
+    // nanoseconds needed to refill one token
+    private final long refillIntervalNanos;
+    // how far ahead of now the theoretical arrival time may run, i.e. the burst size expressed as time
+    private final long burstToleranceNanos;
+    private final long idleTimeoutNanos;
+
+    // the last time idle buckets were swept, claimed with CAS so only one caller sweeps at a time
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param permitsPerSecond - sustained number of requests allowed per key
+     * @param burst - number of requests a key may make at once after being idle
+     * @param idleTimeoutMillis - how long a full bucket is kept before it is forgotten
+     */
+    public RateLimiter(double permitsPerSecond, int burst, long idleTimeoutMillis) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.refillIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstToleranceNanos = this.refillIntervalNanos * (burst - 1);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    /**
+     * Attempts to take one token from the key's bucket
+     * @param key - the rate limited key
+     * @return 0 if the request is allowed, otherwise the number of nanoseconds until a token becomes available
+     */
+    public long tryAcquire(long key) {
+        long now = System.nanoTime();
+        sweepIdleBuckets(now);
+
+        while (true) {
+            // a new (or just swept) key starts with a full bucket
+            long arrival = buckets.getOrInsert(key, now);
+            long base = Math.max(arrival, now);
+
+            // the bucket is empty if taking a token would push the arrival time past the burst tolerance
+            long waitNanos = base - burstToleranceNanos - now;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            // fails if another thread took a token first, or the sweep removed the bucket (it then starts out full again)
+            if (buckets.compareAndSet(key, arrival, base + refillIntervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return number of buckets currently tracked
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    // removes buckets that have been full for longer than the idle timeout, at most once per timeout period
+    private void sweepIdleBuckets(long now) {
+        long previous = lastSweep.get();
+        if (now - previous < idleTimeoutNanos || !lastSweep.compareAndSet(previous, now)) {
+            return;
+        }
+        buckets.removeValuesIf(arrival -> now - arrival > idleTimeoutNanos);
+    }
+}
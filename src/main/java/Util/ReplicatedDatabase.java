@@ -0,0 +1,446 @@
+package Util;
+
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Splits reads from writes: every write runs on the primary database, while selected reads run on local read replicas
+ * (separate H2 databases, in memory or on disk).
+ *
+ * Replicas are kept in sync by a replication stream. Right after a write succeeds on the primary, the DAO publishes a
+ * replica-safe statement (explicit ids, so replicas never generate their own). Each published statement gets the next
+ * log sequence number (LSN) and is queued for every replica, where an applier thread replays the queue in LSN order
+ * and advances the replica's applied LSN. Every write of a row (its insert included) commits and is published under a
+ * striped row lock, so writes of the same row reach the replicas in the order they committed on the primary.
+ *
+ * Read-your-writes is handled per client (RequestContext): the LSN of a client's latest write is remembered, and a read
+ * by that client only goes to a replica that has applied it. Depending on the mode, a lagging replica means reading
+ * from the primary ("primary"), waiting briefly for the replica ("wait"), or reading possibly stale data ("none").
+ *
+ * A batch that fails to apply is retried on its own a few times with a growing backoff. If it still fails, the replica
+ * can't catch up without diverging, so it is marked unhealthy: it stops receiving writes and reads no longer use it.
+ */
+public class ReplicatedDatabase {
+    public static final String READ_YOUR_WRITES_PRIMARY = "primary";
+    public static final String READ_YOUR_WRITES_WAIT = "wait";
+    public static final String READ_YOUR_WRITES_NONE = "none";
+
+    private static final int ROW_LOCK_STRIPES = 64;
+    private static final int APPLY_BATCH_SIZE = 256;
+    // attempts at applying one batch before its replica is given up on, and the backoff before the first retry (doubled
+    // after every further failure)
+    private static final int MAX_APPLY_ATTEMPTS = 5;
+    private static final long APPLY_RETRY_BACKOFF_MILLIS = 100;
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final String readYourWritesMode;
+    private final long maxWaitMillis;
+
+    private final AtomicLong lastLsn = new AtomicLong();
+    private final ConcurrentHashMap<String, Long> lastWriteLsnByClient = new ConcurrentHashMap<>();
+    private final ReentrantLock[] rowLocks = new ReentrantLock[ROW_LOCK_STRIPES];
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final DataSource readSource = new ReadRoutingDataSource();
+
+    /**
+     * Copies the primary's current data into every replica and starts their appliers.
+     * Must run before the primary receives writes, i.e. at startup.
+     *
+     * @param primary - DataSource of the primary database
+     * @param replicaSources - DataSources of the (empty) replica databases
+     * @param readYourWritesMode - "primary", "wait", or "none"
+     * @param maxWaitMillis - in "wait" mode, how long a read waits for a lagging replica before using the primary
+     */
+    public ReplicatedDatabase(DataSource primary, List<DataSource> replicaSources, String readYourWritesMode, long maxWaitMillis) {
+        this.primary = primary;
+        this.readYourWritesMode = readYourWritesMode;
+        this.maxWaitMillis = maxWaitMillis;
+        for (int i = 0; i < ROW_LOCK_STRIPES; i++) {
+            rowLocks[i] = new ReentrantLock();
+        }
+
+        for (int i = 0; i < replicaSources.size(); i++) {
+            copyPrimaryInto(replicaSources.get(i));
+            Replica replica = new Replica(i, replicaSources.get(i));
+            replicas.add(replica);
+            replica.applier.start();
+        }
+    }
+
+    /**
+     * Opens replicas named by a url pattern, e.g. "jdbc:h2:mem:replica%d;DB_CLOSE_DELAY=-1", in front of the main database
+     * @param replicaCount - number of replicas
+     * @param urlPattern - JDBC url with a %d placeholder for the replica index
+     * @return the replicated database
+     */
+    public static ReplicatedDatabase open(int replicaCount, String urlPattern) {
+        List<DataSource> replicaSources = new ArrayList<>();
+        for (int i = 0; i < replicaCount; i++) {
+            replicaSources.add(ConnectionUtil.createPool(String.format(urlPattern, i)));
+        }
+        return new ReplicatedDatabase(ConnectionUtil.getDataSource(),
+                replicaSources,
+                AppConfig.getString("socialmedia.replicas.readYourWrites", READ_YOUR_WRITES_PRIMARY),
+                AppConfig.getLong("socialmedia.replicas.maxWaitMillis", 50));
+    }
+
+    /**
+     * @return the DataSource writes must use
+     */
+    public DataSource writeSource() {
+        return primary;
+    }
+
+    /**
+     * @return a DataSource whose connections come from a replica that satisfies the current client's read-your-writes
+     * requirement, or from the primary when none does
+     */
+    public DataSource readSource() {
+        return readSource;
+    }
+
+    /**
+     * Publishes a write that already succeeded on the primary to every replica
+     * @param sql - statement replicas will execute, with explicit ids
+     * @param params - the statement's parameters
+     */
+    public void publish(String sql, Object... params) {
+        long lsn;
+        // the LSN is assigned and queued atomically so every replica queue stays in LSN order
+        synchronized (this) {
+            lsn = lastLsn.incrementAndGet();
+            ReplicatedWrite write = new ReplicatedWrite(lsn, sql, params);
+            for (Replica replica : replicas) {
+                // a replica given up on would only queue writes it never applies
+                if (replica.healthy) {
+                    replica.queue.add(write);
+                }
+            }
+        }
+
+        String clientId = RequestContext.currentClientId();
+        if (clientId != null) {
+            lastWriteLsnByClient.merge(clientId, lsn, Math::max);
+        }
+    }
+
+    /**
+     * Locks a row so that its write and publish happen atomically with respect to other writes of the same row
+     * @param table - table of the row
+     * @param key - primary key of the row
+     * @return the held lock, which the caller must unlock
+     */
+    public ReentrantLock lockRow(String table, int key) {
+        ReentrantLock lock = rowLocks[stripeOf(table, key)];
+        lock.lock();
+        return lock;
+    }
+
+    /**
+     * Locks several rows at once (e.g. a batch insert), taking their stripes in ascending order so that two callers
+     * locking overlapping rows can't deadlock each other
+     * @param table - table of the rows
+     * @param keys - primary keys of the rows
+     * @return the held locks (one per distinct stripe), which the caller must unlock
+     */
+    public List<ReentrantLock> lockRows(String table, Collection<Integer> keys) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (int key : keys) {
+            stripes.add(stripeOf(table, key));
+        }
+        List<ReentrantLock> held = new ArrayList<>(stripes.size());
+        for (int stripe : stripes) {
+            rowLocks[stripe].lock();
+            held.add(rowLocks[stripe]);
+        }
+        return held;
+    }
+
+    private static int stripeOf(String table, int key) {
+        return Math.floorMod(31 * table.hashCode() + key, ROW_LOCK_STRIPES);
+    }
+
+    /**
+     * @return replication lag (in unapplied writes) of each replica, and whether it is healthy (1) or was given up on (0)
+     */
+    public Map<String, Long> getLagMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        long last = lastLsn.get();
+        metrics.put("last_lsn", last);
+        for (Replica replica : replicas) {
+            metrics.put("replica_" + replica.index + "_lag", last - replica.appliedLsn);
+            metrics.put("replica_" + replica.index + "_healthy", replica.healthy ? 1L : 0L);
+        }
+        return metrics;
+    }
+
+    // picks the replica (or the primary) a read by the current client should use
+    private DataSource chooseReadSource() throws SQLException {
+        // round-robin over the healthy replicas; the primary serves every read once none is left
+        Replica replica = null;
+        for (int tried = 0; tried < replicas.size() && replica == null; tried++) {
+            Replica candidate = replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+            if (candidate.healthy) {
+                replica = candidate;
+            }
+        }
+        if (replica == null) {
+            return primary;
+        }
+
+        String clientId = RequestContext.currentClientId();
+        Long requiredLsn = (clientId == null) ? null : lastWriteLsnByClient.get(clientId);
+
+        if (requiredLsn == null || replica.appliedLsn >= requiredLsn || READ_YOUR_WRITES_NONE.equals(readYourWritesMode)) {
+            return replica.dataSource;
+        }
+        if (READ_YOUR_WRITES_WAIT.equals(readYourWritesMode) && replica.awaitApplied(requiredLsn, maxWaitMillis)) {
+            return replica.dataSource;
+        }
+        return primary;
+    }
+
+    // forgets client write positions every replica has already applied, so the map only holds recent writers
+    private void pruneClientPositions() {
+        long minApplied = Long.MAX_VALUE;
+        for (Replica replica : replicas) {
+            // reads never go to a replica given up on, so its position doesn't hold the others back
+            if (replica.healthy) {
+                minApplied = Math.min(minApplied, replica.appliedLsn);
+            }
+        }
+        long fullyApplied = minApplied;
+        lastWriteLsnByClient.values().removeIf(lsn -> lsn <= fullyApplied);
+    }
+
+    // copies every table of the primary into a replica by exporting a script and running it there
+    private void copyPrimaryInto(DataSource replica) {
+        try {
+            Path script = Files.createTempFile("replica-bootstrap", ".sql");
+            // SCRIPT and RUNSCRIPT only accept the file name as a literal
+            String fileName = "'" + script.toString().replace("'", "''") + "'";
+            try (Connection source = primary.getConnection(); Statement statement = source.createStatement()) {
+                statement.execute("SCRIPT DROP TO " + fileName);
+            }
+            try (Connection target = replica.getConnection(); Statement statement = target.createStatement()) {
+                statement.execute("RUNSCRIPT FROM " + fileName);
+            }
+            Files.deleteIfExists(script);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("couldn't bootstrap replica from primary", e);
+        }
+    }
+
+    /**
+     * A statement published to the replication stream
+     */
+    private static class ReplicatedWrite {
+        final long lsn;
+        final String sql;
+        final Object[] params;
+
+        ReplicatedWrite(long lsn, String sql, Object[] params) {
+            this.lsn = lsn;
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    /**
+     * One replica database and the thread applying the replication stream to it
+     */
+    private class Replica {
+        final int index;
+        final DataSource dataSource;
+        final LinkedBlockingQueue<ReplicatedWrite> queue = new LinkedBlockingQueue<>();
+        final Thread applier;
+        volatile long appliedLsn = 0;
+        // cleared for good once a batch can't be applied, see applyWithRetries
+        volatile boolean healthy = true;
+
+        Replica(int index, DataSource dataSource) {
+            this.index = index;
+            this.dataSource = dataSource;
+            this.applier = new Thread(this::applyForever, "replica-applier-" + index);
+            this.applier.setDaemon(true);
+        }
+
+        // blocks until the replica has applied the given LSN or the wait runs out
+        boolean awaitApplied(long lsn, long waitMillis) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+            synchronized (this) {
+                while (appliedLsn < lsn) {
+                    if (!healthy) {
+                        return false;
+                    }
+                    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        return false;
+                    }
+                    try {
+                        wait(remainingMillis);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        // drains the queue in batches, applying each batch in one transaction, until the replica is given up on
+        private void applyForever() {
+            List<ReplicatedWrite> batch = new ArrayList<>(APPLY_BATCH_SIZE);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, APPLY_BATCH_SIZE - 1);
+                    if (!applyWithRetries(batch)) {
+                        giveUp();
+                        return;
+                    }
+
+                    synchronized (this) {
+                        appliedLsn = batch.get(batch.size() - 1).lsn;
+                        notifyAll();
+                    }
+                    batch.clear();
+                    pruneClientPositions();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        // retries the same batch on its own (no new writes are taken meanwhile) with a doubling backoff. skipping a
+        // batch would silently diverge the replica, so after the last attempt the caller gives the replica up instead
+        private boolean applyWithRetries(List<ReplicatedWrite> batch) throws InterruptedException {
+            long backoffMillis = APPLY_RETRY_BACKOFF_MILLIS;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    apply(batch);
+                    return true;
+                }
+                catch (SQLException e) {
+                    if (attempt == MAX_APPLY_ATTEMPTS) {
+                        System.out.println("replica " + index + " couldn't apply LSN " + batch.get(0).lsn + " to "
+                                + batch.get(batch.size() - 1).lsn + " after " + attempt + " attempts, giving it up: " + e.getMessage());
+                        return false;
+                    }
+                    System.out.println("replica " + index + " apply failed, retrying in " + backoffMillis + " ms: " + e.getMessage());
+                    Thread.sleep(backoffMillis);
+                    backoffMillis *= 2;
+                }
+            }
+        }
+
+        // stops routing reads here and wakes readers waiting on this replica, so they move on to the primary
+        private void giveUp() {
+            synchronized (this) {
+                healthy = false;
+                notifyAll();
+            }
+            queue.clear();
+            pruneClientPositions();
+        }
+
+        private void apply(List<ReplicatedWrite> batch) throws SQLException {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    for (ReplicatedWrite write : batch) {
+                        try (PreparedStatement ps = connection.prepareStatement(write.sql)) {
+                            for (int i = 0; i < write.params.length; i++) {
+                                ps.setObject(i + 1, write.params[i]);
+                            }
+                            ps.executeUpdate();
+                        }
+                    }
+                    connection.commit();
+                }
+                catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * DataSource handed to DAOs for reads, choosing the replica (or primary) per connection
+     */
+    private class ReadRoutingDataSource implements DataSource {
+        @Override
+        public Connection getConnection() throws SQLException {
+            return chooseReadSource().getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return chooseReadSource().getConnection(username, password);
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return primary.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            primary.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            primary.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return primary.getLoginTimeout();
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return primary.getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            if (iface.isInstance(this)) {
+                return iface.cast(this);
+            }
+            throw new SQLException("not a wrapper of " + iface.getName());
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) {
+            return iface.isInstance(this);
+        }
+    }
+}
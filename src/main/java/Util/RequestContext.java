@@ -0,0 +1,153 @@
+package Util;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request state that lower layers need but that isn't part of any method's inputs, such as which client sent the
+ * request and by when it must be answered. The controller opens a context when a request starts and closes it when the
+ * request completes; Javalin runs each request's handlers on one thread, so the context is kept in a ThreadLocal.
+ *
+ * A deadline, once set, bounds every statement the DAOs run for the request (applyDeadline) and is checked before each
+ * one, so a request that has run out of budget fails with a DeadlineExceededException instead of holding a thread
+ * and a connection.
+ */
+public class RequestContext {
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+    // SQLState of a statement cancelled by its query timeout
+    private static final String STATEMENT_CANCELED = "57014";
+
+    private final String clientId;
+    private final long startNanos;
+    private boolean hasDeadline = false;
+    private long deadlineNanos;
+
+    private RequestContext(String clientId) {
+        this.clientId = clientId;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts a context for the request being handled on this thread
+     * @param clientId - identifies the requesting client (X-Client-Id header, or its IP address)
+     */
+    public static void open(String clientId) {
+        CURRENT.set(new RequestContext(clientId));
+    }
+
+    /**
+     * Ends the context of the request being handled on this thread
+     */
+    public static void close() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return the context of the request being handled on this thread, or null outside of a request
+     */
+    public static RequestContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Carries the context of the request being handled on this thread over to a task that will run on another thread
+     * (e.g. a pool worker), so the task's statements are bound by the same client and deadline
+     * @param task - work done on behalf of the current request
+     * @return a task that runs with this thread's context installed, and leaves the worker's own context as it was
+     */
+    public static <T> Callable<T> bind(Callable<T> task) {
+        RequestContext context = CURRENT.get();
+        return () -> {
+            RequestContext previous = CURRENT.get();
+            CURRENT.set(context);
+            try {
+                return task.call();
+            }
+            finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                }
+                else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the client of the request being handled on this thread, or null outside of a request
+     */
+    public static String currentClientId() {
+        RequestContext context = CURRENT.get();
+        return (context == null) ? null : context.clientId;
+    }
+
+    /**
+     * Gives the request being handled on this thread a deadline, counted from when its context was opened
+     * @param budgetMillis - how long the whole request may take, or 0 for no deadline
+     */
+    public static void setDeadline(long budgetMillis) {
+        RequestContext context = CURRENT.get();
+        if (context != null) {
+            context.hasDeadline = budgetMillis > 0;
+            context.deadlineNanos = context.startNanos + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        }
+    }
+
+    /**
+     * @return milliseconds left before the deadline of the request being handled on this thread (at most 0 once it has
+     * passed), or Long.MAX_VALUE if it has no deadline
+     */
+    public static long remainingMillis() {
+        RequestContext context = CURRENT.get();
+        if (context == null || !context.hasDeadline) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(context.deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * @throws DeadlineExceededException if the request being handled on this thread is past its deadline
+     */
+    public static void checkDeadline() {
+        if (remainingMillis() <= 0) {
+            throw new DeadlineExceededException("request deadline exceeded");
+        }
+    }
+
+    /**
+     * Bounds a statement by what is left of the current request's deadline (JDBC timeouts are whole seconds, so the
+     * remainder is rounded up; the deadline itself is checked again when a cancelled statement is reported)
+     * @param statement - a statement about to be executed
+     * @throws DeadlineExceededException if the deadline has already passed
+     * @throws SQLException if the driver rejects the timeout
+     */
+    public static void applyDeadline(Statement statement) throws SQLException {
+        long remaining = remainingMillis();
+        if (remaining == Long.MAX_VALUE) {
+            return;
+        }
+        if (remaining <= 0) {
+            throw new DeadlineExceededException("request deadline exceeded");
+        }
+        statement.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, (remaining + 999) / 1000));
+    }
+
+    /**
+     * Turns a statement cancelled by its query timeout into a DeadlineExceededException, so it isn't mistaken for an
+     * ordinary failed query (which the DAOs report as null, false, or an empty result)
+     * @param e - an exception raised by a statement of the current request
+     * @throws DeadlineExceededException if e is a query timeout and the request had a deadline
+     */
+    public static void rethrowIfDeadlineExceeded(SQLException e) {
+        if (remainingMillis() != Long.MAX_VALUE && STATEMENT_CANCELED.equals(e.getSQLState())) {
+            throw new DeadlineExceededException("request deadline exceeded while querying", e);
+        }
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+}
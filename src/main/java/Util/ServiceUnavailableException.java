@@ -0,0 +1,17 @@
+package Util;
+
+/**
+ * Thrown when a request can't be served right now because the server is overloaded or a dependency is stuck.
+ * Mapped to status code 503.
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+
+    public ServiceUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,111 @@
+package Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent calls: while a call for a key is in flight, every other caller asking for the same key
+ * waits for that call and receives its result instead of running the same query again.
+ *
+ * Nothing is cached once the call completes, so results are never older than the in-flight call. Waiters give up after
+ * a timeout, and a flight whose waiters time out is forgotten so that one stuck query can't stall later callers too.
+ *
+ * @param <K> the key identifying identical calls
+ * @param <V> the result type
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * @param timeoutMillis - how long a caller waits for another caller's in-flight call before giving up
+     */
+    public SingleFlight(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Runs the loader for the key, or joins the call already in flight for it
+     * @param key - identifies identical calls
+     * @param loader - performs the actual call, only run by the first caller for a key
+     * @return the loader's result
+     * @throws ServiceUnavailableException if the in-flight call didn't complete within the timeout
+     * @throws DeadlineExceededException if the current request's deadline passed while waiting on the in-flight call
+     */
+    public V execute(K key, Supplier<V> loader) {
+        calls.increment();
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+
+        // no call in flight for this key, so this caller runs it and shares the result
+        if (existing == null) {
+            try {
+                V result = loader.get();
+                flight.complete(result);
+                return result;
+            }
+            catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            }
+            finally {
+                inFlight.remove(key, flight);
+            }
+        }
+
+        coalesced.increment();
+        // a waiter never waits past its own request's deadline
+        long waitMillis = Math.min(timeoutMillis, RequestContext.remainingMillis());
+        try {
+            return existing.get(waitMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            if (waitMillis < timeoutMillis) {
+                throw new DeadlineExceededException("request deadline exceeded waiting for in-flight call for " + key, e);
+            }
+            timeouts.increment();
+            // forgets the stuck flight so the next caller starts a fresh one instead of waiting on it
+            inFlight.remove(key, existing);
+            throw new ServiceUnavailableException("timed out waiting for in-flight call for " + key, e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // the caller that ran the call ran out of its own deadline, which says nothing about this one's, so it retries
+            if (cause instanceof DeadlineExceededException && RequestContext.remainingMillis() > 0) {
+                return execute(key, loader);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("interrupted waiting for in-flight call for " + key, e);
+        }
+    }
+
+    /**
+     * @return counters describing how many calls were made, coalesced onto another caller's call, or timed out
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("calls", calls.sum());
+        metrics.put("coalesced", coalesced.sum());
+        metrics.put("timeouts", timeouts.sum());
+        metrics.put("in_flight", (long) inFlight.size());
+        return metrics;
+    }
+}
@@ -0,0 +1,176 @@
+package Util;
+
+/**
+ * Where and how the main H2 database keeps its data, turned into a JDBC url.
+ *
+ * A named preset ("socialmedia.db.preset") supplies a starting point, and each individual setting overrides it:
+ * <ul>
+ * <li>socialmedia.db.mode - "file" (default), "memory", or "tcp" (an H2 server at socialmedia.db.tcpAddress)</li>
+ * <li>socialmedia.db.path - database file of the file and tcp modes, "./h2/db" by default</li>
+ * <li>socialmedia.db.cacheSizeKb - MVStore page cache size</li>
+ * <li>socialmedia.db.writeDelayMillis - how long committed changes may wait before they are written to disk</li>
+ * <li>socialmedia.db.lockTimeoutMillis - how long a statement waits for a row lock</li>
+ * <li>socialmedia.db.compress - whether the MVStore compresses its pages</li>
+ * </ul>
+ * Settings left unset are left out of the url, so H2 applies its own defaults. With nothing configured at all the url is
+ * the original "jdbc:h2:./h2/db;".
+ */
+public class StorageSettings {
+    public static final String FILE = "file";
+    public static final String MEMORY = "memory";
+    public static final String TCP = "tcp";
+
+    public static final String DURABLE = "durable";
+    public static final String FAST_INGEST = "fast-ingest";
+    public static final String EPHEMERAL = "ephemeral";
+
+    private static final String DEFAULT_PATH = "./h2/db";
+    private static final String DEFAULT_TCP_ADDRESS = "localhost:9092";
+    private static final String MEMORY_NAME = "socialmedia";
+
+    private final String mode;
+    private final String path;
+    private final String tcpAddress;
+    // null when left to H2's default
+    private final Integer cacheSizeKb;
+    private final Integer writeDelayMillis;
+    private final Integer lockTimeoutMillis;
+    private final Boolean compress;
+
+    /**
+     * @param mode - FILE, MEMORY, or TCP
+     * @param path - database file of the file and tcp modes
+     * @param tcpAddress - host:port of the H2 server of the tcp mode
+     * @param cacheSizeKb - MVStore page cache size, or null for H2's default
+     * @param writeDelayMillis - maximum delay before committed changes are written, or null for H2's default
+     * @param lockTimeoutMillis - row lock wait, or null for H2's default
+     * @param compress - page compression, or null for H2's default (off)
+     */
+    public StorageSettings(String mode, String path, String tcpAddress, Integer cacheSizeKb, Integer writeDelayMillis,
+            Integer lockTimeoutMillis, Boolean compress) {
+        if (!mode.equals(FILE) && !mode.equals(MEMORY) && !mode.equals(TCP)) {
+            throw new IllegalArgumentException("unknown storage mode " + mode);
+        }
+        this.mode = mode;
+        this.path = path;
+        this.tcpAddress = tcpAddress;
+        this.cacheSizeKb = cacheSizeKb;
+        this.writeDelayMillis = writeDelayMillis;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+        this.compress = compress;
+    }
+
+    /**
+     * Looks up a named preset:
+     * <ul>
+     * <li>"durable" - file database, every commit written to disk before it returns, 64 MB cache</li>
+     * <li>"fast-ingest" - file database, commits written in batches at most 2 s apart (a crash can lose the last
+     * ones), 256 MB cache, for bulk loads</li>
+     * <li>"ephemeral" - in-memory database that lives as long as the process, for throwaway nodes and tests (it starts
+     * out empty, with its schema created by ConnectionUtil.createPool)</li>
+     * </ul>
+     * @param name - name of the preset
+     * @return the preset's settings
+     * @throws IllegalArgumentException if there is no preset of that name
+     */
+    public static StorageSettings preset(String name) {
+        switch (name.toLowerCase()) {
+            case DURABLE:
+                return new StorageSettings(FILE, DEFAULT_PATH, DEFAULT_TCP_ADDRESS, 64 * 1024, 0, 10_000, false);
+            case FAST_INGEST:
+                return new StorageSettings(FILE, DEFAULT_PATH, DEFAULT_TCP_ADDRESS, 256 * 1024, 2_000, 10_000, false);
+            case EPHEMERAL:
+                return new StorageSettings(MEMORY, DEFAULT_PATH, DEFAULT_TCP_ADDRESS, 64 * 1024, null, 1_000, false);
+            default:
+                throw new IllegalArgumentException("unknown storage preset " + name);
+        }
+    }
+
+    /**
+     * @return the configured preset (if any) with the individually configured settings applied on top
+     */
+    public static StorageSettings fromConfig() {
+        String presetName = AppConfig.getString("socialmedia.db.preset", null);
+        StorageSettings base = (presetName == null)
+                ? new StorageSettings(FILE, DEFAULT_PATH, DEFAULT_TCP_ADDRESS, null, null, null, null)
+                : preset(presetName);
+
+        return new StorageSettings(
+                AppConfig.getString("socialmedia.db.mode", base.mode).toLowerCase(),
+                AppConfig.getString("socialmedia.db.path", base.path),
+                AppConfig.getString("socialmedia.db.tcpAddress", base.tcpAddress),
+                getInteger("socialmedia.db.cacheSizeKb", base.cacheSizeKb),
+                getInteger("socialmedia.db.writeDelayMillis", base.writeDelayMillis),
+                getInteger("socialmedia.db.lockTimeoutMillis", base.lockTimeoutMillis),
+                getBoolean("socialmedia.db.compress", base.compress));
+    }
+
+    /**
+     * @param path - database file to use instead, e.g. a scratch file for a benchmark
+     * @return the same settings over another database file
+     */
+    public StorageSettings withPath(String path) {
+        return new StorageSettings(this.mode, path, this.tcpAddress, this.cacheSizeKb, this.writeDelayMillis,
+                this.lockTimeoutMillis, this.compress);
+    }
+
+    /**
+     * @return the JDBC url opening the database with these settings
+     */
+    public String toUrl() {
+        StringBuilder url = new StringBuilder("jdbc:h2:");
+        switch (this.mode) {
+            case MEMORY:
+                // kept alive between connections, or the data would vanish whenever the pool closed its last one
+                url.append("mem:").append(MEMORY_NAME).append(";DB_CLOSE_DELAY=-1;");
+                break;
+            case TCP:
+                url.append("tcp://").append(this.tcpAddress).append('/').append(this.path).append(';');
+                break;
+            default:
+                url.append(this.path).append(';');
+        }
+        if (this.cacheSizeKb != null) {
+            url.append("CACHE_SIZE=").append(this.cacheSizeKb).append(';');
+        }
+        if (this.writeDelayMillis != null) {
+            url.append("WRITE_DELAY=").append(this.writeDelayMillis).append(';');
+        }
+        if (this.lockTimeoutMillis != null) {
+            url.append("LOCK_TIMEOUT=").append(this.lockTimeoutMillis).append(';');
+        }
+        // compression only applies to an MVStore file
+        if (this.compress != null && this.compress && !this.mode.equals(MEMORY)) {
+            url.append("COMPRESS=TRUE;");
+        }
+        return url.toString();
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    @Override
+    public String toString() {
+        return toUrl();
+    }
+
+    // an integer setting, or the fallback (which may be null) when it isn't set or isn't a number
+    private static Integer getInteger(String name, Integer fallback) {
+        String value = AppConfig.getString(name, null);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static Boolean getBoolean(String name, Boolean fallback) {
+        String value = AppConfig.getString(name, null);
+        return (value == null) ? fallback : Boolean.valueOf(value);
+    }
+}
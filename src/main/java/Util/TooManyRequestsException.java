@@ -0,0 +1,21 @@
+package Util;
+
+/**
+ * Thrown when a caller has exceeded its request rate. Mapped to status code 429 with a Retry-After header.
+ */
+public class TooManyRequestsException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final long retryAfterSeconds;
+
+    /**
+     * @param retryAfterSeconds - whole seconds the caller should wait before retrying (at least 1)
+     */
+    public TooManyRequestsException(long retryAfterSeconds) {
+        super("rate limit exceeded, retry after " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,402 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Finds the most viewed message ids over a sliding time window, in memory of a fixed size however many distinct ids
+ * are viewed.
+ *
+ * The window is a ring of buckets, each covering an equal slice of time. A bucket holds a count-min sketch, which
+ * estimates any id's views in that slice (never under, and over by little when the sketch is wide enough), and a
+ * Space-Saving summary, which keeps the ids most likely to be heavy hitters in that slice. An id's views over the window
+ * are the sum of its sketch estimates across the live buckets, and the candidates for the top are the ids the summaries
+ * kept, so an id that was heavy in any slice is ranked by its views in all of them. The oldest bucket is reset when
+ * its slice comes around again, which slides the window forward.
+ *
+ * Views are recorded under the lock of the current bucket only. The top is precomputed: it is rebuilt at most once per
+ * refresh interval, by the first reader to find it stale, and every other reader is served the last one built.
+ */
+public class TrendingTracker {
+    // seeds of the sketch rows, so each row hashes an id differently
+    private static final int[] ROW_SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F, 0x165667B1, 0xD3A2646C, 0xFD7046C5, 0xB55A4F09};
+    // time of a top never built, and slice of a bucket never used
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final long bucketMillis;
+    private final long refreshMillis;
+    private final int topSize;
+    private final Bucket[] buckets;
+    private final LongSupplier clock;
+
+    private volatile Top top = new Top(new int[0], new long[0], NEVER);
+    // the last time the top was rebuilt, claimed with CAS so only one reader rebuilds at a time
+    private final AtomicLong lastRefresh = new AtomicLong(NEVER);
+    private final AtomicLong views = new AtomicLong();
+
+    /**
+     * @param windowMillis - length of the sliding window
+     * @param bucketCount - number of slices the window is divided into (more slide it more smoothly)
+     * @param sketchWidth - counters per sketch row, rounded up to a power of two (wider overestimates less)
+     * @param sketchDepth - sketch rows, at most 8 (deeper overestimates less often)
+     * @param candidates - ids each bucket's Space-Saving summary keeps
+     * @param topSize - number of ids in the precomputed top
+     * @param refreshMillis - how long a precomputed top is served before it is rebuilt
+     */
+    public TrendingTracker(long windowMillis, int bucketCount, int sketchWidth, int sketchDepth, int candidates,
+            int topSize, long refreshMillis) {
+        this(windowMillis, bucketCount, sketchWidth, sketchDepth, candidates, topSize, refreshMillis, System::currentTimeMillis);
+    }
+
+    // constructor with a custom clock, so tests can move time forward
+    public TrendingTracker(long windowMillis, int bucketCount, int sketchWidth, int sketchDepth, int candidates,
+            int topSize, long refreshMillis, LongSupplier clock) {
+        if (bucketCount <= 0 || windowMillis < bucketCount || sketchWidth <= 0 || candidates <= 0 || topSize <= 0
+                || sketchDepth <= 0 || sketchDepth > ROW_SEEDS.length) {
+            throw new IllegalArgumentException("invalid trending tracker settings");
+        }
+        this.bucketMillis = windowMillis / bucketCount;
+        this.refreshMillis = refreshMillis;
+        this.topSize = topSize;
+        this.clock = clock;
+
+        int width = Integer.highestOneBit(Math.max(2, sketchWidth) - 1) << 1;
+        this.buckets = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            this.buckets[i] = new Bucket(sketchDepth, width, candidates);
+        }
+    }
+
+    /**
+     * Records one view of a message
+     * @param message_id - ID of the viewed message
+     */
+    public void recordView(int message_id) {
+        long slice = clock.getAsLong() / bucketMillis;
+        Bucket bucket = buckets[(int) Math.floorMod(slice, (long) buckets.length)];
+        synchronized (bucket) {
+            bucket.advanceTo(slice);
+            bucket.add(message_id);
+        }
+        views.incrementAndGet();
+    }
+
+    /**
+     * Retrieves the precomputed top, rebuilding it first if it is older than the refresh interval
+     * @param limit - maximum number of ids (at most the top size)
+     * @return pairs of {message_id, estimated views in the window}, most viewed first
+     */
+    public long[][] top(int limit) {
+        long now = clock.getAsLong();
+        long last = lastRefresh.get();
+        if ((last == NEVER || now - last >= refreshMillis) && lastRefresh.compareAndSet(last, now)) {
+            top = computeTop(now);
+        }
+
+        Top current = top;
+        int count = Math.min(limit, current.ids.length);
+        long[][] ranked = new long[count][];
+        for (int i = 0; i < count; i++) {
+            ranked[i] = new long[]{current.ids[i], current.views[i]};
+        }
+        return ranked;
+    }
+
+    /**
+     * Forgets every view, e.g. after the messages were replaced
+     */
+    public void clear() {
+        for (Bucket bucket : buckets) {
+            synchronized (bucket) {
+                bucket.reset(NEVER);
+            }
+        }
+        top = new Top(new int[0], new long[0], NEVER);
+        lastRefresh.set(NEVER);
+    }
+
+    /**
+     * @return the maximum number of ids top() returns
+     */
+    public int getTopSize() {
+        return topSize;
+    }
+
+    /**
+     * @return views recorded, and the size and age of the precomputed top
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        Top current = top;
+        metrics.put("views", views.get());
+        metrics.put("top_size", (long) current.ids.length);
+        metrics.put("top_age_millis", (current.builtAt == NEVER) ? -1 : clock.getAsLong() - current.builtAt);
+        return metrics;
+    }
+
+    // sums every candidate's estimates over the buckets still inside the window and keeps the highest
+    private Top computeTop(long now) {
+        long oldestLiveSlice = now / bucketMillis - buckets.length + 1;
+
+        // candidates of every live bucket, each bucket copied under its own lock
+        IntIntHashMap candidateIndex = new IntIntHashMap(buckets.length * buckets[0].capacity);
+        int[] candidates = new int[0];
+        int candidateCount = 0;
+        for (Bucket bucket : buckets) {
+            int[] kept;
+            synchronized (bucket) {
+                if (bucket.slice < oldestLiveSlice) {
+                    continue;
+                }
+                kept = bucket.candidates();
+            }
+            for (int id : kept) {
+                if (candidateIndex.get(id) == IntIntHashMap.ABSENT) {
+                    candidateIndex.put(id, candidateCount);
+                    if (candidateCount == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, Math.max(16, candidateCount * 2));
+                    }
+                    candidates[candidateCount++] = id;
+                }
+            }
+        }
+
+        long[] estimates = new long[candidateCount];
+        for (Bucket bucket : buckets) {
+            synchronized (bucket) {
+                if (bucket.slice < oldestLiveSlice) {
+                    continue;
+                }
+                for (int i = 0; i < candidateCount; i++) {
+                    estimates[i] += bucket.estimate(candidates[i]);
+                }
+            }
+        }
+
+        // a min-heap of candidate positions keeps the topSize highest estimates
+        int[] heap = new int[Math.min(topSize, candidateCount)];
+        int heapSize = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            if (estimates[i] == 0) {
+                continue;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, estimates, candidates);
+            }
+            else if (ranksAbove(i, heap[0], estimates, candidates)) {
+                heap[0] = i;
+                siftDown(heap, heapSize, 0, estimates, candidates);
+            }
+        }
+
+        // popping the heap yields the top from lowest to highest
+        int[] ids = new int[heapSize];
+        long[] counts = new long[heapSize];
+        for (int n = heapSize - 1; n >= 0; n--) {
+            ids[n] = candidates[heap[0]];
+            counts[n] = estimates[heap[0]];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, 0, estimates, candidates);
+        }
+        return new Top(ids, counts, now);
+    }
+
+    // more views ranks higher, and ties go to the newer (higher) message_id
+    private static boolean ranksAbove(int a, int b, long[] estimates, int[] candidates) {
+        return estimates[a] != estimates[b] ? estimates[a] > estimates[b] : candidates[a] > candidates[b];
+    }
+
+    private static void siftUp(int[] heap, int position, long[] estimates, int[] candidates) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!ranksAbove(heap[parent], heap[position], estimates, candidates)) {
+                return;
+            }
+            swap(heap, parent, position);
+            position = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, int position, long[] estimates, int[] candidates) {
+        while (true) {
+            int lowest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && ranksAbove(heap[lowest], heap[left], estimates, candidates)) {
+                lowest = left;
+            }
+            if (right < size && ranksAbove(heap[lowest], heap[right], estimates, candidates)) {
+                lowest = right;
+            }
+            if (lowest == position) {
+                return;
+            }
+            swap(heap, lowest, position);
+            position = lowest;
+        }
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+    }
+
+    // a precomputed top: ids and their estimated views, most viewed first
+    private static class Top {
+        final int[] ids;
+        final long[] views;
+        final long builtAt;
+
+        Top(int[] ids, long[] views, long builtAt) {
+            this.ids = ids;
+            this.views = views;
+            this.builtAt = builtAt;
+        }
+    }
+
+    /**
+     * One slice of the window: a count-min sketch of every view in it, and a Space-Saving summary of its heaviest ids.
+     * Guarded by its own monitor.
+     */
+    private static class Bucket {
+        // the time slice this bucket currently counts
+        long slice = NEVER;
+
+        // count-min sketch: depth rows of width counters, laid out row after row
+        private final int depth;
+        private final int widthMask;
+        private final int[] sketch;
+
+        // Space-Saving summary: capacity slots of (id, count), kept in a min-heap by count so the smallest is at the
+        // root; index maps an id to its heap position
+        private final int capacity;
+        private final int[] ids;
+        private final int[] counts;
+        private final IntIntHashMap index;
+        private int size = 0;
+
+        Bucket(int depth, int width, int capacity) {
+            this.depth = depth;
+            this.widthMask = width - 1;
+            this.sketch = new int[depth * width];
+            this.capacity = capacity;
+            this.ids = new int[capacity];
+            this.counts = new int[capacity];
+            this.index = new IntIntHashMap(capacity);
+        }
+
+        // starts counting a newer slice, dropping the counts of the one this bucket last held
+        void advanceTo(long newSlice) {
+            if (slice != newSlice) {
+                reset(newSlice);
+            }
+        }
+
+        void reset(long newSlice) {
+            slice = newSlice;
+            Arrays.fill(sketch, 0);
+            index.clear();
+            size = 0;
+        }
+
+        void add(int id) {
+            for (int row = 0; row < depth; row++) {
+                int cell = row * (widthMask + 1) + hash(id, row);
+                if (sketch[cell] != Integer.MAX_VALUE) {
+                    sketch[cell]++;
+                }
+            }
+
+            int position = index.get(id);
+            if (position != IntIntHashMap.ABSENT) {
+                counts[position]++;
+                siftDown(position);
+            }
+            else if (size < capacity) {
+                ids[size] = id;
+                counts[size] = 1;
+                index.put(id, size);
+                siftUp(size++);
+            }
+            else {
+                // Space-Saving: the new id takes over the slot of the least counted one, inheriting its count as the
+                // possible overestimate
+                index.remove(ids[0]);
+                ids[0] = id;
+                counts[0]++;
+                index.put(id, 0);
+                siftDown(0);
+            }
+        }
+
+        // the smallest count over the rows, which is never below the id's real count in this slice
+        int estimate(int id) {
+            int estimate = Integer.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                estimate = Math.min(estimate, sketch[row * (widthMask + 1) + hash(id, row)]);
+            }
+            return estimate;
+        }
+
+        int[] candidates() {
+            return Arrays.copyOf(ids, size);
+        }
+
+        private int hash(int id, int row) {
+            // murmur3 finalizer
+            int h = id ^ ROW_SEEDS[row];
+            h ^= h >>> 16;
+            h *= 0x85EBCA6B;
+            h ^= h >>> 13;
+            h *= 0xC2B2AE35;
+            h ^= h >>> 16;
+            return h & widthMask;
+        }
+
+        private void siftUp(int position) {
+            while (position > 0) {
+                int parent = (position - 1) >>> 1;
+                if (counts[parent] <= counts[position]) {
+                    return;
+                }
+                swap(parent, position);
+                position = parent;
+            }
+        }
+
+        private void siftDown(int position) {
+            while (true) {
+                int smallest = position;
+                int left = 2 * position + 1;
+                int right = left + 1;
+                if (left < size && counts[left] < counts[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && counts[right] < counts[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == position) {
+                    return;
+                }
+                swap(smallest, position);
+                position = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            int count = counts[i];
+            counts[i] = counts[j];
+            counts[j] = count;
+            index.put(ids[i], i);
+            index.put(ids[j], j);
+        }
+    }
+}
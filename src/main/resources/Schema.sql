@@ -0,0 +1,23 @@
+create table if not exists account (
+    account_id int primary key auto_increment,
+    username varchar(255) unique,
+    password varchar(255)
+);
+create table if not exists message (
+    message_id int primary key auto_increment,
+    posted_by int,
+    message_text varchar(255),
+    time_posted_epoch bigint,
+    version int not null default 1,
+    foreign key (posted_by) references  account(account_id)
+);
+create index if not exists message_author_time on message (posted_by, time_posted_epoch desc, message_id desc);
+create index if not exists message_time on message (time_posted_epoch desc, message_id desc);
+create table if not exists follow (
+    follower_id int,
+    followee_id int,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references  account(account_id),
+    foreign key (followee_id) references  account(account_id)
+);
+create index if not exists follow_followee on follow (followee_id, follower_id);
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Util.AccessLog;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AccessLogTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path logDir;
+
+    /**
+     * Before every test, reset the database, enable the access log in a fresh directory, restart the Javalin app, and
+     * create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        logDir = Files.createTempDirectory("accesslog");
+        System.setProperty("socialmedia.accesslog.enabled", "true");
+        System.setProperty("socialmedia.accesslog.dir", logDir.toString());
+        System.setProperty("socialmedia.accesslog.flushIntervalMillis", "10");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.accesslog.enabled");
+        System.clearProperty("socialmedia.accesslog.dir");
+        System.clearProperty("socialmedia.accesslog.flushIntervalMillis");
+    }
+
+
+    /**
+     * Registering an account, retrieving the seed message, and requesting a path no route matches
+     *
+     * Expected Result: one access log line per request with its route, status, latency, bytes, and account id
+     */
+    @Test
+    public void requestsAreWrittenToTheAccessLog() throws IOException, InterruptedException {
+        HttpResponse<String> registered = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Account("loggeduser", "password"))))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, registered.statusCode());
+        Assert.assertEquals(200, send("/messages/1").statusCode());
+        Assert.assertEquals(404, send("/no/such/route").statusCode());
+
+        Path file = logDir.resolve("access.log");
+        List<String> lines = List.of();
+        for (int i = 0; i < 100 && lines.size() < 3; i++) {
+            Thread.sleep(20);
+            lines = Files.readAllLines(file);
+        }
+        Assert.assertEquals(3, lines.size());
+
+        String[] register = lines.get(0).split(" ");
+        Assert.assertEquals(7, register.length);
+        Assert.assertEquals("POST", register[1]);
+        Assert.assertEquals("/register", register[2]);
+        Assert.assertEquals("200", register[3]);
+        Assert.assertTrue(Long.parseLong(register[4]) >= 0);
+        Assert.assertEquals("2", register[6]);
+
+        String[] retrieve = lines.get(1).split(" ");
+        Assert.assertEquals("/messages/{message_id}", retrieve[2]);
+        Assert.assertTrue(Long.parseLong(retrieve[5]) > 0);
+        Assert.assertEquals("-", retrieve[6]);
+
+        String[] missing = lines.get(2).split(" ");
+        Assert.assertEquals("/no/such/route", missing[2]);
+        Assert.assertEquals("404", missing[3]);
+    }
+
+    /**
+     * Logging 1,000 requests through a ring of 2 entries under the "drop" and the "block" policy
+     *
+     * Expected Result: "drop" never waits and counts what it discards, "block" waits and writes every line
+     */
+    @Test
+    public void fullRingDropsOrBlocksByPolicy() throws IOException {
+        Path dropDir = Files.createTempDirectory("accesslog-drop");
+        AccessLog dropping = new AccessLog(dropDir, 2, AccessLog.POLICY_DROP, 16, 10_000, 1 << 20, 1);
+        for (int i = 0; i < 1000; i++) {
+            dropping.log("GET", "/messages", 200, 5, 2, -1);
+        }
+        dropping.close();
+        Map<String, Long> dropMetrics = dropping.getMetrics();
+        Assert.assertTrue(dropMetrics.get("dropped") > 0);
+        Assert.assertEquals(1000, dropMetrics.get("dropped") + dropMetrics.get("written"));
+        Assert.assertEquals((long) dropMetrics.get("written"), Files.readAllLines(dropDir.resolve("access.log")).size());
+
+        Path blockDir = Files.createTempDirectory("accesslog-block");
+        AccessLog blocking = new AccessLog(blockDir, 2, AccessLog.POLICY_BLOCK, 16, 1, 1 << 20, 1);
+        for (int i = 0; i < 1000; i++) {
+            blocking.log("GET", "/messages", 200, 5, 2, -1);
+        }
+        blocking.close();
+        Assert.assertEquals(Long.valueOf(0), blocking.getMetrics().get("dropped"));
+        Assert.assertEquals(1000, Files.readAllLines(blockDir.resolve("access.log")).size());
+    }
+
+    /**
+     * Logging past the file size limit with two rolled files kept
+     *
+     * Expected Result: access.log rolls into access.log.1 and access.log.2, and older files are deleted
+     */
+    @Test
+    public void filesRollAtTheSizeLimit() throws IOException {
+        Path rollDir = Files.createTempDirectory("accesslog-roll");
+        AccessLog rolling = new AccessLog(rollDir, 1024, AccessLog.POLICY_BLOCK, 4, 1, 300, 2);
+        for (int i = 0; i < 200; i++) {
+            rolling.log("GET", "/messages/{message_id}", 200, 5, 2, i);
+        }
+        rolling.close();
+
+        Assert.assertTrue(rolling.getMetrics().get("rolls") > 2);
+        Assert.assertTrue(Files.size(rollDir.resolve("access.log")) <= 300);
+        Assert.assertTrue(Files.exists(rollDir.resolve("access.log.1")));
+        Assert.assertTrue(Files.exists(rollDir.resolve("access.log.2")));
+        Assert.assertFalse(Files.exists(rollDir.resolve("access.log.3")));
+    }
+
+    private HttpResponse<String> send(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
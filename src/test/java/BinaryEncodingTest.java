@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BinaryEncodingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    ObjectMapper smileMapper;
+    ObjectMapper cborMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and mappers for each
+     * encoding for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        smileMapper = new SmileMapper();
+        cborMapper = new CBORMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending a Smile-encoded message to POST localhost:8080/messages with Accept: application/x-jackson-smile
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the created message encoded as Smile, with Content-Type application/x-jackson-smile
+     */
+    @Test
+    public void createMessageWithSmileBody() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("Content-Type", "application/x-jackson-smile")
+                .header("Accept", "application/x-jackson-smile")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(smileMapper.writeValueAsBytes(new Message(1, "smile \u00e9", 1669947792))))
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/x-jackson-smile", response.headers().firstValue("Content-Type").orElse(""));
+        Assert.assertEquals(new Message(2, 1, "smile \u00e9", 1669947792), smileMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending requests to GET localhost:8080/messages and GET localhost:8080/messages/1 with Accept: application/cbor,
+     * then without an Accept header
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same messages encoded as CBOR, then as JSON (the default)
+     */
+    @Test
+    public void retrieveMessagesAsCbor() throws IOException, InterruptedException {
+        HttpResponse<byte[]> all = get("/messages", "application/cbor");
+        Assert.assertEquals(200, all.statusCode());
+        Assert.assertEquals("application/cbor", all.headers().firstValue("Content-Type").orElse(""));
+        List<Message> messages = cborMapper.readValue(all.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), messages);
+
+        // the first JSON read caches the message, which must not leak into a later CBOR response
+        HttpResponse<byte[]> json = get("/messages/1", null);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(json.body(), Message.class));
+        HttpResponse<byte[]> one = get("/messages/1", "text/html, application/cbor;q=0.9, application/json;q=0.5");
+        Assert.assertEquals("application/cbor", one.headers().firstValue("Content-Type").orElse(""));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), cborMapper.readValue(one.body(), Message.class));
+    }
+
+    /**
+     * Sending a request to GET localhost:8080/messages/export with Accept: application/x-jackson-smile
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message as consecutive Smile values
+     */
+    @Test
+    public void exportMessagesAsSmile() throws IOException, InterruptedException {
+        webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(1, "second", 1669947800))))
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<byte[]> response = get("/messages/export", "application/x-jackson-smile");
+        Assert.assertEquals(200, response.statusCode());
+        try (MappingIterator<Message> values = smileMapper.readerFor(Message.class).readValues(response.body())) {
+            Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792), new Message(2, 1, "second", 1669947800)),
+                    values.readAll());
+        }
+    }
+
+    private HttpResponse<byte[]> get(String path, String accept) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.BinarySnapshot;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class BinarySnapshotTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path snapshotDir;
+
+    /**
+     * Before every test, reset the database, enable the admin endpoints with a fresh snapshot directory, restart the
+     * Javalin app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        snapshotDir = Files.createTempDirectory("snapshots");
+        System.setProperty("socialmedia.admin.enabled", "true");
+        System.setProperty("socialmedia.snapshot.dir", snapshotDir.toString());
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.admin.enabled");
+        System.clearProperty("socialmedia.snapshot.dir");
+    }
+
+
+    /**
+     * Exporting a snapshot, changing the data, then importing the snapshot back through POST localhost:8080/admin/snapshot/import
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the row counts of the snapshot, after which every table is back to its exported state and new
+     *  rows continue after the highest imported id
+     */
+    @Test
+    public void exportThenImportRestoresTheDataset() throws IOException, InterruptedException {
+        postMessage("snapshotted \u00e9\u00e8 \"quoted\"");
+        List<Message> exportedMessages = getAllMessages();
+
+        HttpResponse<String> exported = admin("export", "nightly.snap");
+        Assert.assertEquals(200, exported.statusCode());
+        Map<String, Long> exportCounts = objectMapper.readValue(exported.body(), new TypeReference<Map<String, Long>>(){});
+        Assert.assertEquals(Long.valueOf(1), exportCounts.get("accounts"));
+        Assert.assertEquals(Long.valueOf(2), exportCounts.get("messages"));
+
+        postMessage("written after the export");
+        register("after-export");
+
+        HttpResponse<String> imported = admin("import", "nightly.snap");
+        Assert.assertEquals(200, imported.statusCode());
+        Assert.assertEquals(exportedMessages, getAllMessages());
+
+        Message next = postMessage("written after the import");
+        Assert.assertEquals(3, next.getMessage_id());
+        Assert.assertEquals(200, register("after-export").statusCode());
+    }
+
+    /**
+     * Importing a snapshot with a flipped byte, a missing snapshot, and a name escaping the snapshot directory
+     * 
+     * Expected Response:
+     *  Status Code: 422 for the corrupt file, 404 for the missing one, 400 for the bad name
+     *  Response Body: 
+     *  The tables must be left untouched
+     */
+    @Test
+    public void importRejectsBadSnapshots() throws IOException, InterruptedException {
+        Assert.assertEquals(200, admin("export", "good.snap").statusCode());
+        Path corrupt = snapshotDir.resolve("corrupt.snap");
+        Files.copy(snapshotDir.resolve("good.snap"), corrupt);
+        try (RandomAccessFile file = new RandomAccessFile(corrupt.toFile(), "rw")) {
+            file.seek(file.length() - 40);
+            int original = file.read();
+            file.seek(file.length() - 40);
+            file.write(original ^ 0xFF);
+        }
+        postMessage("must survive");
+        List<Message> before = getAllMessages();
+
+        Assert.assertEquals(422, admin("import", "corrupt.snap").statusCode());
+        Assert.assertEquals(404, admin("import", "missing.snap").statusCode());
+        Assert.assertEquals(400, admin("import", "../good.snap").statusCode());
+        Assert.assertEquals(before, getAllMessages());
+    }
+
+    /**
+     * Updating a message (so it is at version 2), exporting a snapshot, then importing it back
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: GET localhost:8080/messages/1 carries the ETag of version 2, so a write expecting version 2 succeeds
+     */
+    @Test
+    public void importKeepsMessageVersions() throws IOException, InterruptedException {
+        HttpResponse<String> updated = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated once\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, updated.statusCode());
+        Assert.assertEquals(200, admin("export", "versions.snap").statusCode());
+
+        Assert.assertEquals(200, admin("import", "versions.snap").statusCode());
+
+        HttpResponse<String> found = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals("\"2\"", found.headers().firstValue("ETag").orElse(""));
+        HttpResponse<String> conditional = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .header("If-Match", "\"2\"")
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated twice\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, conditional.statusCode());
+    }
+
+    /**
+     * Importing a well-formed snapshot whose last rows can't be written (a message posted by an account that isn't
+     * in it), after its accounts have already been loaded
+     *
+     * Expected Response:
+     *  Status Code: 500
+     *  Response Body:
+     *  The staged rows are thrown away: the tables are left untouched and new rows still get fresh ids
+     */
+    @Test
+    public void failedImportLeavesTheTablesUntouched() throws Exception {
+        JdbcDataSource orphans = new JdbcDataSource();
+        orphans.setURL("jdbc:h2:mem:orphans;DB_CLOSE_DELAY=-1");
+        try (Connection connection = orphans.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE account (account_id INT PRIMARY KEY, username VARCHAR(255), password VARCHAR(255))");
+            statement.execute("CREATE TABLE message (message_id INT PRIMARY KEY, posted_by INT, message_text VARCHAR(255), "
+                    + "time_posted_epoch BIGINT, version INT NOT NULL DEFAULT 1)");
+            statement.execute("INSERT INTO account VALUES (7, 'imported', 'password')");
+            statement.execute("INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (9, 99, 'orphan', 1669947792)");
+            BinarySnapshot.exportTo(orphans, snapshotDir.resolve("orphans.snap"));
+            statement.execute("DROP ALL OBJECTS");
+        }
+        postMessage("must survive");
+        List<Message> before = getAllMessages();
+
+        Assert.assertEquals(500, admin("import", "orphans.snap").statusCode());
+        Assert.assertEquals(before, getAllMessages());
+        Assert.assertEquals(200, register("imported").statusCode());
+        Assert.assertEquals(3, postMessage("written after the failed import").getMessage_id());
+    }
+
+    /**
+     * Exporting a snapshot, importing it back (which swaps in freshly loaded tables), then writing through the API
+     *
+     * Expected Response:
+     *  Status Code: 200 for the import, a follow, and a new message; 400 for a taken username and for a message of an
+     *  unknown account
+     *  Response Body:
+     *  The new tables carry every index and constraint of the schema, the follow table is back, and no staging table is left
+     */
+    @Test
+    public void importRebuildsTheSchema() throws Exception {
+        Assert.assertEquals(200, admin("export", "schema.snap").statusCode());
+        Assert.assertEquals(200, admin("import", "schema.snap").statusCode());
+
+        try (Connection connection = ConnectionUtil.getDataSource().getConnection(); Statement statement = connection.createStatement()) {
+            ResultSet indexes = statement.executeQuery("SELECT index_name FROM information_schema.indexes "
+                    + "WHERE table_schema = 'PUBLIC' AND index_name IN ('MESSAGE_AUTHOR_TIME', 'MESSAGE_TIME', 'FOLLOW_FOLLOWEE')");
+            int found = 0;
+            while (indexes.next()) {
+                found++;
+            }
+            Assert.assertEquals(3, found);
+            ResultSet staging = statement.executeQuery("SELECT COUNT(*) FROM information_schema.tables WHERE table_name LIKE 'SNAPSHOT_%'");
+            staging.next();
+            Assert.assertEquals(0, staging.getInt(1));
+        }
+
+        Assert.assertEquals(200, register("followee").statusCode());
+        HttpResponse<String> followed = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/follow"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"follower_id\": 1}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, followed.statusCode());
+        Assert.assertEquals(400, register("testuser1").statusCode());
+        Assert.assertEquals(2, postMessage("after the import").getMessage_id());
+        HttpResponse<String> orphan = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(99, "no such author", 1669947792))))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, orphan.statusCode());
+    }
+
+    private HttpResponse<String> admin(String action, String name) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/snapshot/" + action + "?name=" + name))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> getAllMessages() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> register(String username) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Account(username, "password"))))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private Message postMessage(String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(1, text, 1669947792))))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+}
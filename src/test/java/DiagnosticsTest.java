@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+import jdk.jfr.consumer.RecordingFile;
+
+public class DiagnosticsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path diagnosticsDir;
+
+    /**
+     * Before every test, reset the database, enable the admin endpoints with a fresh diagnostics directory, restart the
+     * Javalin app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        diagnosticsDir = Files.createTempDirectory("diagnostics");
+        System.setProperty("socialmedia.admin.enabled", "true");
+        System.setProperty("socialmedia.diagnostics.dir", diagnosticsDir.toString());
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.admin.enabled");
+        System.clearProperty("socialmedia.diagnostics.dir");
+    }
+
+
+    /**
+     * Starting a recording (POST localhost:8080/admin/jfr/start?profile=profile&durationSeconds=30), starting a second
+     * one, serving a request, then stopping it (POST localhost:8080/admin/jfr/stop)
+     *
+     * Expected Response:
+     *  Status Code: 200 with the running recording, 409 for the second start, and 200 with a readable .jfr file on stop
+     *  The file isn't left behind on the node, and a second stop returns 404
+     */
+    @Test
+    public void recordingStartsStopsAndStreamsTheFile() throws IOException, InterruptedException {
+        Assert.assertEquals(404, send("GET", "/admin/jfr").statusCode());
+
+        HttpResponse<String> started = send("POST", "/admin/jfr/start?profile=profile&durationSeconds=30");
+        Assert.assertEquals(200, started.statusCode());
+        Map<String, Object> recording = objectMapper.readValue(started.body(), new TypeReference<Map<String, Object>>(){});
+        Assert.assertEquals("profile", recording.get("profile"));
+        Assert.assertEquals("RUNNING", recording.get("state"));
+        Assert.assertEquals(409, send("POST", "/admin/jfr/start").statusCode());
+        Assert.assertEquals(200, send("GET", "/messages").statusCode());
+
+        HttpResponse<byte[]> stopped = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/jfr/stop"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+        Assert.assertEquals(200, stopped.statusCode());
+        Path downloaded = Files.createTempFile("downloaded", ".jfr");
+        Files.write(downloaded, stopped.body());
+        Assert.assertFalse(RecordingFile.readAllEvents(downloaded).isEmpty());
+
+        Assert.assertEquals(404, send("POST", "/admin/jfr/stop").statusCode());
+        try (Stream<Path> files = Files.list(diagnosticsDir)) {
+            Assert.assertEquals(0, files.count());
+        }
+    }
+
+    /**
+     * Starting recordings with an unknown profile and with durations out of range
+     *
+     * Expected Response:
+     *  Status Code: 400 for each of them
+     */
+    @Test
+    public void recordingRejectsBadParameters() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("POST", "/admin/jfr/start?profile=everything").statusCode());
+        Assert.assertEquals(400, send("POST", "/admin/jfr/start?durationSeconds=0").statusCode());
+        Assert.assertEquals(400, send("POST", "/admin/jfr/start?durationSeconds=100000").statusCode());
+        Assert.assertEquals(400, send("POST", "/admin/jfr/start?durationSeconds=soon").statusCode());
+    }
+
+    /**
+     * Holding a monitor on one thread while another thread blocks on it, then sending GET localhost:8080/admin/threads
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the blocked thread, waiting on the monitor owned by the holder, and that monitor among the most
+     *  contended locks
+     */
+    @Test
+    public void threadDumpShowsLockOwners() throws IOException, InterruptedException {
+        Object monitor = new Object();
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (monitor) {
+                held.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "diagnostics-holder");
+        Thread blocked = new Thread(() -> {
+            synchronized (monitor) {
+                // only needs to enter once
+            }
+        }, "diagnostics-blocked");
+
+        try {
+            holder.start();
+            held.await();
+            blocked.start();
+            while (blocked.getState() != Thread.State.BLOCKED) {
+                Thread.sleep(5);
+            }
+
+            HttpResponse<String> response = send("GET", "/admin/threads?depth=8");
+            Assert.assertEquals(200, response.statusCode());
+            Map<String, Object> dump = objectMapper.readValue(response.body(), new TypeReference<Map<String, Object>>(){});
+
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> threads = (List<Map<String, Object>>) dump.get("threads");
+            Map<String, Object> blockedThread = threads.stream()
+                    .filter(thread -> "diagnostics-blocked".equals(thread.get("name"))).findFirst().orElseThrow();
+            Assert.assertEquals("BLOCKED", blockedThread.get("state"));
+            Assert.assertEquals("diagnostics-holder", blockedThread.get("lock_owner_name"));
+            Assert.assertTrue(((List<?>) blockedThread.get("stack")).size() <= 8);
+
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> contended = (List<Map<String, Object>>) dump.get("top_contended_locks");
+            Assert.assertTrue(contended.stream().anyMatch(lock -> "diagnostics-holder".equals(lock.get("owner_name"))
+                    && ((List<?>) lock.get("waiting_threads")).contains("diagnostics-blocked")));
+
+            Assert.assertEquals(400, send("GET", "/admin/threads?depth=0").statusCode());
+        }
+        finally {
+            release.countDown();
+            holder.join();
+            blocked.join();
+        }
+    }
+
+    private HttpResponse<String> send(String method, String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
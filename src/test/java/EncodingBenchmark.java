@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.BodyCodec;
+import Model.Message;
+
+/**
+ * Compares payload size and encode/decode time of a Message list in each encoding the API negotiates (JSON, Smile, CBOR).
+ *
+ * Not a unit test (surefire doesn't pick it up). Run it after "mvn test-compile" with the test classpath, e.g.
+ * java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) EncodingBenchmark [messages] [rounds]
+ */
+public class EncodingBenchmark {
+    private static final int WARMUP_ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        int messageCount = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 500;
+
+        List<Message> messages = new ArrayList<>(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            messages.add(new Message(i + 1, 1 + i % 100, "benchmark message number " + i, 1669947792L + i));
+        }
+
+        System.out.printf("%-30s %12s %14s %14s%n", "encoding", "bytes", "encode us/op", "decode us/op");
+        for (String mediaType : new String[] { BodyCodec.JSON, BodyCodec.SMILE, BodyCodec.CBOR }) {
+            measure(mediaType, BodyCodec.mapperFor(mediaType), messages, rounds);
+        }
+    }
+
+    private static void measure(String mediaType, ObjectMapper mapper, List<Message> messages, int rounds) throws Exception {
+        TypeReference<List<Message>> listType = new TypeReference<List<Message>>(){};
+        byte[] encoded = mapper.writeValueAsBytes(messages);
+        if (!mapper.readValue(encoded, listType).equals(messages)) {
+            throw new IllegalStateException(mediaType + " didn't round trip");
+        }
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += mapper.writeValueAsBytes(messages).length;
+            sink += mapper.readValue(encoded, listType).size();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += mapper.writeValueAsBytes(messages).length;
+        }
+        long encodeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += mapper.readValue(encoded, listType).size();
+        }
+        long decodeNanos = System.nanoTime() - start;
+
+        System.out.printf("%-30s %12d %14.1f %14.1f%s%n", mediaType, encoded.length,
+                encodeNanos / 1_000.0 / rounds, decodeNanos / 1_000.0 / rounds, (sink == 42) ? " " : "");
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.JournalEvent;
+import Model.Message;
+import Model.MessageChange;
+import Util.ConnectionUtil;
+import Util.EventJournal;
+import io.javalin.Javalin;
+
+public class EventJournalTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path journalDir;
+
+    /**
+     * Before every test, reset the database, enable the admin endpoints and the event journal in a fresh directory,
+     * restart the Javalin app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        journalDir = Files.createTempDirectory("journal");
+        System.setProperty("socialmedia.admin.enabled", "true");
+        System.setProperty("socialmedia.journal.enabled", "true");
+        System.setProperty("socialmedia.journal.dir", journalDir.toString());
+        System.setProperty("socialmedia.journal.sync", EventJournal.SYNC_GROUP);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.admin.enabled");
+        System.clearProperty("socialmedia.journal.enabled");
+        System.clearProperty("socialmedia.journal.dir");
+        System.clearProperty("socialmedia.journal.sync");
+    }
+
+
+    /**
+     * Creating, updating, and deleting a message, then replaying GET localhost:8080/admin/journal from the start and
+     * from the offset of the second event
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the three events in the order they happened, then only the last two, then none past the end
+     */
+    @Test
+    public void journalReplaysEveryMutationInOrder() throws IOException, InterruptedException {
+        Message created = postMessage("journaled");
+        HttpResponse<String> updated = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + created.getMessage_id()))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"journaled again\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, updated.statusCode());
+        HttpResponse<String> deleted = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + created.getMessage_id()))
+                .DELETE()
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, deleted.statusCode());
+
+        JsonNode page = getJournal("");
+        JsonNode events = page.get("events");
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals(MessageChange.INSERT, events.get(0).get("type").asText());
+        Assert.assertEquals(MessageChange.UPDATE, events.get(1).get("type").asText());
+        Assert.assertEquals(MessageChange.DELETE, events.get(2).get("type").asText());
+        Assert.assertEquals("journaled again", events.get(2).get("message").get("message_text").asText());
+        Assert.assertEquals(created.getMessage_id(), events.get(0).get("message").get("message_id").asInt());
+
+        JsonNode fromSecond = getJournal("?from=" + events.get(1).get("offset").asLong());
+        Assert.assertEquals(2, fromSecond.get("events").size());
+        Assert.assertEquals(MessageChange.UPDATE, fromSecond.get("events").get(0).get("type").asText());
+
+        JsonNode pastEnd = getJournal("?from=" + page.get("next_offset").asLong());
+        Assert.assertEquals(0, pastEnd.get("events").size());
+        Assert.assertEquals(page.get("next_offset").asLong(), pastEnd.get("next_offset").asLong());
+    }
+
+    /**
+     * Replaying GET localhost:8080/admin/journal from an offset inside an event, or with a bad limit
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void journalRejectsOffsetsBetweenEvents() throws IOException, InterruptedException {
+        postMessage("journaled");
+        long first = getJournal("").get("events").get(0).get("offset").asLong();
+
+        Assert.assertEquals(400, getJournalStatus("?from=" + (first + 3)));
+        Assert.assertEquals(400, getJournalStatus("?limit=0"));
+        Assert.assertEquals(400, getJournalStatus("?from=abc"));
+    }
+
+    /**
+     * Reopening a journal whose last record was torn (its length written but not its payload), with segments small
+     * enough that events roll over into new files
+     *
+     * Expected Result: every complete event replays, the torn one is dropped, and appends continue after the last
+     * complete event
+     */
+    @Test
+    public void reopenedJournalDropsTornTail() throws IOException {
+        Path dir = Files.createTempDirectory("torn-journal");
+        long endOffset;
+        try (EventJournal journal = new EventJournal(dir, 512, 10, EventJournal.SYNC_ASYNC)) {
+            for (int i = 1; i <= 15; i++) {
+                journal.append(MessageChange.INSERT, new Message(i, 1, "event " + i, 1669947792L + i));
+            }
+            endOffset = journal.getEndOffset();
+        }
+
+        Path lastSegment;
+        try (Stream<Path> files = Files.list(dir)) {
+            lastSegment = files.max(Path::compareTo).get();
+        }
+        long lastBase = Long.parseLong(lastSegment.getFileName().toString().replace(".seg", ""));
+        Assert.assertTrue(lastBase > 0);
+        try (RandomAccessFile file = new RandomAccessFile(lastSegment.toFile(), "rw")) {
+            // a frame length pointing at a payload that never made it to disk
+            file.seek(endOffset - lastBase);
+            file.writeInt(40);
+        }
+
+        try (EventJournal journal = new EventJournal(dir, 512, 10, EventJournal.SYNC_ASYNC)) {
+            List<JournalEvent> recovered = new ArrayList<>();
+            journal.replay(0, Integer.MAX_VALUE, recovered::add);
+            Assert.assertEquals(15, recovered.size());
+            Assert.assertEquals("event 15", recovered.get(14).getMessage().getMessage_text());
+
+            journal.append(MessageChange.DELETE, new Message(16, 1, "event 16", 1669947808L));
+            List<JournalEvent> appended = new ArrayList<>();
+            journal.replay(recovered.get(14).getOffset(), Integer.MAX_VALUE, appended::add);
+            Assert.assertEquals(2, appended.size());
+            Assert.assertEquals(MessageChange.DELETE, appended.get(1).getType());
+        }
+    }
+
+    private JsonNode getJournal(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/journal" + query))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readTree(response.body());
+    }
+
+    private int getJournalStatus(String query) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/admin/journal" + query))
+                .build(), HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+
+    private Message postMessage(String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(1, text, 1669947792))))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ExportMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/export
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message as one JSON object per line, the same messages GET /messages returns
+     */
+    @Test
+    public void exportAllMessages() throws IOException, InterruptedException {
+        postMessage("exported 1", 1669947800);
+        postMessage("exported 2", 1669947900);
+
+        HttpResponse<String> all = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        List<Message> expected = objectMapper.readValue(all.body(), new TypeReference<List<Message>>(){});
+
+        HttpResponse<InputStream> response = export("/messages/export", false);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/x-ndjson", response.headers().firstValue("Content-Type").orElse(""));
+        Assert.assertEquals(expected, readLines(response.body()));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages/export with a time window, accepting gzip
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: gzip-compressed NDJSON of only the user's messages posted within [from, to)
+     */
+    @Test
+    public void exportUserMessagesInWindowGzipped() throws IOException, InterruptedException {
+        postMessage("too early", 1669947000);
+        Message inWindow = postMessage("in window", 1669948000);
+        postMessage("too late", 1669949000);
+
+        HttpResponse<InputStream> response = export("/accounts/1/messages/export?from=1669947900&to=1669949000", true);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(""));
+        Assert.assertEquals(List.of(inWindow), readLines(new GZIPInputStream(response.body())));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/export with a window bound that isn't a number
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void exportRejectsBadWindow() throws IOException, InterruptedException {
+        Assert.assertEquals(400, export("/messages/export?from=yesterday", false).statusCode());
+    }
+
+    private HttpResponse<InputStream> export(String path, boolean gzip) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (gzip) {
+            request.header("Accept-Encoding", "gzip");
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    private List<Message> readLines(InputStream body) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                messages.add(objectMapper.readValue(line, Message.class));
+            }
+        }
+        return messages;
+    }
+
+    private Message postMessage(String text, long time_posted_epoch) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(1, text, time_posted_epoch))))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+}
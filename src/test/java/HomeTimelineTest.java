@@ -0,0 +1,291 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.FollowDAO;
+import DAO.FollowRepository;
+import DAO.InMemoryDatabase;
+import DAO.MessageDAO;
+import DAO.Repositories;
+import Model.Account;
+import Model.Follow;
+import Model.Message;
+import Service.FollowService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.HomeTimelineStore;
+import io.javalin.Javalin;
+
+public class HomeTimelineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.home.celebrityFollowers");
+    }
+
+
+    /**
+     * Account 1 following accounts 2 and 3 (POST localhost:8080/accounts/{account_id}/follow), reading its home
+     * timeline once so it is kept, then all three posting messages
+     *
+     * Expected Response:
+     *  Status Code: 200 for each follow, with the Follow as the response body
+     *  GET localhost:8080/accounts/1/home: the followees' messages are pushed in, newest first, without account 1's own
+     */
+    @Test
+    public void homeTimelineReceivesFolloweesMessages() throws IOException, InterruptedException {
+        register("homeuser2");
+        register("homeuser3");
+        HttpResponse<String> followed = follow("POST", 1, 2);
+        Assert.assertEquals(200, followed.statusCode());
+        Assert.assertEquals(new Follow(1, 2), objectMapper.readValue(followed.body(), Follow.class));
+        Assert.assertEquals(200, follow("POST", 1, 3).statusCode());
+        Assert.assertEquals(List.of(), getHome(1, 20));
+
+        Message fromTwo = postMessage(2, "from two", 1669950000);
+        postMessage(1, "my own", 1669999999);
+        Message fromThree = postMessage(3, "from three", 1669960000);
+
+        Assert.assertEquals(List.of(fromThree, fromTwo), awaitHome(1, 20, 2));
+        Assert.assertEquals(List.of(fromThree), getHome(1, 1));
+    }
+
+    /**
+     * Following oneself or an unknown account, unfollowing twice, and reading a home timeline with bad limits
+     *
+     * Expected Response:
+     *  Status Code: 400 for the bad follows and limits
+     *  DELETE localhost:8080/accounts/2/follow: the Follow the first time, an empty body the second, and the
+     *  followee's messages leave the home timeline
+     */
+    @Test
+    public void followRejectsBadRequestsAndUnfollowRemovesMessages() throws IOException, InterruptedException {
+        register("homeuser2");
+        Message fromTwo = postMessage(2, "from two", 1669950000);
+
+        Assert.assertEquals(400, follow("POST", 1, 1).statusCode());
+        Assert.assertEquals(400, follow("POST", 1, 42).statusCode());
+        Assert.assertEquals(400, follow("POST", 42, 1).statusCode());
+
+        Assert.assertEquals(200, follow("POST", 1, 2).statusCode());
+        // following again is a no-op
+        Assert.assertEquals(200, follow("POST", 1, 2).statusCode());
+        Assert.assertEquals(List.of(fromTwo), getHome(1, 20));
+
+        HttpResponse<String> unfollowed = follow("DELETE", 1, 2);
+        Assert.assertEquals(200, unfollowed.statusCode());
+        Assert.assertEquals(new Follow(1, 2), objectMapper.readValue(unfollowed.body(), Follow.class));
+        HttpResponse<String> again = follow("DELETE", 1, 2);
+        Assert.assertEquals(200, again.statusCode());
+        Assert.assertEquals("", again.body());
+        Assert.assertEquals(List.of(), getHome(1, 20));
+
+        Assert.assertEquals(400, send("/accounts/1/home?limit=0").statusCode());
+        Assert.assertEquals(400, send("/accounts/1/home?limit=100000").statusCode());
+        Assert.assertEquals(400, send("/accounts/1/home?limit=ten").statusCode());
+    }
+
+    /**
+     * Deleting a message that was pushed into a home timeline
+     *
+     * Expected Response:
+     *  GET localhost:8080/accounts/1/home: the deleted message no longer shows up, and the page is still full
+     */
+    @Test
+    public void deletedMessagesLeaveHomeTimeline() throws IOException, InterruptedException {
+        register("homeuser2");
+        Assert.assertEquals(200, follow("POST", 1, 2).statusCode());
+        Message older = postMessage(2, "older", 1669940000);
+        Message deleted = postMessage(2, "deleted", 1669950000);
+        Message newest = postMessage(2, "newest", 1669960000);
+        Assert.assertEquals(List.of(newest, deleted), getHome(1, 2));
+
+        HttpResponse<String> deleteResponse = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + deleted.getMessage_id()))
+                .DELETE()
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, deleteResponse.statusCode());
+
+        Assert.assertEquals(List.of(newest, older), getHome(1, 2));
+    }
+
+    /**
+     * Posting as an account with at least socialmedia.home.celebrityFollowers followers
+     *
+     * Expected Result: its messages aren't pushed; they are merged into the follower's home timeline when it is read
+     */
+    @Test
+    public void celebrityMessagesAreMergedOnRead() throws InterruptedException {
+        System.setProperty("socialmedia.home.celebrityFollowers", "1");
+        MessageService messageService = new MessageService(new MessageDAO(), null);
+        FollowRepository follows = new FollowDAO();
+        FollowService followService = new FollowService(follows, messageService);
+        messageService.setInsertListener(followService::fanOut);
+
+        int celebrity = new AccountDAO().insertUser(new Account("celebrity", "password")).getAccount_id();
+        Assert.assertNotNull(followService.follow(1, celebrity));
+        Assert.assertEquals(List.of(), followService.getHomeTimeline(1, 20));
+
+        Message posted = messageService.createNewMessage(new Message(celebrity, "to all my fans", 1669950000));
+        List<Message> home = List.of();
+        for (int i = 0; i < 50 && home.isEmpty(); i++) {
+            Thread.sleep(20);
+            home = followService.getHomeTimeline(1, 20);
+        }
+        Assert.assertEquals(List.of(posted), home);
+
+        Map<String, Long> metrics = followService.getMetrics();
+        Assert.assertEquals(Long.valueOf(1), metrics.get("celebrities"));
+        Assert.assertEquals(Long.valueOf(0), metrics.get("pushes"));
+    }
+
+    /**
+     * Following through the in-memory storage engine
+     *
+     * Expected Result: the same answers as the H2 storage engine, with followers and followees in ascending order
+     */
+    @Test
+    public void inMemoryEngineKeepsFollowGraph() {
+        Repositories repositories = Repositories.inMemory(new InMemoryDatabase());
+        int first = repositories.accounts().insertUser(new Account("first", "password")).getAccount_id();
+        int second = repositories.accounts().insertUser(new Account("second", "password")).getAccount_id();
+        int third = repositories.accounts().insertUser(new Account("third", "password")).getAccount_id();
+        FollowRepository follows = repositories.follows();
+
+        Assert.assertFalse(follows.follow(first, third + 1));
+        Assert.assertTrue(follows.follow(third, first));
+        Assert.assertTrue(follows.follow(second, first));
+        Assert.assertTrue(follows.follow(second, first));
+        Assert.assertTrue(follows.follow(second, third));
+
+        Assert.assertArrayEquals(new int[]{second, third}, follows.getFollowers(first));
+        Assert.assertArrayEquals(new int[]{first, third}, follows.getFollowees(second));
+        Assert.assertEquals(2, follows.countFollowers(first));
+
+        Assert.assertTrue(follows.unfollow(second, first));
+        Assert.assertFalse(follows.unfollow(second, first));
+        Assert.assertArrayEquals(new int[]{third}, follows.getFollowers(first));
+    }
+
+    /**
+     * Adding 50 entries out of order to a timeline with a capacity of 40
+     *
+     * Expected Result: the timeline grows past its initial array and keeps exactly the 40 newest entries, newest first
+     */
+    @Test
+    public void timelinesGrowUpToTheirCapacity() {
+        HomeTimelineStore.Timeline timeline = new HomeTimelineStore(40, 1).getOrCreate(1);
+        for (int i = 0; i < 50; i++) {
+            int message_id = (i * 7) % 50 + 1;
+            timeline.add(HomeTimelineStore.entryOf(new Message(message_id, 2, "m", 1669947792 + message_id)));
+        }
+
+        long[] newest = timeline.newest(100);
+        Assert.assertEquals(40, newest.length);
+        for (int i = 0; i < newest.length; i++) {
+            Assert.assertEquals(50 - i, HomeTimelineStore.messageIdOf(newest[i]));
+        }
+    }
+
+    /**
+     * Keeping the loaded timelines of a follower of account 2, of an account following only account 3, and a
+     * timeline still loading, then invalidating what may have been built from account 2 (as a rejected fan-out does)
+     *
+     * Expected Result: the follower's and the loading timelines are dropped, the unrelated one is kept
+     */
+    @Test
+    public void invalidationDropsOnlyTheAuthorsFollowers() {
+        HomeTimelineStore store = new HomeTimelineStore(10, 10);
+        store.getOrCreate(1).markLoaded(new int[]{2, 3});
+        store.getOrCreate(4).markLoaded(new int[]{3});
+        store.getOrCreate(5);
+
+        Assert.assertEquals(2, store.invalidateBuiltFrom(2));
+        Assert.assertNull(store.get(1));
+        Assert.assertNotNull(store.get(4));
+        Assert.assertNull(store.get(5));
+    }
+
+    private void register(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Account(username, "password"))))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    private HttpResponse<String> follow(String method, int follower_id, int followee_id) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + followee_id + "/follow"))
+                .method(method, HttpRequest.BodyPublishers.ofString("{\"follower_id\":" + follower_id + "}"))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private Message postMessage(int posted_by, String text, long time_posted_epoch) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(posted_by, text, time_posted_epoch))))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private List<Message> getHome(int account_id, int limit) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("/accounts/" + account_id + "/home?limit=" + limit);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    // pushes happen in the background, so the timeline is read until it holds the expected number of messages
+    private List<Message> awaitHome(int account_id, int limit, int expected) throws IOException, InterruptedException {
+        List<Message> home = getHome(account_id, limit);
+        for (int i = 0; i < 50 && home.size() < expected; i++) {
+            Thread.sleep(20);
+            home = getHome(account_id, limit);
+        }
+        return home;
+    }
+
+    private HttpResponse<String> send(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
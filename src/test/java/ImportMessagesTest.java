@@ -0,0 +1,155 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageImportEvent;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ImportMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, lower the import batch size to 2, raise the per-account write burst so a
+     * large import isn't rate limited, restart the Javalin app, and create a new webClient and ObjectMapper for
+     * interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("socialmedia.import.batchSize", "2");
+        System.setProperty("socialmedia.ratelimit.account.burst", "10000");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.import.batchSize");
+        System.clearProperty("socialmedia.ratelimit.account.burst");
+    }
+
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/import with valid and invalid lines mixed together
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one NDJSON error per invalid line, progress after each batch, and a final summary; only the valid
+     *  lines are inserted
+     */
+    @Test
+    public void importReportsEachLine() throws IOException, InterruptedException {
+        String body = "{\"posted_by\":1,\"message_text\":\"imported 1\",\"time_posted_epoch\":1669947800}\n"
+                + "{\"posted_by\":1,\"message_text\":\"imported 2\",\"time_posted_epoch\":1669947801}\n"
+                + "{\"posted_by\":1,\"message_text\":\n"
+                + "{\"posted_by\":1,\"message_text\":\" \",\"time_posted_epoch\":1669947802}\n"
+                + "\n"
+                + "{\"posted_by\":99,\"message_text\":\"nobody\",\"time_posted_epoch\":1669947803}\n"
+                + "{\"message_id\":42,\"posted_by\":1,\"message_text\":\"imported 3\",\"time_posted_epoch\":1669947804}";
+
+        List<MessageImportEvent> events = importMessages(HttpRequest.BodyPublishers.ofString(body));
+
+        List<Long> errorLines = new ArrayList<>();
+        for (MessageImportEvent event : events) {
+            if (event.getError() != null) {
+                errorLines.add(event.getLine());
+            }
+        }
+        Assert.assertEquals(List.of(3L, 4L, 6L), errorLines);
+        Assert.assertEquals(Long.valueOf(2), events.get(0).getImported());
+
+        MessageImportEvent summary = events.get(events.size() - 1);
+        Assert.assertEquals(Boolean.TRUE, summary.getDone());
+        Assert.assertEquals(Long.valueOf(7), summary.getLine());
+        Assert.assertEquals(Long.valueOf(3), summary.getImported());
+        Assert.assertEquals(Long.valueOf(3), summary.getFailed());
+
+        List<Message> messages = getMessagesOfUser1();
+        Assert.assertEquals(4, messages.size());
+        Assert.assertEquals(new Message(4, 1, "imported 3", 1669947804), messages.get(3));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/import with a body generated while it is being sent
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a summary counting every line as imported
+     */
+    @Test
+    public void importStreamsLargeBodies() throws IOException, InterruptedException {
+        int lines = 5_000;
+        Enumeration<InputStream> generated = new Enumeration<>() {
+            int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < lines;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                String line = "{\"posted_by\":1,\"message_text\":\"bulk " + next + "\",\"time_posted_epoch\":" + (1669947792 + next++) + "}\n";
+                return new ByteArrayInputStream(line.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+
+        List<MessageImportEvent> events = importMessages(HttpRequest.BodyPublishers.ofInputStream(() -> new SequenceInputStream(generated)));
+
+        MessageImportEvent summary = events.get(events.size() - 1);
+        Assert.assertEquals(Long.valueOf(lines), summary.getImported());
+        Assert.assertEquals(Long.valueOf(0), summary.getFailed());
+        Assert.assertEquals(lines + 1, getMessagesOfUser1().size());
+    }
+
+    private List<MessageImportEvent> importMessages(HttpRequest.BodyPublisher body) throws IOException, InterruptedException {
+        HttpResponse<java.util.stream.Stream<String>> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/import"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(body)
+                .build(), HttpResponse.BodyHandlers.ofLines());
+        Assert.assertEquals(200, response.statusCode());
+
+        List<MessageImportEvent> events = new ArrayList<>();
+        for (String line : (Iterable<String>) response.body()::iterator) {
+            events.add(objectMapper.readValue(line, MessageImportEvent.class));
+        }
+        return events;
+    }
+
+    private List<Message> getMessagesOfUser1() throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryDatabase;
+import DAO.Repositories;
+import Model.Account;
+import Model.Message;
+import io.javalin.Javalin;
+
+public class InMemoryStorageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path snapshotPath;
+    InMemoryDatabase db;
+
+    /**
+     * Before every test, open an empty in-memory database persisted to a temporary snapshot file, start the Javalin
+     * app on top of it, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        snapshotPath = Files.createTempDirectory("in-memory-storage").resolve("db.snapshot");
+        db = InMemoryDatabase.open(snapshotPath);
+        startApp();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Registering an account and posting two messages on the in-memory engine, then sending an http request to
+     * GET localhost:8080/accounts/1/messages
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of both messages in message_id order
+     */
+    @Test
+    public void inMemoryEngineServesWrites() throws IOException, InterruptedException {
+        Assert.assertEquals(200, register("memoryuser").statusCode());
+        Assert.assertEquals(400, register("memoryuser").statusCode());
+        postMessage(1, "first");
+        postMessage(1, "second");
+        Assert.assertEquals(400, postMessage(2, "unknown author").statusCode());
+
+        List<Message> actualResult = getMessagesByUser(1);
+        Assert.assertEquals(List.of(new Message(1, 1, "first", 1669947792), new Message(2, 1, "second", 1669947792)), actualResult);
+    }
+
+    /**
+     * Writing data, taking a snapshot, and restarting the app from a database loaded from that snapshot
+     * 
+     * Expected Response:
+     *  The restarted app serves the same messages, and new ids continue after the snapshotted ones
+     */
+    @Test
+    public void inMemoryEngineRestoresSnapshot() throws IOException, InterruptedException {
+        register("memoryuser");
+        postMessage(1, "first");
+        postMessage(1, "second");
+        webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build(), HttpResponse.BodyHandlers.ofString());
+        db.snapshot();
+
+        app.stop();
+        db = InMemoryDatabase.open(snapshotPath);
+        startApp();
+
+        Assert.assertEquals(List.of(new Message(2, 1, "second", 1669947792)), getMessagesByUser(1));
+        Message created = objectMapper.readValue(postMessage(1, "third").body(), Message.class);
+        Assert.assertEquals(3, created.getMessage_id());
+    }
+
+    private void startApp() throws InterruptedException {
+        socialMediaController = new SocialMediaController(Repositories.inMemory(db));
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    private HttpResponse<String> register(String username) throws IOException, InterruptedException {
+        String body = objectMapper.writeValueAsString(new Account(username, "password"));
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> postMessage(int posted_by, String text) throws IOException, InterruptedException {
+        String body = objectMapper.writeValueAsString(new Message(posted_by, text, 1669947792));
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> getMessagesByUser(int account_id) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + account_id + "/messages"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.GatedDataSource;
+import Util.ServiceUnavailableException;
+import io.javalin.Javalin;
+
+public class LoadSheddingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending a request to GET localhost:8080/messages while every database connection is held elsewhere, then again
+     * once they are released
+     *
+     * Expected Response:
+     *  Status Code: 503 once the connection wait deadline passes, then 200, with the shed request counted in
+     *  GET localhost:8080/metrics
+     */
+    @Test
+    public void requestIsShedWhenNoConnectionFrees() throws IOException, InterruptedException, SQLException {
+        long inUseBefore = ConnectionUtil.getConnectionGate().getMetrics().get("in_use");
+        List<Connection> held = new ArrayList<>();
+        try {
+            // takes every connection left, until the gate sheds this test itself
+            try {
+                while (held.size() <= ConnectionUtil.getPoolSize()) {
+                    held.add(ConnectionUtil.getDataSource().getConnection());
+                }
+            }
+            catch (ServiceUnavailableException e) {
+                Assert.assertFalse(held.isEmpty());
+            }
+            Assert.assertEquals(503, get("/messages").statusCode());
+        }
+        finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+        Assert.assertEquals(200, get("/messages").statusCode());
+
+        JsonNode metrics = objectMapper.readTree(get("/metrics").body());
+        Assert.assertTrue(metrics.get("db_connections").get("shed").asLong() >= 1);
+        Assert.assertEquals(inUseBefore, metrics.get("db_connections").get("in_use").asLong());
+        Assert.assertEquals(ConnectionUtil.getPoolSize() * 2 + 16, metrics.get("http_threads").get("max").asInt());
+    }
+
+    /**
+     * Taking connections from a gate of one permit
+     *
+     * Expected Result: the second caller is shed after the deadline, and closing the first connection (even twice)
+     * frees exactly one permit
+     */
+    @Test
+    public void gateReleasesPermitOnClose() throws SQLException {
+        GatedDataSource gate = new GatedDataSource(ConnectionUtil.getDataSource(), 1, 50);
+        Connection first = gate.getConnection();
+        try {
+            gate.getConnection();
+            Assert.fail("a second connection must not be handed out");
+        }
+        catch (ServiceUnavailableException e) {
+            Assert.assertEquals(Long.valueOf(1), gate.getMetrics().get("shed"));
+        }
+        first.close();
+        first.close();
+        Assert.assertEquals(Long.valueOf(0), gate.getMetrics().get("in_use"));
+
+        try (Connection second = gate.getConnection()) {
+            Assert.assertFalse(second.isClosed());
+            Assert.assertEquals(Long.valueOf(1), gate.getMetrics().get("in_use"));
+        }
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryDatabase;
+import DAO.MessageRepository;
+import DAO.Repositories;
+import Model.Account;
+import Model.Message;
+import Model.VersionedMessage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageVersioningTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending GET localhost:8080/messages/1, then two PATCH localhost:8080/messages/1 requests with the ETag it returned
+     *
+     * Expected Response:
+     *  Status Code: 200 with ETag "1" for the read (from the database, then from the cache), 200 with ETag "2" for the
+     *  first update, and 412 with the current ETag "2" for the second, which leaves the first update in place
+     */
+    @Test
+    public void staleIfMatchOnUpdateIsRejected() throws IOException, InterruptedException {
+        HttpResponse<String> read = send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")));
+        Assert.assertEquals(200, read.statusCode());
+        Assert.assertEquals("\"1\"", read.headers().firstValue("ETag").orElse(null));
+        HttpResponse<String> cachedRead = send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")));
+        Assert.assertEquals("\"1\"", cachedRead.headers().firstValue("ETag").orElse(null));
+
+        HttpResponse<String> first = patch("first editor", "\"1\"");
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals("\"2\"", first.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals(new Message(1, 1, "first editor", 1669947792), objectMapper.readValue(first.body(), Message.class));
+
+        HttpResponse<String> second = patch("second editor", "\"1\"");
+        Assert.assertEquals(412, second.statusCode());
+        Assert.assertEquals("\"2\"", second.headers().firstValue("ETag").orElse(null));
+
+        HttpResponse<String> reread = send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")));
+        Assert.assertEquals("\"2\"", reread.headers().firstValue("ETag").orElse(null));
+        Assert.assertEquals("first editor", objectMapper.readValue(reread.body(), Message.class).getMessage_text());
+    }
+
+    /**
+     * Sending DELETE localhost:8080/messages/1 with a stale, a malformed, and finally the current If-Match
+     *
+     * Expected Response:
+     *  Status Code: 412 for the stale and malformed ones, then 200 with the deleted message
+     */
+    @Test
+    public void deleteRequiresTheCurrentVersion() throws IOException, InterruptedException {
+        Assert.assertEquals(200, patch("edited once", null).statusCode());
+
+        Assert.assertEquals(412, delete("\"1\"").statusCode());
+        Assert.assertEquals(412, delete("W/\"2\"").statusCode());
+
+        HttpResponse<String> deleted = delete("\"2\"");
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertEquals(new Message(1, 1, "edited once", 1669947792), objectMapper.readValue(deleted.body(), Message.class));
+
+        // a message that no longer exists is reported the same way as before, whatever the If-Match
+        HttpResponse<String> again = delete("\"2\"");
+        Assert.assertEquals(200, again.statusCode());
+        Assert.assertEquals("", again.body());
+    }
+
+    /**
+     * Updating and deleting through the in-memory storage engine with expected versions
+     *
+     * Expected Result: the same conditional behavior as the H2 storage engine
+     */
+    @Test
+    public void inMemoryEngineChecksVersions() {
+        Repositories repositories = Repositories.inMemory(new InMemoryDatabase());
+        int account_id = repositories.accounts().insertUser(new Account("versioned", "password")).getAccount_id();
+        MessageRepository messages = repositories.messages();
+        int message_id = messages.insertMessage(new Message(account_id, "v1", 1669947792)).getMessage_id();
+
+        Assert.assertEquals(1, messages.getVersionedMessageById(message_id).getVersion());
+        VersionedMessage updated = messages.updateMessage(message_id, "v2", 1);
+        Assert.assertEquals(2, updated.getVersion());
+        Assert.assertNull(messages.updateMessage(message_id, "lost update", 1));
+        Assert.assertNull(messages.deleteMessage(message_id, 1));
+        Assert.assertEquals("v2", messages.deleteMessage(message_id, 2).getMessage().getMessage_text());
+    }
+
+    private HttpResponse<String> patch(String text, String ifMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"" + text + "\"}"))
+                .header("Content-Type", "application/json");
+        if (ifMatch != null) {
+            request.header("If-Match", ifMatch);
+        }
+        return send(request);
+    }
+
+    private HttpResponse<String> delete(String ifMatch) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .header("If-Match", ifMatch)
+                .DELETE());
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryDatabase;
+import DAO.MessageRepository;
+import DAO.Repositories;
+import Model.Account;
+import Model.Message;
+import Model.VersionedMessage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MultiGetMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Creating messages 2 and 3, reading message 1 (which caches it), then sending GET localhost:8080/messages?ids=3,1,99,2,1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages in the requested order, null for the missing message 99, and message 1 twice
+     */
+    @Test
+    public void getMessagesByIdsKeepsRequestedOrder() throws IOException, InterruptedException {
+        Message second = createMessage("second message");
+        Message third = createMessage("third message");
+        Message first = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(200, send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1"))).statusCode());
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?ids=3,1,99,2,1")));
+
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(Arrays.asList(third, first, null, second, first), messages);
+    }
+
+    /**
+     * Sending POST localhost:8080/messages/lookup with a JSON list of ids, then with a body that isn't a list of ids
+     *
+     * Expected Response:
+     *  Status Code: 200 with the messages in the requested order (null for the missing ones), then 400
+     */
+    @Test
+    public void lookupMessagesFromPostBody() throws IOException, InterruptedException {
+        Message second = createMessage("second message");
+
+        HttpResponse<String> response = lookup("[404, 2, 1]");
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(Arrays.asList(null, second, new Message(1, 1, "test message 1", 1669947792)), messages);
+
+        Assert.assertEquals(400, lookup("{\"ids\": \"1,2\"}").statusCode());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with an id that isn't a number, then with an empty id list
+     *
+     * Expected Response:
+     *  Status Code: 400 for the bad id, 200 with an empty list for the empty one, and GET /messages without ids still
+     *  returns every message
+     */
+    @Test
+    public void getMessagesByIdsRejectsBadIds() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages?ids=1,two"))).statusCode());
+
+        HttpResponse<String> empty = send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages?ids=")));
+        Assert.assertEquals(200, empty.statusCode());
+        Assert.assertEquals("[]", empty.body());
+
+        HttpResponse<String> all = send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages")));
+        List<Message> messages = objectMapper.readValue(all.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(1, messages.size());
+    }
+
+    /**
+     * Looking up several ids at once through the in-memory storage engine
+     *
+     * Expected Result: the existing messages with their versions, keyed by id, and nothing for the missing one
+     */
+    @Test
+    public void inMemoryEngineLooksUpManyIds() {
+        Repositories repositories = Repositories.inMemory(new InMemoryDatabase());
+        int account_id = repositories.accounts().insertUser(new Account("multiget", "password")).getAccount_id();
+        MessageRepository messages = repositories.messages();
+        int first = messages.insertMessage(new Message(account_id, "one", 1669947792)).getMessage_id();
+        int second = messages.insertMessage(new Message(account_id, "two", 1669947793)).getMessage_id();
+        messages.updateMessage(second, "two, edited", MessageRepository.ANY_VERSION);
+
+        Map<Integer, VersionedMessage> found = messages.getVersionedMessagesByIds(Arrays.asList(second, 999, first));
+        Assert.assertEquals(2, found.size());
+        Assert.assertEquals("one", found.get(first).getMessage().getMessage_text());
+        Assert.assertEquals(2, found.get(second).getVersion());
+    }
+
+    private Message createMessage(String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\": 1, \"message_text\": \"" + text + "\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json"));
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private HttpResponse<String> lookup(String body) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/lookup"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json"));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Model.VersionedMessage;
+import Util.OffHeapMessageStore;
+
+public class OffHeapMessageStoreTest {
+    OffHeapMessageStore store;
+
+    /**
+     * Before every test, create an empty store with room for 4 messages and 64 bytes of text.
+     */
+    @Before
+    public void setUp() {
+        store = new OffHeapMessageStore(4, 64);
+    }
+
+
+    /**
+     * Putting version 2 of a message, then version 1 of it, then version 2 again
+     *
+     * Expected Result:
+     *  Only the first put is stored; the store keeps version 2 and its text
+     */
+    @Test
+    public void putRejectsVersionsAtOrBelowTheStoredOne() {
+        Assert.assertTrue(store.put(new Message(1, 1, "second", 1669947792), 2));
+        Assert.assertFalse(store.put(new Message(1, 1, "first", 1669947792), 1));
+        Assert.assertFalse(store.put(new Message(1, 1, "second again", 1669947792), 2));
+
+        VersionedMessage stored = store.getVersioned(1);
+        Assert.assertEquals(new Message(1, 1, "second", 1669947792), stored.getMessage());
+        Assert.assertEquals(2, stored.getVersion());
+    }
+
+    /**
+     * Putting a newer version of a stored message
+     *
+     * Expected Result:
+     *  The newer version replaces the stored one, which still counts as a single message
+     */
+    @Test
+    public void putReplacesOlderVersions() {
+        store.put(new Message(1, 1, "first", 1669947792), 1);
+        Assert.assertTrue(store.put(new Message(1, 1, "second", 1669947792), 2));
+
+        VersionedMessage stored = store.getVersioned(1);
+        Assert.assertEquals(new Message(1, 1, "second", 1669947792), stored.getMessage());
+        Assert.assertEquals(2, stored.getVersion());
+        Assert.assertEquals(1, store.size());
+    }
+
+    /**
+     * Removing a message at version 2, then putting versions 1 and 2 of it (a late cache fill), then version 3
+     *
+     * Expected Result:
+     *  The removed versions stay out of the store; only a newer version is stored again
+     */
+    @Test
+    public void removedMessagesLeaveATombstone() {
+        store.put(new Message(1, 1, "first", 1669947792), 1);
+        store.remove(1, 2);
+
+        Assert.assertFalse(store.put(new Message(1, 1, "first", 1669947792), 1));
+        Assert.assertFalse(store.put(new Message(1, 1, "second", 1669947792), 2));
+        Assert.assertNull(store.getVersioned(1));
+        Assert.assertTrue(store.put(new Message(1, 1, "third", 1669947792), 3));
+    }
+
+    /**
+     * Removing a message that was never stored, then putting it at the removed version
+     *
+     * Expected Result:
+     *  The put is rejected, since the tombstone doesn't depend on the message having been cached
+     */
+    @Test
+    public void removingAnUncachedMessageStillLeavesATombstone() {
+        store.remove(1, 1);
+
+        Assert.assertFalse(store.put(new Message(1, 1, "first", 1669947792), 1));
+        Assert.assertEquals(0, store.size());
+    }
+
+    /**
+     * Removing more messages than the store keeps tombstones for, then putting the first one removed
+     *
+     * Expected Result:
+     *  The oldest tombstone was dropped, so the put is stored; the newest tombstones still reject theirs
+     */
+    @Test
+    public void tombstonesAreBoundedByCapacity() {
+        for (int id = 1; id <= 5; id++) {
+            store.remove(id, 1);
+        }
+
+        Assert.assertTrue(store.put(new Message(1, 1, "first", 1669947792), 1));
+        Assert.assertFalse(store.put(new Message(5, 1, "fifth", 1669947792), 1));
+    }
+
+    /**
+     * Removing a message, then clearing the store (as after a bulk load) and putting the message again
+     *
+     * Expected Result:
+     *  Clearing drops the tombstones too, so the put is stored
+     */
+    @Test
+    public void clearDropsTombstones() {
+        store.remove(1, 1);
+        store.clear();
+
+        Assert.assertTrue(store.put(new Message(1, 1, "reloaded", 1669947792), 1));
+    }
+
+    /**
+     * Storing a fifth message in a store with room for four, none of which was read
+     *
+     * Expected Result:
+     *  The first message stored is evicted and the other four are kept
+     */
+    @Test
+    public void fullStoreEvictsInClockOrder() {
+        for (int id = 1; id <= 5; id++) {
+            store.put(new Message(id, 1, "m" + id, 1669947792), 1);
+        }
+
+        Assert.assertEquals(4, store.size());
+        Assert.assertEquals(0, store.getVersion(1));
+        for (int id = 2; id <= 5; id++) {
+            Assert.assertEquals(1, store.getVersion(id));
+        }
+        Assert.assertEquals(1L, (long) store.getMetrics().get("evictions"));
+    }
+
+    /**
+     * Reading the first of four stored messages, then storing two more
+     *
+     * Expected Result:
+     *  The read message gets a second chance: the second and third messages are evicted instead of it
+     */
+    @Test
+    public void readMessagesGetASecondChance() {
+        for (int id = 1; id <= 4; id++) {
+            store.put(new Message(id, 1, "m" + id, 1669947792), 1);
+        }
+        store.getVersioned(1);
+
+        store.put(new Message(5, 1, "m5", 1669947792), 1);
+        store.put(new Message(6, 1, "m6", 1669947792), 1);
+
+        Assert.assertEquals(1, store.getVersion(1));
+        Assert.assertEquals(0, store.getVersion(2));
+        Assert.assertEquals(0, store.getVersion(3));
+        Assert.assertEquals(1, store.getVersion(4));
+    }
+
+    /**
+     * Storing four 20-byte texts in a 64-byte arena, while slots are still free
+     *
+     * Expected Result:
+     *  The live texts would overflow the arena, so the first message is evicted to make room
+     */
+    @Test
+    public void fullArenaEvictsEvenWithFreeSlots() {
+        for (int id = 1; id <= 4; id++) {
+            store.put(new Message(id, 1, "01234567890123456789", 1669947792), 1);
+        }
+
+        Assert.assertEquals(3, store.size());
+        Assert.assertEquals(0, store.getVersion(1));
+        Assert.assertEquals(1L, (long) store.getMetrics().get("evictions"));
+    }
+
+    /**
+     * Storing two 30-byte texts, removing the first, then storing a third that only fits once the removed text's
+     * space is reclaimed
+     *
+     * Expected Result:
+     *  The arena is compacted instead of evicting: both remaining messages keep their text, and the arena holds only them
+     */
+    @Test
+    public void arenaIsCompactedWhenItsEndIsReached() {
+        String first = "first message, thirty bytes...";
+        String second = "second message, also thirty b.";
+        String third = "third message, thirty bytes ok";
+        store.put(new Message(1, 1, first, 1669947792), 1);
+        store.put(new Message(2, 1, second, 1669947792), 1);
+        store.remove(1, 1);
+        Assert.assertTrue(store.put(new Message(3, 1, third, 1669947792), 1));
+
+        Assert.assertEquals(second, store.get(2).getMessage_text());
+        Assert.assertEquals(third, store.get(3).getMessage_text());
+        Assert.assertEquals(0L, (long) store.getMetrics().get("evictions"));
+        Assert.assertEquals(60L, (long) store.getMetrics().get("arena_bytes_used"));
+    }
+
+    /**
+     * Filling the arena with four 16-byte texts, removing two and storing two more (which reuse the freed slots, so slot
+     * order no longer follows text order), then removing another and storing a fifth, compacting the arena twice
+     *
+     * Expected Result:
+     *  Every remaining message keeps its own text through both compactions, and nothing is evicted
+     */
+    @Test
+    public void compactionKeepsTextsWhoseSlotsAreOutOfOrder() {
+        String[] texts = {null, "text of msg one.", "text of msg two.", "text of msg 3...", "text of msg four",
+                "text of msg five", "text of msg six.", "text of msg 7..."};
+        for (int id = 1; id <= 4; id++) {
+            store.put(new Message(id, 1, texts[id], 1669947792), 1);
+        }
+        store.remove(1, 1);
+        store.remove(3, 1);
+        Assert.assertTrue(store.put(new Message(5, 1, texts[5], 1669947792), 1));
+        Assert.assertTrue(store.put(new Message(6, 1, texts[6], 1669947792), 1));
+        store.remove(2, 1);
+        Assert.assertTrue(store.put(new Message(7, 1, texts[7], 1669947792), 1));
+
+        for (int id : new int[] {4, 5, 6, 7}) {
+            Assert.assertEquals(texts[id], store.get(id).getMessage_text());
+        }
+        Assert.assertEquals(0L, (long) store.getMetrics().get("evictions"));
+        Assert.assertEquals(64L, (long) store.getMetrics().get("arena_bytes_used"));
+    }
+
+    /**
+     * Storing a message whose text mixes multi-byte UTF-8 characters (2, 3, and 4 bytes long) with characters JSON
+     * must escape, then reading it back as an object and as JSON
+     *
+     * Expected Result:
+     *  Both the materialized message and the decoded JSON carry exactly the original text
+     */
+    @Test
+    public void multiByteTextRoundTrips() throws IOException {
+        Message msg = new Message(1, 1, "caf\u00e9 \u2013 \u65e5\u672c \ud83c\udf89 \"quoted\"\n", 1669947792);
+        Assert.assertTrue(store.put(msg, 1));
+
+        Assert.assertEquals(msg, store.get(1));
+        Assert.assertEquals(msg, new ObjectMapper().readValue(store.getJson(1), Message.class));
+    }
+}
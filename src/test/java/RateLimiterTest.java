@@ -0,0 +1,95 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.ConcurrentLongLongHashMap;
+import Util.RateLimiter;
+
+public class RateLimiterTest {
+
+    /**
+     * Taking tokens from a bucket of 3 that refills once an hour, for two keys
+     *
+     * Expected Result:
+     *  Each key gets exactly 3 tokens; the 4th is refused with a wait of about an hour
+     */
+    @Test
+    public void eachKeyGetsItsOwnBurst() {
+        RateLimiter limiter = new RateLimiter(1.0 / 3600, 3, 60_000);
+        for (long key = 1; key <= 2; key++) {
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(0, limiter.tryAcquire(key));
+            }
+            long waitNanos = limiter.tryAcquire(key);
+            Assert.assertTrue(waitNanos > TimeUnit.MINUTES.toNanos(59));
+        }
+        Assert.assertEquals(2, limiter.size());
+    }
+
+    /**
+     * 4 threads taking tokens from the same 50 keys, with an idle timeout of 0 so that every call also sweeps
+     *
+     * Expected Result:
+     *  Every key hands out exactly its burst of 5 tokens in total; a sweep never drops a bucket that is being taken
+     *  from, which would let the key start over with a full bucket
+     */
+    @Test
+    public void sweepingNeverHandsOutExtraTokens() throws Exception {
+        RateLimiter limiter = new RateLimiter(1.0 / 3600, 5, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<int[]>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            results.add(pool.submit(() -> {
+                int[] granted = new int[50];
+                for (int round = 0; round < 20; round++) {
+                    for (int key = 0; key < 50; key++) {
+                        if (limiter.tryAcquire(key) == 0) {
+                            granted[key]++;
+                        }
+                    }
+                }
+                return granted;
+            }));
+        }
+        int[] total = new int[50];
+        for (Future<int[]> result : results) {
+            int[] granted = result.get(60, TimeUnit.SECONDS);
+            for (int key = 0; key < 50; key++) {
+                total[key] += granted[key];
+            }
+        }
+        pool.shutdown();
+        for (int key = 0; key < 50; key++) {
+            Assert.assertEquals("tokens for key " + key, 5, total[key]);
+        }
+    }
+
+    /**
+     * Inserting 10,000 keys (forcing every stripe to resize), removing the odd values, then reading everything back
+     *
+     * Expected Result:
+     *  Only the even keys remain, each with its own value
+     */
+    @Test
+    public void mapKeepsEntriesAcrossResizesAndRemovals() {
+        ConcurrentLongLongHashMap map = new ConcurrentLongLongHashMap(16);
+        for (long key = 0; key < 10_000; key++) {
+            Assert.assertEquals(key * 3, map.getOrInsert(key * 7919, key * 3));
+        }
+        Assert.assertEquals(5_000, map.removeValuesIf(value -> value % 2 != 0));
+        Assert.assertEquals(5_000, map.size());
+        for (long key = 0; key < 10_000; key++) {
+            long expected = key * 3 % 2 == 0 ? key * 3 : -1;
+            Assert.assertEquals(expected, map.getOrInsert(key * 7919, -1));
+        }
+        Assert.assertTrue(map.compareAndSet(0, 0, 42));
+        Assert.assertFalse(map.compareAndSet(0, 0, 43));
+        Assert.assertEquals(42, map.getOrInsert(0, -1));
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ReadinessTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, enable a short warm-up, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("socialmedia.warmup.enabled", "true");
+        System.setProperty("socialmedia.warmup.threads", "2");
+        System.setProperty("socialmedia.warmup.minBatches", "5");
+        System.setProperty("socialmedia.warmup.maxMillis", "10000");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.warmup.enabled");
+        System.clearProperty("socialmedia.warmup.threads");
+        System.clearProperty("socialmedia.warmup.minBatches");
+        System.clearProperty("socialmedia.warmup.maxMillis");
+    }
+
+
+    /**
+     * Polling GET localhost:8080/ready while the node fills its pool, primes its cache, and warms up
+     *
+     * Expected Response:
+     *  Status Code: 503 until preparation is done, then 200
+     *  Response Body: ready set to true along with the time taken by the pool, caches, and warm-up phases, and the
+     *  warm-up's scratch dataset never shows up in the real one
+     */
+    @Test
+    public void readyOnceWarmupCompletes() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/ready");
+        for (int i = 0; i < 300 && response.statusCode() == 503; i++) {
+            Thread.sleep(100);
+            response = get("/ready");
+        }
+
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode readiness = objectMapper.readTree(response.body());
+        Assert.assertTrue(readiness.get("ready").asBoolean());
+        Assert.assertTrue(readiness.get("phases").has("pool"));
+        Assert.assertTrue(readiness.get("phases").has("caches (1 messages)"));
+        Assert.assertTrue(readiness.get("phases").has("warmup"));
+        Assert.assertTrue(socialMediaController.isReady());
+
+        List<Message> messages = objectMapper.readValue(get("/messages").body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), messages);
+    }
+
+    /**
+     * Posting three messages at different times, then priming a fresh message service with room for two of them
+     *
+     * Expected Result: the two newest messages are cached, and the oldest one (and the seed message) are not
+     */
+    @Test
+    public void primingCachesTheNewestMessages() {
+        MessageService primed = new MessageService(new MessageDAO(), null);
+        Message oldest = primed.createNewMessage(new Message(1, "oldest", 1669950000));
+        Message newest = primed.createNewMessage(new Message(1, "newest", 1669950200));
+        Message middle = primed.createNewMessage(new Message(1, "middle", 1669950100));
+
+        MessageService restarted = new MessageService(new MessageDAO(), null);
+        Assert.assertEquals(2, restarted.primeHotMessages(86_400, 2));
+        Assert.assertEquals(1, restarted.getCachedMessageVersion(newest.getMessage_id()));
+        Assert.assertEquals(1, restarted.getCachedMessageVersion(middle.getMessage_id()));
+        Assert.assertEquals(0, restarted.getCachedMessageVersion(oldest.getMessage_id()));
+        Assert.assertEquals(0, restarted.getCachedMessageVersion(1));
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
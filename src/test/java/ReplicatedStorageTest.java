@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.Repositories;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.ReplicatedDatabase;
+import io.javalin.Javalin;
+
+public class ReplicatedStorageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    ReplicatedDatabase replication;
+    List<DataSource> replicaSources;
+
+    /**
+     * Before every test, reset the main database, copy it into 2 fresh in-memory replicas, start the Javalin app on top
+     * of them without rate limits, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        // the concurrent writers below send more writes from one address than the default limits allow
+        System.setProperty("socialmedia.ratelimit.enabled", "false");
+        String urlPattern = "jdbc:h2:mem:replica" + System.nanoTime() + "_%d;DB_CLOSE_DELAY=-1";
+        replicaSources = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            replicaSources.add(ConnectionUtil.createPool(String.format(urlPattern, i)));
+        }
+        replication = new ReplicatedDatabase(ConnectionUtil.getDataSource(), replicaSources, ReplicatedDatabase.READ_YOUR_WRITES_PRIMARY, 50);
+
+        socialMediaController = new SocialMediaController(Repositories.replicated(replication));
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.ratelimit.enabled");
+    }
+
+
+    /**
+     * Posting and then updating a message, immediately reading it back as the same client
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the client always sees its own latest write, whether or not the replicas have applied it yet
+     */
+    @Test
+    public void clientReadsItsOwnWrites() throws IOException, InterruptedException {
+        Message posted = postMessage("writer", "first draft");
+
+        HttpResponse<String> patched = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + posted.getMessage_id()))
+                .header("X-Client-Id", "writer")
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"final draft\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, patched.statusCode());
+
+        // the seed message of the test database comes first
+        List<Message> byAuthor = getMessagesOfUser1("writer");
+        Assert.assertEquals(2, byAuthor.size());
+        Assert.assertEquals("final draft", byAuthor.get(1).getMessage_text());
+    }
+
+    /**
+     * Posting messages as one client, waiting for the replicas to apply them, then reading as another client
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every replica ends up with the primary's messages (including the ones copied at startup), with
+     *  the same ids
+     */
+    @Test
+    public void replicasCatchUpWithThePrimary() throws IOException, InterruptedException {
+        Message first = postMessage("writer", "replicated 1");
+        Message second = postMessage("writer", "replicated 2");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!isFullyApplied() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(isFullyApplied());
+
+        // round-robin means consecutive reads land on different replicas
+        Message seed = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(List.of(seed, first, second), getMessagesOfUser1("reader"));
+        Assert.assertEquals(List.of(seed, first, second), getMessagesOfUser1("reader"));
+    }
+
+    /**
+     * Posting messages from several clients at once and immediately updating or deleting each one by its new id, then
+     * waiting for the replicas to apply everything
+     *
+     * Expected Result: every replica holds exactly the primary's rows, texts, and versions (no update or delete of a new
+     * id reached a replica ahead of its insert)
+     */
+    @Test
+    public void writesToNewMessagesReachReplicasInOrder() throws Exception {
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String clientId = "writer" + t;
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 25; i++) {
+                        Message posted = postMessage(clientId, "draft " + i);
+                        String message = "http://localhost:8080/messages/" + posted.getMessage_id();
+                        HttpRequest.Builder followUp = HttpRequest.newBuilder().uri(URI.create(message)).header("X-Client-Id", clientId);
+                        webClient.send((i % 2 == 0)
+                                ? followUp.method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"final " + i + "\"}")).build()
+                                : followUp.DELETE().build(), HttpResponse.BodyHandlers.ofString());
+                    }
+                }
+                catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        Assert.assertEquals(List.of(), failures);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!isFullyApplied() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(isFullyApplied());
+
+        List<String> primaryRows = rowsOf(ConnectionUtil.getDataSource());
+        Assert.assertEquals(1 + 4 * 13, primaryRows.size());
+        for (DataSource replica : replicaSources) {
+            Assert.assertEquals(primaryRows, rowsOf(replica));
+        }
+    }
+
+    /**
+     * Publishing a write every replica rejects (a message of an account that doesn't exist), then posting a message
+     * and reading the author's messages as another client
+     *
+     * Expected Result: the replicas retry the failing batch a bounded number of times and are then marked unhealthy,
+     * after which reads are served by the primary and see the new message
+     */
+    @Test
+    public void replicasThatCantApplyAreGivenUp() throws Exception {
+        replication.publish("INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)",
+                1000, 9999, "orphan", 1669947792L);
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!isGivenUp() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue(isGivenUp());
+
+        Message posted = postMessage("writer", "after the replicas failed");
+        Message seed = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(List.of(seed, posted), getMessagesOfUser1("reader"));
+        Assert.assertEquals(List.of(seed, posted), getMessagesOfUser1("reader"));
+    }
+
+    /**
+     * Registering accounts from several clients at once and immediately posting a message under each new account,
+     * then waiting for the replicas to apply everything
+     *
+     * Expected Result: every post succeeds, the replicas stay healthy (no message reached them ahead of its account),
+     * and they hold exactly the primary's accounts and messages
+     */
+    @Test
+    public void newAccountsReachReplicasBeforeTheirMessages() throws Exception {
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String clientId = "registrant" + t;
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 10; i++) {
+                        HttpResponse<String> registered = webClient.send(HttpRequest.newBuilder()
+                                .uri(URI.create("http://localhost:8080/register"))
+                                .header("X-Client-Id", clientId)
+                                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"" + clientId + "_" + i + "\", \"password\":\"password\"}"))
+                                .build(), HttpResponse.BodyHandlers.ofString());
+                        Assert.assertEquals(200, registered.statusCode());
+                        int accountId = objectMapper.readTree(registered.body()).get("account_id").asInt();
+
+                        HttpResponse<String> posted = webClient.send(HttpRequest.newBuilder()
+                                .uri(URI.create("http://localhost:8080/messages"))
+                                .header("X-Client-Id", clientId)
+                                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(accountId, "hello " + i, 1669947792))))
+                                .build(), HttpResponse.BodyHandlers.ofString());
+                        Assert.assertEquals(200, posted.statusCode());
+                    }
+                }
+                catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        Assert.assertEquals(List.of(), failures);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!isFullyApplied() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(isFullyApplied());
+        Assert.assertFalse(replication.getLagMetrics().entrySet().stream()
+                .anyMatch(metric -> metric.getKey().endsWith("_healthy") && metric.getValue() == 0));
+
+        List<String> primaryRows = rowsOf(ConnectionUtil.getDataSource());
+        List<String> primaryAccounts = accountsOf(ConnectionUtil.getDataSource());
+        Assert.assertEquals(1 + 4 * 10, primaryRows.size());
+        for (DataSource replica : replicaSources) {
+            Assert.assertEquals(primaryRows, rowsOf(replica));
+            Assert.assertEquals(primaryAccounts, accountsOf(replica));
+        }
+    }
+
+    private static List<String> accountsOf(DataSource source) throws SQLException {
+        List<String> accounts = new ArrayList<>();
+        try (Connection connection = source.getConnection(); Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT account_id, username FROM account ORDER BY account_id");
+            while (rs.next()) {
+                accounts.add(rs.getInt(1) + " " + rs.getString(2));
+            }
+        }
+        return accounts;
+    }
+
+    private boolean isGivenUp() {
+        return replication.getLagMetrics().entrySet().stream()
+                .filter(metric -> metric.getKey().endsWith("_healthy"))
+                .allMatch(metric -> metric.getValue() == 0);
+    }
+
+    private static List<String> rowsOf(DataSource source) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Connection connection = source.getConnection(); Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT message_id, message_text, version FROM message ORDER BY message_id");
+            while (rs.next()) {
+                rows.add(rs.getInt(1) + " " + rs.getString(2) + " " + rs.getInt(3));
+            }
+        }
+        return rows;
+    }
+
+    private boolean isFullyApplied() {
+        return replication.getLagMetrics().entrySet().stream()
+                .filter(metric -> metric.getKey().endsWith("_lag"))
+                .allMatch(metric -> metric.getValue() == 0);
+    }
+
+    private List<Message> getMessagesOfUser1(String clientId) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .header("X-Client-Id", clientId)
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private Message postMessage(String clientId, String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .header("X-Client-Id", clientId)
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(1, text, 1669947792))))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+}
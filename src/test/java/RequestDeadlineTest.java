@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.Repositories;
+import Util.ConnectionUtil;
+import Util.DeadlineExceededException;
+import Util.GatedDataSource;
+import Util.RequestContext;
+import io.javalin.Javalin;
+
+public class RequestDeadlineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        RequestContext.close();
+    }
+
+
+    /**
+     * Restarting the app on a connection gate with a single permit and a 10 second wait, holding that permit, then
+     * sending a request to GET localhost:8080/messages/2 with X-Request-Timeout-Millis: 1000
+     *
+     * Expected Response:
+     *  Status Code: 504 (a 503 would mean the gate's own wait ran out instead), answered well within the gate's wait;
+     *  the gate sheds the one waiting request, and serves the next one once the permit is free again
+     */
+    @Test
+    public void requestFailsFastOnceItsBudgetIsSpent() throws IOException, InterruptedException, SQLException {
+        GatedDataSource gate = new GatedDataSource(ConnectionUtil.getDataSource(), 1, 10_000);
+        app.stop();
+        socialMediaController = new SocialMediaController(Repositories.h2(gate));
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+        // a first request pays for class loading and the cold route, which could spend the budget before the gate
+        Assert.assertEquals(200, get("/messages/2", "5000").statusCode());
+
+        try (Connection held = gate.getConnection()) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = get("/messages/2", "1000");
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            Assert.assertEquals(504, response.statusCode());
+            Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 5_000);
+            Assert.assertEquals(1L, (long) gate.getMetrics().get("shed"));
+        }
+        Assert.assertEquals(200, get("/messages/2", "1000").statusCode());
+    }
+
+    /**
+     * Sending requests to GET localhost:8080/messages with a malformed or non-positive X-Request-Timeout-Millis header
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void malformedDeadlineHeaderIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages", "soon").statusCode());
+        Assert.assertEquals(400, get("/messages", "0").statusCode());
+        Assert.assertEquals(200, get("/messages", "1000").statusCode());
+    }
+
+    /**
+     * Running a query far longer than the current request's deadline
+     *
+     * Expected Result: the statement is cancelled by its query timeout and reported as DeadlineExceededException
+     */
+    @Test
+    public void statementIsCancelledAtTheDeadline() throws SQLException {
+        RequestContext.open("deadline-test");
+        RequestContext.setDeadline(500);
+        long start = System.nanoTime();
+        try (Connection connection = ConnectionUtil.getDataSource().getConnection()) {
+            PreparedStatement ps = connection.prepareStatement("SELECT SUM(X * 2) FROM SYSTEM_RANGE(1, 10000000000)");
+            RequestContext.applyDeadline(ps);
+            try {
+                ps.executeQuery();
+                Assert.fail("the query must not run to completion");
+            }
+            catch (SQLException e) {
+                RequestContext.rethrowIfDeadlineExceeded(e);
+                Assert.fail("expected a query timeout but got " + e.getMessage());
+            }
+        }
+        catch (DeadlineExceededException e) {
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 3_000);
+        }
+        Assert.assertThrows(DeadlineExceededException.class, RequestContext::checkDeadline);
+    }
+
+    private HttpResponse<String> get(String path, String timeoutMillis) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .header("X-Request-Timeout-Millis", timeoutMillis)
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageChange;
+import Model.MessageChangeSet;
+import Util.ConnectionUtil;
+import Util.MessageChangeLog;
+import io.javalin.Javalin;
+
+public class RetrieveMessageChangesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Creating, updating, and deleting messages, then sending an http request to GET localhost:8080/messages/changes?since=0
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON change set with the latest change per message, deletions as tombstones
+     */
+    @Test
+    public void getChangesSinceStart() throws IOException, InterruptedException {
+        long start = changeVersion();
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"hello message\", \"time_posted_epoch\": 1669947792}"))
+                .build());
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edited message\"}"))
+                .build());
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build());
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?since=0"))
+                .build());
+
+        Assert.assertEquals(200, response.statusCode());
+        MessageChangeSet changes = objectMapper.readValue(response.body(), MessageChangeSet.class);
+        Assert.assertEquals(start + 3, changes.getVersion());
+        Assert.assertFalse(changes.isResync());
+        Assert.assertEquals(2, changes.getChanges().size());
+
+        MessageChange update = changes.getChanges().get(0);
+        Assert.assertEquals(MessageChange.UPDATE, update.getType());
+        Assert.assertEquals(new Message(2, 1, "edited message", 1669947792), update.getMessage());
+
+        MessageChange delete = changes.getChanges().get(1);
+        Assert.assertEquals(MessageChange.DELETE, delete.getType());
+        Assert.assertEquals(1, delete.getMessage_id());
+        Assert.assertNull(delete.getMessage());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes?since=50 (a version this server never issued)
+     * 
+     * Expected Response:
+     *  Status Code: 410
+     *  Response Body: JSON change set flagged with resync
+     */
+    @Test
+    public void getChangesUnknownVersion() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?since=50"))
+                .build());
+
+        Assert.assertEquals(410, response.statusCode());
+        MessageChangeSet changes = objectMapper.readValue(response.body(), MessageChangeSet.class);
+        Assert.assertTrue(changes.isResync());
+        Assert.assertTrue(changes.getChanges().isEmpty());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes without a since parameter
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getChangesMissingVersion() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes"))
+                .build());
+
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * Taking the change version of GET localhost:8080/messages and creating a message, then restarting the app (a new
+     * process starts its change log over) and creating another message, then sending an http request to
+     * GET localhost:8080/messages/changes with the version taken before the restart
+     *
+     * Expected Response:
+     *  Status Code: 410
+     *  Response Body: JSON change set flagged with resync, since the version counts from another start of the log
+     */
+    @Test
+    public void getChangesFromBeforeARestart() throws IOException, InterruptedException {
+        long beforeRestart = changeVersion();
+        postMessage("before the restart");
+
+        app.stop();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        app.start(8080);
+        postMessage("after the restart");
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?since=" + beforeRestart))
+                .build());
+        Assert.assertEquals(410, response.statusCode());
+        Assert.assertTrue(objectMapper.readValue(response.body(), MessageChangeSet.class).isResync());
+    }
+
+    /**
+     * Recording two changes into a log, invalidating it (as a bulk import does), recording one more, then asking for
+     * the changes since every version from before the invalidation up to the latest
+     *
+     * Expected Result: versions issued before the invalidation (and 0) get a resync, the version issued right after it
+     * gets exactly the one change recorded since, and no version reads an emptied slot
+     */
+    @Test
+    public void changesAfterInvalidationAreServedWithoutGaps() {
+        MessageChangeLog log = new MessageChangeLog(4);
+        log.recordInsert(new Message(1, 1, "first", 1669947792));
+        log.recordInsert(new Message(2, 1, "second", 1669947792));
+        long beforeInvalidation = log.getLatestVersion();
+        log.invalidate();
+        long afterInvalidation = log.getLatestVersion();
+        log.recordInsert(new Message(3, 1, "third", 1669947792));
+
+        Assert.assertTrue(log.changesSince(0).isResync());
+        for (long since = beforeInvalidation - 2; since < afterInvalidation; since++) {
+            Assert.assertTrue(log.changesSince(since).isResync());
+        }
+        MessageChangeSet changes = log.changesSince(afterInvalidation);
+        Assert.assertFalse(changes.isResync());
+        Assert.assertEquals(1, changes.getChanges().size());
+        Assert.assertEquals(3, changes.getChanges().get(0).getMessage_id());
+        Assert.assertTrue(log.changesSince(log.getLatestVersion()).getChanges().isEmpty());
+    }
+
+    /**
+     * Recording an insert and an update of one message and the deletion of another, then asking whether rows read at
+     * various versions (as a lagging replica would return them) are superseded
+     *
+     * Expected Result: rows older than the retained update, and every row of the deleted message, are superseded;
+     * the updated row itself and messages the log knows nothing about are not
+     */
+    @Test
+    public void rowsOlderThanARetainedChangeAreSuperseded() {
+        MessageChangeLog log = new MessageChangeLog(4);
+        log.recordInsert(new Message(1, 1, "first", 1669947792));
+        log.recordUpdate(new Message(1, 1, "second", 1669947792), 2);
+        log.recordDelete(2, 3);
+
+        Assert.assertTrue(log.isSuperseded(1, 1));
+        Assert.assertFalse(log.isSuperseded(1, 2));
+        Assert.assertTrue(log.isSuperseded(2, 3));
+        Assert.assertFalse(log.isSuperseded(3, 1));
+    }
+
+    private long changeVersion() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build());
+        return Long.parseLong(response.headers().firstValue("X-Change-Version").orElse("-1"));
+    }
+
+    private void postMessage(String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"" + text + "\", \"time_posted_epoch\": 1669947792}"))
+                .build());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.MessageStats;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessageStatsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/stats
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the account's message statistics
+     */
+    @Test
+    public void getStatsForUserWithMessages() throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"later message\", \"time_posted_epoch\": 1669950000}"))
+                .build());
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/stats"))
+                .build());
+
+        Assert.assertEquals(200, response.statusCode());
+        MessageStats expectedResult = new MessageStats(1, 2, 1669947792L, 1669950000L);
+        MessageStats actualResult = objectMapper.readValue(response.body(), MessageStats.class);
+        Assert.assertEquals(expectedResult.toString(), actualResult.toString());
+    }
+
+    /**
+     * Deleting the newest message, then sending an http request to GET localhost:8080/messages/stats
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the global statistics with the deleted message's post time no longer counted
+     */
+    @Test
+    public void getGlobalStatsAfterDelete() throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"later message\", \"time_posted_epoch\": 1669950000}"))
+                .build());
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build());
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/stats"))
+                .build());
+
+        Assert.assertEquals(200, response.statusCode());
+        MessageStats expectedResult = new MessageStats(null, 1, 1669947792L, 1669947792L);
+        MessageStats actualResult = objectMapper.readValue(response.body(), MessageStats.class);
+        Assert.assertEquals(expectedResult.toString(), actualResult.toString());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/2/stats (account 2 has no messages)
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of statistics with a message count of 0
+     */
+    @Test
+    public void getStatsForUserWithoutMessages() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/stats"))
+                .build());
+
+        Assert.assertEquals(200, response.statusCode());
+        MessageStats expectedResult = new MessageStats(2, 0, null, null);
+        MessageStats actualResult = objectMapper.readValue(response.body(), MessageStats.class);
+        Assert.assertEquals(expectedResult.toString(), actualResult.toString());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
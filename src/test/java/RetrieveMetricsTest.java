@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.SingleFlight;
+import io.javalin.Javalin;
+
+public class RetrieveMetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending two http requests to GET localhost:8080/messages/1, then GET localhost:8080/metrics
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON metrics counting one database read of the message, the second read being served off-heap
+     */
+    @Test
+    public void getMetricsCountsCoalescedReads() throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")).build());
+        send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")).build());
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build());
+
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode metrics = objectMapper.readTree(response.body());
+        JsonNode messageById = metrics.path("read_coalescing").path("message_by_id");
+        Assert.assertEquals(1, messageById.path("calls").asLong());
+        Assert.assertEquals(0, messageById.path("in_flight").asLong());
+        Assert.assertEquals(1, metrics.path("offheap_messages").path("hits").asLong());
+    }
+
+    /**
+     * Calling a SingleFlight for one key from 8 threads at once, while the first call's loader is blocked until every
+     * other caller is waiting on it
+     *
+     * Expected Result:
+     *  The loader runs once, every caller receives that one result, and the metrics count 7 coalesced calls
+     */
+    @Test
+    public void singleFlightRunsConcurrentCallsOnce() throws Exception {
+        SingleFlight<Integer, Object> flight = new SingleFlight<>(10000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            results.add(callers.submit(() -> flight.execute(1, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                awaitQuietly(release);
+                return new Object();
+            })));
+            Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < 8; i++) {
+                results.add(callers.submit(() -> flight.execute(1, () -> {
+                    loads.incrementAndGet();
+                    return new Object();
+                })));
+            }
+            // only releases the loader once every other caller has joined its flight
+            awaitCoalesced(flight, 7);
+            release.countDown();
+
+            Object first = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Object> result : results) {
+                Assert.assertSame(first, result.get(5, TimeUnit.SECONDS));
+            }
+            Assert.assertEquals(1, loads.get());
+            Assert.assertEquals(8L, (long) flight.getMetrics().get("calls"));
+            Assert.assertEquals(0L, (long) flight.getMetrics().get("in_flight"));
+        }
+        finally {
+            callers.shutdownNow();
+        }
+    }
+
+    /**
+     * Calling a SingleFlight for one key whose blocked loader fails while another caller waits on it, then calling it
+     * again for that key
+     *
+     * Expected Result:
+     *  Both callers of the failed flight get its exception, and the next call runs the loader again instead of
+     *  receiving the failure
+     */
+    @Test
+    public void singleFlightDoesNotKeepFailures() throws Exception {
+        SingleFlight<Integer, String> flight = new SingleFlight<>(10000);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> failing = callers.submit(() -> flight.execute(1, () -> {
+                loading.countDown();
+                awaitQuietly(release);
+                throw new IllegalStateException("load failed");
+            }));
+            Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+            Future<String> waiting = callers.submit(() -> flight.execute(1, () -> "not run"));
+            awaitCoalesced(flight, 1);
+            release.countDown();
+
+            for (Future<String> result : List.of(failing, waiting)) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    Assert.fail("the failed load should have been rethrown");
+                }
+                catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+                    Assert.assertEquals("load failed", e.getCause().getMessage());
+                }
+            }
+
+            Assert.assertEquals("loaded", flight.execute(1, () -> "loaded"));
+            Assert.assertEquals(0L, (long) flight.getMetrics().get("in_flight"));
+        }
+        finally {
+            callers.shutdownNow();
+        }
+    }
+
+    // waits until the given number of callers joined another caller's flight, failing the test after 5 seconds
+    private static void awaitCoalesced(SingleFlight<?, ?> flight, long coalesced) throws InterruptedException {
+        long giveUpAt = System.currentTimeMillis() + 5000;
+        while (flight.getMetrics().get("coalesced") < coalesced) {
+            Assert.assertTrue("callers didn't join the flight in time", System.currentTimeMillis() < giveUpAt);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.Repositories;
+import DAO.ShardedMessageDAO;
+import Model.Account;
+import Model.Message;
+import Model.VersionedMessage;
+import Util.ConnectionUtil;
+import Util.DeadlineExceededException;
+import Util.RequestContext;
+import io.javalin.Javalin;
+
+public class ShardedStorageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    ShardedMessageDAO shardedMessages;
+
+    /**
+     * Before every test, reset the main database, open 3 fresh in-memory shards, start the Javalin app on top of them,
+     * and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        String urlPattern = "jdbc:h2:mem:shard" + System.nanoTime() + "_%d;DB_CLOSE_DELAY=-1";
+        shardedMessages = ShardedMessageDAO.open(3, urlPattern);
+        socialMediaController = new SocialMediaController(new Repositories(new AccountDAO(), shardedMessages));
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        // accounts 2 and 3 join testuser1, so the three authors land on three different shards
+        register("shardeduser2");
+        register("shardeduser3");
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Posting messages from three authors, then sending an http request to GET localhost:8080/messages
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message from every shard, with unique ids, merged in message_id order
+     */
+    @Test
+    public void getAllMessagesMergesShards() throws IOException, InterruptedException {
+        Message first = postMessage(1, "from shard 1");
+        Message second = postMessage(2, "from shard 2");
+        Message third = postMessage(3, "from shard 0");
+        Message fourth = postMessage(1, "from shard 1 again");
+
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(4, actualResult.size());
+        Assert.assertTrue(actualResult.containsAll(List.of(first, second, third, fourth)));
+        for (int i = 1; i < actualResult.size(); i++) {
+            Assert.assertTrue(actualResult.get(i - 1).getMessage_id() < actualResult.get(i).getMessage_id());
+        }
+    }
+
+    /**
+     * Posting messages from two authors, then reading, updating, and deleting them through the id-based endpoints
+     * 
+     * Expected Response:
+     *  Every id-based endpoint routes to the message's shard, and per-author reads only see that author's messages
+     */
+    @Test
+    public void idAndAuthorRoutingReachTheRightShard() throws IOException, InterruptedException {
+        Message mine = postMessage(2, "mine");
+        postMessage(3, "someone else's");
+
+        HttpResponse<String> byId = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + mine.getMessage_id()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(mine, objectMapper.readValue(byId.body(), Message.class));
+
+        HttpResponse<String> byAuthor = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/messages"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(List.of(mine), objectMapper.readValue(byAuthor.body(), new TypeReference<List<Message>>(){}));
+
+        HttpResponse<String> deleted = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + mine.getMessage_id()))
+                .DELETE()
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(mine, objectMapper.readValue(deleted.body(), Message.class));
+    }
+
+    /**
+     * Posting messages from three authors, then looking them up by id in one call, straight from the sharded storage
+     * 
+     * Expected Result: every existing message is found on its own shard, and the missing id is absent
+     */
+    @Test
+    public void multiGetGroupsIdsByShard() throws IOException, InterruptedException {
+        Message first = postMessage(1, "from shard 1");
+        Message second = postMessage(2, "from shard 2");
+        Message third = postMessage(3, "from shard 0");
+
+        Map<Integer, VersionedMessage> found = shardedMessages.getVersionedMessagesByIds(
+                List.of(third.getMessage_id(), 1000, first.getMessage_id(), second.getMessage_id()));
+        Assert.assertEquals(3, found.size());
+        Assert.assertEquals(first, found.get(first.getMessage_id()).getMessage());
+        Assert.assertEquals(second, found.get(second.getMessage_id()).getMessage());
+        Assert.assertEquals(third, found.get(third.getMessage_id()).getMessage());
+    }
+
+    /**
+     * Reading every message across the shards on behalf of a request whose deadline has already passed
+     *
+     * Expected Result: the DeadlineExceededException raised on a shard's worker reaches the caller as it is (so the
+     * request is answered with 504) instead of being wrapped in another exception
+     */
+    @Test
+    public void shardFailuresKeepTheirType() throws InterruptedException {
+        RequestContext.open("sharded-test");
+        try {
+            RequestContext.setDeadline(1);
+            Thread.sleep(10);
+            Assert.assertThrows(DeadlineExceededException.class, shardedMessages::getAllMessages);
+        }
+        finally {
+            RequestContext.close();
+        }
+    }
+
+    private void register(String username) throws IOException, InterruptedException {
+        webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Account(username, "password"))))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private Message postMessage(int posted_by, String text) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(posted_by, text, 1669947792))))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+}
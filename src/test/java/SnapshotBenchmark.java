@@ -0,0 +1,78 @@
+import java.io.FileReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Map;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.RunScript;
+
+import DAO.BinarySnapshot;
+import Util.ConnectionUtil;
+
+/**
+ * Measures exporting and importing a binary snapshot of a large dataset between two in-memory H2 databases.
+ *
+ * Not a unit test (surefire doesn't pick it up). Run it after "mvn test-compile" with the test classpath, e.g.
+ * java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) SnapshotBenchmark [messages]
+ */
+public class SnapshotBenchmark {
+    private static final int AUTHORS = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int messageCount = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        JdbcConnectionPool source = ConnectionUtil.createPool("jdbc:h2:mem:snapshot_source;DB_CLOSE_DELAY=-1");
+        JdbcConnectionPool target = ConnectionUtil.createPool("jdbc:h2:mem:snapshot_target;DB_CLOSE_DELAY=-1");
+        createSchema(source);
+        createSchema(target);
+        fill(source, messageCount);
+
+        Path file = Files.createTempFile("benchmark", ".snap");
+        Map<String, Long> exported = BinarySnapshot.exportTo(source, file);
+        report("export", exported);
+        Map<String, Long> imported = BinarySnapshot.importFrom(target, file);
+        report("import", imported);
+        Files.deleteIfExists(file);
+    }
+
+    private static void createSchema(JdbcConnectionPool pool) throws Exception {
+        try (Connection connection = pool.getConnection()) {
+            RunScript.execute(connection, new FileReader("src/main/resources/SocialMedia.sql"));
+        }
+    }
+
+    private static void fill(JdbcConnectionPool pool, int messageCount) throws Exception {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            PreparedStatement account = connection.prepareStatement("INSERT INTO account (username, password) VALUES (?, ?)");
+            for (int i = 0; i < AUTHORS; i++) {
+                account.setString(1, "bench" + i);
+                account.setString(2, "password");
+                account.addBatch();
+            }
+            account.executeBatch();
+
+            PreparedStatement message = connection.prepareStatement("INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)");
+            for (int i = 0; i < messageCount; i++) {
+                message.setInt(1, 1 + i % AUTHORS);
+                message.setString(2, "benchmark message number " + i);
+                message.setLong(3, 1669947792L + i);
+                message.addBatch();
+                if (i % 10_000 == 9_999) {
+                    message.executeBatch();
+                    connection.commit();
+                }
+            }
+            message.executeBatch();
+            connection.commit();
+        }
+    }
+
+    private static void report(String operation, Map<String, Long> result) {
+        double seconds = Math.max(1, result.get("millis")) / 1e3;
+        System.out.printf("%-7s %,12d rows %,14d bytes %8.2f s %,12.0f rows/s%n", operation,
+                result.get("accounts") + result.get("messages"), result.get("bytes"), seconds,
+                (result.get("accounts") + result.get("messages")) / seconds);
+    }
+}
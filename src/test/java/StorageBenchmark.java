@@ -0,0 +1,73 @@
+import java.util.Random;
+
+import DAO.AccountDAO;
+import DAO.AccountRepository;
+import DAO.InMemoryDatabase;
+import DAO.MessageDAO;
+import DAO.MessageRepository;
+import DAO.Repositories;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Head-to-head benchmark of the storage engines: JDBC over the H2 file database vs the in-memory engine.
+ *
+ * Not a unit test (surefire doesn't pick it up). Run it after "mvn test-compile" with the test classpath, e.g.
+ * java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) StorageBenchmark
+ *
+ * WARNING: the H2 run resets ./h2/db through ConnectionUtil.resetTestDatabase().
+ */
+public class StorageBenchmark {
+    private static final int AUTHORS = 100;
+    private static final int MESSAGES = 20_000;
+    private static final int READS = 50_000;
+
+    public static void main(String[] args) {
+        ConnectionUtil.resetTestDatabase();
+        run("h2", new AccountDAO(), new MessageDAO());
+
+        Repositories memory = Repositories.inMemory(new InMemoryDatabase());
+        run("memory", memory.accounts(), memory.messages());
+    }
+
+    private static void run(String engine, AccountRepository accounts, MessageRepository messages) {
+        for (int i = 0; i < AUTHORS; i++) {
+            accounts.insertUser(new Account("bench" + engine + i, "password"));
+        }
+        int firstAuthor = accounts.getUserByLogin(new Account("bench" + engine + 0, "password")).getAccount_id();
+        Random random = new Random(42);
+
+        long start = System.nanoTime();
+        int firstMessage = -1;
+        for (int i = 0; i < MESSAGES; i++) {
+            Message inserted = messages.insertMessage(new Message(firstAuthor + random.nextInt(AUTHORS), "benchmark message " + i, 1669947792L + i));
+            if (firstMessage < 0) {
+                firstMessage = inserted.getMessage_id();
+            }
+        }
+        report(engine, "insertMessage", MESSAGES, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            messages.getMessageById(firstMessage + random.nextInt(MESSAGES));
+        }
+        report(engine, "getMessageById", READS, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < READS / 10; i++) {
+            messages.getAllMessagesByUser(firstAuthor + random.nextInt(AUTHORS));
+        }
+        report(engine, "getAllMessagesByUser", READS / 10, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            accounts.isExistingUsername("bench" + engine + random.nextInt(AUTHORS));
+        }
+        report(engine, "isExistingUsername", READS, System.nanoTime() - start);
+    }
+
+    private static void report(String engine, String operation, int count, long nanos) {
+        System.out.printf("%-7s %-22s %10.0f ops/s %10.2f us/op%n", engine, operation, count / (nanos / 1e9), nanos / 1e3 / count);
+    }
+}
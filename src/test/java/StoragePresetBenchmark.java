@@ -0,0 +1,102 @@
+import java.io.FileReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.RunScript;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.StorageSettings;
+
+/**
+ * Write throughput of the storage presets: single-row inserts (one commit each) from one and from several threads,
+ * and batched inserts as used by the bulk import.
+ *
+ * Not a unit test (surefire doesn't pick it up). Run it after "mvn test-compile" with the test classpath, e.g.
+ * java -cp target/classes:target/test-classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) StoragePresetBenchmark
+ *
+ * The file presets write to a temporary directory, not ./h2/db.
+ */
+public class StoragePresetBenchmark {
+    private static final int AUTHORS = 100;
+    private static final int SINGLE_INSERTS = 5_000;
+    private static final int WRITER_THREADS = 8;
+    private static final int BATCH_SIZE = 500;
+    private static final int BATCHED_INSERTS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("storage-presets");
+        // H2's own defaults, as used when no preset is configured
+        run("default", new StorageSettings(StorageSettings.FILE, null, null, null, null, null, null), directory);
+        run(StorageSettings.DURABLE, StorageSettings.preset(StorageSettings.DURABLE), directory);
+        run(StorageSettings.DURABLE + "+compress",
+                new StorageSettings(StorageSettings.FILE, null, null, 64 * 1024, 0, 10_000, true), directory);
+        run(StorageSettings.FAST_INGEST, StorageSettings.preset(StorageSettings.FAST_INGEST), directory);
+        run(StorageSettings.EPHEMERAL, StorageSettings.preset(StorageSettings.EPHEMERAL), directory);
+    }
+
+    private static void run(String name, StorageSettings settings, Path directory) throws Exception {
+        JdbcConnectionPool pool = ConnectionUtil.createPool(settings.withPath(directory.resolve(name).toString()).toUrl());
+        try (Connection connection = pool.getConnection()) {
+            RunScript.execute(connection, new FileReader("src/main/resources/SocialMedia.sql"));
+        }
+        AccountDAO accounts = new AccountDAO(pool);
+        MessageDAO messages = new MessageDAO(pool);
+        for (int i = 0; i < AUTHORS; i++) {
+            accounts.insertUser(new Account("bench" + i, "password"));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < SINGLE_INSERTS; i++) {
+            messages.insertMessage(new Message(1 + i % AUTHORS, "benchmark message " + i, 1669947792L + i));
+        }
+        report(name, "insert x1 thread", SINGLE_INSERTS, System.nanoTime() - start);
+
+        ExecutorService writers = Executors.newFixedThreadPool(WRITER_THREADS);
+        start = System.nanoTime();
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < WRITER_THREADS; t++) {
+            int thread = t;
+            done.add(writers.submit(() -> {
+                for (int i = 0; i < SINGLE_INSERTS; i++) {
+                    messages.insertMessage(new Message(1 + (thread + i) % AUTHORS, "concurrent message " + i, 1669947792L + i));
+                }
+            }));
+        }
+        for (Future<?> writer : done) {
+            writer.get();
+        }
+        report(name, "insert x" + WRITER_THREADS + " threads", SINGLE_INSERTS * WRITER_THREADS, System.nanoTime() - start);
+        writers.shutdown();
+
+        start = System.nanoTime();
+        for (int i = 0; i < BATCHED_INSERTS; i += BATCH_SIZE) {
+            List<Message> batch = new ArrayList<>(BATCH_SIZE);
+            for (int j = i; j < i + BATCH_SIZE; j++) {
+                batch.add(new Message(1 + j % AUTHORS, "imported message " + j, 1669947792L + j));
+            }
+            messages.insertMessages(batch);
+        }
+        report(name, "insertMessages x" + BATCH_SIZE, BATCHED_INSERTS, System.nanoTime() - start);
+
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+        pool.dispose();
+    }
+
+    private static void report(String preset, String operation, int count, long nanos) {
+        System.out.printf("%-17s %-24s %10.0f rows/s %10.2f us/row%n", preset, operation, count / (nanos / 1e9), nanos / 1e3 / count);
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.Repositories;
+import Model.Account;
+import Util.ConnectionUtil;
+import Util.StorageSettings;
+import io.javalin.Javalin;
+
+public class StorageSettingsTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty("socialmedia.db.preset");
+        System.clearProperty("socialmedia.db.writeDelayMillis");
+        System.clearProperty("socialmedia.db.mode");
+    }
+
+
+    /**
+     * Building the main database url with nothing configured
+     *
+     * Expected Result: the original file database url, with H2's defaults
+     */
+    @Test
+    public void unconfiguredStorageKeepsTheFileDatabase() {
+        Assert.assertEquals("jdbc:h2:./h2/db;", StorageSettings.fromConfig().toUrl());
+    }
+
+    /**
+     * Building urls from presets, with individual settings on top
+     *
+     * Expected Result: each preset's mode and settings in the url, and an individual setting overriding its preset
+     */
+    @Test
+    public void presetsAndOverridesShapeTheUrl() {
+        Assert.assertEquals("jdbc:h2:./h2/db;CACHE_SIZE=65536;WRITE_DELAY=0;LOCK_TIMEOUT=10000;",
+                StorageSettings.preset(StorageSettings.DURABLE).toUrl());
+        Assert.assertEquals("jdbc:h2:mem:socialmedia;DB_CLOSE_DELAY=-1;CACHE_SIZE=65536;LOCK_TIMEOUT=1000;",
+                StorageSettings.preset(StorageSettings.EPHEMERAL).toUrl());
+
+        System.setProperty("socialmedia.db.preset", StorageSettings.FAST_INGEST);
+        System.setProperty("socialmedia.db.writeDelayMillis", "5000");
+        System.setProperty("socialmedia.db.mode", StorageSettings.TCP);
+        Assert.assertEquals("jdbc:h2:tcp://localhost:9092/./h2/db;CACHE_SIZE=262144;WRITE_DELAY=5000;LOCK_TIMEOUT=10000;",
+                StorageSettings.fromConfig().toUrl());
+
+        Assert.assertThrows(IllegalArgumentException.class, () -> StorageSettings.preset("fastest"));
+    }
+
+    /**
+     * Opening a scratch in-memory database with a cache size, write delay, and lock timeout in its url
+     *
+     * Expected Result: H2 accepts every setting in the url and applies it
+     */
+    @Test
+    public void h2AppliesThePresetSettings() throws SQLException {
+        StorageSettings settings = new StorageSettings(StorageSettings.MEMORY, null, null, 4096, 2_000, 10_000, null);
+        JdbcConnectionPool pool = ConnectionUtil.createPool(settings.toUrl());
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            ResultSet rs = statement.executeQuery("SELECT SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE SETTING_NAME = 'WRITE_DELAY'");
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals("2000", rs.getString(1));
+            statement.execute("SHUTDOWN");
+        }
+        finally {
+            pool.dispose();
+        }
+    }
+
+    /**
+     * Starting the app on a pool of the "ephemeral" preset, then POST localhost:8080/register and creating a message
+     * for the new account
+     *
+     * Expected Response:
+     *  Status Code: 200 for both, since the in-memory database was given its schema when the pool was created
+     *  Response Body: the first account of the empty database
+     */
+    @Test
+    public void ephemeralPresetStartsWithASchema() throws IOException, InterruptedException, SQLException {
+        JdbcConnectionPool pool = ConnectionUtil.createPool(StorageSettings.preset(StorageSettings.EPHEMERAL));
+        Javalin app = new SocialMediaController(Repositories.h2(pool)).startAPI();
+        try {
+            app.start(8080);
+            HttpClient webClient = HttpClient.newHttpClient();
+            ObjectMapper objectMapper = new ObjectMapper();
+
+            HttpResponse<String> registered = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Account("ephemeral", "password"))))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, registered.statusCode());
+            Assert.assertEquals(new Account(1, "ephemeral", "password"), objectMapper.readValue(registered.body(), Account.class));
+
+            HttpResponse<String> posted = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"in memory\",\"time_posted_epoch\":1669947792}"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, posted.statusCode());
+        }
+        finally {
+            app.stop();
+            try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("SHUTDOWN");
+            }
+            pool.dispose();
+        }
+    }
+}
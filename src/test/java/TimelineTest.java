@@ -0,0 +1,170 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryDatabase;
+import DAO.MessageDAO;
+import DAO.MessageRepository;
+import DAO.Repositories;
+import Model.Account;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.DeadlineExceededException;
+import Util.RequestContext;
+import io.javalin.Javalin;
+
+public class TimelineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Registering two more users, posting messages from all three at interleaved times, then sending
+     * GET localhost:8080/timeline?authors=1,2,3&limit=4
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the 4 newest messages across the three authors, newest first, with the tie at 1669947900 broken
+     *  by the higher message_id
+     */
+    @Test
+    public void timelineMergesAuthorsNewestFirst() throws IOException, InterruptedException {
+        register("timelineuser2");
+        register("timelineuser3");
+        Message oldest = postMessage(2, "oldest", 1669900000);
+        Message fromThree = postMessage(3, "from three", 1669950000);
+        Message tieFirst = postMessage(2, "tie, posted first", 1669947900);
+        Message tieSecond = postMessage(3, "tie, posted second", 1669947900);
+        Message newest = postMessage(1, "newest", 1669999999);
+
+        List<Message> timeline = getTimeline("authors=1,2,3&limit=4");
+        Assert.assertEquals(List.of(newest, fromThree, tieSecond, tieFirst), timeline);
+
+        // the seed message (1669947792) and the oldest one only show up with a larger limit
+        List<Message> everything = getTimeline("authors=3,2,1,2");
+        Assert.assertEquals(6, everything.size());
+        Assert.assertEquals(oldest, everything.get(5));
+    }
+
+    /**
+     * Sending GET localhost:8080/timeline without authors, with a bad author, and with limits out of range
+     *
+     * Expected Response:
+     *  Status Code: 400 for each of them, and 200 with an empty list for an author without messages
+     */
+    @Test
+    public void timelineRejectsBadParameters() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("/timeline").statusCode());
+        Assert.assertEquals(400, send("/timeline?authors=1,x").statusCode());
+        Assert.assertEquals(400, send("/timeline?authors=1&limit=0").statusCode());
+        Assert.assertEquals(400, send("/timeline?authors=1&limit=100000").statusCode());
+        Assert.assertEquals(400, send("/timeline?authors=1&limit=ten").statusCode());
+
+        HttpResponse<String> nobody = send("/timeline?authors=42");
+        Assert.assertEquals(200, nobody.statusCode());
+        Assert.assertEquals("[]", nobody.body());
+    }
+
+    /**
+     * Building a timeline for a request whose deadline has already passed
+     *
+     * Expected Result: the per-author fetches run on worker threads, yet still see the request's deadline and fail
+     */
+    @Test
+    public void timelineFetchesCarryTheRequestDeadline() throws InterruptedException {
+        MessageService messageService = new MessageService(new MessageDAO(), null);
+        RequestContext.open("timeline-test");
+        try {
+            RequestContext.setDeadline(1);
+            Thread.sleep(5);
+            Assert.assertThrows(DeadlineExceededException.class, () -> messageService.getTimeline(List.of(1, 2), 10));
+        }
+        finally {
+            RequestContext.close();
+        }
+    }
+
+    /**
+     * Reading an author's newest messages through the in-memory storage engine, with post times out of id order
+     *
+     * Expected Result: the same order as the H2 storage engine, cut off at the limit
+     */
+    @Test
+    public void inMemoryEngineReturnsNewestFirst() {
+        Repositories repositories = Repositories.inMemory(new InMemoryDatabase());
+        int account_id = repositories.accounts().insertUser(new Account("timeline", "password")).getAccount_id();
+        MessageRepository messages = repositories.messages();
+        Message middle = messages.insertMessage(new Message(account_id, "middle", 200));
+        messages.insertMessage(new Message(account_id, "oldest", 100));
+        Message newest = messages.insertMessage(new Message(account_id, "newest", 300));
+
+        Assert.assertEquals(List.of(newest, middle), messages.getLatestMessagesByUser(account_id, 2));
+        Assert.assertEquals(List.of(), messages.getLatestMessagesByUser(account_id + 1, 2));
+    }
+
+    private void register(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Account(username, "password"))))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    private Message postMessage(int posted_by, String text, long time_posted_epoch) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(posted_by, text, time_posted_epoch))))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private List<Message> getTimeline(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("/timeline?" + query);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> send(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
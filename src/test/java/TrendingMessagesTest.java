@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.TrendingMessage;
+import Util.ConnectionUtil;
+import Util.TrendingTracker;
+import io.javalin.Javalin;
+
+public class TrendingMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app (rebuilding the trending top on every read), and
+     * create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("socialmedia.trending.refreshMillis", "0");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.trending.refreshMillis");
+    }
+
+
+    /**
+     * Viewing the seed message three times and a second message once (GET localhost:8080/messages/{message_id}), then
+     * sending GET localhost:8080/messages/trending
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: both messages with their views, most viewed first; views of a missing message aren't counted
+     */
+    @Test
+    public void trendingRanksMessagesByViews() throws IOException, InterruptedException {
+        Message second = postMessage(1, "second message", 1669950000);
+        Message seed = objectMapper.readValue(send("/messages/1").body(), Message.class);
+        send("/messages/1");
+        send("/messages/1");
+        send("/messages/" + second.getMessage_id());
+        send("/messages/4242");
+
+        List<TrendingMessage> trending = getTrending("");
+        Assert.assertEquals(2, trending.size());
+        Assert.assertEquals(seed, trending.get(0).getMessage());
+        Assert.assertEquals(3, trending.get(0).getViews());
+        Assert.assertEquals(second, trending.get(1).getMessage());
+        Assert.assertEquals(1, trending.get(1).getViews());
+
+        Assert.assertEquals(1, getTrending("?limit=1").size());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/trending with limits out of range, and before anything was viewed
+     *
+     * Expected Response:
+     *  Status Code: 400 for the bad limits, and 200 with an empty list without views
+     */
+    @Test
+    public void trendingRejectsBadLimits() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("/messages/trending?limit=0").statusCode());
+        Assert.assertEquals(400, send("/messages/trending?limit=100000").statusCode());
+        Assert.assertEquals(400, send("/messages/trending?limit=ten").statusCode());
+        Assert.assertEquals(List.of(), getTrending(""));
+    }
+
+    /**
+     * Viewing 20,000 distinct ids once each and one id 500 times, through sketches far smaller than that, then moving
+     * the clock past the window
+     *
+     * Expected Result: the heavy id tops the ranking with at least its real views, and the window forgets it later
+     */
+    @Test
+    public void trackerFindsHeavyHittersInFixedMemory() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        TrendingTracker tracker = new TrendingTracker(60_000, 6, 1024, 4, 64, 10, 0, now::get);
+        for (int id = 1; id <= 20_000; id++) {
+            tracker.recordView(id);
+            if (id % 40 == 0) {
+                tracker.recordView(777_777);
+                now.addAndGet(1);
+            }
+        }
+
+        long[][] top = tracker.top(3);
+        Assert.assertEquals(3, top.length);
+        Assert.assertEquals(777_777, top[0][0]);
+        Assert.assertTrue(top[0][1] >= 500);
+        Assert.assertTrue(top[1][1] < 500);
+
+        now.addAndGet(120_000);
+        Assert.assertEquals(0, tracker.top(3).length);
+    }
+
+    private Message postMessage(int posted_by, String text, long time_posted_epoch) throws IOException, InterruptedException {
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(new Message(posted_by, text, time_posted_epoch))))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private List<TrendingMessage> getTrending(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("/messages/trending" + query);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<TrendingMessage>>(){});
+    }
+
+    private HttpResponse<String> send(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
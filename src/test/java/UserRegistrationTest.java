@@ -3,6 +3,9 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -95,6 +98,37 @@ public class UserRegistrationTest {
 
     }
 
+    /**
+     * Sending 16 concurrent http requests to POST localhost:8080/register with the same new username
+     * 
+     * Expected Response:
+     *  Status Code: 200 for exactly one of them, 400 for every other
+     */
+    @Test
+    public void registerUserConcurrentDuplicates() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"racer\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            responses.add(webClient.sendAsync(postRequest, HttpResponse.BodyHandlers.ofString()));
+        }
+        int registered = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            int status = response.join().statusCode();
+            Assert.assertTrue(status == 200 || status == 400);
+            if (status == 200) {
+                registered++;
+            }
+        }
+        Assert.assertEquals(1, registered);
+
+    }
+
     /**
      * Sending an http request to POST localhost:8080/register when no username provided
      * 
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageImportEvent;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class WriteRateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, lower the per-account burst to 2 requests, restart the Javalin app, and
+     * create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("socialmedia.ratelimit.account.burst", "2");
+        System.setProperty("socialmedia.ratelimit.account.perSecond", "0.1");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.ratelimit.account.burst");
+        System.clearProperty("socialmedia.ratelimit.account.perSecond");
+    }
+
+
+    /**
+     * Sending three http requests to POST localhost:8080/messages for the same account with a burst of 2
+     * 
+     * Expected Response:
+     *  Status Code: 429 for the third request, with a Retry-After header
+     *  Response Body: 
+     *  The rejected message must not be persisted
+     */
+    @Test
+    public void createMessageRateLimited() throws IOException, InterruptedException {
+        Assert.assertEquals(200, postMessage(1).statusCode());
+        Assert.assertEquals(200, postMessage(1).statusCode());
+
+        HttpResponse<String> response = postMessage(1);
+        Assert.assertEquals(429, response.statusCode());
+        Assert.assertTrue(Long.parseLong(response.headers().firstValue("Retry-After").orElse("0")) >= 1);
+        Assert.assertEquals("", response.body());
+
+        HttpResponse<String> allMessages = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(allMessages.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(3, messages.size());
+    }
+
+    /**
+     * Exhausting account 1's burst, then sending an http request to POST localhost:8080/messages for account 2
+     * 
+     * Expected Response:
+     *  Status Code: 400 (account 2 doesn't exist, so the request reached the service instead of being rate limited)
+     */
+    @Test
+    public void createMessageOtherAccountNotLimited() throws IOException, InterruptedException {
+        postMessage(1);
+        postMessage(1);
+        Assert.assertEquals(429, postMessage(1).statusCode());
+
+        Assert.assertEquals(400, postMessage(2).statusCode());
+    }
+
+    /**
+     * Posting one message for account 1, then sending an http request to POST localhost:8080/messages/import with two
+     * more of its messages, with a burst of 2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the last imported line is rejected as over the account's rate limit, so the import can't be used
+     *  to get around the limit of POST /messages
+     */
+    @Test
+    public void importChargesEachMessageToItsAccount() throws IOException, InterruptedException {
+        Assert.assertEquals(200, postMessage(1).statusCode());
+
+        String body = "{\"posted_by\":1,\"message_text\":\"imported 1\",\"time_posted_epoch\":1669947800}\n"
+                + "{\"posted_by\":1,\"message_text\":\"imported 2\",\"time_posted_epoch\":1669947801}\n";
+        HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/import"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        String[] events = response.body().split("\n");
+        MessageImportEvent rejected = objectMapper.readValue(events[0], MessageImportEvent.class);
+        Assert.assertEquals(Long.valueOf(2), rejected.getLine());
+        Assert.assertTrue(rejected.getError().contains("rate limit"));
+        MessageImportEvent summary = objectMapper.readValue(events[events.length - 1], MessageImportEvent.class);
+        Assert.assertEquals(Long.valueOf(1), summary.getImported());
+        Assert.assertEquals(Long.valueOf(1), summary.getFailed());
+    }
+
+    private HttpResponse<String> postMessage(int posted_by) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + posted_by + ", " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+}